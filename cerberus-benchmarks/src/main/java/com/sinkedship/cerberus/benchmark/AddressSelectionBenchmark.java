@@ -0,0 +1,109 @@
+package com.sinkedship.cerberus.benchmark;
+
+import com.google.common.collect.ImmutableSet;
+import com.sinkedship.cerberus.client.AddressQuarantine;
+import com.sinkedship.cerberus.client.CerberusAddressSelector;
+import com.sinkedship.cerberus.client.CircuitBreakers;
+import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.api.Provider;
+import com.sinkedship.cerberus.sample.api.service.HelloService;
+import com.sinkedship.cerberus.strategy.LeastOutstandingRequestsStrategy;
+import com.sinkedship.cerberus.strategy.NullServiceStrategy;
+import com.sinkedship.cerberus.strategy.PeakEwmaStrategy;
+import com.sinkedship.cerberus.strategy.PowerOfTwoChoicesStrategy;
+import com.sinkedship.cerberus.strategy.RandomStrategy;
+import com.sinkedship.cerberus.strategy.RoundRobinStrategy;
+import io.airlift.drift.client.address.SimpleAddressSelector.SimpleAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link CerberusAddressSelector#selectAddress(Optional, Set)} with each {@link Provider.Strategy}
+ * against services with large numbers of instances.
+ *
+ * @author Derrick Guan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressSelectionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int instances;
+
+    @Param({"ROUND_ROBIN", "RANDOM", "POWER_OF_TWO_CHOICES", "LEAST_OUTSTANDING_REQUESTS", "PEAK_EWMA", "NULL"})
+    private String strategy;
+
+    private CerberusAddressSelector selector;
+
+    private Set<SimpleAddress> attempted;
+
+    @Setup
+    public void setup() {
+        StaticRegistry registry = new StaticRegistry(HelloService.class, instances);
+        selector = new CerberusAddressSelector(HelloService.class, CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER,
+                null, registry, new AddressQuarantine(), new CircuitBreakers(), newStrategy(strategy));
+        // a retry, which skips the first attempted instance
+        ServiceSnapshot snapshot = registry.getSnapshot();
+        attempted = ImmutableSet.of(new SimpleAddress(snapshot.getAddresses().get(0)));
+    }
+
+    @Benchmark
+    public Optional<SimpleAddress> select() {
+        return selector.selectAddress(Optional.empty());
+    }
+
+    @Benchmark
+    public Optional<SimpleAddress> selectRetry() {
+        return selector.selectAddress(Optional.empty(), attempted);
+    }
+
+    /**
+     * Selects an address and reports a request to it, which is what an invocation does with load-aware strategies.
+     */
+    @Benchmark
+    public Optional<SimpleAddress> selectAndReport() {
+        Optional<SimpleAddress> address = selector.selectAddress(Optional.empty());
+        if (address.isPresent()) {
+            selector.onRequestStart(address.get());
+            selector.onRequestFinish(address.get(), 1_000_000, true);
+        }
+        return address;
+    }
+
+    static Provider.Strategy newStrategy(String name) {
+        switch (name) {
+            case "ROUND_ROBIN":
+                return new RoundRobinStrategy();
+            case "RANDOM":
+                return new RandomStrategy();
+            case "POWER_OF_TWO_CHOICES":
+                return new PowerOfTwoChoicesStrategy();
+            case "LEAST_OUTSTANDING_REQUESTS":
+                return new LeastOutstandingRequestsStrategy();
+            case "PEAK_EWMA":
+                return new PeakEwmaStrategy();
+            case "NULL":
+                return new NullServiceStrategy();
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.sinkedship.cerberus.benchmark;
+
+import com.sinkedship.cerberus.bootstrap.CerberusServerBootstrap;
+import com.sinkedship.cerberus.bootstrap.config.CerberusServerConfig;
+import com.sinkedship.cerberus.commons.DataCenter;
+import com.sinkedship.cerberus.sample.api.service.CalculateService;
+import com.sinkedship.cerberus.sample.api.service.HelloService;
+
+import java.io.Closeable;
+import java.time.Duration;
+
+/**
+ * An in-process server of the sample services on {@link DataCenter#LOCAL}, whose methods return immediately.
+ *
+ * @author Derrick Guan
+ */
+class BenchmarkServer implements Closeable {
+
+    private final CerberusServerConfig config;
+
+    private final CerberusServerBootstrap bootstrap;
+
+    BenchmarkServer() {
+        config = new CerberusServerConfig(DataCenter.LOCAL);
+        config.getBootConfig()
+                .enableShutdownHook(false)
+                .setShutdownPropagationDelay(Duration.ZERO)
+                .setShutdownDrainTimeout(Duration.ZERO);
+        bootstrap = new CerberusServerBootstrap.Builder(DataCenter.LOCAL)
+                .withServerConfig(config)
+                .withService(new EchoHelloService())
+                .withService(new EchoCalculateService())
+                .build();
+        bootstrap.boot();
+    }
+
+    String getHost() {
+        return config.getBootConfig().getHost();
+    }
+
+    int getPort() {
+        return config.getBootConfig().getPort();
+    }
+
+    @Override
+    public void close() {
+        bootstrap.shutdown();
+    }
+
+    public static class EchoHelloService implements HelloService {
+
+        @Override
+        public String hello(String from, boolean mockTimeConsumingOperation) {
+            return from;
+        }
+
+        @Override
+        public String hello(int number, boolean mockTimeConsumingOperation) {
+            return String.valueOf(number);
+        }
+    }
+
+    public static class EchoCalculateService implements CalculateService {
+
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public int verySlowGcd(int a, int b) {
+            return b == 0 ? a : verySlowGcd(b, a % b);
+        }
+    }
+}
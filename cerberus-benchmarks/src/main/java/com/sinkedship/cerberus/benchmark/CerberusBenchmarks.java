@@ -0,0 +1,41 @@
+package com.sinkedship.cerberus.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Entry of the benchmarks, which takes the same arguments as {@link org.openjdk.jmh.Main}
+ * and always reports allocation rates with the GC profiler.
+ * <p>
+ * e.g. run address selection benchmarks against 1000 instances only:
+ * <pre>
+ * java -jar cerberus-benchmarks-jar-with-dependencies.jar AddressSelectionBenchmark -p instances=1000
+ * </pre>
+ *
+ * @author Derrick Guan
+ */
+public class CerberusBenchmarks {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        if (commandLineOptions.shouldList()) {
+            new Runner(commandLineOptions).list();
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.sinkedship.cerberus.benchmark;
+
+import com.sinkedship.cerberus.client.CerberusServiceFactory;
+import com.sinkedship.cerberus.client.config.CerberusClientConfig;
+import com.sinkedship.cerberus.commons.DataCenter;
+import com.sinkedship.cerberus.commons.config.data_center.LocalConfig;
+import com.sinkedship.cerberus.sample.api.service.CalculateService;
+import com.sinkedship.cerberus.sample.api.service.HelloService;
+import io.airlift.drift.client.stats.NullMethodInvocationStatsFactory;
+import io.airlift.drift.transport.netty.codec.Protocol;
+import io.airlift.drift.transport.netty.codec.Transport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks round trips of {@link CerberusServiceFactory} proxies, sync and async, against an in-process
+ * server on {@link DataCenter#LOCAL}, over each transport and protocol.
+ *
+ * @author Derrick Guan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientInvokeBenchmark {
+
+    // header transport works with binary and fb compact protocols only
+    @Param({"FRAMED_BINARY", "FRAMED_COMPACT", "HEADER_BINARY", "HEADER_FB_COMPACT"})
+    private String encoding;
+
+    private BenchmarkServer server;
+
+    private HelloService helloService;
+
+    private HelloService.Async asyncHelloService;
+
+    private CalculateService calculateService;
+
+    private CalculateService.Async asyncCalculateService;
+
+    @Setup
+    public void setup() {
+        server = new BenchmarkServer();
+        CerberusClientConfig config = new CerberusClientConfig(DataCenter.LOCAL);
+        config.getConcreteDataCenterConfig(LocalConfig.class)
+                .setConnectHost(server.getHost())
+                .setConnectPort(server.getPort());
+        int separator = encoding.indexOf('_');
+        config.getDriftNettyClientConfig()
+                .setTransport(Transport.valueOf(encoding.substring(0, separator)))
+                .setProtocol(Protocol.valueOf(encoding.substring(separator + 1)));
+        CerberusServiceFactory factory = new CerberusServiceFactory(config, new NullMethodInvocationStatsFactory());
+        helloService = factory.newService(HelloService.class);
+        asyncHelloService = factory.newService(HelloService.Async.class);
+        calculateService = factory.newService(CalculateService.class);
+        asyncCalculateService = factory.newService(CalculateService.Async.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public String syncHello() {
+        return helloService.hello("cerberus", false);
+    }
+
+    @Benchmark
+    public String asyncHello() throws ExecutionException, InterruptedException {
+        return asyncHelloService.hello("cerberus", false).get();
+    }
+
+    @Benchmark
+    public int syncAdd() {
+        return calculateService.add(1, 2);
+    }
+
+    @Benchmark
+    public Integer asyncAdd() throws ExecutionException, InterruptedException {
+        return asyncCalculateService.add(1, 2).get();
+    }
+}
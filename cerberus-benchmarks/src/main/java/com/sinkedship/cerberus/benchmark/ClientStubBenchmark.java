@@ -0,0 +1,72 @@
+package com.sinkedship.cerberus.benchmark;
+
+import com.sinkedship.cerberus.client.CerberusServiceFactory;
+import com.sinkedship.cerberus.client.config.CerberusClientConfig;
+import com.sinkedship.cerberus.commons.DataCenter;
+import com.sinkedship.cerberus.sample.api.service.CalculateService;
+import com.sinkedship.cerberus.sample.api.service.HelloService;
+import io.airlift.drift.client.stats.NullMethodInvocationStatsFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares generated client stubs against {@link java.lang.reflect.Proxy} based clients on the client side
+ * of an invocation, i.e. dispatch, argument handling, address selection and result conversion.
+ *
+ * @author Derrick Guan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientStubBenchmark {
+
+    @Param({"proxy", "stub"})
+    private String client;
+
+    private HelloService helloService;
+
+    private HelloService.Async asyncHelloService;
+
+    private CalculateService calculateService;
+
+    @Setup
+    public void setup() {
+        CerberusClientConfig config = new CerberusClientConfig(DataCenter.LOCAL)
+                .enableGeneratedStubs("stub".equals(client));
+        CerberusServiceFactory factory = new CerberusServiceFactory(config, new EchoMethodInvokerFactory(),
+                new NullMethodInvocationStatsFactory());
+        helloService = factory.newService(HelloService.class);
+        asyncHelloService = factory.newService(HelloService.Async.class);
+        calculateService = factory.newService(CalculateService.class);
+    }
+
+    @Benchmark
+    public String syncHello() {
+        return helloService.hello("cerberus", false);
+    }
+
+    @Benchmark
+    public String asyncHello() throws ExecutionException, InterruptedException {
+        return asyncHelloService.hello("cerberus", false).get();
+    }
+
+    @Benchmark
+    public int syncAdd() {
+        return calculateService.add(1, 2);
+    }
+}
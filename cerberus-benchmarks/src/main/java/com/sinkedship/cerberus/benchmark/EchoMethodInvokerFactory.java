@@ -0,0 +1,34 @@
+package com.sinkedship.cerberus.benchmark;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.drift.transport.client.InvokeRequest;
+import io.airlift.drift.transport.client.MethodInvoker;
+import io.airlift.drift.transport.client.MethodInvokerFactory;
+import io.airlift.units.Duration;
+
+/**
+ * An in-memory method invoker factory whose invokers answer every request with its first parameter,
+ * so that benchmarks measure the client side only, without any transport or server.
+ *
+ * @author Derrick Guan
+ */
+class EchoMethodInvokerFactory implements MethodInvokerFactory<Object> {
+
+    private final MethodInvoker invoker = new MethodInvoker() {
+        @Override
+        public ListenableFuture<Object> invoke(InvokeRequest request) {
+            return Futures.immediateFuture(request.getParameters().get(0));
+        }
+
+        @Override
+        public ListenableFuture<?> delay(Duration duration) {
+            return Futures.immediateFuture(null);
+        }
+    };
+
+    @Override
+    public MethodInvoker createMethodInvoker(Object clientIdentity) {
+        return invoker;
+    }
+}
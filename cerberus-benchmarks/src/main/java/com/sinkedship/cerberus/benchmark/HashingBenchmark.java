@@ -0,0 +1,110 @@
+package com.sinkedship.cerberus.benchmark;
+
+import com.sinkedship.cerberus.commons.ServiceMetaData;
+import com.sinkedship.cerberus.core.CerberusService;
+import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.sample.api.service.HelloService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks hashing and equality of {@link Service} and {@link ServiceMetaData}, which key the caches
+ * of registries and clients.
+ *
+ * @author Derrick Guan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashingBenchmark {
+
+    private static final int ENTRIES = 100;
+
+    private Service service;
+
+    private Service equalService;
+
+    private ServiceMetaData metaData;
+
+    private ServiceMetaData equalMetaData;
+
+    private Map<Service, Integer> services;
+
+    private Map<ServiceMetaData, Integer> metaDatas;
+
+    @Setup
+    public void setup() {
+        services = new HashMap<>();
+        metaDatas = new HashMap<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            services.put(newService(i), i);
+            metaDatas.put(newMetaData(i), i);
+        }
+        service = newService(ENTRIES / 2);
+        equalService = newService(ENTRIES / 2);
+        metaData = newMetaData(ENTRIES / 2);
+        equalMetaData = newMetaData(ENTRIES / 2);
+    }
+
+    @Benchmark
+    public int serviceHashCode() {
+        return service.hashCode();
+    }
+
+    @Benchmark
+    public boolean serviceEquals() {
+        return service.equals(equalService);
+    }
+
+    @Benchmark
+    public Integer serviceLookup() {
+        return services.get(service);
+    }
+
+    @Benchmark
+    public int metaDataHashCode() {
+        return metaData.hashCode();
+    }
+
+    @Benchmark
+    public boolean metaDataEquals() {
+        return metaData.equals(equalMetaData);
+    }
+
+    @Benchmark
+    public Integer metaDataLookup() {
+        return metaDatas.get(metaData);
+    }
+
+    @Benchmark
+    public String metaDataIdentifier() {
+        return metaData.getServiceIdentifier();
+    }
+
+    private static Service newService(int i) {
+        return new CerberusService.Builder(HelloService.class)
+                .id("instance-" + i)
+                .host("10.0." + (i >> 8 & 0xFF) + "." + (i & 0xFF))
+                .port(8080)
+                .build();
+    }
+
+    private static ServiceMetaData newMetaData(int i) {
+        return new ServiceMetaData("com.sinkedship", "benchmark", "service-" + i);
+    }
+}
@@ -0,0 +1,112 @@
+package com.sinkedship.cerberus.benchmark;
+
+import com.sinkedship.cerberus.commons.ServiceMetaData;
+import com.sinkedship.cerberus.core.CerberusService;
+import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.api.Provider;
+import com.sinkedship.cerberus.core.api.Registrar;
+import com.sinkedship.cerberus.core.api.Registry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * A registry which provides a fixed snapshot of instances for every service and registers nothing,
+ * so that benchmarks of the client side do not depend on any data center.
+ *
+ * @author Derrick Guan
+ */
+class StaticRegistry implements Registry {
+
+    private final ServiceSnapshot snapshot;
+
+    private final Provider provider = new Provider() {
+        @Override
+        public Optional<Service> get(ServiceMetaData metaData) {
+            return first();
+        }
+
+        @Override
+        public Optional<Service> get(Class<?> targetClass) {
+            return first();
+        }
+
+        @Override
+        public Optional<Service> get(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+            return first();
+        }
+
+        @Override
+        public List<Service> getAll(ServiceMetaData metaData) {
+            return snapshot.getInstances();
+        }
+
+        @Override
+        public List<Service> getAll(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+            return snapshot.getInstances();
+        }
+
+        @Override
+        public Supplier<ServiceSnapshot> snapshotSource(ServiceMetaData metaData) {
+            return () -> snapshot;
+        }
+
+        @Override
+        public Supplier<ServiceSnapshot> snapshotSource(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+            return () -> snapshot;
+        }
+    };
+
+    private final Registrar registrar = new Registrar() {
+        @Override
+        public <S extends Service> boolean register(S service) {
+            return false;
+        }
+
+        @Override
+        public <S extends Service> boolean unregister(S service) {
+            return false;
+        }
+    };
+
+    /**
+     * @param targetClass representing class of the service
+     * @param instances   number of instances, which listen on distinct hosts
+     */
+    StaticRegistry(Class<?> targetClass, int instances) {
+        List<Service> services = new ArrayList<>(instances);
+        for (int i = 0; i < instances; i++) {
+            services.add(new CerberusService.Builder(targetClass)
+                    .id("instance-" + i)
+                    .host("10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF))
+                    .port(8080)
+                    .build());
+        }
+        snapshot = ServiceSnapshot.of(services.get(0).getIdentifier(), services);
+    }
+
+    ServiceSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private Optional<Service> first() {
+        return snapshot.isEmpty() ? Optional.empty() : Optional.of(snapshot.getInstances().get(0));
+    }
+
+    @Override
+    public Provider provider() {
+        return provider;
+    }
+
+    @Override
+    public Registrar registrar() {
+        return registrar;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,132 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sinkedship.cerberus.bootstrap.metrics.ServerMetrics;
+import io.airlift.drift.transport.MethodMetadata;
+import io.airlift.drift.transport.netty.server.ThriftServerHandler;
+import io.airlift.drift.transport.server.ServerInvokeRequest;
+import io.airlift.drift.transport.server.ServerMethodInvoker;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link CerberusThriftProtocolDetection} on the first bytes of a connection for each
+ * transport and protocol, i.e. detecting them and switching the pipeline to the transport.
+ * <p>
+ * It lives in the package of the detection since the detection is only built by the server initializer.
+ *
+ * @author Derrick Guan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolDetectionBenchmark {
+
+    @Param({"UNFRAMED_BINARY", "UNFRAMED_COMPACT", "UNFRAMED_FB_COMPACT",
+            "FRAMED_BINARY", "FRAMED_COMPACT", "FRAMED_FB_COMPACT", "HEADER"})
+    private String encoding;
+
+    private ByteBuf preamble;
+
+    private ServerMetrics metrics;
+
+    private RequestMetricsHandler metricsHandler;
+
+    private InFlightRequestTracker inFlightTracker;
+
+    private ScheduledExecutorService timeoutExecutor;
+
+    private ServerMethodInvoker methodInvoker;
+
+    @Setup
+    public void setup() {
+        preamble = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(preambleOf(encoding)));
+        metrics = new ServerMetrics();
+        metricsHandler = new RequestMetricsHandler(metrics);
+        inFlightTracker = new InFlightRequestTracker();
+        timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+        methodInvoker = new ServerMethodInvoker() {
+            @Override
+            public Optional<MethodMetadata> getMethodMetadata(String name) {
+                return Optional.empty();
+            }
+
+            @Override
+            public ListenableFuture<Object> invoke(ServerInvokeRequest request) {
+                return Futures.immediateFuture(null);
+            }
+
+            @Override
+            public void recordResult(String methodName, long startTime, ListenableFuture<Object> result) {
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        timeoutExecutor.shutdownNow();
+        metrics.close();
+    }
+
+    @Benchmark
+    public EmbeddedChannel detect() {
+        EmbeddedChannel channel = new EmbeddedChannel(new CerberusThriftProtocolDetection(
+                new ThriftServerHandler(methodInvoker, new Duration(1, TimeUnit.MINUTES), timeoutExecutor),
+                new DataSize(16, DataSize.Unit.MEGABYTE), false, null, inFlightTracker, metricsHandler));
+        channel.writeInbound(preamble.duplicate());
+        channel.finishAndReleaseAll();
+        return channel;
+    }
+
+    /**
+     * First 8 bytes of a call on a connection, which are not a complete message so that nothing but detection
+     * happens. Framed and header transports start with the frame size.
+     */
+    private static byte[] preambleOf(String encoding) {
+        switch (encoding) {
+            case "UNFRAMED_BINARY":
+                // binary version 1 and call, then length of method name
+                return new byte[]{(byte) 0x80, 0x01, 0x00, 0x01, 0x00, 0x00, 0x00, 0x10};
+            case "UNFRAMED_COMPACT":
+                // compact protocol id, version 1 and call, then sequence id and length of method name
+                return new byte[]{(byte) 0x82, 0x21, 0x01, 0x10, 'h', 'e', 'l', 'l'};
+            case "UNFRAMED_FB_COMPACT":
+                return new byte[]{(byte) 0x82, 0x22, 0x01, 0x10, 'h', 'e', 'l', 'l'};
+            case "FRAMED_BINARY":
+                return new byte[]{0x00, 0x00, 0x00, 0x40, (byte) 0x80, 0x01, 0x00, 0x01};
+            case "FRAMED_COMPACT":
+                return new byte[]{0x00, 0x00, 0x00, 0x40, (byte) 0x82, 0x21, 0x01, 0x10};
+            case "FRAMED_FB_COMPACT":
+                return new byte[]{0x00, 0x00, 0x00, 0x40, (byte) 0x82, 0x22, 0x01, 0x10};
+            case "HEADER":
+                // header magic and flags
+                return new byte[]{0x00, 0x00, 0x00, 0x40, 0x0F, (byte) 0xFF, 0x00, 0x00};
+            default:
+                throw new IllegalArgumentException("Unknown encoding: " + encoding);
+        }
+    }
+}
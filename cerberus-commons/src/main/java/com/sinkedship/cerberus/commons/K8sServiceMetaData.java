@@ -4,17 +4,25 @@ import java.util.Objects;
 
 public class K8sServiceMetaData extends ServiceMetaData {
 
+    // null means the namespace configured for the data center
+    private final String namespace;
+
     private final String serviceName;
 
     private final String servicePortName;
 
-    public K8sServiceMetaData(String serviceName, String servicePortName) {
+    public K8sServiceMetaData(String namespace, String serviceName, String servicePortName) {
         // Bypass precondition check in super constructor
         super("organization", "category", "svc");
+        this.namespace = namespace;
         this.serviceName = serviceName;
         this.servicePortName = servicePortName;
     }
 
+    public K8sServiceMetaData(String serviceName, String servicePortName) {
+        this(null, serviceName, servicePortName);
+    }
+
     public K8sServiceMetaData(String serviceName) {
         this(serviceName, "thrift-port");
     }
@@ -24,6 +32,13 @@ public class K8sServiceMetaData extends ServiceMetaData {
         return serviceName;
     }
 
+    /**
+     * @return namespace of the service, null if it's in the namespace configured for the data center
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
     public String getServicePortName() {
         return servicePortName;
     }
@@ -34,17 +49,21 @@ public class K8sServiceMetaData extends ServiceMetaData {
             return false;
         }
         K8sServiceMetaData that = (K8sServiceMetaData) obj;
-        return that.serviceName.equalsIgnoreCase(this.serviceName) &&
+        return Objects.equals(that.namespace, this.namespace) &&
+                that.serviceName.equalsIgnoreCase(this.serviceName) &&
                 that.servicePortName.equalsIgnoreCase(this.servicePortName);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.serviceName, this.servicePortName);
+        return Objects.hash(this.namespace, this.serviceName, this.servicePortName);
     }
 
     @Override
     public String toString() {
-        return String.format("%s, %s", this.serviceName, servicePortName);
+        if (namespace == null) {
+            return String.format("%s, %s", this.serviceName, servicePortName);
+        }
+        return String.format("%s/%s, %s", namespace, this.serviceName, servicePortName);
     }
 }
@@ -11,10 +11,23 @@ public class ConsulConfig extends DataCenterConfig {
 
     private static final String DEFAULT_CONSUL_HOST = "localhost";
     private static final int DEFAULT_CONSUL_PORT = 8500;
+    private static final long DEFAULT_WATCH_WAIT_TIME = 30_000;
+    private static final int DEFAULT_WATCH_THREADS = 4;
+    private static final long DEFAULT_SERVICE_TTL = 5_000;
+    private static final long DEFAULT_DEREGISTER_CRITICAL_AFTER = 60_000;
 
     private String host = DEFAULT_CONSUL_HOST;
     private int port = DEFAULT_CONSUL_PORT;
 
+    // Discover services with blocking queries rather than periodical polling
+    private boolean watch = false;
+    private long watchWaitTime = DEFAULT_WATCH_WAIT_TIME;
+    private int watchThreads = DEFAULT_WATCH_THREADS;
+
+    // TTL check of registered services
+    private long serviceTTL = DEFAULT_SERVICE_TTL;
+    private long deregisterCriticalAfter = DEFAULT_DEREGISTER_CRITICAL_AFTER;
+
     public ConsulConfig() {
         super(DataCenter.CONSUL);
     }
@@ -40,4 +53,94 @@ public class ConsulConfig extends DataCenterConfig {
         return port;
     }
 
+    /**
+     * Enable or disable watch mode, in which each discovered service is watched by a blocking query
+     * and changes are applied the moment consul answers, instead of polling every few seconds.
+     *
+     * @param watch true to enable watch mode
+     *
+     * @return this config
+     */
+    public ConsulConfig setWatch(boolean watch) {
+        this.watch = watch;
+        return this;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * Set the max time in millisecond that a blocking query waits for changes.
+     *
+     * @param watchWaitTime max wait time in millisecond, at least 1 second
+     *
+     * @return this config
+     */
+    public ConsulConfig setWatchWaitTime(long watchWaitTime) {
+        Preconditions.checkArgument(watchWaitTime / 1000 > 0, "Watch wait time must > 1's after measuring in second");
+        this.watchWaitTime = watchWaitTime;
+        return this;
+    }
+
+    public long getWatchWaitTime() {
+        return watchWaitTime;
+    }
+
+    /**
+     * Set the initial number of threads running blocking queries. Every watched service keeps one blocking
+     * query in flight, so the pool grows to one thread per watched service once there are more services than
+     * this, and no service waits in line behind blocking queries of the others.
+     *
+     * @param watchThreads initial number of threads
+     *
+     * @return this config
+     */
+    public ConsulConfig setWatchThreads(int watchThreads) {
+        Preconditions.checkArgument(watchThreads > 0, "Watch threads must > 0");
+        this.watchThreads = watchThreads;
+        return this;
+    }
+
+    public int getWatchThreads() {
+        return watchThreads;
+    }
+
+    /**
+     * Set the TTL in millisecond of the health check of registered services,
+     * heartbeats are sent about 3 times per TTL.
+     *
+     * @param serviceTTL TTL in millisecond, at least 1 second
+     *
+     * @return this config
+     */
+    public ConsulConfig setServiceTTL(long serviceTTL) {
+        Preconditions.checkArgument(serviceTTL / 1000 > 0, "Service TTL must > 1's after measuring in second");
+        this.serviceTTL = serviceTTL;
+        return this;
+    }
+
+    public long getServiceTTL() {
+        return serviceTTL;
+    }
+
+    /**
+     * Set how long in millisecond a registered service can stay critical before consul deregisters it.
+     * Note that consul does not deregister services critical for less than 1 minute anyway.
+     *
+     * @param deregisterCriticalAfter time in millisecond, at least 1 second
+     *
+     * @return this config
+     */
+    public ConsulConfig setDeregisterCriticalAfter(long deregisterCriticalAfter) {
+        Preconditions.checkArgument(deregisterCriticalAfter / 1000 > 0,
+                "Deregister critical after must > 1's after measuring in second");
+        this.deregisterCriticalAfter = deregisterCriticalAfter;
+        return this;
+    }
+
+    public long getDeregisterCriticalAfter() {
+        return deregisterCriticalAfter;
+    }
+
 }
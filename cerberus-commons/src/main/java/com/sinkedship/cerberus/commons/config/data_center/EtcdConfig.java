@@ -31,11 +31,13 @@ public class EtcdConfig extends DataCenterConfig {
     private static final String DEFAULT_KEY_PREFIX = "cerberus/services";
     private static final long DEFAULT_SERVICE_TTL = 5_000;
     private static final long DEFAULT_SERVICE_KEEP_INTERVAL = 3_000;
+    private static final long DEFAULT_CONNECT_TIMEOUT = 5_000;
 
     private List<Endpoint> endpoints = new ArrayList<>();
     private String keyPrefix = DEFAULT_KEY_PREFIX;
     private long ttl = DEFAULT_SERVICE_TTL;
     private long keepInterval = DEFAULT_SERVICE_KEEP_INTERVAL;
+    private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
 
     public EtcdConfig() {
         super(DataCenter.ETCD);
@@ -104,6 +106,24 @@ public class EtcdConfig extends DataCenterConfig {
         return keepInterval;
     }
 
+    /**
+     * Set the timeout in millisecond of requests which have to reach etcd before going on,
+     * e.g. the initial listing of services, granting the lease of registrations and putting or deleting their keys.
+     *
+     * @param connectTimeout timeout in millisecond
+     *
+     * @return this config
+     */
+    public EtcdConfig setConnectTimeout(long connectTimeout) {
+        Preconditions.checkArgument(connectTimeout > 0, "Connect timeout must > 0");
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
     public final static class Endpoint {
         public enum Scheme {
             HTTP("http"),
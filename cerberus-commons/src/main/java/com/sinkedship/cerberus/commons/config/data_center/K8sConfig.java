@@ -8,13 +8,31 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class K8sConfig extends DataCenterConfig {
 
+    /**
+     * How services are resolved to addresses.
+     */
+    public enum DiscoveryMode {
+        // resolve a service to its cluster IP, pods are balanced by kube-proxy
+        CLUSTER_IP,
+        // resolve a service to IPs of its ready pods by watching endpoints, pods are balanced by clients
+        ENDPOINTS,
+        // same as ENDPOINTS but watching endpoint slices, requires discovery.k8s.io/v1beta1
+        ENDPOINT_SLICES
+    }
+
     // Env from within kubernetes
     private static final String DEFAULT_API_SERVER_HOST = System.getenv("KUBERNETES_SERVICE_HOST");
     private static final String DEFAULT_API_SERVER_PORT = System.getenv("KUBERNETES_SERVICE_PORT");
 
+    private static final long DEFAULT_INFORMER_SYNC_TIMEOUT = 10 * 1000;
+
     private String namespace = "default";
     private String apiServerHost = DEFAULT_API_SERVER_HOST;
     private int apiServerPort = StringUtils.isBlank(DEFAULT_API_SERVER_PORT) ? 443 : Integer.parseInt(DEFAULT_API_SERVER_PORT);
@@ -23,6 +41,11 @@ public class K8sConfig extends DataCenterConfig {
     private long svcRefreshInterval = 30 * 1000;
     private int svcCacheSize = 100;
     private boolean svcWatch = false;
+    private DiscoveryMode discoveryMode = DiscoveryMode.CLUSTER_IP;
+    // namespaces watched besides the configured namespace, and selector of watched services
+    private Set<String> svcWatchNamespaces = new LinkedHashSet<>();
+    private String svcLabelSelector;
+    private long informerSyncTimeout = DEFAULT_INFORMER_SYNC_TIMEOUT;
 
     private boolean debugWithNodePort = false;
     private String debugNodeHost = "";
@@ -128,4 +151,89 @@ public class K8sConfig extends DataCenterConfig {
     public void setSvcWatch(boolean svcWatch) {
         this.svcWatch = svcWatch;
     }
+
+    /**
+     * Set how services are resolved to addresses, {@link DiscoveryMode#CLUSTER_IP} by default.
+     * <p>
+     * Long-lived connections to a cluster IP stick to the pod which kube-proxy picked when connecting,
+     * resolving services to pod IPs lets the client-side strategy balance requests across all ready pods.
+     * Node-port debug mode, if enabled, takes precedence over this.
+     *
+     * @param discoveryMode discovery mode
+     *
+     * @return this config
+     */
+    public K8sConfig setDiscoveryMode(DiscoveryMode discoveryMode) {
+        Preconditions.checkNotNull(discoveryMode, "k8s discovery mode cannot be null");
+        this.discoveryMode = discoveryMode;
+        return this;
+    }
+
+    public DiscoveryMode getDiscoveryMode() {
+        return discoveryMode;
+    }
+
+    /**
+     * Watch services of other namespaces besides the configured namespace, only takes effect when
+     * watching services or endpoints, see {@link #setSvcWatch(boolean)} and {@link #setDiscoveryMode(DiscoveryMode)}.
+     * Services of other namespaces are referred by the namespace of
+     * {@link com.sinkedship.cerberus.commons.K8sServiceMetaData}.
+     *
+     * @param namespaces other namespaces to watch
+     *
+     * @return this config
+     */
+    public K8sConfig addSvcWatchNamespaces(String... namespaces) {
+        for (String namespace : namespaces) {
+            Preconditions.checkArgument(StringUtils.isNotBlank(namespace), "k8s namespace cannot be empty");
+        }
+        svcWatchNamespaces.addAll(Arrays.asList(namespaces));
+        return this;
+    }
+
+    /**
+     * @return all namespaces to watch services or endpoints, starting with the configured namespace
+     */
+    public Set<String> getSvcWatchNamespaces() {
+        Set<String> ret = new LinkedHashSet<>();
+        ret.add(namespace);
+        ret.addAll(svcWatchNamespaces);
+        return Collections.unmodifiableSet(ret);
+    }
+
+    /**
+     * Only watch services matching a label selector, e.g. "app.kubernetes.io/part-of=thrift",
+     * all services of watched namespaces are watched by default.
+     *
+     * @param svcLabelSelector label selector
+     *
+     * @return this config
+     */
+    public K8sConfig setSvcLabelSelector(String svcLabelSelector) {
+        this.svcLabelSelector = svcLabelSelector;
+        return this;
+    }
+
+    public String getSvcLabelSelector() {
+        return svcLabelSelector;
+    }
+
+    /**
+     * Set how long to wait for informers to list the watched namespaces at start-up,
+     * before serving snapshots from their local stores. 10 seconds by default.
+     * Snapshots read before the informers have synced are re-published once they have.
+     *
+     * @param informerSyncTimeout timeout in milliseconds
+     *
+     * @return this config
+     */
+    public K8sConfig setInformerSyncTimeout(long informerSyncTimeout) {
+        Preconditions.checkArgument(informerSyncTimeout >= 0, "k8s informer sync timeout cannot be negative");
+        this.informerSyncTimeout = informerSyncTimeout;
+        return this;
+    }
+
+    public long getInformerSyncTimeout() {
+        return informerSyncTimeout;
+    }
 }
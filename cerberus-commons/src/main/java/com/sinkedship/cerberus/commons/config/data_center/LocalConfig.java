@@ -1,15 +1,58 @@
 package com.sinkedship.cerberus.commons.config.data_center;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.sinkedship.cerberus.commons.DataCenter;
+import com.sinkedship.cerberus.commons.ServiceMetaData;
+import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
+ * Config of the local data center, which needs no coordination service.
+ * <p>
+ * Instances of services are listed statically, either in code by {@link #addInstance(String, String, int, int)}
+ * or in a JSON file set by {@link #setInstancesFile(File)}, which is reloaded whenever it changes, e.g.
+ * <pre>
+ * {
+ *   "com.sinkedship.cerberus.sample.api.service.HelloService": [
+ *     {"host": "10.0.0.1", "port": 8080, "weight": 2},
+ *     {"host": "10.0.0.2", "port": 8080}
+ *   ]
+ * }
+ * </pre>
+ * Instances in the file take place of the ones listed in code for the same service.
+ * Services which are not listed at all are served by the single instance at {@link #getConnectHost()}
+ * and {@link #getConnectPort()}.
+ * <p>
+ * Weights are carried by the instances and honoured by weighted strategies, clients choose by weight with
+ * {@code setStrategySupplier(SmoothWeightedRoundRobinStrategy::new)} of their config, other strategies treat
+ * all instances alike.
+ *
  * @author Derrick Guan
  */
 public class LocalConfig extends DataCenterConfig {
 
+    public static final int MAX_WEIGHT = 100;
+
+    private static final long DEFAULT_INSTANCES_FILE_CHECK_INTERVAL = 5_000;
+
     private String host = "localhost";
     private int port;
 
+    // service identifier -> instances listed in code
+    private final Map<String, List<Instance>> instances = new LinkedHashMap<>();
+
+    private File instancesFile;
+    private long instancesFileCheckInterval = DEFAULT_INSTANCES_FILE_CHECK_INTERVAL;
+
     public LocalConfig() {
         super(DataCenter.LOCAL);
     }
@@ -31,4 +74,144 @@ public class LocalConfig extends DataCenterConfig {
     public int getConnectPort() {
         return port;
     }
+
+    public LocalConfig addInstance(String serviceIdentifier, String host, int port) {
+        return addInstance(serviceIdentifier, host, port, 1);
+    }
+
+    /**
+     * Add an instance of a service.
+     *
+     * @param serviceIdentifier identifier of the service, i.e. canonical name of its interface without async suffix,
+     *                          or {@link ServiceMetaData#getServiceIdentifier()}
+     * @param host              host of the instance
+     * @param port              port of the instance
+     * @param weight            weight of the instance in [1, {@value #MAX_WEIGHT}], an instance of weight 2
+     *                          takes twice the traffic of an instance of weight 1 under a weighted strategy,
+     *                          e.g. {@code SmoothWeightedRoundRobinStrategy}
+     *
+     * @return this config
+     */
+    public LocalConfig addInstance(String serviceIdentifier, String host, int port, int weight) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(serviceIdentifier), "Service identifier cannot be empty");
+        instances.computeIfAbsent(serviceIdentifier, key -> new ArrayList<>()).add(new Instance(host, port, weight));
+        return this;
+    }
+
+    public LocalConfig addInstance(Class<?> serviceClass, String host, int port, int weight) {
+        Preconditions.checkNotNull(serviceClass, "Service class cannot be null");
+        return addInstance(CerberusStringUtils.stripAsyncSuffix(serviceClass.getCanonicalName()), host, port, weight);
+    }
+
+    public LocalConfig addInstance(ServiceMetaData metaData, String host, int port, int weight) {
+        Preconditions.checkNotNull(metaData, "Service meta data cannot be null");
+        return addInstance(metaData.getServiceIdentifier(), host, port, weight);
+    }
+
+    /**
+     * @return instances listed in code, by service identifier
+     */
+    public Map<String, List<Instance>> getInstances() {
+        Map<String, List<Instance>> ret = new LinkedHashMap<>();
+        instances.forEach((identifier, list) -> ret.put(identifier, ImmutableList.copyOf(list)));
+        return Collections.unmodifiableMap(ret);
+    }
+
+    /**
+     * Set a JSON file which lists instances of services, it's checked for changes periodically
+     * and reloaded once changed. A file which cannot be loaded is ignored until it changes again.
+     *
+     * @param instancesFile file of instances, null to list instances in code only
+     *
+     * @return this config
+     */
+    public LocalConfig setInstancesFile(File instancesFile) {
+        this.instancesFile = instancesFile;
+        return this;
+    }
+
+    public File getInstancesFile() {
+        return instancesFile;
+    }
+
+    /**
+     * Set the interval in millisecond of checking the instances file for changes.
+     *
+     * @param instancesFileCheckInterval check interval in millisecond, at least 100 milliseconds
+     *
+     * @return this config
+     */
+    public LocalConfig setInstancesFileCheckInterval(long instancesFileCheckInterval) {
+        Preconditions.checkArgument(instancesFileCheckInterval >= 100,
+                "Instances file check interval should be at least 100 milliseconds");
+        this.instancesFileCheckInterval = instancesFileCheckInterval;
+        return this;
+    }
+
+    public long getInstancesFileCheckInterval() {
+        return instancesFileCheckInterval;
+    }
+
+    /**
+     * A statically listed instance of a service.
+     */
+    public static final class Instance {
+
+        private String host;
+        private int port;
+        private int weight = 1;
+
+        // for deserialization
+        private Instance() {
+        }
+
+        public Instance(String host, int port, int weight) {
+            this.host = host;
+            this.port = port;
+            this.weight = weight;
+            validate();
+        }
+
+        /**
+         * @throws IllegalArgumentException if host is empty, or port or weight is out of range
+         */
+        public void validate() {
+            Preconditions.checkArgument(StringUtils.isNotBlank(host), "Instance host cannot be empty");
+            Preconditions.checkArgument(port > 0 && port <= 65535,
+                    "Instance port should be at range from 1 to 65535");
+            Preconditions.checkArgument(weight >= 1 && weight <= MAX_WEIGHT,
+                    "Instance weight should be at range from 1 to " + MAX_WEIGHT);
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Instance)) {
+                return false;
+            }
+            Instance that = (Instance) obj;
+            return this.host.equals(that.host) && this.port == that.port && this.weight == that.weight;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, weight);
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port + "(weight=" + weight + ")";
+        }
+    }
 }
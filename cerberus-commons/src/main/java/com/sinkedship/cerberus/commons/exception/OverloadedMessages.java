@@ -0,0 +1,27 @@
+package com.sinkedship.cerberus.commons.exception;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Messages of errors which a cerberus server answers when it sheds load.
+ * <p>
+ * Thrift application exceptions have no type of overload, so a server marks the message of the exception,
+ * and clients recognize the mark to fail over to another server.
+ *
+ * @author Derrick Guan
+ */
+public final class OverloadedMessages {
+
+    private static final String OVERLOADED_MARK = "[CERBERUS_OVERLOADED]";
+
+    private OverloadedMessages() {
+    }
+
+    public static String overloaded(String reason) {
+        return OVERLOADED_MARK + " " + reason;
+    }
+
+    public static boolean isOverloaded(String message) {
+        return StringUtils.contains(message, OVERLOADED_MARK);
+    }
+}
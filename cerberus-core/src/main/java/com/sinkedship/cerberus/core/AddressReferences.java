@@ -0,0 +1,53 @@
+package com.sinkedship.cerberus.core;
+
+import com.google.common.net.HostAndPort;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Counts snapshots which contain each address, e.g. snapshots of services currently seen by address selectors,
+ * so that state kept per address and shared by them can be dropped once no snapshot contains the address anymore.
+ * <p>
+ * The same address may show up in snapshots of more than one service, since a server usually serves
+ * several services on the same port.
+ *
+ * @author Derrick Guan
+ */
+public final class AddressReferences {
+
+    private final ConcurrentMap<HostAndPort, Integer> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Update references once a snapshot replaced the former one.
+     *
+     * @param removed distinct addresses which are in the former snapshot but not in the new one
+     * @param added   distinct addresses which are in the new snapshot but not in the former one
+     *
+     * @return addresses which are no longer referenced by any snapshot
+     */
+    public synchronized List<HostAndPort> update(Collection<HostAndPort> removed, Collection<HostAndPort> added) {
+        for (HostAndPort address : added) {
+            counts.merge(address, 1, Integer::sum);
+        }
+        List<HostAndPort> ret = new ArrayList<>();
+        for (HostAndPort address : removed) {
+            if (counts.computeIfPresent(address, (key, count) -> count > 1 ? count - 1 : null) == null) {
+                ret.add(address);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param address to check
+     *
+     * @return true if any snapshot contains the address
+     */
+    public boolean contains(HostAndPort address) {
+        return counts.containsKey(address);
+    }
+}
@@ -0,0 +1,42 @@
+package com.sinkedship.cerberus.core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Source of snapshots of a service for providers which do not maintain snapshots by themselves.
+ * <p>
+ * Instances are polled on every read, but the same snapshot is supplied as long as the instances
+ * do not change, so consumers never rebuild what they derived from it for nothing.
+ *
+ * @author Derrick Guan
+ */
+public final class PollingSnapshotSource implements Supplier<ServiceSnapshot> {
+
+    private final Supplier<? extends List<? extends Service>> instances;
+
+    private volatile ServiceSnapshot snapshot;
+
+    /**
+     * @param identifier of service
+     * @param instances  polls all available instances of the service
+     */
+    public PollingSnapshotSource(String identifier, Supplier<? extends List<? extends Service>> instances) {
+        this.instances = Preconditions.checkNotNull(instances, "Instances supplier cannot be null");
+        this.snapshot = ServiceSnapshot.empty(identifier);
+    }
+
+    @Override
+    public ServiceSnapshot get() {
+        List<? extends Service> polled = instances.get();
+        ServiceSnapshot current = snapshot;
+        if (current.getInstances() == polled || current.getInstances().equals(polled)) {
+            return current;
+        }
+        ServiceSnapshot next = current.next(polled);
+        snapshot = next;
+        return next;
+    }
+}
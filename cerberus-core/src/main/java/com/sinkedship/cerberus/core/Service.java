@@ -27,12 +27,20 @@ public class Service implements Serializable {
     // Port of this service instance
     protected final int port;
 
+    // Weight of this service instance relative to other instances of the service
+    protected final int weight;
+
     public Service(String identifier, String name, String id, String host, int port) {
+        this(identifier, name, id, host, port, 1);
+    }
+
+    public Service(String identifier, String name, String id, String host, int port, int weight) {
         this.identifier = identifier;
         this.name = name;
         this.id = id;
         this.host = host;
         this.port = port;
+        this.weight = weight;
     }
 
     public String getIdentifier() {
@@ -55,6 +63,10 @@ public class Service implements Serializable {
         return port;
     }
 
+    public int getWeight() {
+        return weight;
+    }
+
     @Override
     public String toString() {
         return ReflectionToStringBuilder.toString(this);
@@ -71,11 +83,12 @@ public class Service implements Serializable {
                 this.name.equalsIgnoreCase(that.name) &&
                 this.id.equalsIgnoreCase(that.id) &&
                 this.host.equalsIgnoreCase(that.host) &&
-                this.port == that.port;
+                this.port == that.port &&
+                this.weight == that.weight;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(this.identifier, this.name, this.id, this.host, this.port);
+        return Objects.hash(this.identifier, this.name, this.id, this.host, this.port, this.weight);
     }
 }
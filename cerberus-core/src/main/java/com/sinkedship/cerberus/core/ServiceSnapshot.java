@@ -0,0 +1,110 @@
+package com.sinkedship.cerberus.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.HostAndPort;
+
+import java.util.Collection;
+
+/**
+ * An immutable view of all available instances of a service at some point.
+ * <p>
+ * Snapshots of the same service are versioned, a snapshot with a greater version always
+ * reflects a later state, so consumers can cheaply tell whether anything they derived from
+ * a snapshot is stale by comparing versions(or references).
+ *
+ * @author Derrick Guan
+ */
+public final class ServiceSnapshot {
+
+    // Identifier of service
+    private final String identifier;
+
+    // Version of this snapshot, increases every time instances of the service change
+    private final long version;
+
+    private final ImmutableList<Service> instances;
+
+    // pre-computed addresses of instances, in the same order of instances
+    private final ImmutableList<HostAndPort> addresses;
+
+    ServiceSnapshot(String identifier, long version, Collection<? extends Service> instances) {
+        this.identifier = Preconditions.checkNotNull(identifier, "Service identifier cannot be null");
+        this.version = version;
+        this.instances = ImmutableList.copyOf(instances);
+        ImmutableList.Builder<HostAndPort> builder = ImmutableList.builder();
+        for (Service instance : this.instances) {
+            builder.add(HostAndPort.fromParts(instance.getHost(), instance.getPort()));
+        }
+        this.addresses = builder.build();
+    }
+
+    /**
+     * Create an un-versioned snapshot, mostly for providers which do not maintain snapshots by themselves.
+     *
+     * @param identifier of service
+     * @param instances  available service instances
+     *
+     * @return snapshot of version 0
+     */
+    public static ServiceSnapshot of(String identifier, Collection<? extends Service> instances) {
+        return new ServiceSnapshot(identifier, 0, instances);
+    }
+
+    public static ServiceSnapshot empty(String identifier) {
+        return new ServiceSnapshot(identifier, 0, ImmutableList.of());
+    }
+
+    /**
+     * Create the successor of this snapshot.
+     *
+     * @param instances available service instances
+     *
+     * @return a snapshot with a greater version
+     */
+    public ServiceSnapshot next(Collection<? extends Service> instances) {
+        return new ServiceSnapshot(identifier, version + 1, instances);
+    }
+
+    /**
+     * Whether this snapshot contains exactly the given instances, regardless of order.
+     *
+     * @param instances to compare
+     *
+     * @return true if instances are the same
+     */
+    public boolean hasSameInstances(Collection<? extends Service> instances) {
+        return this.instances.size() == instances.size() &&
+                ImmutableSet.copyOf(this.instances).equals(ImmutableSet.copyOf(instances));
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public ImmutableList<Service> getInstances() {
+        return instances;
+    }
+
+    public ImmutableList<HostAndPort> getAddresses() {
+        return addresses;
+    }
+
+    public boolean isEmpty() {
+        return instances.isEmpty();
+    }
+
+    public int size() {
+        return instances.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceSnapshot{identifier=" + identifier + ", version=" + version + ", instances=" + instances + "}";
+    }
+}
@@ -0,0 +1,162 @@
+package com.sinkedship.cerberus.core;
+
+import com.google.common.base.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Holds the latest {@link ServiceSnapshot} of every known service.
+ * <p>
+ * Each service has its own holder with a volatile reference to the latest snapshot,
+ * watch/refresh threads swap the reference via {@link #publish(String, Collection)},
+ * while readers only do a lock-free map lookup and a volatile read.
+ * Hold the {@link Supplier} returned by {@link #source(String)} to even skip the lookup.
+ * <p>
+ * The first read of a service which has never been published loads it with the loader of this store,
+ * loading happens at most once per service. If loading fails, reads get an empty snapshot and the load
+ * is retried only after a backoff, so a data center which is down is not hammered by every read.
+ *
+ * @author Derrick Guan
+ */
+public final class ServiceSnapshotStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(ServiceSnapshotStore.class);
+
+    private static final long LOAD_RETRY_BASE_DELAY_MILLIS = 1_000;
+
+    private static final long LOAD_RETRY_MAX_DELAY_MILLIS = 30_000;
+
+    private final ConcurrentMap<String, Holder> holders = new ConcurrentHashMap<>();
+
+    private final Function<String, ? extends Collection<? extends Service>> loader;
+
+    /**
+     * @param loader used to load instances of a service on its first read
+     */
+    public ServiceSnapshotStore(Function<String, ? extends Collection<? extends Service>> loader) {
+        this.loader = Preconditions.checkNotNull(loader, "Snapshot loader cannot be null");
+    }
+
+    /**
+     * Get the latest snapshot of a service, loads it if never published.
+     *
+     * @param identifier of service
+     *
+     * @return the latest snapshot
+     */
+    public ServiceSnapshot get(String identifier) {
+        Holder holder = holders.get(identifier);
+        if (holder == null) {
+            holder = holders.computeIfAbsent(identifier, Holder::new);
+        }
+        return holder.get();
+    }
+
+    /**
+     * Get a source which always supplies the latest snapshot of a service.
+     *
+     * @param identifier of service
+     *
+     * @return snapshot source of the service
+     */
+    public Supplier<ServiceSnapshot> source(String identifier) {
+        return holders.computeIfAbsent(identifier, Holder::new);
+    }
+
+    /**
+     * Publish instances of a service, a new snapshot is created only if instances changed.
+     *
+     * @param identifier of service
+     * @param instances  all available instances of the service
+     *
+     * @return true if a new snapshot has been published
+     */
+    public boolean publish(String identifier, Collection<? extends Service> instances) {
+        return holders.computeIfAbsent(identifier, Holder::new).publish(instances);
+    }
+
+    /**
+     * @return identifiers of all services which have been read or published
+     */
+    public Set<String> identifiers() {
+        return Collections.unmodifiableSet(holders.keySet());
+    }
+
+    private final class Holder implements Supplier<ServiceSnapshot> {
+
+        private final String identifier;
+
+        // null until loaded or published
+        private volatile ServiceSnapshot snapshot;
+
+        // supplied while loading fails, null if loading has never failed
+        private volatile ServiceSnapshot failed;
+
+        // when the failed load may be retried
+        private volatile long retryNanos;
+
+        private int failures;
+
+        private Holder(String identifier) {
+            this.identifier = identifier;
+        }
+
+        @Override
+        public ServiceSnapshot get() {
+            ServiceSnapshot current = snapshot;
+            if (current != null) {
+                return current;
+            }
+            ServiceSnapshot empty = failed;
+            if (empty != null && System.nanoTime() - retryNanos < 0) {
+                return empty;
+            }
+            synchronized (this) {
+                if (snapshot != null) {
+                    return snapshot;
+                }
+                if (failed != null && System.nanoTime() - retryNanos < 0) {
+                    return failed;
+                }
+                try {
+                    publish(loader.apply(identifier));
+                } catch (Throwable t) {
+                    failures++;
+                    long delay = Math.min(LOAD_RETRY_BASE_DELAY_MILLIS << Math.min(failures - 1, 5),
+                            LOAD_RETRY_MAX_DELAY_MILLIS);
+                    retryNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                    if (failed == null) {
+                        failed = ServiceSnapshot.empty(identifier);
+                    }
+                    LOGGER.error("Load snapshot of service:{} with error, retry in {}ms", identifier, delay, t);
+                    return failed;
+                }
+                failed = null;
+                return snapshot;
+            }
+        }
+
+        synchronized boolean publish(Collection<? extends Service> instances) {
+            ServiceSnapshot current = snapshot;
+            if (current == null) {
+                snapshot = new ServiceSnapshot(identifier, 1, instances);
+                return true;
+            }
+            if (current.hasSameInstances(instances)) {
+                return false;
+            }
+            snapshot = current.next(instances);
+            LOGGER.debug("Publish snapshot of service:{} with version:{}", identifier, snapshot.getVersion());
+            return true;
+        }
+    }
+}
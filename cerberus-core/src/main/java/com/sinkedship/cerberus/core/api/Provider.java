@@ -1,10 +1,19 @@
 package com.sinkedship.cerberus.core.api;
 
+import com.google.common.net.HostAndPort;
 import com.sinkedship.cerberus.commons.ServiceMetaData;
+import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
+import com.sinkedship.cerberus.core.PollingSnapshotSource;
 import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntPredicate;
 import java.util.function.Supplier;
 
 /**
@@ -47,30 +56,125 @@ public interface Provider {
      */
     Optional<Service> get(Class<?> targetClass, Supplier<String> asyncSuffixSupplier);
 
-// TEMPORARY HIDDEN APIS
-
-//    /**
-//     * Get a service instance with name and provider strategy.
-//     *
-//     * @param name     service name
-//     * @param strategy the way that used to choose a service from a bunch of instance(s).
-//     *
-//     * @return a service instance, or {@link Optional} if no service instance is available.
-//     */
-//    Optional<Service> get(String name, Strategy<X> strategy);
-//
-//    /**
-//     * Get a service instance with target class and provider strategy.
-//     *
-//     * @param targetClass representing class of the service
-//     * @param strategy    the way that used to choose a service from a bunch of instance(s).
-//     *
-//     * @return a service instance, or {@link Optional} if no service instance is available.
-//     */
-//    Optional<Service> get(Class<?> targetClass, Strategy strategy);
-
-// TEMPORARY HIDDEN APIS
+    /**
+     * Get all currently available instances of a service with service meta data.
+     * <p>
+     * Callers which want to choose an instance by themselves(e.g. skipping instances which
+     * were already attempted) should use this method rather than {@link #get(ServiceMetaData)}.
+     * Implementations which cannot enumerate instances fall back to the single instance
+     * returned by {@link #get(ServiceMetaData)}.
+     *
+     * @param metaData of service
+     *
+     * @return all available service instances, or an empty list if none is available.
+     */
+    default List<Service> getAll(ServiceMetaData metaData) {
+        return get(metaData).map(Collections::singletonList).orElse(Collections.emptyList());
+    }
+
+    /**
+     * Get all currently available instances of a service with target class and async suffix supplier.
+     *
+     * @param targetClass         representing class of the service
+     * @param asyncSuffixSupplier async suffix supplier
+     *
+     * @return all available service instances, or an empty list if none is available.
+     *
+     * @see #getAll(ServiceMetaData)
+     */
+    default List<Service> getAll(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return get(targetClass, asyncSuffixSupplier).map(Collections::singletonList).orElse(Collections.emptyList());
+    }
+
+    /**
+     * Get a source of snapshots of a service with service meta data.
+     * <p>
+     * The source always supplies the latest snapshot of the service, callers on hot paths should hold
+     * the source and read it on each selection rather than calling {@link #getAll(ServiceMetaData)}.
+     * Implementations which maintain snapshots by themselves supply them with no lock and no allocation,
+     * while the default implementation builds a snapshot from {@link #getAll(ServiceMetaData)} on each read.
+     *
+     * @param metaData of service
+     *
+     * @return snapshot source of the service
+     */
+    default Supplier<ServiceSnapshot> snapshotSource(ServiceMetaData metaData) {
+        String identifier = metaData.getServiceIdentifier();
+        return new PollingSnapshotSource(identifier, () -> getAll(metaData));
+    }
 
+    /**
+     * Get a source of snapshots of a service with target class and async suffix supplier.
+     *
+     * @param targetClass         representing class of the service
+     * @param asyncSuffixSupplier async suffix supplier
+     *
+     * @return snapshot source of the service
+     *
+     * @see #snapshotSource(ServiceMetaData)
+     */
+    default Supplier<ServiceSnapshot> snapshotSource(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        String identifier = CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(), asyncSuffixSupplier);
+        return new PollingSnapshotSource(identifier, () -> getAll(targetClass, asyncSuffixSupplier));
+    }
+
+    /**
+     * Get a service instance with service meta data and provider strategy.
+     *
+     * @param metaData of service
+     * @param strategy the way that used to choose a service from a bunch of instance(s).
+     *
+     * @return a service instance, or {@link Optional} if no service instance is available.
+     */
+    default Optional<Service> get(ServiceMetaData metaData, Strategy strategy) {
+        return strategy.choose(getAll(metaData));
+    }
+
+    /**
+     * Get a service instance with target class and provider strategy.
+     *
+     * @param targetClass representing class of the service
+     * @param strategy    the way that used to choose a service from a bunch of instance(s).
+     *
+     * @return a service instance, or {@link Optional} if no service instance is available.
+     */
+    default Optional<Service> get(Class<?> targetClass, Strategy strategy) {
+        return get(targetClass, CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER, strategy);
+    }
+
+    /**
+     * Get a service instance with target class, async suffix supplier and provider strategy.
+     *
+     * @param targetClass         representing class of the service
+     * @param asyncSuffixSupplier async suffix supplier
+     * @param strategy            the way that used to choose a service from a bunch of instance(s).
+     *
+     * @return a service instance, or {@link Optional} if no service instance is available.
+     */
+    default Optional<Service> get(Class<?> targetClass, Supplier<String> asyncSuffixSupplier, Strategy strategy) {
+        return strategy.choose(getAll(targetClass, asyncSuffixSupplier));
+    }
+
+    /**
+     * Eagerly prepare lookups of services, e.g. start watching them, so that the first lookup of each service
+     * does not pay for it. Providers which need no preparation do nothing by default.
+     *
+     * @param serviceIdentifiers identifiers of services to prepare
+     *
+     * @return a future which completes once all services are prepared, exceptionally if any cannot be prepared
+     */
+    default CompletableFuture<Void> warmUp(Collection<String> serviceIdentifiers) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * The way that used to choose a service from a bunch of instance(s).
+     * <p>
+     * Besides choosing, a strategy may observe requests sent to the chosen instances, see
+     * {@link #onRequestStart(HostAndPort)} and {@link #onRequestFinish(HostAndPort, long, boolean)},
+     * load-aware strategies take advantage of them to steer traffic away from slow or busy instances.
+     * Implementations must be thread-safe.
+     */
     interface Strategy {
 
         /**
@@ -81,10 +185,81 @@ public interface Provider {
          * @return a service instance, or {@link Optional} if the collection is empty.
          *
          * @see com.sinkedship.cerberus.strategy.RoundRobinStrategy
+         * @see com.sinkedship.cerberus.strategy.SmoothWeightedRoundRobinStrategy
          * @see com.sinkedship.cerberus.strategy.RandomStrategy
          * @see com.sinkedship.cerberus.strategy.NullServiceStrategy
+         * @see com.sinkedship.cerberus.strategy.PowerOfTwoChoicesStrategy
+         * @see com.sinkedship.cerberus.strategy.LeastOutstandingRequestsStrategy
+         * @see com.sinkedship.cerberus.strategy.PeakEwmaStrategy
          */
         Optional<Service> choose(List<? extends Service> services);
+
+        /**
+         * Choose one service instance out of a snapshot, only instances accepted by the predicate can be chosen.
+         * <p>
+         * This is the variant used on hot paths, implementations are encouraged to override it without
+         * allocating anything, the default implementation delegates to {@link #choose(List)}.
+         *
+         * @param snapshot of service instance(s)
+         * @param eligible tests whether the instance at an index of the snapshot can be chosen
+         *
+         * @return index of the chosen instance in the snapshot, or -1 if no instance can be chosen.
+         */
+        default int choose(ServiceSnapshot snapshot, IntPredicate eligible) {
+            List<Service> instances = snapshot.getInstances();
+            List<Service> candidates = new ArrayList<>(instances.size());
+            for (int i = 0; i < instances.size(); i++) {
+                if (eligible.test(i)) {
+                    candidates.add(instances.get(i));
+                }
+            }
+            Optional<Service> chosen = choose(candidates);
+            if (chosen.isPresent()) {
+                for (int i = 0; i < instances.size(); i++) {
+                    if (instances.get(i) == chosen.get()) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Called when a request is about to be sent to an instance.
+         *
+         * @param address of the instance
+         */
+        default void onRequestStart(HostAndPort address) {
+        }
+
+        /**
+         * Called when a request sent to an instance finished.
+         *
+         * @param address       of the instance
+         * @param durationNanos duration of the request in nanoseconds
+         * @param success       whether the instance answered the request
+         */
+        default void onRequestFinish(HostAndPort address, long durationNanos, boolean success) {
+        }
+
+        /**
+         * Called when a request sent to an instance was cancelled before it finished, e.g. a hedged request
+         * which lost, it tells nothing about the instance.
+         *
+         * @param address of the instance
+         */
+        default void onRequestCancel(HostAndPort address) {
+        }
+
+        /**
+         * Called by an address selector once its snapshot changed, strategies which keep state per instance
+         * drop the state of instances which are not in the snapshot of any selector.
+         *
+         * @param removed distinct addresses which left the snapshot of the selector
+         * @param added   distinct addresses which joined the snapshot of the selector
+         */
+        default void onAddressesChanged(Collection<HostAndPort> removed, Collection<HostAndPort> added) {
+        }
     }
 
 }
@@ -3,6 +3,14 @@ package com.sinkedship.cerberus.core.api;
 import com.sinkedship.cerberus.commons.DataCenter;
 import com.sinkedship.cerberus.core.Service;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * A fundamental component of Cerberus which defines the basic behaviours of,
  * registering service(s) {@link Registrar#register(Service)} to or
@@ -30,11 +38,69 @@ public interface Registrar {
      * @param <S> type derive from {@link Service}
      *
      * @return {@code true} means registering the service to data center successfully;
-     *         {@code false} means the failure of registering or it's completed in the dedicated {@code timeout}.
+     *         {@code false} means the failure of registering or it's not completed in the dedicated {@code timeout},
+     *         in which case the service is un-registered once the registering completes later.
      *
      * @see com.sinkedship.cerberus.core.api.Registrar#register(Service)
      */
-    <S extends Service> boolean register(S service, long timeout);
+    default <S extends Service> boolean register(S service, long timeout) {
+        CompletableFuture<Boolean> future = registerAsync(service);
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException | TimeoutException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // the caller sees a failure, so don't leave the service registered behind its back
+            future.thenAccept(registered -> {
+                if (registered) {
+                    unregister(service);
+                }
+            });
+            return false;
+        }
+    }
+
+    /**
+     * Register a service to a particular data center asynchronously.
+     * The default implementation registers synchronously in the caller thread.
+     *
+     * @param service which needs to be registered.
+     * @param <S> type derive from {@link Service}
+     *
+     * @return a future of {@code true} if registering the service to data center successfully,
+     *         {@code false} otherwise.
+     */
+    default <S extends Service> CompletableFuture<Boolean> registerAsync(S service) {
+        return CompletableFuture.completedFuture(register(service));
+    }
+
+    /**
+     * Register services to a particular data center asynchronously, implementations may batch
+     * the registrations. The default implementation registers every service via {@link #registerAsync(Service)}.
+     *
+     * @param services which need to be registered.
+     * @param <S> type derive from {@link Service}
+     *
+     * @return a future of {@code true} for each service if it's registered successfully, {@code false} otherwise,
+     *         in order of the given services.
+     */
+    default <S extends Service> Map<S, CompletableFuture<Boolean>> registerAll(Collection<S> services) {
+        Map<S, CompletableFuture<Boolean>> ret = new LinkedHashMap<>();
+        for (S service : services) {
+            CompletableFuture<Boolean> future;
+            try {
+                future = registerAsync(service);
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            ret.put(service, future);
+        }
+        return ret;
+    }
 
     /**
      * Un-register a service from a particular data center.
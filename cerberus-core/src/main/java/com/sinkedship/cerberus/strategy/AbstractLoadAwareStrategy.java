@@ -0,0 +1,147 @@
+package com.sinkedship.cerberus.strategy;
+
+import com.google.common.base.Preconditions;
+import com.google.common.net.HostAndPort;
+import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.api.Provider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Base class of strategies which choose service instances by their load,
+ * load of instances is observed through an {@link InstanceLoadTracker}.
+ * <p>
+ * Choosing from a snapshot allocates nothing.
+ *
+ * @author Derrick Guan
+ */
+public abstract class AbstractLoadAwareStrategy implements Provider.Strategy {
+
+    private static final IntPredicate ALL_ELIGIBLE = i -> true;
+
+    protected final InstanceLoadTracker loadTracker;
+
+    protected AbstractLoadAwareStrategy(InstanceLoadTracker loadTracker) {
+        this.loadTracker = Preconditions.checkNotNull(loadTracker, "Instance load tracker cannot be null");
+    }
+
+    @Override
+    public Optional<Service> choose(List<? extends Service> services) {
+        List<HostAndPort> addresses = new ArrayList<>(services.size());
+        for (Service service : services) {
+            addresses.add(HostAndPort.fromParts(service.getHost(), service.getPort()));
+        }
+        int index = choose(addresses, ALL_ELIGIBLE);
+        return index < 0 ? Optional.empty() : Optional.of(services.get(index));
+    }
+
+    @Override
+    public int choose(ServiceSnapshot snapshot, IntPredicate eligible) {
+        return choose(snapshot.getAddresses(), eligible);
+    }
+
+    @Override
+    public void onRequestStart(HostAndPort address) {
+        loadTracker.onRequestStart(address);
+    }
+
+    @Override
+    public void onRequestFinish(HostAndPort address, long durationNanos, boolean success) {
+        loadTracker.onRequestFinish(address, durationNanos, success);
+    }
+
+    @Override
+    public void onRequestCancel(HostAndPort address) {
+        loadTracker.onRequestCancel(address);
+    }
+
+    @Override
+    public void onAddressesChanged(Collection<HostAndPort> removed, Collection<HostAndPort> added) {
+        loadTracker.onAddressesChanged(removed, added);
+    }
+
+    public InstanceLoadTracker getLoadTracker() {
+        return loadTracker;
+    }
+
+    /**
+     * Choose an instance out of addresses.
+     *
+     * @param addresses of instances
+     * @param eligible  tests whether the instance at an index can be chosen
+     *
+     * @return index of the chosen instance, or -1 if no instance can be chosen.
+     */
+    protected abstract int choose(List<HostAndPort> addresses, IntPredicate eligible);
+
+    /**
+     * @param address of an instance
+     *
+     * @return cost of sending a request to the instance, the lower the better
+     */
+    protected abstract double cost(HostAndPort address);
+
+    /**
+     * Pick two random instances and choose the one with the lower cost,
+     * falls back to {@link #leastCost(List, IntPredicate)} if neither of them is eligible.
+     */
+    protected int powerOfTwoChoices(List<HostAndPort> addresses, IntPredicate eligible) {
+        int size = addresses.size();
+        if (size == 0) {
+            return -1;
+        }
+        if (size == 1) {
+            return eligible.test(0) ? 0 : -1;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        boolean firstEligible = eligible.test(first);
+        boolean secondEligible = eligible.test(second);
+        if (firstEligible && secondEligible) {
+            return cost(addresses.get(first)) <= cost(addresses.get(second)) ? first : second;
+        }
+        if (firstEligible) {
+            return first;
+        }
+        if (secondEligible) {
+            return second;
+        }
+        return leastCost(addresses, eligible);
+    }
+
+    /**
+     * Scan all the instances and choose the one with the lowest cost,
+     * ties are broken by starting the scan at a random index.
+     */
+    protected int leastCost(List<HostAndPort> addresses, IntPredicate eligible) {
+        int size = addresses.size();
+        if (size == 0) {
+            return -1;
+        }
+        int start = ThreadLocalRandom.current().nextInt(size);
+        int chosen = -1;
+        double chosenCost = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int candidate = (start + i) % size;
+            if (!eligible.test(candidate)) {
+                continue;
+            }
+            double cost = cost(addresses.get(candidate));
+            if (chosen < 0 || cost < chosenCost) {
+                chosen = candidate;
+                chosenCost = cost;
+            }
+        }
+        return chosen;
+    }
+}
@@ -0,0 +1,145 @@
+package com.sinkedship.cerberus.strategy;
+
+import com.google.common.net.HostAndPort;
+import com.sinkedship.cerberus.core.AddressReferences;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks load of service instances observed by a client, i.e. requests in flight and
+ * peak-EWMA(exponentially weighted moving average) latency of each instance.
+ * <p>
+ * The EWMA latency jumps to any latency greater than itself immediately, and decays toward
+ * lower latencies with the configured decay time, so an instance which pauses(e.g. GC) is
+ * punished right away and forgiven gradually.
+ * <p>
+ * Load of an instance is dropped once it's not in the snapshot of any address selector,
+ * see {@link #onAddressesChanged(Collection, Collection)}.
+ *
+ * @author Derrick Guan
+ */
+public class InstanceLoadTracker {
+
+    public static final long DEFAULT_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ConcurrentMap<HostAndPort, InstanceLoad> loads = new ConcurrentHashMap<>();
+
+    private final long decayNanos;
+
+    private final AddressReferences references = new AddressReferences();
+
+    public InstanceLoadTracker() {
+        this(DEFAULT_DECAY_NANOS);
+    }
+
+    /**
+     * @param decayNanos time in nanoseconds for the EWMA latency to decay by a factor of e
+     */
+    public InstanceLoadTracker(long decayNanos) {
+        this.decayNanos = decayNanos;
+    }
+
+    public void onRequestStart(HostAndPort address) {
+        load(address).inFlight.incrementAndGet();
+    }
+
+    /**
+     * @param address       of an instance
+     * @param durationNanos duration of the request in nanoseconds
+     * @param success       whether the instance answered the request, a failed request can only raise
+     *                      the EWMA latency, so that an instance failing fast does not attract traffic
+     */
+    public void onRequestFinish(HostAndPort address, long durationNanos, boolean success) {
+        InstanceLoad load = loads.get(address);
+        if (load == null) {
+            // instance has left
+            return;
+        }
+        load.inFlight.decrementAndGet();
+        load.observe(durationNanos, success, System.nanoTime());
+    }
+
+    /**
+     * @param address of an instance whose request was cancelled, which is no longer in flight
+     *                but observes no latency
+     */
+    public void onRequestCancel(HostAndPort address) {
+        InstanceLoad load = loads.get(address);
+        if (load != null) {
+            load.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param removed distinct addresses which left the snapshot of an address selector
+     * @param added   distinct addresses which joined the snapshot of an address selector
+     */
+    public void onAddressesChanged(Collection<HostAndPort> removed, Collection<HostAndPort> added) {
+        for (HostAndPort address : references.update(removed, added)) {
+            loads.remove(address);
+        }
+    }
+
+    /**
+     * @param address of an instance
+     *
+     * @return number of requests in flight to the instance
+     */
+    public int inFlight(HostAndPort address) {
+        InstanceLoad load = loads.get(address);
+        return load == null ? 0 : Math.max(load.inFlight.get(), 0);
+    }
+
+    /**
+     * @param address of an instance
+     *
+     * @return current peak-EWMA latency of the instance in nanoseconds, 0 if never observed
+     */
+    public double ewmaNanos(HostAndPort address) {
+        InstanceLoad load = loads.get(address);
+        return load == null ? 0 : load.ewmaNanos(System.nanoTime());
+    }
+
+    private InstanceLoad load(HostAndPort address) {
+        InstanceLoad load = loads.get(address);
+        if (load == null) {
+            load = loads.computeIfAbsent(address, key -> new InstanceLoad());
+        }
+        return load;
+    }
+
+    private final class InstanceLoad {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private double ewmaNanos;
+
+        private long lastObservedNanos = System.nanoTime();
+
+        synchronized void observe(long durationNanos, boolean success, long now) {
+            double decayed = decay(now);
+            if (durationNanos > decayed) {
+                ewmaNanos = durationNanos;
+            } else if (!success) {
+                return;
+            } else {
+                double weight = Math.exp(-(double) Math.max(now - lastObservedNanos, 0) / decayNanos);
+                ewmaNanos = ewmaNanos * weight + durationNanos * (1 - weight);
+            }
+            lastObservedNanos = now;
+        }
+
+        synchronized double ewmaNanos(long now) {
+            return decay(now);
+        }
+
+        private double decay(long now) {
+            // an idle instance is forgiven gradually
+            return ewmaNanos * Math.exp(-(double) Math.max(now - lastObservedNanos, 0) / decayNanos);
+        }
+    }
+}
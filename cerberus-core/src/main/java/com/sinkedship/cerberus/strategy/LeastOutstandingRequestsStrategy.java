@@ -0,0 +1,35 @@
+package com.sinkedship.cerberus.strategy;
+
+import com.google.common.net.HostAndPort;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * A strategy that chooses the service instance with the fewest requests in flight.
+ * <p>
+ * Every choice scans all the instances, prefer {@link PowerOfTwoChoicesStrategy} for services with
+ * lots of instances.
+ *
+ * @author Derrick Guan
+ */
+public class LeastOutstandingRequestsStrategy extends AbstractLoadAwareStrategy {
+
+    public LeastOutstandingRequestsStrategy() {
+        this(new InstanceLoadTracker());
+    }
+
+    public LeastOutstandingRequestsStrategy(InstanceLoadTracker loadTracker) {
+        super(loadTracker);
+    }
+
+    @Override
+    protected int choose(List<HostAndPort> addresses, IntPredicate eligible) {
+        return leastCost(addresses, eligible);
+    }
+
+    @Override
+    protected double cost(HostAndPort address) {
+        return loadTracker.inFlight(address);
+    }
+}
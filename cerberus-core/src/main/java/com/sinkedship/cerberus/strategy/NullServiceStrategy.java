@@ -1,10 +1,12 @@
 package com.sinkedship.cerberus.strategy;
 
 import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 import com.sinkedship.cerberus.core.api.Provider;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.IntPredicate;
 
 /**
  * A strategy that will not provide any service instances at all.
@@ -19,4 +21,9 @@ public class NullServiceStrategy implements Provider.Strategy {
         return Optional.empty();
     }
 
+    @Override
+    public int choose(ServiceSnapshot snapshot, IntPredicate eligible) {
+        return -1;
+    }
+
 }
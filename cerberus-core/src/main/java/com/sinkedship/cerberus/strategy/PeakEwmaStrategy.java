@@ -0,0 +1,39 @@
+package com.sinkedship.cerberus.strategy;
+
+import com.google.common.net.HostAndPort;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * A strategy that picks two random service instances and chooses the one with the lower cost,
+ * the cost of an instance is its peak-EWMA latency multiplied by its requests in flight(plus one).
+ * <p>
+ * Slow instances, e.g. instances on slower hardware or pausing for GC, get less traffic
+ * until their latency recovers.
+ *
+ * @author Derrick Guan
+ * @see InstanceLoadTracker
+ */
+public class PeakEwmaStrategy extends AbstractLoadAwareStrategy {
+
+    public PeakEwmaStrategy() {
+        this(new InstanceLoadTracker());
+    }
+
+    public PeakEwmaStrategy(InstanceLoadTracker loadTracker) {
+        super(loadTracker);
+    }
+
+    @Override
+    protected int choose(List<HostAndPort> addresses, IntPredicate eligible) {
+        return powerOfTwoChoices(addresses, eligible);
+    }
+
+    @Override
+    protected double cost(HostAndPort address) {
+        // instances never observed have a latency of 0,
+        // add 1 nanosecond so that requests in flight still count for them
+        return (loadTracker.ewmaNanos(address) + 1) * (loadTracker.inFlight(address) + 1);
+    }
+}
@@ -0,0 +1,32 @@
+package com.sinkedship.cerberus.strategy;
+
+import com.google.common.net.HostAndPort;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * A strategy that picks two random service instances and chooses the one with fewer requests in flight.
+ *
+ * @author Derrick Guan
+ */
+public class PowerOfTwoChoicesStrategy extends AbstractLoadAwareStrategy {
+
+    public PowerOfTwoChoicesStrategy() {
+        this(new InstanceLoadTracker());
+    }
+
+    public PowerOfTwoChoicesStrategy(InstanceLoadTracker loadTracker) {
+        super(loadTracker);
+    }
+
+    @Override
+    protected int choose(List<HostAndPort> addresses, IntPredicate eligible) {
+        return powerOfTwoChoices(addresses, eligible);
+    }
+
+    @Override
+    protected double cost(HostAndPort address) {
+        return loadTracker.inFlight(address);
+    }
+}
@@ -1,11 +1,14 @@
 package com.sinkedship.cerberus.strategy;
 
 import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 import com.sinkedship.cerberus.core.api.Provider;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
 
 /**
  * A strategy that chooses a random service instance from available services collection.
@@ -25,4 +28,20 @@ public class RandomStrategy implements Provider.Strategy {
             return Optional.of(service);
         }
     }
+
+    @Override
+    public int choose(ServiceSnapshot snapshot, IntPredicate eligible) {
+        int size = snapshot.size();
+        if (size == 0) {
+            return -1;
+        }
+        int start = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            int candidate = (start + i) % size;
+            if (eligible.test(candidate)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
 }
@@ -1,11 +1,13 @@
 package com.sinkedship.cerberus.strategy;
 
 import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 import com.sinkedship.cerberus.core.api.Provider;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
 
 /**
  * A strategy that rotates and chooses a service instance through a sequential list.
@@ -28,4 +30,20 @@ public class RoundRobinStrategy implements Provider.Strategy {
             return Optional.of(services.get(nowIndex % services.size()));
         }
     }
+
+    @Override
+    public int choose(ServiceSnapshot snapshot, IntPredicate eligible) {
+        int size = snapshot.size();
+        if (size == 0) {
+            return -1;
+        }
+        int start = Math.floorMod(index.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            int candidate = (start + i) % size;
+            if (eligible.test(candidate)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
 }
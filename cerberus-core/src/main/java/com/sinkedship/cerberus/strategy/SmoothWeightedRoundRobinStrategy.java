@@ -0,0 +1,82 @@
+package com.sinkedship.cerberus.strategy;
+
+import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.api.Provider;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntPredicate;
+
+/**
+ * A strategy that rotates through service instances in proportion to their {@link Service#getWeight() weights},
+ * the way nginx does: on each choice every eligible instance gains its weight, the instance with the
+ * greatest gain is chosen and pays back the total weight. Instances of weights 5, 1 and 1 are chosen in
+ * order of a, a, b, a, c, a, a, so heavy instances are spread out rather than picked in bursts.
+ * <p>
+ * Instances of the same weight are chosen in plain round-robin fashion. Gains are kept per service and
+ * start over whenever the instances of the service change.
+ *
+ * @author Derrick Guan
+ */
+public class SmoothWeightedRoundRobinStrategy implements Provider.Strategy {
+
+    // service identifier -> gains of instances of the service
+    private final ConcurrentMap<String, Gains> gains = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<Service> choose(List<? extends Service> services) {
+        if (services.isEmpty()) {
+            return Optional.empty();
+        }
+        int chosen = gainsOf(services).choose(services, i -> true);
+        return chosen < 0 ? Optional.empty() : Optional.of(services.get(chosen));
+    }
+
+    @Override
+    public int choose(ServiceSnapshot snapshot, IntPredicate eligible) {
+        if (snapshot.isEmpty()) {
+            return -1;
+        }
+        return gainsOf(snapshot.getInstances()).choose(snapshot.getInstances(), eligible);
+    }
+
+    private Gains gainsOf(List<? extends Service> services) {
+        return gains.computeIfAbsent(services.get(0).getIdentifier(), identifier -> new Gains());
+    }
+
+    private static final class Gains {
+
+        // instances which the gains belong to, compared by reference as snapshots never change
+        private List<? extends Service> instances;
+
+        // gain of each instance, in the same order of instances
+        private long[] current;
+
+        synchronized int choose(List<? extends Service> services, IntPredicate eligible) {
+            if (services != instances) {
+                instances = services;
+                current = new long[services.size()];
+            }
+            long total = 0;
+            int chosen = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (!eligible.test(i)) {
+                    continue;
+                }
+                int weight = Math.max(services.get(i).getWeight(), 1);
+                current[i] += weight;
+                total += weight;
+                if (chosen < 0 || current[i] > current[chosen]) {
+                    chosen = i;
+                }
+            }
+            if (chosen >= 0) {
+                current[chosen] -= total;
+            }
+            return chosen;
+        }
+    }
+}
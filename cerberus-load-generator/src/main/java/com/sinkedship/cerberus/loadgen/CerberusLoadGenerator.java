@@ -0,0 +1,80 @@
+package com.sinkedship.cerberus.loadgen;
+
+import com.sinkedship.cerberus.client.CerberusServiceFactory;
+import com.sinkedship.cerberus.client.config.CerberusClientConfig;
+import com.sinkedship.cerberus.commons.DataCenter;
+import com.sinkedship.cerberus.commons.config.data_center.LocalConfig;
+import com.sinkedship.cerberus.sample.api.service.HelloService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Entry of the load generator, which drives a {@link HelloService} on the local data center, either
+ * a given server or an embedded one, e.g. comparing execution modes of a server whose requests block for 5ms:
+ * <pre>
+ * java -jar cerberus-load-generator-jar-with-dependencies.jar --rate=2000 --server-delay=5ms --execution-mode=CHANNEL_PINNED
+ * java -jar cerberus-load-generator-jar-with-dependencies.jar --rate=2000 --server-delay=5ms --execution-mode=WORK_STEALING
+ * </pre>
+ *
+ * @author Derrick Guan
+ */
+public class CerberusLoadGenerator {
+
+    private static final Logger LOGGER = LogManager.getLogger(CerberusLoadGenerator.class);
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadGeneratorConfig loadConfig;
+        try {
+            loadConfig = LoadGeneratorConfig.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(LoadGeneratorConfig.usage());
+            System.exit(1);
+            return;
+        }
+
+        EmbeddedServer server = null;
+        int status = 0;
+        try {
+            String host = loadConfig.getHost();
+            int port = loadConfig.getPort();
+            if (loadConfig.isEmbeddedServer()) {
+                server = new EmbeddedServer(loadConfig);
+                host = server.getHost();
+                port = server.getPort();
+                LOGGER.info("Embedded server starts up in {} mode, listening on {}:{}",
+                        loadConfig.getExecutionMode(), host, port);
+            }
+
+            CerberusClientConfig config = new CerberusClientConfig(DataCenter.LOCAL)
+                    .enableGeneratedStubs(loadConfig.isGeneratedStubs());
+            config.getConcreteDataCenterConfig(LocalConfig.class).setConnectHost(host).setConnectPort(port);
+            config.getDriftNettyClientConfig()
+                    .setTransport(loadConfig.getTransport())
+                    .setProtocol(loadConfig.getProtocol());
+            CerberusServiceFactory serviceFactory = new CerberusServiceFactory(config);
+
+            HelloService syncService = null;
+            HelloService.Async asyncService = null;
+            if (loadConfig.isAsync()) {
+                asyncService = serviceFactory.newService(HelloService.Async.class);
+            } else {
+                syncService = serviceFactory.newService(HelloService.class);
+            }
+            LOGGER.info("Calling {}:{} {} over {} transport and {} protocol with {} bytes payload, concurrency {}",
+                    host, port, loadConfig.isAsync() ? "asynchronously" : "synchronously",
+                    loadConfig.getTransport(), loadConfig.getProtocol(), loadConfig.getPayloadSize(),
+                    loadConfig.getConcurrency());
+
+            new LoadGenerator(loadConfig, syncService, asyncService, System.out).run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Load generator fails", e);
+            status = 1;
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+        System.exit(status);
+    }
+}
@@ -0,0 +1,76 @@
+package com.sinkedship.cerberus.loadgen;
+
+import com.sinkedship.cerberus.bootstrap.CerberusServerBootstrap;
+import com.sinkedship.cerberus.bootstrap.config.CerberusServerConfig;
+import com.sinkedship.cerberus.commons.DataCenter;
+import com.sinkedship.cerberus.sample.api.service.HelloService;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server of an echoing {@link HelloService} on {@link DataCenter#LOCAL}, which runs in the process of
+ * the load generator.
+ *
+ * @author Derrick Guan
+ */
+class EmbeddedServer implements Closeable {
+
+    private final CerberusServerConfig config;
+
+    private final CerberusServerBootstrap bootstrap;
+
+    EmbeddedServer(LoadGeneratorConfig loadConfig) {
+        config = new CerberusServerConfig(DataCenter.LOCAL);
+        config.getBootConfig()
+                .setExecutionMode(loadConfig.getExecutionMode())
+                .enableShutdownHook(false)
+                .setShutdownPropagationDelay(Duration.ZERO)
+                .setShutdownDrainTimeout(Duration.ZERO);
+        bootstrap = new CerberusServerBootstrap.Builder(DataCenter.LOCAL)
+                .withServerConfig(config)
+                .withService(new EchoHelloService(loadConfig.getServerDelay()))
+                .build();
+        bootstrap.boot();
+    }
+
+    String getHost() {
+        return config.getBootConfig().getHost();
+    }
+
+    int getPort() {
+        return config.getBootConfig().getPort();
+    }
+
+    @Override
+    public void close() {
+        bootstrap.shutdown();
+    }
+
+    public static class EchoHelloService implements HelloService {
+
+        private final long delayNanos;
+
+        EchoHelloService(Duration delay) {
+            this.delayNanos = delay.toNanos();
+        }
+
+        @Override
+        public String hello(String from, boolean mockTimeConsumingOperation) {
+            if (delayNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return from;
+        }
+
+        @Override
+        public String hello(int number, boolean mockTimeConsumingOperation) {
+            return hello(String.valueOf(number), mockTimeConsumingOperation);
+        }
+    }
+}
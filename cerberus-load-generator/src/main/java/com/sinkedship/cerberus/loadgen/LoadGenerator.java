@@ -0,0 +1,255 @@
+package com.sinkedship.cerberus.loadgen;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sinkedship.cerberus.sample.api.service.HelloService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Drives a {@link HelloService} in an open loop, i.e. requests are sent at a fixed arrival rate
+ * whether or not earlier requests have been answered.
+ * <p>
+ * The latency of a request is measured from the time it was scheduled to be sent rather than the time
+ * it was actually sent, so time spent waiting for a free thread or a permit of requests in flight is counted,
+ * which corrects the coordinated omission of closed-loop measurements.
+ *
+ * @author Derrick Guan
+ */
+public class LoadGenerator {
+
+    private static final Logger LOGGER = LogManager.getLogger(LoadGenerator.class);
+
+    // how long requests in flight are waited for after the last request was sent
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LoadGeneratorConfig config;
+
+    private final HelloService syncService;
+
+    private final HelloService.Async asyncService;
+
+    private final PrintStream out;
+
+    private final String payload;
+
+    // latencies of all the requests, reported every interval
+    private final Recorder intervalRecorder = new Recorder(3);
+
+    // latencies of the requests scheduled after warmup
+    private final Recorder measuredRecorder = new Recorder(3);
+
+    private final AtomicLong intervalErrors = new AtomicLong();
+
+    private final AtomicLong measuredErrors = new AtomicLong();
+
+    private final AtomicLong inFlight = new AtomicLong();
+
+    // how late the generator itself sends requests, a large lag means the generator is saturated
+    private final LongAccumulator maxSendLag = new LongAccumulator(Math::max, 0);
+
+    public LoadGenerator(LoadGeneratorConfig config, HelloService syncService, HelloService.Async asyncService,
+                         PrintStream out) {
+        this.config = Preconditions.checkNotNull(config, "Load generator config cannot be null");
+        Preconditions.checkArgument(config.isAsync() ? asyncService != null : syncService != null,
+                "Service to call cannot be null");
+        this.syncService = syncService;
+        this.asyncService = asyncService;
+        this.out = Preconditions.checkNotNull(out, "Output cannot be null");
+        this.payload = StringUtils.repeat('x', config.getPayloadSize());
+    }
+
+    /**
+     * Run the load for the warmup and the measured duration, and wait for requests in flight.
+     *
+     * @return latencies in nanoseconds of the successful requests scheduled after warmup
+     */
+    public Histogram run() throws InterruptedException {
+        double intervalNanos = (double) TimeUnit.SECONDS.toNanos(1) / config.getRate();
+        long start = System.nanoTime();
+        long measureStart = start + config.getWarmup().toNanos();
+        long end = measureStart + config.getDuration().toNanos();
+
+        ExecutorService callers = config.isAsync() ? null : new ThreadPoolExecutor(
+                config.getConcurrency(), config.getConcurrency(), 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("cerberus-loadgen-caller-%d").setDaemon(true).build());
+        Semaphore permits = config.isAsync() ? new Semaphore(config.getConcurrency()) : null;
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cerberus-loadgen-reporter-%d").setDaemon(true).build());
+        long reportMillis = config.getReportInterval().toMillis();
+        reporter.scheduleAtFixedRate(() -> reportInterval(start, measureStart, false), reportMillis, reportMillis,
+                TimeUnit.MILLISECONDS);
+        out.println("   time  phase    completed  errors  in-flight      p50(ms)      p90(ms)      p99(ms)    " +
+                "p99.9(ms)      max(ms)");
+
+        LOGGER.info("Sending {} requests/s for {}s after {}s warmup", config.getRate(),
+                config.getDuration().getSeconds(), config.getWarmup().getSeconds());
+        for (long i = 0; ; i++) {
+            long scheduled = start + (long) (i * intervalNanos);
+            if (scheduled >= end) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < scheduled) {
+                LockSupport.parkNanos(scheduled - now);
+            }
+            maxSendLag.accumulate(now - scheduled);
+            boolean measured = scheduled >= measureStart;
+            inFlight.incrementAndGet();
+            if (callers != null) {
+                callers.execute(() -> callSync(scheduled, measured));
+            } else {
+                permits.acquire();
+                callAsync(scheduled, measured, permits);
+            }
+        }
+
+        LOGGER.info("All requests sent, waiting for {} requests in flight", inFlight.get());
+        boolean drained;
+        if (callers != null) {
+            callers.shutdown();
+            drained = callers.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } else {
+            drained = permits.tryAcquire(config.getConcurrency(), DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        if (!drained) {
+            LOGGER.warn("{} requests are still in flight after {}s, they are not counted",
+                    inFlight.get(), DRAIN_TIMEOUT_SECONDS);
+        }
+        reporter.shutdownNow();
+        reporter.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        // requests finished since the last report
+        reportInterval(start, measureStart, true);
+
+        Histogram measured = measuredRecorder.getIntervalHistogram();
+        reportSummary(measured);
+        return measured;
+    }
+
+    private void callSync(long scheduled, boolean measured) {
+        boolean success;
+        try {
+            syncService.hello(payload, false);
+            success = true;
+        } catch (RuntimeException e) {
+            success = false;
+        }
+        record(scheduled, measured, success);
+    }
+
+    private void callAsync(long scheduled, boolean measured, Semaphore permits) {
+        ListenableFuture<String> future;
+        try {
+            future = asyncService.hello(payload, false);
+        } catch (RuntimeException e) {
+            record(scheduled, measured, false);
+            permits.release();
+            return;
+        }
+        future.addListener(() -> {
+            boolean success;
+            try {
+                future.get();
+                success = true;
+            } catch (InterruptedException | ExecutionException | RuntimeException e) {
+                success = false;
+            }
+            record(scheduled, measured, success);
+            permits.release();
+        }, directExecutor());
+    }
+
+    private void record(long scheduled, boolean measured, boolean success) {
+        long latency = System.nanoTime() - scheduled;
+        inFlight.decrementAndGet();
+        if (success) {
+            intervalRecorder.recordValue(latency);
+            if (measured) {
+                measuredRecorder.recordValue(latency);
+            }
+        } else {
+            intervalErrors.incrementAndGet();
+            if (measured) {
+                measuredErrors.incrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void reportInterval(long start, long measureStart, boolean skipEmpty) {
+        long now = System.nanoTime();
+        Histogram interval = intervalRecorder.getIntervalHistogram();
+        long errors = intervalErrors.getAndSet(0);
+        if (skipEmpty && interval.getTotalCount() == 0 && errors == 0) {
+            return;
+        }
+        out.println(String.format("%6.1fs  %-7s %10d  %6d  %9d %12.3f %12.3f %12.3f %12.3f %12.3f",
+                (now - start) / (double) TimeUnit.SECONDS.toNanos(1),
+                now < measureStart ? "warmup" : "measure",
+                interval.getTotalCount(), errors, inFlight.get(),
+                millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(90)),
+                millis(interval.getValueAtPercentile(99)), millis(interval.getValueAtPercentile(99.9)),
+                millis(interval.getMaxValue())));
+    }
+
+    private void reportSummary(Histogram measured) {
+        double seconds = config.getDuration().toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+        out.println();
+        out.println(String.format("Target rate:       %d requests/s", config.getRate()));
+        out.println(String.format("Achieved rate:     %.1f requests/s", measured.getTotalCount() / seconds));
+        out.println(String.format("Completed:         %d", measured.getTotalCount()));
+        out.println(String.format("Errors:            %d", measuredErrors.get()));
+        out.println(String.format("Max send lag:      %.3f ms", millis(maxSendLag.get())));
+        out.println(String.format("Latency mean:      %.3f ms", measured.getMean() / NANOS_PER_MILLI));
+        String[] labels = {"p50", "p90", "p99", "p99.9", "p99.99"};
+        double[] percentiles = {50, 90, 99, 99.9, 99.99};
+        for (int i = 0; i < percentiles.length; i++) {
+            out.println(String.format("Latency %-10s %.3f ms", labels[i] + ":",
+                    millis(measured.getValueAtPercentile(percentiles[i]))));
+        }
+        out.println(String.format("Latency max:       %.3f ms", millis(measured.getMaxValue())));
+        if (maxSendLag.get() > TimeUnit.MILLISECONDS.toNanos(100)) {
+            LOGGER.warn("The generator fell behind the target rate by up to {}ms, raise concurrency or lower " +
+                    "the rate if it's not caused by the service", TimeUnit.NANOSECONDS.toMillis(maxSendLag.get()));
+        }
+        out.println();
+        out.println("Percentile distribution in milliseconds:");
+        measured.outputPercentileDistribution(out, NANOS_PER_MILLI);
+        if (config.getHistogramFile() != null) {
+            try (PrintStream file = new PrintStream(config.getHistogramFile(), "UTF-8")) {
+                measured.outputPercentileDistribution(file, NANOS_PER_MILLI);
+                LOGGER.info("Percentile distribution is written to {}", config.getHistogramFile());
+            } catch (FileNotFoundException | UnsupportedEncodingException e) {
+                LOGGER.error("Cannot write percentile distribution to {}", config.getHistogramFile(), e);
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,298 @@
+package com.sinkedship.cerberus.loadgen;
+
+import com.google.common.base.Preconditions;
+import com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig.ExecutionMode;
+import io.airlift.drift.transport.netty.codec.Protocol;
+import io.airlift.drift.transport.netty.codec.Transport;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Config of a load generator run, which can be built in code or parsed from command line arguments
+ * of the form {@code --name=value}, see {@link #usage()}.
+ *
+ * @author Derrick Guan
+ */
+public class LoadGeneratorConfig {
+
+    // target server, no host means an embedded server on the local data center
+    private String host;
+    private int port;
+
+    // requests per second, sent at a fixed arrival rate no matter how fast the server answers
+    private int rate = 1000;
+    private Duration duration = Duration.ofSeconds(30);
+    private Duration warmup = Duration.ofSeconds(5);
+    private Duration reportInterval = Duration.ofSeconds(1);
+
+    // threads calling sync methods, or requests in flight of async methods
+    private int concurrency = 64;
+    private int payloadSize = 64;
+    private boolean async = false;
+    private boolean generatedStubs = false;
+
+    private Transport transport = Transport.FRAMED;
+    private Protocol protocol = Protocol.BINARY;
+
+    // execution mode and delay of each request of the embedded server
+    private ExecutionMode executionMode = ExecutionMode.CHANNEL_PINNED;
+    private Duration serverDelay = Duration.ZERO;
+
+    // file which the percentile distribution of the whole run is written to, if any
+    private String histogramFile;
+
+    public String getHost() {
+        return host;
+    }
+
+    public LoadGeneratorConfig setHost(String host) {
+        this.host = host;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public LoadGeneratorConfig setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public boolean isEmbeddedServer() {
+        return StringUtils.isBlank(host);
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public LoadGeneratorConfig setRate(int rate) {
+        Preconditions.checkArgument(rate > 0, "Rate must be positive");
+        this.rate = rate;
+        return this;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public LoadGeneratorConfig setDuration(Duration duration) {
+        Preconditions.checkNotNull(duration, "Duration cannot be null");
+        Preconditions.checkArgument(!duration.isNegative() && !duration.isZero(), "Duration must be positive");
+        this.duration = duration;
+        return this;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public LoadGeneratorConfig setWarmup(Duration warmup) {
+        Preconditions.checkNotNull(warmup, "Warmup cannot be null");
+        Preconditions.checkArgument(!warmup.isNegative(), "Warmup cannot be negative");
+        this.warmup = warmup;
+        return this;
+    }
+
+    public Duration getReportInterval() {
+        return reportInterval;
+    }
+
+    public LoadGeneratorConfig setReportInterval(Duration reportInterval) {
+        Preconditions.checkNotNull(reportInterval, "Report interval cannot be null");
+        Preconditions.checkArgument(!reportInterval.isNegative() && !reportInterval.isZero(),
+                "Report interval must be positive");
+        this.reportInterval = reportInterval;
+        return this;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public LoadGeneratorConfig setConcurrency(int concurrency) {
+        Preconditions.checkArgument(concurrency > 0, "Concurrency must be positive");
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    public LoadGeneratorConfig setPayloadSize(int payloadSize) {
+        Preconditions.checkArgument(payloadSize >= 0, "Payload size cannot be negative");
+        this.payloadSize = payloadSize;
+        return this;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public LoadGeneratorConfig setAsync(boolean async) {
+        this.async = async;
+        return this;
+    }
+
+    public boolean isGeneratedStubs() {
+        return generatedStubs;
+    }
+
+    public LoadGeneratorConfig setGeneratedStubs(boolean generatedStubs) {
+        this.generatedStubs = generatedStubs;
+        return this;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public LoadGeneratorConfig setTransport(Transport transport) {
+        this.transport = Preconditions.checkNotNull(transport, "Transport cannot be null");
+        return this;
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    public LoadGeneratorConfig setProtocol(Protocol protocol) {
+        this.protocol = Preconditions.checkNotNull(protocol, "Protocol cannot be null");
+        return this;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public LoadGeneratorConfig setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = Preconditions.checkNotNull(executionMode, "Execution mode cannot be null");
+        return this;
+    }
+
+    public Duration getServerDelay() {
+        return serverDelay;
+    }
+
+    public LoadGeneratorConfig setServerDelay(Duration serverDelay) {
+        Preconditions.checkNotNull(serverDelay, "Server delay cannot be null");
+        Preconditions.checkArgument(!serverDelay.isNegative(), "Server delay cannot be negative");
+        this.serverDelay = serverDelay;
+        return this;
+    }
+
+    public String getHistogramFile() {
+        return histogramFile;
+    }
+
+    public LoadGeneratorConfig setHistogramFile(String histogramFile) {
+        this.histogramFile = histogramFile;
+        return this;
+    }
+
+    /**
+     * Parse command line arguments of the form {@code --name=value}.
+     *
+     * @param args command line arguments
+     *
+     * @return parsed config
+     *
+     * @throws IllegalArgumentException if any argument is unknown or invalid
+     */
+    public static LoadGeneratorConfig fromArgs(String[] args) {
+        LoadGeneratorConfig config = new LoadGeneratorConfig();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "host":
+                    config.setHost(value);
+                    break;
+                case "port":
+                    config.setPort(Integer.parseInt(value));
+                    break;
+                case "rate":
+                    config.setRate(Integer.parseInt(value));
+                    break;
+                case "duration":
+                    config.setDuration(parseDuration(value));
+                    break;
+                case "warmup":
+                    config.setWarmup(parseDuration(value));
+                    break;
+                case "report-interval":
+                    config.setReportInterval(parseDuration(value));
+                    break;
+                case "concurrency":
+                    config.setConcurrency(Integer.parseInt(value));
+                    break;
+                case "payload-size":
+                    config.setPayloadSize(Integer.parseInt(value));
+                    break;
+                case "async":
+                    config.setAsync(Boolean.parseBoolean(value));
+                    break;
+                case "stubs":
+                    config.setGeneratedStubs(Boolean.parseBoolean(value));
+                    break;
+                case "transport":
+                    config.setTransport(Transport.valueOf(value.toUpperCase(Locale.ENGLISH)));
+                    break;
+                case "protocol":
+                    config.setProtocol(Protocol.valueOf(value.toUpperCase(Locale.ENGLISH)));
+                    break;
+                case "execution-mode":
+                    config.setExecutionMode(ExecutionMode.valueOf(value.toUpperCase(Locale.ENGLISH)));
+                    break;
+                case "server-delay":
+                    config.setServerDelay(parseDuration(value));
+                    break;
+                case "histogram-file":
+                    config.setHistogramFile(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        Preconditions.checkArgument(config.isEmbeddedServer() || config.getPort() > 0,
+                "Port is required with a host");
+        Preconditions.checkArgument(config.getTransport() != Transport.HEADER ||
+                        config.getProtocol() != Protocol.COMPACT,
+                "HEADER transport cannot be used with COMPACT protocol, use FB_COMPACT instead");
+        return config;
+    }
+
+    public static String usage() {
+        return "Options, all of the form --name=value:\n" +
+                "  --host             host of the target server, an embedded server is started if absent\n" +
+                "  --port             port of the target server\n" +
+                "  --rate             requests per second, default 1000\n" +
+                "  --duration         measured duration, e.g. 30s, 5m, default 30s\n" +
+                "  --warmup           duration before measuring, default 5s\n" +
+                "  --report-interval  interval of progress reports, default 1s\n" +
+                "  --concurrency      threads of sync calls or requests in flight of async calls, default 64\n" +
+                "  --payload-size     bytes of each request and response, default 64\n" +
+                "  --async            true to call async methods, default false\n" +
+                "  --stubs            true to use generated client stubs, default false\n" +
+                "  --transport        " + StringUtils.join(Transport.values(), '|') + ", default FRAMED\n" +
+                "  --protocol         " + StringUtils.join(Protocol.values(), '|') + ", default BINARY\n" +
+                "  --execution-mode   " + StringUtils.join(ExecutionMode.values(), '|') +
+                " of the embedded server, default CHANNEL_PINNED\n" +
+                "  --server-delay     blocking delay of each request of the embedded server, default 0ms\n" +
+                "  --histogram-file   file to write the percentile distribution of the run to\n";
+    }
+
+    private static Duration parseDuration(String value) {
+        io.airlift.units.Duration duration = io.airlift.units.Duration.valueOf(value);
+        return Duration.ofNanos(duration.roundTo(TimeUnit.NANOSECONDS));
+    }
+}
@@ -0,0 +1,42 @@
+package com.sinkedship.cerberus.registry;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors shared by registry implementations.
+ *
+ * @author Derrick Guan
+ */
+public final class RegistryExecutors {
+
+    private static final int REGISTER_THREADS = 8;
+
+    private static final long REGISTER_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private RegistryExecutors() {
+    }
+
+    /**
+     * Create an executor to run blocking registrations in parallel, its daemon threads exit when idle,
+     * since registrations mostly happen in a burst at boot.
+     *
+     * @param nameFormat name format of threads, e.g. "cerberus-consul-registrar-%d"
+     *
+     * @return executor for registrations
+     */
+    public static ExecutorService newRegisterExecutor(String nameFormat) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(REGISTER_THREADS, REGISTER_THREADS,
+                REGISTER_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat(nameFormat)
+                        .setDaemon(true)
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,103 @@
+package com.sinkedship.cerberus.registry.consul;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of TTL check heartbeats sent to consul by a {@link ConsulServiceRegistrar}.
+ *
+ * @author Derrick Guan
+ */
+public class ConsulHeartbeatStats {
+
+    private final LongAdder heartbeats = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder reRegistrations = new LongAdder();
+
+    private final LongAdder totalLatencyNanos = new LongAdder();
+
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    void recordHeartbeat(long latencyNanos) {
+        heartbeats.increment();
+        totalLatencyNanos.add(latencyNanos);
+        long max;
+        while (latencyNanos > (max = maxLatencyNanos.get())) {
+            if (maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+                break;
+            }
+        }
+    }
+
+    void recordFailure() {
+        failures.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordReRegistration() {
+        reRegistrations.increment();
+    }
+
+    /**
+     * @return number of heartbeats accepted by consul
+     */
+    public long getHeartbeats() {
+        return heartbeats.sum();
+    }
+
+    /**
+     * @return number of heartbeats which failed to reach or were rejected by consul
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return number of times a check went longer than its TTL without a successful heartbeat
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of times a service was registered again because consul lost it
+     */
+    public long getReRegistrations() {
+        return reRegistrations.sum();
+    }
+
+    /**
+     * @return average latency in millisecond of accepted heartbeats
+     */
+    public double getAverageLatencyMillis() {
+        long count = heartbeats.sum();
+        return count == 0 ? 0 : (double) totalLatencyNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return max latency in millisecond of accepted heartbeats
+     */
+    public double getMaxLatencyMillis() {
+        return (double) maxLatencyNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "ConsulHeartbeatStats{" +
+                "heartbeats=" + getHeartbeats() +
+                ", failures=" + getFailures() +
+                ", misses=" + getMisses() +
+                ", reRegistrations=" + getReRegistrations() +
+                ", averageLatencyMillis=" + getAverageLatencyMillis() +
+                ", maxLatencyMillis=" + getMaxLatencyMillis() +
+                '}';
+    }
+}
@@ -17,8 +17,8 @@ public class ConsulRegistry implements Registry {
 
     public ConsulRegistry(ConsulConfig config) {
         ConsulClient client = new ConsulClient(config.getHost(), config.getPort());
-        registrar = new ConsulServiceRegistrar(client);
-        provider = new ConsulServiceProvider(client);
+        registrar = new ConsulServiceRegistrar(client, config);
+        provider = new ConsulServiceProvider(client, config);
     }
 
     @Override
@@ -33,6 +33,7 @@ public class ConsulRegistry implements Registry {
 
     @Override
     public void close() {
-        // Nothing to close;
+        ((ConsulServiceRegistrar) registrar).close();
+        ((ConsulServiceProvider) provider).close();
     }
 }
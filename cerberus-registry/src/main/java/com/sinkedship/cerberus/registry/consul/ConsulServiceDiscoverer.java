@@ -1,6 +1,9 @@
 package com.sinkedship.cerberus.registry.consul;
 
+import com.sinkedship.cerberus.commons.config.data_center.ConsulConfig;
 import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.ServiceSnapshotStore;
 import com.sinkedship.cerberus.core.api.Discoverer;
 import com.ecwid.consul.v1.ConsulClient;
 import com.ecwid.consul.v1.QueryParams;
@@ -8,76 +11,172 @@ import com.ecwid.consul.v1.Response;
 import com.ecwid.consul.v1.health.HealthServicesRequest;
 import com.ecwid.consul.v1.health.model.HealthService;
 import com.google.common.base.Preconditions;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListenableFutureTask;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
+ * Discoverer implementation for consul, keeps a {@link ServiceSnapshot} of every discovered service.
+ * <p>
+ * Snapshots are either refreshed periodically in background, or watched by consul blocking queries
+ * if watch mode is enabled by {@link ConsulConfig#setWatch(boolean)}. In watch mode, each discovered
+ * service has one blocking query in flight on a shared pool, which grows to a thread per watched service,
+ * and a new snapshot is published as soon as the consul index of the service changes.
+ *
  * @author Derrick Guan
  */
 public class ConsulServiceDiscoverer implements Discoverer {
 
     private final static Logger LOGGER = LogManager.getLogger(ConsulServiceDiscoverer.class);
 
+    private static final long REFRESH_INTERVAL_SECONDS = 5;
+
+    private static final long WATCH_RETRY_BASE_DELAY_MILLIS = 1_000;
+
+    private static final long WATCH_RETRY_MAX_DELAY_MILLIS = 30_000;
+
     private final ConsulClient consulClient;
 
-    private final LoadingCache<String, List<Service>> cache;
+    private final ServiceSnapshotStore snapshotStore;
+
+    private final ScheduledExecutorService executor;
+
+    // pool of blocking queries in watch mode, null otherwise
+    private final ScheduledThreadPoolExecutor watchPool;
 
-    private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    private final AtomicInteger watchedServices = new AtomicInteger();
+
+    // max wait time of blocking queries in second
+    private final long watchWaitTime;
 
     public ConsulServiceDiscoverer(ConsulClient consulClient) {
+        this(consulClient, new ConsulConfig());
+    }
+
+    public ConsulServiceDiscoverer(ConsulClient consulClient, ConsulConfig config) {
         Preconditions.checkNotNull(consulClient, "Consul client cannot be null");
+        Preconditions.checkNotNull(config, "Consul config cannot be null");
         this.consulClient = consulClient;
-        cache = CacheBuilder.newBuilder()
-                .maximumSize(100)
-                .refreshAfterWrite(5, TimeUnit.SECONDS)
-                .build(new CacheLoader<String, List<Service>>() {
-                    @Override
-                    public List<Service> load(String key) {
-                        return doQueryConsul(key);
-                    }
-
-                    @Override
-                    public ListenableFuture<List<Service>> reload(String key, List<Service> oldValue) {
-                        ListenableFutureTask<List<Service>> task = ListenableFutureTask.create(
-                                () -> doQueryConsul(key));
-                        executor.execute(task);
-                        return task;
-                    }
-                });
-
+        this.watchWaitTime = TimeUnit.MILLISECONDS.toSeconds(config.getWatchWaitTime());
+        if (config.isWatch()) {
+            watchPool = new ScheduledThreadPoolExecutor(config.getWatchThreads(), new ThreadFactoryBuilder()
+                    .setNameFormat("cerberus-consul-watcher-%d").setDaemon(true).build());
+            executor = watchPool;
+            snapshotStore = new ServiceSnapshotStore(this::loadAndWatch);
+        } else {
+            watchPool = null;
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("cerberus-consul-discoverer-%d").setDaemon(true).build());
+            snapshotStore = new ServiceSnapshotStore(name -> toServices(name, doQueryConsul(name, QueryParams.DEFAULT)));
+            executor.scheduleWithFixedDelay(this::refresh,
+                    REFRESH_INTERVAL_SECONDS, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
     }
 
     @Nonnull
     @Override
     public List<Service> findAllByName(String name) {
+        return snapshotStore.get(name).getInstances();
+    }
+
+    Supplier<ServiceSnapshot> snapshotSource(String name) {
+        return snapshotStore.source(name);
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private void refresh() {
+        for (String name : snapshotStore.identifiers()) {
+            try {
+                snapshotStore.publish(name, toServices(name, doQueryConsul(name, QueryParams.DEFAULT)));
+            } catch (Throwable t) {
+                LOGGER.error("Refresh service:{} from Consul with error", name, t);
+            }
+        }
+    }
+
+    private List<Service> loadAndWatch(String name) {
+        Response<List<HealthService>> response = doQueryConsul(name, QueryParams.DEFAULT);
+        // a blocking query holds its thread for up to the wait time, so every watched service gets a thread
+        int watched = watchedServices.incrementAndGet();
+        synchronized (watchPool) {
+            if (watchPool.getCorePoolSize() < watched) {
+                watchPool.setCorePoolSize(watched);
+            }
+        }
+        submitWatch(name, indexOf(response), 0);
+        return toServices(name, response);
+    }
+
+    private void submitWatch(String name, long index, int failures) {
+        if (executor.isShutdown()) {
+            return;
+        }
         try {
-            return cache.get(name);
+            if (failures == 0) {
+                executor.execute(() -> watch(name, index));
+            } else {
+                long delay = Math.min(WATCH_RETRY_BASE_DELAY_MILLIS << Math.min(failures - 1, 5),
+                        WATCH_RETRY_MAX_DELAY_MILLIS);
+                executor.schedule(() -> watch(name, index, failures), delay, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Stop watching service:{} since discoverer has been closed", name);
+        }
+    }
+
+    private void watch(String name, long index) {
+        watch(name, index, 0);
+    }
+
+    private void watch(String name, long index, int failures) {
+        long nextIndex;
+        try {
+            Response<List<HealthService>> response = doQueryConsul(name, new QueryParams(watchWaitTime, index));
+            nextIndex = indexOf(response);
+            if (nextIndex != index) {
+                snapshotStore.publish(name, toServices(name, response));
+                LOGGER.debug("Service:{} changed with consul index:{}", name, nextIndex);
+            }
         } catch (Throwable t) {
-            LOGGER.error("Discover service:{} from Cache with error", name, t);
-            return Collections.emptyList();
+            LOGGER.error("Watch service:{} from Consul with error, retry times:{}", name, failures + 1, t);
+            submitWatch(name, index, failures + 1);
+            return;
+        }
+        // consul index may go backwards, e.g. consul servers restarted, start over if it happens
+        if (nextIndex < index) {
+            nextIndex = 0;
         }
+        submitWatch(name, nextIndex, 0);
     }
 
-    private List<Service> doQueryConsul(String name) {
+    private static long indexOf(Response<?> response) {
+        Long index = response.getConsulIndex();
+        return index == null ? 0 : Math.max(index, 0);
+    }
+
+    private Response<List<HealthService>> doQueryConsul(String name, QueryParams queryParams) {
         HealthServicesRequest request = HealthServicesRequest.newBuilder()
                 .setPassing(true)
-                .setQueryParams(QueryParams.DEFAULT)
+                .setQueryParams(queryParams)
                 .build();
-        Response<List<HealthService>> response = consulClient.getHealthServices(name, request);
+        return consulClient.getHealthServices(name, request);
+    }
+
+    private static List<Service> toServices(String name, Response<List<HealthService>> response) {
         List<HealthService> healthServices = response.getValue();
 
         List<Service> ret = new ArrayList<>();
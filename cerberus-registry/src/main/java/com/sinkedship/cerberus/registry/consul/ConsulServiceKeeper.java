@@ -1,57 +1,198 @@
 package com.sinkedship.cerberus.registry.consul;
 
 import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.OperationException;
+import com.ecwid.consul.v1.agent.model.NewService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Keeps TTL checks of registered services passing by sending heartbeats on a scheduler.
+ * <p>
+ * Each check has its own heartbeat task which schedules its next run only after the current one
+ * finishes, so a slow agent or a long pause never piles up heartbeats. Heartbeats are sent about
+ * 3 times per TTL with a random jitter, which spreads heartbeats of many services over time.
+ * A failed heartbeat is retried sooner with a backoff rather than dropping the check, and a service
+ * which the agent has lost, e.g. after an agent restart, is registered again.
+ *
  * @author Derrick Guan
  */
-class ConsulServiceKeeper implements Runnable {
+class ConsulServiceKeeper {
 
     private static final Logger LOGGER = LogManager.getLogger(ConsulServiceKeeper.class);
 
+    private static final int HEARTBEATS_PER_TTL = 3;
+
+    private static final double JITTER = 0.2;
+
+    private static final long MIN_RETRY_DELAY_MILLIS = 200;
+
+    private static final int DEFAULT_THREADS = 2;
+
     private final ConsulClient consulClient;
 
-    private List<String> serviceIdList = new CopyOnWriteArrayList<>();
+    private final long ttlMillis;
+
+    private final long intervalMillis;
+
+    private final ConcurrentMap<String, Heartbeat> heartbeats = new ConcurrentHashMap<>();
 
-    private final ExecutorService executor = Executors.newFixedThreadPool(10);
+    private final ScheduledExecutorService scheduler;
 
-    ConsulServiceKeeper(ConsulClient consulClient) {
+    private final ConsulHeartbeatStats stats = new ConsulHeartbeatStats();
+
+    ConsulServiceKeeper(ConsulClient consulClient, long ttlMillis) {
         this.consulClient = consulClient;
+        this.ttlMillis = ttlMillis;
+        this.intervalMillis = ttlMillis / HEARTBEATS_PER_TTL;
+        this.scheduler = Executors.newScheduledThreadPool(DEFAULT_THREADS, new ThreadFactoryBuilder()
+                .setNameFormat("cerberus-consul-keeper-%d")
+                .setDaemon(true)
+                .build());
     }
 
-    void addServiceId(String serviceId) {
-        serviceIdList.add(serviceId);
+    /**
+     * Start sending heartbeats for a registered service.
+     *
+     * @param service registered to consul
+     */
+    void keep(NewService service) {
+        Heartbeat heartbeat = new Heartbeat(service);
+        Heartbeat former = heartbeats.put(service.getId(), heartbeat);
+        if (former != null) {
+            former.cancelled = true;
+        }
+        heartbeat.schedule(jittered(intervalMillis));
+    }
+
+    /**
+     * Stop sending heartbeats for a service, waits for the heartbeat in flight if any, so that
+     * the service will not be registered again by the heartbeat once this method returns.
+     *
+     * @param serviceId id of service
+     */
+    void remove(String serviceId) {
+        Heartbeat heartbeat = heartbeats.remove(serviceId);
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
     }
 
-    void removeServiceId(String serviceId) {
-        serviceIdList.remove(serviceId);
+    ConsulHeartbeatStats getStats() {
+        return stats;
     }
 
-    @Override
-    public void run() {
-        while (true) {
-            for (String s : serviceIdList) {
-                executor.submit(() -> {
-                    try {
-                        consulClient.agentCheckPass("service:" + s);
-                    } catch (Throwable t) {
-                        LOGGER.error("Check service with id:{} failed, going to remove it from check-list.", s, t);
-                        serviceIdList.remove(s);
-                    }
-                });
+    void close() {
+        heartbeats.values().forEach(heartbeat -> heartbeat.cancelled = true);
+        heartbeats.clear();
+        scheduler.shutdownNow();
+    }
+
+    private static long jittered(long millis) {
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return Math.max((long) (millis * factor), 1);
+    }
+
+    private final class Heartbeat implements Runnable {
+
+        private final NewService service;
+
+        private final String checkId;
+
+        private long lastPassNanos = System.nanoTime();
+
+        private int consecutiveFailures;
+
+        private boolean missed;
+
+        private volatile boolean cancelled;
+
+        Heartbeat(NewService service) {
+            this.service = service;
+            this.checkId = "service:" + service.getId();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (cancelled) {
+                return;
             }
+            long start = System.nanoTime();
             try {
-                Thread.sleep(2 * 1000);
-            } catch (InterruptedException e) {
-                LOGGER.error("Consul service keeper interrupted", e);
+                consulClient.agentCheckPass(checkId);
+                onPass(start);
+                schedule(jittered(intervalMillis));
                 return;
+            } catch (OperationException e) {
+                // agent answered but rejected, most likely it does not know the check anymore
+                if (cancelled) {
+                    return;
+                }
+                LOGGER.warn("Heartbeat of service:{} rejected by consul agent, register it again due to:",
+                        service.getId(), e);
+                reRegister(start);
+            } catch (Throwable t) {
+                LOGGER.warn("Heartbeat of service:{} failed due to:", service.getId(), t);
+                onFailure();
+            }
+            if (!cancelled) {
+                // retry sooner than the normal interval, so that one failure does not miss the TTL
+                long delay = Math.min(MIN_RETRY_DELAY_MILLIS << Math.min(consecutiveFailures - 1, 10),
+                        intervalMillis);
+                schedule(jittered(delay));
+            }
+        }
+
+        private void reRegister(long start) {
+            try {
+                consulClient.agentServiceRegister(service);
+                consulClient.agentCheckPass(checkId);
+                stats.recordReRegistration();
+                onPass(start);
+                LOGGER.info("Registered service:{} to consul again", service.getId());
+            } catch (Throwable t) {
+                LOGGER.error("Cannot register service:{} to consul again due to:", service.getId(), t);
+                onFailure();
+            }
+        }
+
+        private void onPass(long start) {
+            long now = System.nanoTime();
+            stats.recordHeartbeat(now - start);
+            lastPassNanos = now;
+            consecutiveFailures = 0;
+            missed = false;
+        }
+
+        private void onFailure() {
+            stats.recordFailure();
+            consecutiveFailures++;
+            if (!missed && System.nanoTime() - lastPassNanos > TimeUnit.MILLISECONDS.toNanos(ttlMillis)) {
+                missed = true;
+                stats.recordMiss();
+                LOGGER.error("Service:{} has no successful heartbeat for longer than TTL:{}ms",
+                        service.getId(), ttlMillis);
+            }
+        }
+
+        void schedule(long delayMillis) {
+            try {
+                scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // keeper is closed
             }
         }
     }
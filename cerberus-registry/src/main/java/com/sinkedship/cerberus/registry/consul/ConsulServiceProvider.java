@@ -1,9 +1,10 @@
 package com.sinkedship.cerberus.registry.consul;
 
 import com.sinkedship.cerberus.commons.ServiceMetaData;
+import com.sinkedship.cerberus.commons.config.data_center.ConsulConfig;
 import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
 import com.sinkedship.cerberus.core.Service;
-import com.sinkedship.cerberus.core.api.Discoverer;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 import com.sinkedship.cerberus.core.api.Provider;
 import com.sinkedship.cerberus.strategy.RoundRobinStrategy;
 import com.ecwid.consul.v1.ConsulClient;
@@ -21,12 +22,22 @@ public class ConsulServiceProvider implements Provider {
 
     private static final Logger LOGGER = LogManager.getLogger(ConsulServiceProvider.class);
 
-    private final Discoverer discoverer;
+    private final ConsulServiceDiscoverer discoverer;
 
-    private final Provider.Strategy strategy = new RoundRobinStrategy();
+    // default strategy used to choose an instance if no strategy is specified
+    private final Provider.Strategy strategy;
 
     public ConsulServiceProvider(ConsulClient consulClient) {
-        this.discoverer = new ConsulServiceDiscoverer(consulClient);
+        this(consulClient, new ConsulConfig());
+    }
+
+    public ConsulServiceProvider(ConsulClient consulClient, ConsulConfig config) {
+        this(consulClient, config, new RoundRobinStrategy());
+    }
+
+    public ConsulServiceProvider(ConsulClient consulClient, ConsulConfig config, Provider.Strategy strategy) {
+        this.discoverer = new ConsulServiceDiscoverer(consulClient, config);
+        this.strategy = strategy;
     }
 
     @Override
@@ -45,6 +56,32 @@ public class ConsulServiceProvider implements Provider {
                 asyncSuffixSupplier));
     }
 
+    @Override
+    public List<Service> getAll(ServiceMetaData metaData) {
+        return discoverer.findAllByName(metaData.getServiceIdentifier());
+    }
+
+    @Override
+    public List<Service> getAll(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return discoverer.findAllByName(CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(),
+                asyncSuffixSupplier));
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(ServiceMetaData metaData) {
+        return discoverer.snapshotSource(metaData.getServiceIdentifier());
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return discoverer.snapshotSource(CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(),
+                asyncSuffixSupplier));
+    }
+
+    protected void close() {
+        discoverer.close();
+    }
+
     private Optional<Service> get(String serviceName) {
         List<Service> candidates = discoverer.findAllByName(serviceName);
         Optional<Service> ret = strategy.choose(candidates);
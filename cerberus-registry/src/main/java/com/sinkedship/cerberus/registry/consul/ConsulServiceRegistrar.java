@@ -1,5 +1,6 @@
 package com.sinkedship.cerberus.registry.consul;
 
+import com.sinkedship.cerberus.commons.config.data_center.ConsulConfig;
 import com.sinkedship.cerberus.core.Service;
 import com.sinkedship.cerberus.core.api.Registrar;
 import com.ecwid.consul.v1.ConsulClient;
@@ -9,9 +10,18 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.sinkedship.cerberus.registry.RegistryExecutors;
+
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Registrar implementation for consul, registers services with a TTL check which is kept passing
+ * by heartbeats, see {@link ConsulServiceKeeper}.
+ *
  * @author Derrick Guan
  */
 public class ConsulServiceRegistrar implements Registrar {
@@ -22,11 +32,23 @@ public class ConsulServiceRegistrar implements Registrar {
 
     private final ConsulServiceKeeper keeper;
 
+    private final String checkTTL;
+
+    private final String deregisterCriticalAfter;
+
+    private final ExecutorService registerExecutor = RegistryExecutors.newRegisterExecutor("cerberus-consul-registrar-%d");
+
     public ConsulServiceRegistrar(ConsulClient consulClient) {
+        this(consulClient, new ConsulConfig());
+    }
+
+    public ConsulServiceRegistrar(ConsulClient consulClient, ConsulConfig config) {
         Preconditions.checkNotNull(consulClient, "Consul client cannot be null");
+        Preconditions.checkNotNull(config, "Consul config cannot be null");
         this.consulClient = consulClient;
-        keeper = new ConsulServiceKeeper(consulClient);
-        new Thread(keeper).start();
+        this.checkTTL = TimeUnit.MILLISECONDS.toSeconds(config.getServiceTTL()) + "s";
+        this.deregisterCriticalAfter = TimeUnit.MILLISECONDS.toSeconds(config.getDeregisterCriticalAfter()) + "s";
+        keeper = new ConsulServiceKeeper(consulClient, config.getServiceTTL());
     }
 
     @Override
@@ -42,7 +64,7 @@ public class ConsulServiceRegistrar implements Registrar {
             consulClient.agentServiceRegister(consulService);
             LOGGER.debug("Register service:{}, id:{} to Consul successfully",
                     service.getIdentifier(), service.getId());
-            keeper.addServiceId(service.getId());
+            keeper.keep(consulService);
             return true;
         } catch (Throwable t) {
             LOGGER.error("Unable to register service:{}, id:{} to Consul due:",
@@ -51,10 +73,16 @@ public class ConsulServiceRegistrar implements Registrar {
         }
     }
 
+    /**
+     * Register a service in a registration thread, so that registrations of many services run in parallel.
+     */
     @Override
-    public <S extends Service> boolean register(S service, long timeout) {
-        throw new UnsupportedOperationException(
-                "ConsulServiceRegistrar does not support registering service with timeout by now");
+    public <S extends Service> CompletableFuture<Boolean> registerAsync(S service) {
+        try {
+            return CompletableFuture.supplyAsync(() -> register(service), registerExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(register(service));
+        }
     }
 
     @Override
@@ -65,11 +93,12 @@ public class ConsulServiceRegistrar implements Registrar {
             return false;
         }
 
+        // stop heartbeats first, otherwise a heartbeat in flight may register the service again
+        keeper.remove(service.getId());
         try {
             consulClient.agentServiceDeregister(service.getId());
             LOGGER.debug("Unregister service:{}, id:{} from Consul successfully",
                     service.getIdentifier(), service.getId());
-            keeper.removeServiceId(service.getId());
             return true;
         } catch (Throwable t) {
             LOGGER.error("Unable to unregister service:{}, id:{} from Consul due to:",
@@ -78,6 +107,18 @@ public class ConsulServiceRegistrar implements Registrar {
         }
     }
 
+    /**
+     * @return statistics of heartbeats sent by this registrar
+     */
+    public ConsulHeartbeatStats getHeartbeatStats() {
+        return keeper.getStats();
+    }
+
+    void close() {
+        registerExecutor.shutdownNow();
+        keeper.close();
+    }
+
     private NewService buildConsulService(Service s) {
         NewService consulService = new NewService();
         consulService.setId(s.getId());
@@ -86,8 +127,8 @@ public class ConsulServiceRegistrar implements Registrar {
         consulService.setPort(s.getPort());
         consulService.setTags(Collections.singletonList(s.getName()));
         NewService.Check check = new NewService.Check();
-        check.setDeregisterCriticalServiceAfter("5s");
-        check.setTtl("5s");
+        check.setDeregisterCriticalServiceAfter(deregisterCriticalAfter);
+        check.setTtl(checkTTL);
         consulService.setCheck(check);
         return consulService;
     }
@@ -17,8 +17,16 @@ public class EtcdRegistry implements Registry {
 
     public EtcdRegistry(EtcdConfig config) {
         Client client = Client.builder().endpoints(config.getEndpoints()).build();
-        registrar = new EtcdServiceRegistrar(config, client);
-        provider = new EtcdServiceProvider(config, client);
+        EtcdServiceRegistrar etcdRegistrar = new EtcdServiceRegistrar(config, client);
+        try {
+            provider = new EtcdServiceProvider(config, client);
+        } catch (RuntimeException e) {
+            // e.g. etcd is unreachable
+            etcdRegistrar.close();
+            client.close();
+            throw e;
+        }
+        registrar = etcdRegistrar;
     }
 
     @Override
@@ -33,6 +41,7 @@ public class EtcdRegistry implements Registry {
 
     @Override
     public void close() {
-        // Nothing to close
+        ((EtcdServiceRegistrar) registrar).close();
+        ((EtcdServiceProvider) provider).close();
     }
 }
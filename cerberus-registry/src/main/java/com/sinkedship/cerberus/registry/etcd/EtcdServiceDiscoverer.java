@@ -1,157 +1,337 @@
 package com.sinkedship.cerberus.registry.etcd;
 
 import com.sinkedship.cerberus.commons.config.data_center.EtcdConfig;
+import com.sinkedship.cerberus.commons.exception.CerberusException;
 import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.ServiceSnapshotStore;
 import com.sinkedship.cerberus.core.api.Discoverer;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import io.etcd.jetcd.ByteSequence;
 import io.etcd.jetcd.Client;
 import io.etcd.jetcd.KeyValue;
+import io.etcd.jetcd.Watch;
+import io.etcd.jetcd.common.exception.CompactedException;
 import io.etcd.jetcd.kv.GetResponse;
 import io.etcd.jetcd.options.GetOption;
 import io.etcd.jetcd.options.WatchOption;
 import io.etcd.jetcd.watch.WatchEvent;
+import io.etcd.jetcd.watch.WatchResponse;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nonnull;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
+ * Discoverer implementation for etcd, keeps a {@link ServiceSnapshot} of every discovered service
+ * and applies watch events to them.
+ * <p>
+ * Instances of every service are indexed by their etcd key in a concurrent map, each change of the map is
+ * published as a new snapshot(copy-on-write), so readers never see a half applied event.
+ * <p>
+ * All keys under the key prefix are listed first, then watched from the revision right after the
+ * revision of the listing, so that no event between listing and watching is lost.
+ * Whenever the watch fails, e.g. the revision to watch from has been compacted, keys are re-listed
+ * and re-watched automatically.
+ * <p>
+ * The initial listing must succeed within the connect timeout, otherwise the discoverer cannot be created.
+ *
  * @author Derrick Guan
  */
 public class EtcdServiceDiscoverer implements Discoverer {
 
     private static final Logger LOGGER = LogManager.getLogger(EtcdServiceDiscoverer.class);
 
+    private static final long INITIAL_RESYNC_DELAY_MILLIS = 1000;
+
+    private static final long MAX_RESYNC_DELAY_MILLIS = 30_000;
+
     private final Client etcdClient;
 
     private final String keyPrefix;
 
-    private final LoadingCache<String, List<Service>> cache;
+    private final long connectTimeout;
+
+    private final ServiceSnapshotStore snapshotStore;
 
     private final Gson gson = new Gson();
 
+    // service name -> (etcd key -> instance), guarded by this
+    private final Map<String, ConcurrentMap<String, Instance>> instances = new HashMap<>();
+
+    private final ScheduledExecutorService resyncExecutor;
+
+    // guarded by this
+    private Watch.Watcher watcher;
+
+    // bumped by every resync, events from watchers of former generations are dropped, guarded by this
+    private long generation;
+
+    // revision of the latest listing or event applied, guarded by this
+    private long revision;
+
+    private int consecutiveFailures;
+
+    private volatile boolean closed;
+
     public EtcdServiceDiscoverer(EtcdConfig config, Client client) {
         this.etcdClient = client;
         this.keyPrefix = config.getKeyPrefix();
-        cache = CacheBuilder.newBuilder()
-                .maximumSize(100)
-                .build(new CacheLoader<String, List<Service>>() {
-                    @Override
-                    public List<Service> load(String key) {
-                        return doQueryEtcd(key);
-                    }
-                });
-        watch();
+        this.connectTimeout = config.getConnectTimeout();
+        snapshotStore = new ServiceSnapshotStore(this::currentInstances);
+        resyncExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cerberus-etcd-resync-%d")
+                .setDaemon(true)
+                .build());
+        GetResponse response;
+        try {
+            response = list();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            resyncExecutor.shutdownNow();
+            throw new CerberusException("Interrupted while listing services from Etcd", e);
+        } catch (Exception e) {
+            resyncExecutor.shutdownNow();
+            throw new CerberusException("Cannot list services from Etcd with key prefix:" + keyPrefix +
+                    " within " + connectTimeout + "ms", e);
+        }
+        apply(response);
     }
 
     @Nonnull
     @Override
     public List<Service> findAllByName(String name) {
-        try {
-            return cache.get(name);
-        } catch (Throwable t) {
-            LOGGER.error("Discover service:{} from Cache with error", name, t);
-            return Collections.emptyList();
+        return snapshotStore.get(name).getInstances();
+    }
+
+    Supplier<ServiceSnapshot> snapshotSource(String name) {
+        return snapshotStore.source(name);
+    }
+
+    void close() {
+        closed = true;
+        resyncExecutor.shutdownNow();
+        synchronized (this) {
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
         }
     }
 
-    private List<Service> doQueryEtcd(String serviceName) {
-        ByteSequence k = ByteSequence.from(getKey(serviceName), StandardCharsets.UTF_8);
-        GetOption getOption = GetOption.newBuilder().withPrefix(k).build();
-        List<Service> ret = new ArrayList<>();
+    private synchronized List<Service> currentInstances(String serviceName) {
+        return toServices(instances.get(serviceName));
+    }
+
+    /**
+     * List all keys under the key prefix, publish snapshots of all services,
+     * then watch from the revision right after the listing.
+     *
+     * @return true if succeed
+     */
+    private boolean resync() {
+        if (closed) {
+            return true;
+        }
+        GetResponse response;
         try {
-            GetResponse response = etcdClient.getKVClient().get(k, getOption).get();
-            List<KeyValue> kvs = response.getKvs();
-            for (KeyValue kv : kvs) {
-                ByteSequence v = kv.getValue();
-                Optional<Service> service = fromJson(v.getBytes());
-                service.ifPresent(ret::add);
+            response = list();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            LOGGER.warn("Cannot list services from Etcd with key prefix:{} due to", keyPrefix, e);
+            return false;
+        }
+        apply(response);
+        return true;
+    }
+
+    private GetResponse list() throws Exception {
+        ByteSequence k = ByteSequence.from(keyPrefix, StandardCharsets.UTF_8);
+        return etcdClient.getKVClient().get(k, GetOption.newBuilder().withPrefix(k).build())
+                .get(connectTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void apply(GetResponse response) {
+        synchronized (this) {
+            if (closed) {
+                return;
             }
-        } catch (InterruptedException | ExecutionException e) {
-            LOGGER.warn("Cannot get service:{} from Etcd due to", serviceName, e);
-            return Collections.emptyList();
+            if (watcher != null) {
+                watcher.close();
+            }
+            Map<String, ConcurrentMap<String, Instance>> listed = new HashMap<>();
+            for (KeyValue kv : response.getKvs()) {
+                String key = kv.getKey().toString(StandardCharsets.UTF_8);
+                Optional<String> svcOpt = extractServiceNameFromKey(key);
+                Optional<Service> service = fromJson(kv.getValue().getBytes());
+                if (svcOpt.isPresent() && service.isPresent()) {
+                    listed.computeIfAbsent(svcOpt.get(), name -> new ConcurrentHashMap<>())
+                            .put(key, new Instance(service.get(), kv.getModRevision()));
+                }
+            }
+            Set<String> serviceNames = new HashSet<>(instances.keySet());
+            serviceNames.addAll(listed.keySet());
+            instances.clear();
+            instances.putAll(listed);
+            for (String serviceName : serviceNames) {
+                snapshotStore.publish(serviceName, toServices(instances.get(serviceName)));
+            }
+            revision = response.getHeader().getRevision();
+            generation++;
+            watcher = watch(generation, revision + 1);
+            consecutiveFailures = 0;
+            LOGGER.debug("Listed {} services from Etcd at revision:{}", listed.size(), revision);
+        }
+    }
+
+    private void scheduleResync() {
+        if (closed) {
+            return;
+        }
+        long delay;
+        synchronized (this) {
+            int shift = Math.min(consecutiveFailures++, 5);
+            delay = Math.min(INITIAL_RESYNC_DELAY_MILLIS << shift, MAX_RESYNC_DELAY_MILLIS);
+        }
+        try {
+            resyncExecutor.schedule(() -> {
+                if (!resync()) {
+                    scheduleResync();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // discoverer is closed
         }
-        return ret;
     }
 
-    private void watch() {
+    private Watch.Watcher watch(long watchGeneration, long fromRevision) {
         ByteSequence k = ByteSequence.from(keyPrefix, StandardCharsets.UTF_8);
         WatchOption watchOption = WatchOption.newBuilder()
                 .withPrefix(k)
-                .withPrevKV(true)
-                .withProgressNotify(true)
+                .withRevision(fromRevision)
                 .build();
-        etcdClient.getWatchClient().watch(k, watchOption,
-                response -> response.getEvents().forEach(this::processEvent),
-                throwable -> LOGGER.error("Watch etcd with error", throwable));
+        return etcdClient.getWatchClient().watch(k, watchOption,
+                response -> processResponse(watchGeneration, response),
+                throwable -> onWatchError(watchGeneration, throwable),
+                () -> onWatchError(watchGeneration, null));
     }
 
-    private String getKey(String serviceName) {
-        return EtcdUtils.getServiceKey(keyPrefix, serviceName);
+    private void onWatchError(long watchGeneration, Throwable throwable) {
+        synchronized (this) {
+            if (closed || watchGeneration != generation) {
+                return;
+            }
+            // makes sure further events and errors of this watcher are dropped
+            generation++;
+        }
+        if (throwable instanceof CompactedException) {
+            LOGGER.warn("Watch etcd from compacted revision, compacted revision:{}, re-list and re-watch",
+                    ((CompactedException) throwable).getCompactedRevision());
+        } else if (throwable != null) {
+            LOGGER.error("Watch etcd with error, re-list and re-watch", throwable);
+        } else {
+            LOGGER.warn("Watch etcd completed unexpectedly, re-list and re-watch");
+        }
+        try {
+            resyncExecutor.execute(() -> {
+                if (!resync()) {
+                    scheduleResync();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // discoverer is closed
+        }
     }
 
-    private Optional<Service> fromJson(byte[] raw) {
-        String json = new String(raw);
-        try {
-            return Optional.of(gson.fromJson(json, Service.class));
-        } catch (Throwable t) {
-            LOGGER.error("Cannot deserialize Json string:{} from Etcd watch event to service due to", json, t);
-            return Optional.empty();
+    private synchronized void processResponse(long watchGeneration, WatchResponse response) {
+        if (closed || watchGeneration != generation) {
+            return;
+        }
+        Set<String> changed = new HashSet<>();
+        for (WatchEvent event : response.getEvents()) {
+            processEvent(event).ifPresent(changed::add);
         }
+        for (String serviceName : changed) {
+            snapshotStore.publish(serviceName, toServices(instances.get(serviceName)));
+        }
+        revision = Math.max(revision, response.getHeader().getRevision());
     }
 
-    private void processEvent(WatchEvent event) {
+    /**
+     * @return name of the service changed by the event
+     */
+    private Optional<String> processEvent(WatchEvent event) {
         WatchEvent.EventType eventType = event.getEventType();
         KeyValue kv = event.getKeyValue();
-        String key = new String(kv.getKey().getBytes());
+        String key = kv.getKey().toString(StandardCharsets.UTF_8);
         Optional<String> svcOpt = extractServiceNameFromKey(key);
         if (!svcOpt.isPresent()) {
             LOGGER.warn("Cannot extract service name from watch event:{} and key:{}", eventType.name(), key);
-            return;
+            return Optional.empty();
         }
         String serviceName = svcOpt.get();
         switch (eventType) {
             case PUT: {
                 Optional<Service> value = fromJson(kv.getValue().getBytes());
-                value.ifPresent(service -> processPutEvent(key, serviceName, service));
-                break;
+                if (!value.isPresent()) {
+                    return Optional.empty();
+                }
+                ConcurrentMap<String, Instance> index =
+                        instances.computeIfAbsent(serviceName, name -> new ConcurrentHashMap<>());
+                Instance former = index.get(key);
+                if (former != null && former.modRevision >= kv.getModRevision()) {
+                    return Optional.empty();
+                }
+                index.put(key, new Instance(value.get(), kv.getModRevision()));
+                LOGGER.debug("Put service instance:{} to cache by key:{} successfully", value.get(), key);
+                return svcOpt;
             }
             case DELETE: {
-                Optional<Service> value = fromJson(event.getPrevKV().getValue().getBytes());
-                value.ifPresent(service -> processDeleteEvent(key, serviceName, service));
-                break;
+                ConcurrentMap<String, Instance> index = instances.get(serviceName);
+                Instance former = index == null ? null : index.get(key);
+                if (former == null || former.modRevision >= kv.getModRevision()) {
+                    return Optional.empty();
+                }
+                index.remove(key);
+                LOGGER.debug("Remove service instance:{} from cache by key:{} successfully", former.service, key);
+                return svcOpt;
             }
+            default:
+                return Optional.empty();
         }
     }
 
-    private void processPutEvent(String key, String serviceName, Service service) {
-        List<Service> serviceList = cache.getIfPresent(serviceName);
-        if (serviceList == null) {
-            serviceList = new ArrayList<>();
+    private Optional<Service> fromJson(byte[] raw) {
+        String json = new String(raw, StandardCharsets.UTF_8);
+        try {
+            return Optional.of(gson.fromJson(json, Service.class));
+        } catch (Throwable t) {
+            LOGGER.error("Cannot deserialize Json string:{} from Etcd to service due to", json, t);
+            return Optional.empty();
         }
-        serviceList.add(service);
-        cache.put(serviceName, serviceList);
-        LOGGER.debug("Put new service instance:{} to cache by key:{} successfully", service, key);
     }
 
-    private void processDeleteEvent(String key, String serviceName, Service prevService) {
-        List<Service> serviceList = cache.getIfPresent(serviceName);
-        if (serviceList == null || serviceList.isEmpty() || !serviceList.contains(prevService)) {
-            LOGGER.warn("Cannot find any service instances from cache by key:{}", key);
-            return;
+    private static List<Service> toServices(Map<String, Instance> index) {
+        if (index == null || index.isEmpty()) {
+            return Collections.emptyList();
         }
-        if (serviceList.remove(prevService)) {
-            LOGGER.debug("Remove service instance:{} from cache by key:{} successfully", prevService, key);
-        } else {
-            LOGGER.warn("Cannot remove service instance:{} from cache by key:{}", prevService, key);
+        List<Service> ret = new ArrayList<>(index.size());
+        for (Instance instance : index.values()) {
+            ret.add(instance.service);
         }
+        return ret;
     }
 
     private Optional<String> extractServiceNameFromKey(String key) {
@@ -162,4 +342,19 @@ public class EtcdServiceDiscoverer implements Discoverer {
             return Optional.of(elements[elements.length - 2]);
         }
     }
+
+    /**
+     * A service instance along with the revision of its last modification.
+     */
+    private static final class Instance {
+
+        private final Service service;
+
+        private final long modRevision;
+
+        Instance(Service service, long modRevision) {
+            this.service = service;
+            this.modRevision = modRevision;
+        }
+    }
 }
@@ -1,78 +1,333 @@
 package com.sinkedship.cerberus.registry.etcd;
 
-import com.sinkedship.cerberus.core.Service;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.etcd.jetcd.ByteSequence;
 import io.etcd.jetcd.Client;
+import io.etcd.jetcd.CloseableClient;
+import io.etcd.jetcd.lease.LeaseKeepAliveResponse;
+import io.etcd.jetcd.op.Op;
+import io.etcd.jetcd.options.DeleteOption;
+import io.etcd.jetcd.options.PutOption;
+import io.grpc.stub.StreamObserver;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
+ * Keeps all services registered by a registrar alive with one shared lease.
+ * <p>
+ * The lease is granted on the first registration and kept alive with a single streaming keep-alive,
+ * instead of one keep-alive call per service every interval.
+ * Once the lease is lost, e.g. expired during a network partition, a new lease is granted and
+ * all kept keys are put again with it in one transaction.
+ * <p>
+ * Granting, putting and deleting all run on the keeper thread, one at a time and each bounded by the request
+ * timeout, so that a key deleted while the lease is being recovered is never put back.
+ *
  * @author Derrick Guan
  */
-class EtcdServiceKeeper implements Runnable {
+class EtcdServiceKeeper {
 
     private static final Logger LOGGER = LogManager.getLogger(EtcdServiceKeeper.class);
 
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    private static final long NO_LEASE = 0;
+
     private final Client etcdClient;
 
-    private ConcurrentHashMap<Long, Service> serviceMap = new ConcurrentHashMap<>();
+    private final long ttlSeconds;
+
+    private final long retryInterval;
+
+    private final long requestTimeout;
+
+    // key -> value of all kept keys
+    private final Map<ByteSequence, ByteSequence> keptKeys = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor;
+
+    // guarded by this
+    private long leaseId = NO_LEASE;
 
-    private final long keepInterval;
+    // guarded by this
+    private CloseableClient keepAlive;
 
-    private final Executor executor = Executors.newFixedThreadPool(10);
+    // only accessed by the keeper thread
+    private int consecutiveFailures;
 
-    EtcdServiceKeeper(Client etcdClient, long keepInterval) {
+    private volatile boolean closed;
+
+    /**
+     * @param etcdClient    etcd client
+     * @param ttlSeconds    TTL of the shared lease in seconds
+     * @param retryInterval  interval in milliseconds to retry granting a lost lease, doubles on each failure
+     * @param requestTimeout timeout in milliseconds of each request to etcd
+     */
+    EtcdServiceKeeper(Client etcdClient, long ttlSeconds, long retryInterval, long requestTimeout) {
         this.etcdClient = etcdClient;
-        this.keepInterval = keepInterval;
+        this.ttlSeconds = ttlSeconds;
+        this.retryInterval = retryInterval;
+        this.requestTimeout = requestTimeout;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cerberus-etcd-keeper-%d")
+                .setDaemon(true)
+                .build());
     }
 
-    void keepService(Long leaseId, Service service) {
-        serviceMap.putIfAbsent(leaseId, service);
+    /**
+     * Put a key with the shared lease and keep it alive, grants the lease if there is none.
+     *
+     * @param key   to put
+     * @param value of the key
+     *
+     * @throws ExecutionException   if cannot grant the lease or put the key
+     * @throws InterruptedException if interrupted
+     * @throws TimeoutException     if the key is not put in time, it's deleted once it's put later
+     */
+    void keep(ByteSequence key, ByteSequence value)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        CompletableFuture<Void> future = keepAll(Collections.singletonMap(key, value));
+        try {
+            await(future);
+        } catch (TimeoutException e) {
+            // the caller sees a failure, so don't keep the key behind its back
+            future.thenRun(() -> removeAsync(key));
+            throw e;
+        }
     }
 
-    Service removeService(Long leaseId) {
-        return serviceMap.remove(leaseId);
+    /**
+     * Put keys with the shared lease in one transaction and keep them alive, grants the lease if there is none.
+     *
+     * @param kvs keys and values to put
+     *
+     * @return a future which completes once all keys are put
+     */
+    CompletableFuture<Void> keepAll(Map<ByteSequence, ByteSequence> kvs) {
+        if (closed) {
+            CompletableFuture<Void> ret = new CompletableFuture<>();
+            ret.completeExceptionally(new IllegalStateException("Etcd service keeper is closed"));
+            return ret;
+        }
+        // kept before they are put, so that a lease lost meanwhile re-puts them as well
+        keptKeys.putAll(kvs);
+        return submit(() -> {
+            PutOption option = PutOption.newBuilder().withLeaseId(acquireLease()).build();
+            List<Op> puts = new ArrayList<>(kvs.size());
+            for (Map.Entry<ByteSequence, ByteSequence> entry : kvs.entrySet()) {
+                puts.add(Op.put(entry.getKey(), entry.getValue(), option));
+            }
+            etcdClient.getKVClient().txn().Then(puts.toArray(new Op[0])).commit()
+                    .get(requestTimeout, TimeUnit.MILLISECONDS);
+            return null;
+        }).handle((response, t) -> {
+            if (t != null) {
+                kvs.forEach(keptKeys::remove);
+                throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+            }
+            return null;
+        });
     }
 
-    Optional<Long> getLeaseId(Service service) {
-        for (Map.Entry<Long, Service> entry : serviceMap.entrySet()) {
-            if (entry.getValue().equals(service)) {
-                return Optional.of(entry.getKey());
-            }
+    /**
+     * Stop keeping a key alive and delete it, the shared lease is kept for other keys.
+     *
+     * @param key to delete
+     *
+     * @return true if the key was kept
+     *
+     * @throws ExecutionException   if cannot delete the key
+     * @throws InterruptedException if interrupted
+     * @throws TimeoutException     if the key is not deleted in time, it's still deleted later
+     */
+    boolean remove(ByteSequence key) throws ExecutionException, InterruptedException, TimeoutException {
+        if (!keptKeys.containsKey(key)) {
+            return false;
         }
-        return Optional.empty();
+        await(removeAsync(key));
+        return true;
+    }
+
+    private CompletableFuture<Void> removeAsync(ByteSequence key) {
+        keptKeys.remove(key);
+        // on the keeper thread, after any recovery which may have read the key before it was removed
+        return submit(() -> {
+            etcdClient.getKVClient().txn()
+                    .Then(Op.delete(key, DeleteOption.DEFAULT))
+                    .commit().get(requestTimeout, TimeUnit.MILLISECONDS);
+            return null;
+        });
     }
 
+    /**
+     * Stop keeping alive and revoke the shared lease, all kept keys are deleted by etcd along with it.
+     */
+    void close() {
+        closed = true;
+        executor.shutdownNow();
+        long lease;
+        synchronized (this) {
+            lease = leaseId;
+            releaseLease();
+        }
+        keptKeys.clear();
+        if (lease != NO_LEASE) {
+            try {
+                etcdClient.getLeaseClient().revoke(lease).get(requestTimeout, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                LOGGER.warn("Cannot revoke etcd lease:{}, keys will be expired after TTL", lease, e);
+            }
+        }
+    }
 
-    @Override
-    public void run() {
-        while (true) {
-            for (Map.Entry<Long, Service> entry : serviceMap.entrySet()) {
-                long leaseId = entry.getKey();
-                Service s = entry.getValue();
-                executor.execute(() -> {
-                    try {
-                        etcdClient.getLeaseClient().keepAliveOnce(leaseId).get();
-                        LOGGER.debug("Etcd keep alive succeed, lease id:{}", leaseId);
-                    } catch (ExecutionException | InterruptedException e) {
-                        LOGGER.error("Etcd keep alive fail, service:{} lease id:{}, due to:",
-                                s.getIdentifier(), leaseId, e);
-                        removeService(leaseId);
-                    }
-                });
+    // only called by the keeper thread, which is the only one granting leases
+    private long acquireLease() throws ExecutionException, InterruptedException, TimeoutException {
+        synchronized (this) {
+            if (leaseId != NO_LEASE) {
+                return leaseId;
             }
-            try {
-                Thread.sleep(keepInterval);
-            } catch (InterruptedException e) {
-                LOGGER.error("Consul service keeper interrupted", e);
+        }
+        // granted without holding the lock, which the keep-alive observer and close need
+        long granted = etcdClient.getLeaseClient().grant(ttlSeconds)
+                .get(requestTimeout, TimeUnit.MILLISECONDS).getID();
+        synchronized (this) {
+            if (!closed) {
+                keepAlive = etcdClient.getLeaseClient().keepAlive(granted, new KeepAliveObserver(granted));
+                leaseId = granted;
+                LOGGER.debug("Granted etcd lease:{} with TTL:{}s", granted, ttlSeconds);
+                return granted;
+            }
+        }
+        etcdClient.getLeaseClient().revoke(granted);
+        throw new IllegalStateException("Etcd service keeper is closed");
+    }
+
+    // guarded by this
+    private void releaseLease() {
+        CloseableClient current = keepAlive;
+        keepAlive = null;
+        leaseId = NO_LEASE;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void onLeaseLost(long lostLeaseId, Throwable cause) {
+        synchronized (this) {
+            if (closed || lostLeaseId != leaseId) {
                 return;
             }
+            releaseLease();
+        }
+        LOGGER.warn("Etcd lease:{} lost, re-grant and re-put {} keys", lostLeaseId, keptKeys.size(), cause);
+        schedule(this::recover, 0);
+    }
+
+    private void recover() {
+        if (closed || keptKeys.isEmpty()) {
+            return;
+        }
+        try {
+            long lease = acquireLease();
+            PutOption option = PutOption.newBuilder().withLeaseId(lease).build();
+            List<Op> puts = new ArrayList<>(keptKeys.size());
+            for (Map.Entry<ByteSequence, ByteSequence> entry : keptKeys.entrySet()) {
+                puts.add(Op.put(entry.getKey(), entry.getValue(), option));
+            }
+            etcdClient.getKVClient().txn().Then(puts.toArray(new Op[0])).commit()
+                    .get(requestTimeout, TimeUnit.MILLISECONDS);
+            consecutiveFailures = 0;
+            LOGGER.info("Re-put {} keys to etcd with lease:{}", puts.size(), lease);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            synchronized (this) {
+                releaseLease();
+            }
+            long delay = Math.min(retryInterval << Math.min(consecutiveFailures++, 5), MAX_RETRY_DELAY_MILLIS);
+            LOGGER.error("Cannot re-put keys to etcd, retry in {}ms due to:", delay, e);
+            schedule(this::recover, delay);
+        }
+    }
+
+    /**
+     * Run a task on the keeper thread.
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> ret = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    ret.complete(task.call());
+                } catch (ExecutionException e) {
+                    ret.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    ret.completeExceptionally(e);
+                } catch (Throwable t) {
+                    ret.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ret.completeExceptionally(new IllegalStateException("Etcd service keeper is closed"));
+        }
+        return ret;
+    }
+
+    // waits for a task on the keeper thread, which makes at most two requests to etcd
+    private void await(CompletableFuture<?> future)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        future.get(2 * requestTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void schedule(Runnable task, long delayMillis) {
+        try {
+            executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // keeper is closed
+        }
+    }
+
+    private final class KeepAliveObserver implements StreamObserver<LeaseKeepAliveResponse> {
+
+        private final long observedLeaseId;
+
+        KeepAliveObserver(long observedLeaseId) {
+            this.observedLeaseId = observedLeaseId;
+        }
+
+        @Override
+        public void onNext(LeaseKeepAliveResponse response) {
+            if (response.getTTL() <= 0) {
+                onLeaseLost(observedLeaseId, null);
+            } else {
+                LOGGER.trace("Etcd keep alive succeed, lease id:{} TTL:{}s", observedLeaseId, response.getTTL());
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            onLeaseLost(observedLeaseId, t);
+        }
+
+        @Override
+        public void onCompleted() {
+            onLeaseLost(observedLeaseId, null);
         }
     }
 }
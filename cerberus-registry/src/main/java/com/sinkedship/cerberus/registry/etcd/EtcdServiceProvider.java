@@ -4,9 +4,8 @@ import com.sinkedship.cerberus.commons.ServiceMetaData;
 import com.sinkedship.cerberus.commons.config.data_center.EtcdConfig;
 import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
 import com.sinkedship.cerberus.core.Service;
-import com.sinkedship.cerberus.core.api.Discoverer;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 import com.sinkedship.cerberus.core.api.Provider;
-import com.sinkedship.cerberus.strategy.RandomStrategy;
 import com.sinkedship.cerberus.strategy.RoundRobinStrategy;
 import io.etcd.jetcd.Client;
 import org.apache.logging.log4j.LogManager;
@@ -23,12 +22,18 @@ public class EtcdServiceProvider implements Provider {
 
     private static final Logger LOGGER = LogManager.getLogger(EtcdServiceProvider.class);
 
-    private final Discoverer discoverer;
+    private final EtcdServiceDiscoverer discoverer;
 
-    private final Provider.Strategy strategy = new RoundRobinStrategy();
+    // default strategy used to choose an instance if no strategy is specified
+    private final Provider.Strategy strategy;
 
     public EtcdServiceProvider(EtcdConfig config, Client etcdClient) {
+        this(config, etcdClient, new RoundRobinStrategy());
+    }
+
+    public EtcdServiceProvider(EtcdConfig config, Client etcdClient, Provider.Strategy strategy) {
         discoverer = new EtcdServiceDiscoverer(config, etcdClient);
+        this.strategy = strategy;
     }
 
     @Override
@@ -47,6 +52,32 @@ public class EtcdServiceProvider implements Provider {
                 asyncSuffixSupplier));
     }
 
+    @Override
+    public List<Service> getAll(ServiceMetaData metaData) {
+        return discoverer.findAllByName(metaData.getServiceIdentifier());
+    }
+
+    @Override
+    public List<Service> getAll(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return discoverer.findAllByName(CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(),
+                asyncSuffixSupplier));
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(ServiceMetaData metaData) {
+        return discoverer.snapshotSource(metaData.getServiceIdentifier());
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return discoverer.snapshotSource(CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(),
+                asyncSuffixSupplier));
+    }
+
+    protected void close() {
+        discoverer.close();
+    }
+
     private Optional<Service> get(String serviceName) {
         List<Service> candidates = discoverer.findAllByName(serviceName);
         Optional<Service> ret = strategy.choose(candidates);
@@ -6,26 +6,29 @@ import com.sinkedship.cerberus.core.api.Registrar;
 import com.google.gson.Gson;
 import io.etcd.jetcd.ByteSequence;
 import io.etcd.jetcd.Client;
-import io.etcd.jetcd.Lease;
-import io.etcd.jetcd.common.exception.ClosedClientException;
-import io.etcd.jetcd.options.PutOption;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.nio.charset.StandardCharsets;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
+ * Registrar implementation for etcd, all services registered by a registrar share one lease,
+ * see {@link EtcdServiceKeeper}.
+ *
  * @author Derrick Guan
  */
 public class EtcdServiceRegistrar implements Registrar {
 
     private static final Logger LOGGER = LogManager.getLogger(EtcdServiceRegistrar.class);
 
-    private final Client etcdClient;
-
     private final Gson gson = new Gson();
 
     private final String keyPrefix;
@@ -35,46 +38,25 @@ public class EtcdServiceRegistrar implements Registrar {
     private final EtcdServiceKeeper serviceKeeper;
 
     public EtcdServiceRegistrar(EtcdConfig config, Client etcdClient) {
-        this.etcdClient = etcdClient;
         this.keyPrefix = config.getKeyPrefix();
         this.serviceTTL = config.getServiceTTL() / 1000;
-        this.serviceKeeper = new EtcdServiceKeeper(etcdClient, config.getServiceKeepInterval());
-        Thread keeperThread = new Thread(serviceKeeper);
-        keeperThread.setDaemon(true);
-        keeperThread.start();
+        this.serviceKeeper = new EtcdServiceKeeper(etcdClient, serviceTTL, config.getServiceKeepInterval(),
+                config.getConnectTimeout());
     }
 
     @Override
     public <S extends Service> boolean register(S service) {
-        if (StringUtils.isBlank(service.getIdentifier())) {
-            LOGGER.error("Aborting registration, service:{} with an empty " +
-                    "identifier cannot be registered to Etcd", service.getIdentifier());
-            return false;
-        }
-        if (StringUtils.isBlank(service.getId())) {
-            LOGGER.error("Aborting registration, service:{} with an empty " +
-                    "id cannot be registered to Etcd", service.getIdentifier());
+        if (!validate(service)) {
             return false;
         }
 
         try {
-            Lease lease = etcdClient.getLeaseClient();
-            long leaseId = lease.grant(serviceTTL).get().getID();
-            PutOption option = PutOption.newBuilder().withLeaseId(leaseId).build();
             ByteSequence k = ByteSequence.from(getKey(service), StandardCharsets.UTF_8);
             ByteSequence v = ByteSequence.from(getServiceJson(service), StandardCharsets.UTF_8);
-            // make it synchronous by invoking CompletableFuture's get
-            etcdClient.getKVClient().put(k, v, option).get();
+            serviceKeeper.keep(k, v);
             LOGGER.debug("Register service:{}, id:{} to Etcd successfully",
                     service.getIdentifier(), service.getId());
-            serviceKeeper.keepService(leaseId, service);
             return true;
-        } catch (ClosedClientException e) {
-            LOGGER.error("Cannot keep service:{}, id:{} alive in Etcd due to:",
-                    service.getIdentifier(), service.getId(), e);
-            // Cannot keep service alive, remove and report it
-            unregister(service);
-            return false;
         } catch (Exception e) {
             LOGGER.error("Unable to register service:{}, id:{} to Etcd due to:",
                     service.getIdentifier(), service.getId(), e);
@@ -83,31 +65,101 @@ public class EtcdServiceRegistrar implements Registrar {
     }
 
     @Override
-    public <S extends Service> boolean register(S service, long timeout) {
-        throw new UnsupportedOperationException(
-                "EtcdServiceRegistrar does not support registering service with timeout by now");
+    public <S extends Service> CompletableFuture<Boolean> registerAsync(S service) {
+        return registerAll(Collections.singletonList(service)).get(service);
+    }
+
+    /**
+     * Register all services in one transaction with the shared lease, the future of every service
+     * completes once the transaction does.
+     */
+    @Override
+    public <S extends Service> Map<S, CompletableFuture<Boolean>> registerAll(Collection<S> services) {
+        Map<ByteSequence, ByteSequence> kvs = new LinkedHashMap<>();
+        for (S service : services) {
+            if (validate(service)) {
+                kvs.put(ByteSequence.from(getKey(service), StandardCharsets.UTF_8),
+                        ByteSequence.from(getServiceJson(service), StandardCharsets.UTF_8));
+            }
+        }
+        CompletableFuture<Boolean> kept;
+        if (kvs.isEmpty()) {
+            kept = CompletableFuture.completedFuture(false);
+        } else {
+            CompletableFuture<Void> txn;
+            try {
+                txn = serviceKeeper.keepAll(kvs);
+            } catch (Exception e) {
+                txn = new CompletableFuture<>();
+                txn.completeExceptionally(e);
+            }
+            kept = txn.handle((ignored, t) -> {
+                if (t != null) {
+                    LOGGER.error("Unable to register {} services to Etcd due to:", kvs.size(), t);
+                    return false;
+                }
+                return true;
+            });
+        }
+        Map<S, CompletableFuture<Boolean>> ret = new LinkedHashMap<>();
+        for (S service : services) {
+            if (!kvs.containsKey(ByteSequence.from(getKey(service), StandardCharsets.UTF_8))) {
+                ret.put(service, CompletableFuture.completedFuture(false));
+                continue;
+            }
+            ret.put(service, kept.thenApply(registered -> {
+                if (registered) {
+                    LOGGER.debug("Register service:{}, id:{} to Etcd successfully",
+                            service.getIdentifier(), service.getId());
+                }
+                return registered;
+            }));
+        }
+        return ret;
     }
 
     @Override
     public <S extends Service> boolean unregister(S service) {
         try {
-            Optional<Long> leaseId = serviceKeeper.getLeaseId(service);
-            if (leaseId.isPresent()) {
-                etcdClient.getLeaseClient().revoke(leaseId.get()).get();
-                serviceKeeper.removeService(leaseId.get());
+            ByteSequence k = ByteSequence.from(getKey(service), StandardCharsets.UTF_8);
+            if (serviceKeeper.remove(k)) {
                 return true;
             } else {
-                LOGGER.warn("Cannot unregister service:{}, id:{} because cannot find associate lease id in Etcd",
+                LOGGER.warn("Cannot unregister service:{}, id:{} because it's not registered by this registrar",
                         service.getIdentifier(), service.getId());
                 return false;
             }
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             LOGGER.error("Cannot unregister service:{}, id:{} due to",
                     service.getIdentifier(), service.getId(), e);
             return false;
         }
     }
 
+    /**
+     * Revoke the shared lease, all services registered by this registrar are removed from etcd.
+     */
+    void close() {
+        serviceKeeper.close();
+    }
+
+    private boolean validate(Service service) {
+        if (StringUtils.isBlank(service.getIdentifier())) {
+            LOGGER.error("Aborting registration, service:{} with an empty " +
+                    "identifier cannot be registered to Etcd", service.getIdentifier());
+            return false;
+        }
+        if (StringUtils.isBlank(service.getId())) {
+            LOGGER.error("Aborting registration, service:{} with an empty " +
+                    "id cannot be registered to Etcd", service.getIdentifier());
+            return false;
+        }
+        return true;
+    }
+
     private String getServiceJson(Service s) {
         return gson.toJson(s);
     }
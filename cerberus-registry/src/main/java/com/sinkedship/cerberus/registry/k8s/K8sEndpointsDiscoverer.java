@@ -0,0 +1,320 @@
+package com.sinkedship.cerberus.registry.k8s;
+
+import com.google.common.net.HostAndPort;
+import com.sinkedship.cerberus.commons.K8sServiceMetaData;
+import com.sinkedship.cerberus.commons.config.data_center.K8sConfig;
+import com.sinkedship.cerberus.core.CerberusService;
+import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.ServiceSnapshotStore;
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.apis.DiscoveryV1beta1Api;
+import io.kubernetes.client.openapi.models.V1EndpointAddress;
+import io.kubernetes.client.openapi.models.V1EndpointPort;
+import io.kubernetes.client.openapi.models.V1EndpointSubset;
+import io.kubernetes.client.openapi.models.V1Endpoints;
+import io.kubernetes.client.openapi.models.V1EndpointsList;
+import io.kubernetes.client.openapi.models.V1beta1Endpoint;
+import io.kubernetes.client.openapi.models.V1beta1EndpointPort;
+import io.kubernetes.client.openapi.models.V1beta1EndpointSlice;
+import io.kubernetes.client.openapi.models.V1beta1EndpointSliceList;
+import io.kubernetes.client.util.CallGeneratorParams;
+import io.kubernetes.client.util.Config;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Resolves k8s services to addresses of their ready pods, by watching endpoints or endpoint slices
+ * of the watched namespaces with informers.
+ * <p>
+ * Each (namespace, service, port name) has its own {@link ServiceSnapshot}, which is built from the informer's
+ * local store on first read and re-published on every change of the endpoints of the service,
+ * so readiness transitions of pods reach clients as soon as the informer sees them.
+ *
+ * @author Derrick Guan
+ */
+class K8sEndpointsDiscoverer {
+
+    private static final Logger LOGGER = LogManager.getLogger(K8sEndpointsDiscoverer.class);
+
+    // label which endpoint slices carry to link to their services
+    private static final String SERVICE_NAME_LABEL = "kubernetes.io/service-name";
+
+    private static final String SERVICE_NAME_INDEX = "serviceName";
+
+    private static final String PORT_SEPARATOR = ":";
+
+    private final String defaultNamespace;
+
+    // one factory per namespace, because a factory holds only one informer per resource type
+    private final List<SharedInformerFactory> factories = new ArrayList<>();
+
+    private final List<SharedIndexInformer<?>> informers = new ArrayList<>();
+
+    // namespace -> (service name -> ready endpoints of the service, read from the informer's local store)
+    private final Map<String, Function<String, List<Endpoint>>> endpointsLookups = new HashMap<>();
+
+    private final ServiceSnapshotStore snapshotStore;
+
+    // namespace/name of service -> snapshot keys of the service which have been read
+    private final ConcurrentMap<String, Set<String>> keysByService = new ConcurrentHashMap<>();
+
+    K8sEndpointsDiscoverer(K8sConfig config) {
+        this.defaultNamespace = config.getNamespace();
+        ApiClient apiClient = Config.fromToken(config.getBasePath(), config.getAuthToken(), config.verifySsl())
+                .setReadTimeout(0);
+        snapshotStore = new ServiceSnapshotStore(key -> loadInstances(key, Collections.emptyList()));
+        for (String namespace : config.getSvcWatchNamespaces()) {
+            SharedInformerFactory factory = new SharedInformerFactory(apiClient);
+            if (config.getDiscoveryMode() == K8sConfig.DiscoveryMode.ENDPOINT_SLICES) {
+                endpointsLookups.put(namespace, watchEndpointSlices(factory, apiClient, namespace));
+            } else {
+                endpointsLookups.put(namespace, watchEndpoints(factory, apiClient, namespace));
+            }
+            factories.add(factory);
+        }
+        factories.forEach(SharedInformerFactory::startAllRegisteredInformers);
+        // snapshots read before then are built from a partial store, the informers re-publish them as they list
+        if (!K8sInformers.awaitSynced(informers, config.getInformerSyncTimeout())) {
+            LOGGER.warn("k8s endpoints of namespaces:{} not synced in {} ms, serving them as they are listed",
+                    endpointsLookups.keySet(), config.getInformerSyncTimeout());
+        }
+    }
+
+    Supplier<ServiceSnapshot> snapshotSource(K8sServiceMetaData metaData) {
+        String namespace = metaData.getNamespace() == null ? defaultNamespace : metaData.getNamespace();
+        if (!endpointsLookups.containsKey(namespace)) {
+            LOGGER.warn("k8s namespace:{} of service:{} is not watched, add it to watched namespaces of k8s config",
+                    namespace, metaData.getServiceIdentifier());
+        }
+        String serviceKey = namespace + "/" + metaData.getServiceIdentifier();
+        String key = serviceKey + PORT_SEPARATOR + metaData.getServicePortName().toLowerCase(Locale.ROOT);
+        keysByService.computeIfAbsent(serviceKey, k -> ConcurrentHashMap.newKeySet()).add(key);
+        return snapshotStore.source(key);
+    }
+
+    void close() {
+        factories.forEach(SharedInformerFactory::stopAllRegisteredInformers);
+    }
+
+    private Function<String, List<Endpoint>> watchEndpoints(SharedInformerFactory factory, ApiClient apiClient,
+                                                            String namespace) {
+        CoreV1Api api = new CoreV1Api(apiClient);
+        SharedIndexInformer<V1Endpoints> informer = factory.sharedIndexInformerFor(
+                (CallGeneratorParams params) -> api.listNamespacedEndpointsCall(namespace,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        params.resourceVersion,
+                        params.timeoutSeconds,
+                        params.watch,
+                        null
+                ),
+                V1Endpoints.class,
+                V1EndpointsList.class
+        );
+        informer.addEventHandler(new RepublishHandler<>(endpoints -> endpoints.getMetadata().getName()));
+        informers.add(informer);
+        return serviceName -> {
+            V1Endpoints endpoints = informer.getIndexer().getByKey(namespace + "/" + serviceName);
+            if (endpoints == null || endpoints.getSubsets() == null) {
+                return Collections.emptyList();
+            }
+            List<Endpoint> ret = new ArrayList<>();
+            for (V1EndpointSubset subset : endpoints.getSubsets()) {
+                // only ready addresses, not-ready ones are listed in subset's not-ready addresses
+                if (subset.getAddresses() == null || subset.getPorts() == null) {
+                    continue;
+                }
+                for (V1EndpointPort port : subset.getPorts()) {
+                    for (V1EndpointAddress address : subset.getAddresses()) {
+                        ret.add(new Endpoint(address.getIp(), port.getName(), port.getPort()));
+                    }
+                }
+            }
+            return ret;
+        };
+    }
+
+    private Function<String, List<Endpoint>> watchEndpointSlices(SharedInformerFactory factory, ApiClient apiClient,
+                                                                 String namespace) {
+        DiscoveryV1beta1Api api = new DiscoveryV1beta1Api(apiClient);
+        SharedIndexInformer<V1beta1EndpointSlice> informer = factory.sharedIndexInformerFor(
+                (CallGeneratorParams params) -> api.listNamespacedEndpointSliceCall(namespace,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        params.resourceVersion,
+                        params.timeoutSeconds,
+                        params.watch,
+                        null
+                ),
+                V1beta1EndpointSlice.class,
+                V1beta1EndpointSliceList.class
+        );
+        // a service may have many slices, index them by service name
+        Map<String, Function<V1beta1EndpointSlice, List<String>>> indexers = new HashMap<>();
+        indexers.put(SERVICE_NAME_INDEX, slice -> {
+            String serviceName = serviceNameOfSlice(slice);
+            return serviceName == null ? Collections.emptyList() : Collections.singletonList(serviceName);
+        });
+        informer.addIndexers(indexers);
+        informer.addEventHandler(new RepublishHandler<>(K8sEndpointsDiscoverer::serviceNameOfSlice));
+        informers.add(informer);
+        return serviceName -> {
+            List<Endpoint> ret = new ArrayList<>();
+            for (V1beta1EndpointSlice slice : informer.getIndexer().byIndex(SERVICE_NAME_INDEX, serviceName)) {
+                if (slice.getEndpoints() == null || slice.getPorts() == null) {
+                    continue;
+                }
+                for (V1beta1EndpointPort port : slice.getPorts()) {
+                    for (V1beta1Endpoint endpoint : slice.getEndpoints()) {
+                        // ready condition not set means unknown, which should be interpreted as ready
+                        if (endpoint.getConditions() != null &&
+                                Boolean.FALSE.equals(endpoint.getConditions().getReady())) {
+                            continue;
+                        }
+                        for (String address : endpoint.getAddresses()) {
+                            ret.add(new Endpoint(address, port.getName(), port.getPort()));
+                        }
+                    }
+                }
+            }
+            return ret;
+        };
+    }
+
+    private static String serviceNameOfSlice(V1beta1EndpointSlice slice) {
+        if (slice.getMetadata() == null || slice.getMetadata().getLabels() == null) {
+            return null;
+        }
+        return slice.getMetadata().getLabels().get(SERVICE_NAME_LABEL);
+    }
+
+    /**
+     * @param key     snapshot key, in form of namespace/name:port
+     * @param current instances of the current snapshot, those still there are kept as they are,
+     *                so that unchanged endpoints do not produce a new snapshot
+     */
+    private List<Service> loadInstances(String key, List<Service> current) {
+        int idx = key.lastIndexOf(PORT_SEPARATOR);
+        String serviceKey = key.substring(0, idx);
+        String portName = key.substring(idx + 1);
+        String namespace = serviceKey.substring(0, serviceKey.indexOf('/'));
+        String serviceName = serviceKey.substring(namespace.length() + 1);
+        Function<String, List<Endpoint>> endpointsLookup = endpointsLookups.get(namespace);
+        if (endpointsLookup == null) {
+            return Collections.emptyList();
+        }
+        List<Service> ret = new ArrayList<>();
+        Map<HostAndPort, Service> currentByAddress = new HashMap<>();
+        for (Service service : current) {
+            currentByAddress.put(HostAndPort.fromParts(service.getHost(), service.getPort()), service);
+        }
+        K8sServiceMetaData metaData = new K8sServiceMetaData(namespace, serviceName, portName);
+        for (Endpoint endpoint : endpointsLookup.apply(serviceName)) {
+            if (endpoint.port == null || endpoint.portName == null ||
+                    !endpoint.portName.equalsIgnoreCase(portName)) {
+                continue;
+            }
+            HostAndPort address = HostAndPort.fromParts(endpoint.ip, endpoint.port);
+            Service service = currentByAddress.get(address);
+            if (service == null) {
+                service = new CerberusService.Builder(Object.class)
+                        .metaData(metaData).id(address.toString()).host(endpoint.ip).port(endpoint.port)
+                        .build();
+            }
+            ret.add(service);
+        }
+        return ret;
+    }
+
+    private void republish(String serviceKey) {
+        Set<String> keys = keysByService.get(serviceKey);
+        if (keys == null) {
+            // never read, built from the informer's local store on first read
+            return;
+        }
+        for (String key : keys) {
+            if (snapshotStore.publish(key, loadInstances(key, snapshotStore.get(key).getInstances()))) {
+                LOGGER.debug("k8s endpoints of {} changed, {} ready instances",
+                        key, snapshotStore.get(key).size());
+            }
+        }
+    }
+
+    /**
+     * Re-publishes snapshots of the service which a changed object belongs to.
+     */
+    private final class RepublishHandler<T extends KubernetesObject> implements ResourceEventHandler<T> {
+
+        private final Function<T, String> serviceNameOf;
+
+        RepublishHandler(Function<T, String> serviceNameOf) {
+            this.serviceNameOf = serviceNameOf;
+        }
+
+        @Override
+        public void onAdd(T obj) {
+            republishOf(obj);
+        }
+
+        @Override
+        public void onUpdate(T oldObj, T newObj) {
+            republishOf(newObj);
+        }
+
+        @Override
+        public void onDelete(T obj, boolean deletedFinalStateUnknown) {
+            republishOf(obj);
+        }
+
+        private void republishOf(T obj) {
+            if (obj == null || obj.getMetadata() == null) {
+                return;
+            }
+            String serviceName = serviceNameOf.apply(obj);
+            if (serviceName != null) {
+                republish(obj.getMetadata().getNamespace() + "/" + serviceName);
+            }
+        }
+    }
+
+    private static final class Endpoint {
+
+        private final String ip;
+
+        private final String portName;
+
+        private final Integer port;
+
+        Endpoint(String ip, String portName, Integer port) {
+            this.ip = ip;
+            this.portName = portName;
+            this.port = port;
+        }
+    }
+}
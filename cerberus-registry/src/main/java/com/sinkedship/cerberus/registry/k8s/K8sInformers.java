@@ -0,0 +1,43 @@
+package com.sinkedship.cerberus.registry.k8s;
+
+import io.kubernetes.client.informer.SharedIndexInformer;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers of k8s informers.
+ *
+ * @author Derrick Guan
+ */
+final class K8sInformers {
+
+    private static final long SYNC_POLL_INTERVAL_MILLIS = 100;
+
+    private K8sInformers() {
+    }
+
+    /**
+     * Wait until all informers have listed their resources, or the timeout elapses.
+     *
+     * @param informers     informers which have been started
+     * @param timeoutMillis timeout in milliseconds
+     *
+     * @return true if all informers have synced
+     */
+    static boolean awaitSynced(Collection<? extends SharedIndexInformer<?>> informers, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!informers.stream().allMatch(SharedIndexInformer::hasSynced)) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(SYNC_POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
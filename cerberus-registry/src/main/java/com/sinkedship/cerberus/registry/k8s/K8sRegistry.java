@@ -28,7 +28,7 @@ public class K8sRegistry implements Registry {
 
     @Override
     public void close() {
-        // Nothing to close
+        ((K8sServiceProvider) provider).close();
     }
 
 }
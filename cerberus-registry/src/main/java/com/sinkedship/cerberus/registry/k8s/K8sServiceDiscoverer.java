@@ -6,22 +6,18 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sinkedship.cerberus.commons.K8sServiceMetaData;
 import com.sinkedship.cerberus.commons.config.data_center.K8sConfig;
 import com.sinkedship.cerberus.commons.exception.CerberusException;
 import com.sinkedship.cerberus.core.CerberusService;
 import com.sinkedship.cerberus.core.Service;
-import io.kubernetes.client.informer.ResourceEventHandler;
-import io.kubernetes.client.informer.SharedIndexInformer;
-import io.kubernetes.client.informer.SharedInformerFactory;
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.ApiException;
 import io.kubernetes.client.openapi.Configuration;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
 import io.kubernetes.client.openapi.models.V1Service;
-import io.kubernetes.client.openapi.models.V1ServiceList;
 import io.kubernetes.client.openapi.models.V1ServicePort;
-import io.kubernetes.client.util.CallGeneratorParams;
 import io.kubernetes.client.util.Config;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -42,22 +38,34 @@ class K8sServiceDiscoverer {
 
     private final String debugNodeHost;
 
+    // null when watching services, services are resolved from the index instead
     private final LoadingCache<K8sServiceMetaData, Service> cache;
 
+    // services resolved with node host and node-port, keyed separately from cluster IP ones
+    private final LoadingCache<K8sServiceMetaData, Service> nodePortCache;
+
+    // null unless watching services
+    private final K8sServiceIndex index;
+
+    @FunctionalInterface
+    private interface Resolver {
+        Optional<Service> resolve(K8sServiceMetaData metaData) throws ApiException;
+    }
+
     private static final class InternalCacheLoader extends CacheLoader<K8sServiceMetaData, Service> {
 
-        final K8sServiceDiscoverer discoverer;
-        final ListeningExecutorService executor = MoreExecutors.listeningDecorator(
-                Executors.newSingleThreadExecutor());
+        final Resolver resolver;
+        final ListeningExecutorService executor;
 
-        InternalCacheLoader(K8sServiceDiscoverer discoverer) {
-            this.discoverer = discoverer;
+        InternalCacheLoader(Resolver resolver, ListeningExecutorService executor) {
+            this.resolver = resolver;
+            this.executor = executor;
         }
 
         @Override
         public Service load(K8sServiceMetaData metaData) throws Exception {
             LOGGER.debug("try to load k8s service by meta-data:{}", metaData);
-            Optional<Service> svc = discoverer.resolveK8sService(metaData);
+            Optional<Service> svc = resolver.resolve(metaData);
             return svc.orElseThrow(() -> new CerberusException("unable to resolve k8s svc"));
         }
 
@@ -67,7 +75,7 @@ class K8sServiceDiscoverer {
             checkNotNull(oldService);
             return executor.submit(() -> {
                 try {
-                    Optional<Service> service = discoverer.resolveK8sService(metaData);
+                    Optional<Service> service = resolver.resolve(metaData);
                     if (service.isPresent()) {
                         LOGGER.debug("reload service by meta-data:{}, reloaded svc:{}", metaData, service.get());
                         return service.get();
@@ -89,89 +97,34 @@ class K8sServiceDiscoverer {
         ApiClient apiClient = Config.fromToken(config.getBasePath(), config.getAuthToken(), config.verifySsl());
         Configuration.setDefaultApiClient(apiClient);
         coreV1Api = new CoreV1Api();
+        if (config.isSvcWatch()) {
+            index = new K8sServiceIndex(config);
+            cache = null;
+            nodePortCache = null;
+            return;
+        }
+        index = null;
+        ListeningExecutorService refreshExecutor = MoreExecutors.listeningDecorator(
+                Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("cerberus-k8s-svc-refresher-%d")
+                        .setDaemon(true)
+                        .build()));
         cache = CacheBuilder.newBuilder()
                 .maximumSize(config.getSvcCacheSize())
                 .refreshAfterWrite(config.getSvcRefreshInterval(), TimeUnit.MILLISECONDS)
-                .build(new InternalCacheLoader(this));
-        if (config.isSvcWatch()) {
-            watchSvc(config);
-        }
+                .build(new InternalCacheLoader(this::resolveK8sService, refreshExecutor));
+        nodePortCache = CacheBuilder.newBuilder()
+                .maximumSize(config.getSvcCacheSize())
+                .refreshAfterWrite(config.getSvcRefreshInterval(), TimeUnit.MILLISECONDS)
+                .build(new InternalCacheLoader(this::resolveK8sNodePortService, refreshExecutor));
     }
 
-    private void watchSvc(K8sConfig config) {
-        ApiClient apiClient = Config.fromToken(config.getBasePath(), config.getAuthToken(), config.verifySsl())
-                .setReadTimeout(0);
-        CoreV1Api api = new CoreV1Api(apiClient);
-        SharedInformerFactory factory = new SharedInformerFactory(apiClient);
-        SharedIndexInformer<V1Service> svcInformer = factory.sharedIndexInformerFor(
-                (CallGeneratorParams params) -> api.listNamespacedServiceCall(config.getNamespace(),
-                        null,
-                        null,
-                        null,
-                        null,
-                        null,
-                        null,
-                        params.resourceVersion,
-                        params.timeoutSeconds,
-                        params.watch,
-                        null
-                ),
-                V1Service.class,
-                V1ServiceList.class
-        );
-        svcInformer.addEventHandler(new ResourceEventHandler<V1Service>() {
-            @Override
-            public void onAdd(V1Service service) {
-                if (service.getMetadata() != null && service.getSpec() != null &&
-                        service.getSpec().getPorts() != null) {
-                    String ip = service.getSpec().getClusterIP();
-                    for (V1ServicePort port : service.getSpec().getPorts()) {
-                        String svcName = service.getMetadata().getName();
-                        String portName = port.getName();
-                        K8sServiceMetaData metaData = new K8sServiceMetaData(svcName, portName);
-                        // TODO(dguan) cache all the services?
-                        cache.put(metaData, new CerberusService.Builder(Object.class)
-                                .metaData(metaData).host(ip).port(port.getPort())
-                                .build());
-                    }
-                }
-            }
-
-            @Override
-            public void onUpdate(V1Service oldSvc, V1Service newSvc) {
-                if (newSvc.getMetadata() != null && newSvc.getSpec() != null &&
-                        newSvc.getSpec().getPorts() != null) {
-                    String svcName = newSvc.getMetadata().getName();
-                    String ip = newSvc.getSpec().getClusterIP();
-                    for (V1ServicePort port : newSvc.getSpec().getPorts()) {
-                        String portName = port.getName();
-                        K8sServiceMetaData metaData = new K8sServiceMetaData(svcName, portName);
-                        cache.put(metaData, new CerberusService.Builder(Object.class)
-                                .metaData(metaData).host(ip).port(port.getPort())
-                                .build());
-                        LOGGER.debug("update svc, meta-data:{} with ip:{}, port:{}", metaData, ip, port.getPort());
-                    }
-                }
-            }
-
-            @Override
-            public void onDelete(V1Service service, boolean deletedFinalStateUnknown) {
-                if (service.getMetadata() != null && service.getSpec() != null &&
-                        service.getSpec().getPorts() != null) {
-                    for (V1ServicePort port : service.getSpec().getPorts()) {
-                        String svcName = service.getMetadata().getName();
-                        String portName = port.getName();
-                        K8sServiceMetaData metaData = new K8sServiceMetaData(svcName, portName);
-                        cache.invalidate(metaData);
-                    }
-                }
-            }
-        });
-        factory.startAllRegisteredInformers();
+    private String namespaceOf(K8sServiceMetaData metaData) {
+        return metaData.getNamespace() == null ? ns : metaData.getNamespace();
     }
 
     private Optional<Service> resolveK8sService(K8sServiceMetaData metaData) throws ApiException {
-        V1Service v1Service = coreV1Api.readNamespacedService(metaData.getServiceIdentifier(), ns,
+        V1Service v1Service = coreV1Api.readNamespacedService(metaData.getServiceIdentifier(), namespaceOf(metaData),
                 null, null, null);
         if (v1Service.getSpec() == null ||
                 v1Service.getSpec().getPorts() == null ||
@@ -199,7 +152,23 @@ class K8sServiceDiscoverer {
         }
     }
 
+    /**
+     * @return the index of services if watching services, or empty
+     */
+    Optional<K8sServiceIndex> index() {
+        return Optional.ofNullable(index);
+    }
+
+    void close() {
+        if (index != null) {
+            index.close();
+        }
+    }
+
     Optional<Service> findK8sService(K8sServiceMetaData metaData) {
+        if (index != null) {
+            return index.snapshot(metaData, false).getInstances().stream().findFirst();
+        }
         try {
             return Optional.ofNullable(cache.get(metaData));
         } catch (Throwable t) {
@@ -209,36 +178,43 @@ class K8sServiceDiscoverer {
     }
 
     Optional<Service> findK8sNodePortService(K8sServiceMetaData metaData) {
+        if (index != null) {
+            return index.snapshot(metaData, true).getInstances().stream().findFirst();
+        }
         try {
-            V1Service v1Service = coreV1Api.readNamespacedService(metaData.getServiceIdentifier(), ns,
-                    null, null, null);
-            if (v1Service.getSpec() == null ||
-                    v1Service.getSpec().getPorts() == null ||
-                    v1Service.getSpec().getPorts().isEmpty()) {
-                return Optional.empty();
-            }
-            String ip = debugNodeHost;
-            Integer nodePort = null;
-            for (V1ServicePort v1ServicePort : v1Service.getSpec().getPorts()) {
-                if (v1ServicePort.getName() != null && v1ServicePort.getName().equalsIgnoreCase(
-                        metaData.getServicePortName())) {
-                    nodePort = v1ServicePort.getNodePort();
-                    break;
-                }
-            }
-            if (nodePort != null) {
-                Service svc = new CerberusService.Builder(Object.class)
-                        .metaData(metaData).host(ip).port(nodePort)
-                        .build();
-                LOGGER.debug("resolve k8s node-port service by meta data:{}, returning ip:{}, node-port:{}",
-                        metaData, ip, nodePort);
-                return Optional.of(svc);
-            } else {
-                LOGGER.debug("fail to resolve k8s node-port service by meta data:{}", metaData);
-                return Optional.empty();
+            return Optional.ofNullable(nodePortCache.get(metaData));
+        } catch (Throwable t) {
+            LOGGER.warn("resolve k8s node-port service by meta data:{} with error", metaData, t);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Service> resolveK8sNodePortService(K8sServiceMetaData metaData) throws ApiException {
+        V1Service v1Service = coreV1Api.readNamespacedService(metaData.getServiceIdentifier(), namespaceOf(metaData),
+                null, null, null);
+        if (v1Service.getSpec() == null ||
+                v1Service.getSpec().getPorts() == null ||
+                v1Service.getSpec().getPorts().isEmpty()) {
+            return Optional.empty();
+        }
+        String ip = debugNodeHost;
+        Integer nodePort = null;
+        for (V1ServicePort v1ServicePort : v1Service.getSpec().getPorts()) {
+            if (v1ServicePort.getName() != null && v1ServicePort.getName().equalsIgnoreCase(
+                    metaData.getServicePortName())) {
+                nodePort = v1ServicePort.getNodePort();
+                break;
             }
-        } catch (ApiException e) {
-            LOGGER.warn("resolve k8s node-port service by meta data:{} with error", metaData, e);
+        }
+        if (nodePort != null) {
+            Service svc = new CerberusService.Builder(Object.class)
+                    .metaData(metaData).host(ip).port(nodePort)
+                    .build();
+            LOGGER.debug("resolve k8s node-port service by meta data:{}, returning ip:{}, node-port:{}",
+                    metaData, ip, nodePort);
+            return Optional.of(svc);
+        } else {
+            LOGGER.debug("fail to resolve k8s node-port service by meta data:{}", metaData);
             return Optional.empty();
         }
     }
@@ -0,0 +1,206 @@
+package com.sinkedship.cerberus.registry.k8s;
+
+import com.sinkedship.cerberus.commons.K8sServiceMetaData;
+import com.sinkedship.cerberus.commons.config.data_center.K8sConfig;
+import com.sinkedship.cerberus.core.CerberusService;
+import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.ServiceSnapshotStore;
+import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceList;
+import io.kubernetes.client.openapi.models.V1ServicePort;
+import io.kubernetes.client.util.CallGeneratorParams;
+import io.kubernetes.client.util.Config;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Index of k8s services of the watched namespaces, built from the local stores of service informers,
+ * which covers all services of the namespaces, or those matching the configured label selector.
+ * <p>
+ * Each (namespace, service name, port name) has its own {@link ServiceSnapshot} of cluster IP and node-port,
+ * which is built from the informer's local store on first read and re-published on every change of the service.
+ * Reading a snapshot is a map lookup and a volatile read, without any API call.
+ *
+ * @author Derrick Guan
+ */
+class K8sServiceIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger(K8sServiceIndex.class);
+
+    private static final String PORT_SEPARATOR = ":";
+
+    private final String defaultNamespace;
+
+    private final String debugNodeHost;
+
+    // one factory per namespace, because a factory holds only one informer per resource type
+    private final List<SharedInformerFactory> factories = new ArrayList<>();
+
+    private final Map<String, SharedIndexInformer<V1Service>> informers = new HashMap<>();
+
+    private final ServiceSnapshotStore clusterIpStore;
+
+    private final ServiceSnapshotStore nodePortStore;
+
+    // namespace/name of service -> snapshot keys of the service which have been read
+    private final ConcurrentMap<String, Set<String>> keysByService = new ConcurrentHashMap<>();
+
+    K8sServiceIndex(K8sConfig config) {
+        this.defaultNamespace = config.getNamespace();
+        this.debugNodeHost = config.getDebugNodeHost();
+        this.clusterIpStore = new ServiceSnapshotStore(key -> load(key, false, Collections.emptyList()));
+        this.nodePortStore = new ServiceSnapshotStore(key -> load(key, true, Collections.emptyList()));
+        ApiClient apiClient = Config.fromToken(config.getBasePath(), config.getAuthToken(), config.verifySsl())
+                .setReadTimeout(0);
+        CoreV1Api api = new CoreV1Api(apiClient);
+        String labelSelector = StringUtils.trimToNull(config.getSvcLabelSelector());
+        for (String namespace : config.getSvcWatchNamespaces()) {
+            SharedInformerFactory factory = new SharedInformerFactory(apiClient);
+            SharedIndexInformer<V1Service> informer = factory.sharedIndexInformerFor(
+                    (CallGeneratorParams params) -> api.listNamespacedServiceCall(namespace,
+                            null,
+                            null,
+                            null,
+                            null,
+                            labelSelector,
+                            null,
+                            params.resourceVersion,
+                            params.timeoutSeconds,
+                            params.watch,
+                            null
+                    ),
+                    V1Service.class,
+                    V1ServiceList.class
+            );
+            informer.addEventHandler(new RepublishHandler());
+            informers.put(namespace, informer);
+            factories.add(factory);
+        }
+        factories.forEach(SharedInformerFactory::startAllRegisteredInformers);
+        // snapshots read before then are built from a partial store, the informers re-publish them as they list
+        if (!K8sInformers.awaitSynced(informers.values(), config.getInformerSyncTimeout())) {
+            LOGGER.warn("k8s services of namespaces:{} not synced in {} ms, serving them as they are listed",
+                    informers.keySet(), config.getInformerSyncTimeout());
+        }
+    }
+
+    Supplier<ServiceSnapshot> snapshotSource(K8sServiceMetaData metaData, boolean nodePort) {
+        return (nodePort ? nodePortStore : clusterIpStore).source(snapshotKey(metaData));
+    }
+
+    ServiceSnapshot snapshot(K8sServiceMetaData metaData, boolean nodePort) {
+        return (nodePort ? nodePortStore : clusterIpStore).get(snapshotKey(metaData));
+    }
+
+    void close() {
+        factories.forEach(SharedInformerFactory::stopAllRegisteredInformers);
+    }
+
+    private String snapshotKey(K8sServiceMetaData metaData) {
+        String namespace = metaData.getNamespace() == null ? defaultNamespace : metaData.getNamespace();
+        return namespace + "/" + metaData.getServiceIdentifier() + PORT_SEPARATOR +
+                metaData.getServicePortName().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param key      snapshot key, in form of namespace/name:port
+     * @param nodePort true to resolve node host and node-port rather than cluster IP and port
+     * @param current  instances of the current snapshot, kept as they are if unchanged
+     */
+    private List<Service> load(String key, boolean nodePort, List<Service> current) {
+        int idx = key.lastIndexOf(PORT_SEPARATOR);
+        String serviceKey = key.substring(0, idx);
+        String portName = key.substring(idx + 1);
+        keysByService.computeIfAbsent(serviceKey, k -> ConcurrentHashMap.newKeySet()).add(key);
+
+        String namespace = serviceKey.substring(0, serviceKey.indexOf('/'));
+        SharedIndexInformer<V1Service> informer = informers.get(namespace);
+        if (informer == null) {
+            LOGGER.warn("k8s namespace of service:{} is not watched", serviceKey);
+            return Collections.emptyList();
+        }
+        V1Service v1Service = informer.getIndexer().getByKey(serviceKey);
+        if (v1Service == null || v1Service.getSpec() == null || v1Service.getSpec().getPorts() == null) {
+            return Collections.emptyList();
+        }
+        String host = nodePort ? debugNodeHost : v1Service.getSpec().getClusterIP();
+        Integer port = null;
+        for (V1ServicePort v1ServicePort : v1Service.getSpec().getPorts()) {
+            if (v1ServicePort.getName() != null && v1ServicePort.getName().equalsIgnoreCase(portName)) {
+                port = nodePort ? v1ServicePort.getNodePort() : v1ServicePort.getPort();
+                break;
+            }
+        }
+        if (port == null || StringUtils.isBlank(host)) {
+            return Collections.emptyList();
+        }
+        for (Service service : current) {
+            if (service.getPort() == port && host.equals(service.getHost())) {
+                return current;
+            }
+        }
+        K8sServiceMetaData metaData = new K8sServiceMetaData(namespace,
+                v1Service.getMetadata().getName(), portName);
+        return Collections.singletonList(new CerberusService.Builder(Object.class)
+                .metaData(metaData).host(host).port(port)
+                .build());
+    }
+
+    private void republish(String serviceKey) {
+        Set<String> keys = keysByService.get(serviceKey);
+        if (keys == null) {
+            // never read, built from the informer's local store on first read
+            return;
+        }
+        for (String key : keys) {
+            clusterIpStore.publish(key, load(key, false, clusterIpStore.get(key).getInstances()));
+            nodePortStore.publish(key, load(key, true, nodePortStore.get(key).getInstances()));
+        }
+        LOGGER.debug("k8s service:{} changed, re-published {} snapshots", serviceKey, keys.size());
+    }
+
+    /**
+     * Re-publishes snapshots of a changed service.
+     */
+    private final class RepublishHandler implements ResourceEventHandler<V1Service> {
+
+        @Override
+        public void onAdd(V1Service service) {
+            republishOf(service);
+        }
+
+        @Override
+        public void onUpdate(V1Service oldSvc, V1Service newSvc) {
+            republishOf(newSvc);
+        }
+
+        @Override
+        public void onDelete(V1Service service, boolean deletedFinalStateUnknown) {
+            republishOf(service);
+        }
+
+        private void republishOf(V1Service service) {
+            if (service != null && service.getMetadata() != null) {
+                republish(service.getMetadata().getNamespace() + "/" + service.getMetadata().getName());
+            }
+        }
+    }
+}
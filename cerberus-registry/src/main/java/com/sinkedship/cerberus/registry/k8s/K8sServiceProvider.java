@@ -4,10 +4,13 @@ import com.sinkedship.cerberus.commons.K8sServiceMetaData;
 import com.sinkedship.cerberus.commons.ServiceMetaData;
 import com.sinkedship.cerberus.commons.config.data_center.K8sConfig;
 import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 import com.sinkedship.cerberus.core.api.Provider;
+import com.sinkedship.cerberus.strategy.RoundRobinStrategy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Supplier;
 
@@ -19,9 +22,19 @@ public class K8sServiceProvider implements Provider {
 
     private final K8sServiceDiscoverer discoverer;
 
+    // null unless resolving services to pod IPs
+    private final K8sEndpointsDiscoverer endpointsDiscoverer;
+
+    private final Provider.Strategy strategy = new RoundRobinStrategy();
+
     public K8sServiceProvider(K8sConfig config) {
         this.debugWithNodePort = config.debugWithNodePort();
         discoverer = new K8sServiceDiscoverer(config);
+        if (!debugWithNodePort && config.getDiscoveryMode() != K8sConfig.DiscoveryMode.CLUSTER_IP) {
+            endpointsDiscoverer = new K8sEndpointsDiscoverer(config);
+        } else {
+            endpointsDiscoverer = null;
+        }
     }
 
     @Override
@@ -31,6 +44,8 @@ public class K8sServiceProvider implements Provider {
             // If debugWithNodePort flag set to true, parse svc with node-port
             if (debugWithNodePort) {
                 return discoverer.findK8sNodePortService(k8sSvcMetaData);
+            } else if (endpointsDiscoverer != null) {
+                return strategy.choose(endpointsDiscoverer.snapshotSource(k8sSvcMetaData).get().getInstances());
             } else {
                 // normal resolving case
                 return discoverer.findK8sService(k8sSvcMetaData);
@@ -50,4 +65,31 @@ public class K8sServiceProvider implements Provider {
     public Optional<Service> get(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
         throw new UnsupportedOperationException("K8s service provider does not support resolving service by target class");
     }
+
+    @Override
+    public List<Service> getAll(ServiceMetaData metaData) {
+        if (endpointsDiscoverer != null && metaData instanceof K8sServiceMetaData) {
+            return endpointsDiscoverer.snapshotSource((K8sServiceMetaData) metaData).get().getInstances();
+        }
+        return Provider.super.getAll(metaData);
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(ServiceMetaData metaData) {
+        if (endpointsDiscoverer != null && metaData instanceof K8sServiceMetaData) {
+            return endpointsDiscoverer.snapshotSource((K8sServiceMetaData) metaData);
+        }
+        Optional<K8sServiceIndex> index = discoverer.index();
+        if (index.isPresent() && metaData instanceof K8sServiceMetaData) {
+            return index.get().snapshotSource((K8sServiceMetaData) metaData, debugWithNodePort);
+        }
+        return Provider.super.snapshotSource(metaData);
+    }
+
+    void close() {
+        discoverer.close();
+        if (endpointsDiscoverer != null) {
+            endpointsDiscoverer.close();
+        }
+    }
 }
@@ -12,7 +12,7 @@ public class LocalRegistry implements Registry {
 
     private final Registrar registrar;
 
-    private final Provider provider;
+    private final LocalServiceProvider provider;
 
     public LocalRegistry(LocalConfig config) {
         registrar = new LocalServiceRegistrar();
@@ -31,6 +31,6 @@ public class LocalRegistry implements Registry {
 
     @Override
     public void close() {
-        // Left blank
+        provider.close();
     }
 }
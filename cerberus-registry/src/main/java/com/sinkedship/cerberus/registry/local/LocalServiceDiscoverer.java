@@ -0,0 +1,167 @@
+package com.sinkedship.cerberus.registry.local;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.sinkedship.cerberus.commons.config.data_center.LocalConfig;
+import com.sinkedship.cerberus.commons.config.data_center.LocalConfig.Instance;
+import com.sinkedship.cerberus.commons.exception.CerberusException;
+import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.ServiceSnapshotStore;
+import com.sinkedship.cerberus.core.api.Discoverer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Discoverer implementation for local data center, keeps a {@link ServiceSnapshot} of the instances
+ * listed statically by {@link LocalConfig}.
+ * <p>
+ * Each instance shows up once in the snapshot of its service and carries its weight, which weighted strategies
+ * such as {@link com.sinkedship.cerberus.strategy.SmoothWeightedRoundRobinStrategy} choose it by.
+ * If an instances file is set, it's checked for changes periodically in background, and snapshots of all
+ * discovered services are published again once it has been reloaded.
+ *
+ * @author Derrick Guan
+ */
+public class LocalServiceDiscoverer implements Discoverer {
+
+    private static final Logger LOGGER = LogManager.getLogger(LocalServiceDiscoverer.class);
+
+    private static final Type INSTANCES_TYPE = new TypeToken<Map<String, List<Instance>>>() {
+    }.getType();
+
+    private final LocalConfig config;
+
+    // instances listed in code
+    private final Map<String, List<Instance>> codeInstances;
+
+    private final ServiceSnapshotStore snapshotStore;
+
+    private final ScheduledExecutorService executor;
+
+    // instances loaded from the instances file, empty if there is no file
+    private volatile Map<String, List<Instance>> fileInstances = Collections.emptyMap();
+
+    private long fileLastModified;
+
+    public LocalServiceDiscoverer(LocalConfig config) {
+        Preconditions.checkNotNull(config, "Local config cannot be null");
+        this.config = config;
+        this.codeInstances = config.getInstances();
+        this.snapshotStore = new ServiceSnapshotStore(this::toServices);
+        File file = config.getInstancesFile();
+        if (file != null) {
+            // a broken file at start-up is a configuration error rather than an update to ride out
+            fileLastModified = file.lastModified();
+            fileInstances = loadFile(file);
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("cerberus-local-watcher-%d").setDaemon(true).build());
+            executor.scheduleWithFixedDelay(this::checkFile, config.getInstancesFileCheckInterval(),
+                    config.getInstancesFileCheckInterval(), TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<Service> findAllByName(String name) {
+        return snapshotStore.get(name).getInstances();
+    }
+
+    Supplier<ServiceSnapshot> snapshotSource(String name) {
+        return snapshotStore.source(name);
+    }
+
+    void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void checkFile() {
+        File file = config.getInstancesFile();
+        long lastModified = file.lastModified();
+        if (lastModified == fileLastModified) {
+            return;
+        }
+        fileLastModified = lastModified;
+        try {
+            fileInstances = loadFile(file);
+        } catch (Throwable t) {
+            LOGGER.error("Reload instances file:{} with error, keep instances loaded before", file, t);
+            return;
+        }
+        LOGGER.info("Instances file:{} reloaded", file);
+        for (String name : snapshotStore.identifiers()) {
+            snapshotStore.publish(name, toServices(name));
+        }
+    }
+
+    private List<Service> toServices(String name) {
+        List<Instance> instances = fileInstances.get(name);
+        if (instances == null) {
+            instances = codeInstances.get(name);
+        }
+        List<Service> ret = new ArrayList<>();
+        if (instances == null || instances.isEmpty()) {
+            // services not listed are served by the connect address
+            ret.add(new Service(name, name, config.getConnectHost() + ":" + config.getConnectPort(),
+                    config.getConnectHost(), config.getConnectPort()));
+            return ret;
+        }
+        for (Instance instance : instances) {
+            ret.add(new Service(name, name, instance.getHost() + ":" + instance.getPort(),
+                    instance.getHost(), instance.getPort(), instance.getWeight()));
+        }
+        return ret;
+    }
+
+    private static Map<String, List<Instance>> loadFile(File file) {
+        Map<String, List<Instance>> loaded;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            loaded = new Gson().fromJson(reader, INSTANCES_TYPE);
+        } catch (IOException | RuntimeException e) {
+            throw new CerberusException("Cannot load instances file:" + file, e);
+        }
+        if (loaded == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<Instance>> ret = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Instance>> entry : loaded.entrySet()) {
+            List<Instance> instances = entry.getValue() == null ? Collections.emptyList() : entry.getValue();
+            for (Instance instance : instances) {
+                if (instance == null) {
+                    throw new CerberusException("Null instance of service:" + entry.getKey() + " in file:" + file);
+                }
+                try {
+                    instance.validate();
+                } catch (IllegalArgumentException e) {
+                    throw new CerberusException("Invalid instance of service:" + entry.getKey() + " in file:" + file, e);
+                }
+            }
+            ret.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(instances)));
+        }
+        return ImmutableMap.copyOf(ret);
+    }
+}
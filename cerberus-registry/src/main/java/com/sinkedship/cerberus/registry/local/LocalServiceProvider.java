@@ -2,39 +2,88 @@ package com.sinkedship.cerberus.registry.local;
 
 import com.sinkedship.cerberus.commons.ServiceMetaData;
 import com.sinkedship.cerberus.commons.config.data_center.LocalConfig;
-import com.sinkedship.cerberus.core.CerberusService;
+import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
 import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 import com.sinkedship.cerberus.core.api.Provider;
+import com.sinkedship.cerberus.strategy.SmoothWeightedRoundRobinStrategy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Supplier;
 
 /**
+ * Provides instances listed statically by {@link LocalConfig}, see {@link LocalServiceDiscoverer}.
+ *
  * @author Derrick Guan
  */
 public class LocalServiceProvider implements Provider {
 
-    private final CerberusService service;
+    private static final Logger LOGGER = LogManager.getLogger(LocalServiceProvider.class);
+
+    private final LocalServiceDiscoverer discoverer;
+
+    // default strategy used to choose an instance if no strategy is specified
+    private final Provider.Strategy strategy;
 
     LocalServiceProvider(LocalConfig config) {
-        service = new CerberusService.Builder(Object.class)
-                .host(config.getConnectHost())
-                .port(config.getConnectPort())
-                .build();
+        this(config, new SmoothWeightedRoundRobinStrategy());
+    }
+
+    LocalServiceProvider(LocalConfig config, Provider.Strategy strategy) {
+        this.discoverer = new LocalServiceDiscoverer(config);
+        this.strategy = strategy;
     }
 
     @Override
     public Optional<Service> get(ServiceMetaData metaData) {
-        return Optional.of(service);
+        return get(metaData.getServiceIdentifier());
     }
 
     @Override
     public Optional<Service> get(Class<?> targetClass) {
-        return Optional.of(service);
+        return get(targetClass, CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER);
     }
 
     @Override
     public Optional<Service> get(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
-        return Optional.of(service);
+        return get(CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(),
+                asyncSuffixSupplier));
+    }
+
+    @Override
+    public List<Service> getAll(ServiceMetaData metaData) {
+        return discoverer.findAllByName(metaData.getServiceIdentifier());
+    }
+
+    @Override
+    public List<Service> getAll(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return discoverer.findAllByName(CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(),
+                asyncSuffixSupplier));
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(ServiceMetaData metaData) {
+        return discoverer.snapshotSource(metaData.getServiceIdentifier());
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return discoverer.snapshotSource(CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(),
+                asyncSuffixSupplier));
+    }
+
+    void close() {
+        discoverer.close();
+    }
+
+    private Optional<Service> get(String serviceName) {
+        Optional<Service> ret = strategy.choose(discoverer.findAllByName(serviceName));
+        if (!ret.isPresent()) {
+            LOGGER.warn("Cannot resolve service:{} locally", serviceName);
+        }
+        return ret;
     }
 }
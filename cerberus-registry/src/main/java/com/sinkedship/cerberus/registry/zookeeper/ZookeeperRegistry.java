@@ -39,9 +39,7 @@ public class ZookeeperRegistry implements Registry {
         // build a curator service discovery and remember to start it before any actual usages
         curatorServiceDiscovery = buildCuratorServiceDiscovery(config, curatorClient);
         registrar = new ZookeeperServiceRegistrar(curatorServiceDiscovery);
-        provider = new ZookeeperServiceProvider(
-                curatorServiceDiscovery,
-                new ZookeeperServiceDiscoverer(curatorServiceDiscovery));
+        provider = new ZookeeperServiceProvider(curatorServiceDiscovery, curatorClient, config.getBasePath());
     }
 
     @Override
@@ -56,6 +54,7 @@ public class ZookeeperRegistry implements Registry {
 
     @Override
     public void close() throws IOException {
+        ((ZookeeperServiceRegistrar) registrar).close();
         ((ZookeeperServiceProvider) provider).close();
         curatorServiceDiscovery.close();
         curatorClient.close();
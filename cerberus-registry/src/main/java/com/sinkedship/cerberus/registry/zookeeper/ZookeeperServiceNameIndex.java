@@ -0,0 +1,97 @@
+package com.sinkedship.cerberus.registry.zookeeper;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of names of all services registered under the base path, maintained by a
+ * {@link PathChildrenCache} watching children of the base path.
+ * <p>
+ * Services are registered with their identifiers as names, the index resolves an identifier to the
+ * name of the registered service ignoring case, without querying zookeeper at all.
+ *
+ * @author Derrick Guan
+ */
+class ZookeeperServiceNameIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger(ZookeeperServiceNameIndex.class);
+
+    // lower case name -> name
+    private final ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+
+    private final PathChildrenCache cache;
+
+    ZookeeperServiceNameIndex(CuratorFramework curatorClient, String basePath) {
+        // only names are needed, do not cache data of children
+        cache = new PathChildrenCache(curatorClient, basePath, false, false,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("cerberus-zookeeper-name-index-%d")
+                        .setDaemon(true)
+                        .build());
+        cache.getListenable().addListener((client, event) -> onEvent(event));
+    }
+
+    /**
+     * Start watching and build the initial index synchronously.
+     */
+    void start() {
+        try {
+            cache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+            for (ChildData child : cache.getCurrentData()) {
+                add(child.getPath());
+            }
+            LOGGER.debug("Zookeeper service name index started with {} services", names.size());
+        } catch (Exception e) {
+            // index is filled by events once zookeeper is reachable
+            LOGGER.error("Cannot build zookeeper service name index due to:", e);
+        }
+    }
+
+    /**
+     * @param identifier of service
+     *
+     * @return name of the registered service matching the identifier ignoring case
+     */
+    Optional<String> resolve(String identifier) {
+        return Optional.ofNullable(names.get(identifier.toLowerCase(Locale.ROOT)));
+    }
+
+    void close() {
+        try {
+            cache.close();
+        } catch (IOException e) {
+            LOGGER.error("Try to close zookeeper service name index with error:", e);
+        }
+    }
+
+    private void onEvent(PathChildrenCacheEvent event) {
+        switch (event.getType()) {
+            case CHILD_ADDED:
+                add(event.getData().getPath());
+                break;
+            case CHILD_REMOVED:
+                String name = ZKPaths.getNodeFromPath(event.getData().getPath());
+                names.remove(name.toLowerCase(Locale.ROOT), name);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void add(String path) {
+        String name = ZKPaths.getNodeFromPath(path);
+        names.put(name.toLowerCase(Locale.ROOT), name);
+    }
+}
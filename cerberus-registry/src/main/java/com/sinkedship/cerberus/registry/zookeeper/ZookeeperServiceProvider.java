@@ -1,30 +1,42 @@
 package com.sinkedship.cerberus.registry.zookeeper;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sinkedship.cerberus.commons.ServiceMetaData;
+import com.sinkedship.cerberus.commons.exception.CerberusException;
 import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
 import com.sinkedship.cerberus.core.Service;
-import com.sinkedship.cerberus.core.api.Discoverer;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
+import com.sinkedship.cerberus.core.ServiceSnapshotStore;
 import com.sinkedship.cerberus.core.api.Provider;
+import com.sinkedship.cerberus.strategy.RoundRobinStrategy;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.x.discovery.ServiceCache;
 import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceInstance;
-import org.apache.curator.x.discovery.ServiceProvider;
-import org.apache.curator.x.discovery.strategies.RoundRobinStrategy;
+import org.apache.curator.x.discovery.details.ServiceCacheListener;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 
 /**
  * Provider implementation for zookeeper, using round-robin provider strategy as the default strategy.
  * <p>
- * Use curator {@link org.apache.curator.x.discovery.ServiceProvider} internally.
+ * Use curator {@link org.apache.curator.x.discovery.ServiceCache} internally,
+ * every change of a cache is published as a new {@link ServiceSnapshot} of the service.
  *
  * @author Derrick Guan
  */
@@ -32,30 +44,38 @@ public class ZookeeperServiceProvider implements Provider {
 
     private static final Logger LOGGER = LogManager.getLogger(ZookeeperServiceProvider.class);
 
-    private final ConcurrentMap<String, ServiceProvider<Service>> providerMap;
+    // service name -> future of its started cache, a future is put by the first lookup of each service
+    private final ConcurrentMap<String, CompletableFuture<ServiceCache<Service>>> serviceCacheMap;
 
     private final ConcurrentMap<Class<?>, String> clzNameMap;
 
     private final ServiceDiscovery<Service> curatorServiceDiscovery;
 
-    private final Discoverer discoverer;
+    private final ZookeeperServiceNameIndex nameIndex;
 
-    public ZookeeperServiceProvider(ServiceDiscovery<Service> curatorServiceDiscovery, Discoverer discoverer) {
-        providerMap = Maps.newConcurrentMap();
+    private final ServiceSnapshotStore snapshotStore;
+
+    private final Provider.Strategy strategy = new RoundRobinStrategy();
+
+    private final ExecutorService warmUpExecutor;
+
+    public ZookeeperServiceProvider(ServiceDiscovery<Service> curatorServiceDiscovery,
+                                    CuratorFramework curatorClient, String basePath) {
+        serviceCacheMap = Maps.newConcurrentMap();
         clzNameMap = Maps.newConcurrentMap();
         this.curatorServiceDiscovery = curatorServiceDiscovery;
-        this.discoverer = discoverer;
+        this.nameIndex = new ZookeeperServiceNameIndex(curatorClient, basePath);
+        this.snapshotStore = new ServiceSnapshotStore(this::loadInstances);
+        this.warmUpExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("cerberus-zookeeper-warm-up-%d")
+                .setDaemon(true)
+                .build());
+        nameIndex.start();
     }
 
     @Override
     public Optional<Service> get(ServiceMetaData metaData) {
-        try {
-            return getWithCuratorServiceProvider(metaData.getServiceIdentifier());
-        } catch (Throwable t) {
-            LOGGER.error("Cannot resolve service instance from zookeeper with service identifier:{}, due to:",
-                    metaData.getServiceIdentifier(), t);
-            return Optional.empty();
-        }
+        return strategy.choose(snapshotStore.get(metaData.getServiceIdentifier()).getInstances());
     }
 
     @Override
@@ -65,67 +85,191 @@ public class ZookeeperServiceProvider implements Provider {
 
     @Override
     public Optional<Service> get(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return strategy.choose(getAll(targetClass, asyncSuffixSupplier));
+    }
+
+    @Override
+    public List<Service> getAll(ServiceMetaData metaData) {
+        return snapshotStore.get(metaData.getServiceIdentifier()).getInstances();
+    }
+
+    @Override
+    public List<Service> getAll(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        String serviceName = resolveServiceName(targetClass, asyncSuffixSupplier);
+        if (StringUtils.isBlank(serviceName)) {
+            return new ArrayList<>();
+        }
+        return snapshotStore.get(serviceName).getInstances();
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(ServiceMetaData metaData) {
+        return snapshotStore.source(metaData.getServiceIdentifier());
+    }
+
+    @Override
+    public Supplier<ServiceSnapshot> snapshotSource(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+        return new LazySnapshotSource(targetClass, asyncSuffixSupplier);
+    }
+
+    /**
+     * Start curator service caches of services in parallel.
+     *
+     * @param serviceIdentifiers identifiers of services to prepare
+     *
+     * @return a future which completes once caches of all services are started
+     */
+    @Override
+    public CompletableFuture<Void> warmUp(Collection<String> serviceIdentifiers) {
+        List<CompletableFuture<?>> futures = new ArrayList<>(serviceIdentifiers.size());
+        for (String identifier : serviceIdentifiers) {
+            String serviceName = nameIndex.resolve(identifier).orElse(identifier);
+            futures.add(CompletableFuture.supplyAsync(() -> getServiceCacheFuture(serviceName), warmUpExecutor)
+                    .thenCompose(future -> future)
+                    .thenRun(() -> snapshotStore.get(serviceName)));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    private String resolveServiceName(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
         // find service name associated with target class
-        String serviceName = null;
-        if (clzNameMap.containsKey(targetClass)) {
-            serviceName = clzNameMap.get(targetClass);
-        } else {
-            Map<String, List<Service>> allServicesMap = discoverer.findAll();
-            for (Map.Entry<String, List<Service>> entry : allServicesMap.entrySet()) {
-                if (!entry.getValue().isEmpty() &&
-                        entry.getValue().get(0).getIdentifier().equalsIgnoreCase(
-                                CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(),
-                                        asyncSuffixSupplier))) {
-                    serviceName = entry.getKey();
-                    clzNameMap.putIfAbsent(targetClass, serviceName);
-                    break;
-                }
+        String serviceName = clzNameMap.get(targetClass);
+        if (serviceName == null) {
+            Optional<String> resolved = nameIndex.resolve(
+                    CerberusStringUtils.stripAsyncSuffix(targetClass.getCanonicalName(), asyncSuffixSupplier));
+            if (resolved.isPresent()) {
+                serviceName = resolved.get();
+                clzNameMap.putIfAbsent(targetClass, serviceName);
             }
         }
-        if (StringUtils.isBlank(serviceName)) {
-            return Optional.empty();
-        } else {
-            try {
-                return getWithCuratorServiceProvider(serviceName);
-            } catch (Throwable t) {
-                LOGGER.error("Cannot resolve service instance from zookeeper with target class:{}, due to:",
-                        targetClass.getCanonicalName(), t);
-                return Optional.empty();
-            }
+        return serviceName;
+    }
+
+    private List<Service> loadInstances(String serviceName) {
+        try {
+            return toServices(getServiceCacheFuture(serviceName).get().getInstances());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CerberusException("Interrupted while resolving service instances from zookeeper " +
+                    "with service name:" + serviceName, e);
+        } catch (ExecutionException e) {
+            throw new CerberusException("Cannot resolve service instances from zookeeper with service name:"
+                    + serviceName, e.getCause());
         }
     }
 
-    private Optional<Service> getWithCuratorServiceProvider(String serviceName) throws Exception {
-        ServiceProvider<Service> curatorProvider = providerMap.get(serviceName);
-        if (curatorProvider == null) {
-            synchronized (providerMap) {
-                curatorProvider = providerMap.get(serviceName);
-                if (curatorProvider == null) {
-                    curatorProvider = curatorServiceDiscovery.serviceProviderBuilder()
-                            .serviceName(serviceName)
-                            .providerStrategy(new RoundRobinStrategy<>())
-                            .build();
-                    ServiceProvider<Service> former = providerMap.putIfAbsent(serviceName, curatorProvider);
-                    if (former != null) {
-                        // should probably not happen, but it does,
-                        // let's close it to prevent memory leaks.
-                        former.close();
-                    }
-                    curatorProvider.start();
-                }
-            }
+    /**
+     * Get the future of the started cache of a service, the first caller of each service builds and
+     * starts the cache while others just wait for the future, so that a service which is slow to start
+     * does not block lookups of other services.
+     */
+    private CompletableFuture<ServiceCache<Service>> getServiceCacheFuture(String serviceName) {
+        CompletableFuture<ServiceCache<Service>> future = serviceCacheMap.get(serviceName);
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture<ServiceCache<Service>> created = new CompletableFuture<>();
+        future = serviceCacheMap.putIfAbsent(serviceName, created);
+        if (future != null) {
+            return future;
+        }
+        ServiceCache<Service> serviceCache = curatorServiceDiscovery.serviceCacheBuilder()
+                .name(serviceName)
+                .build();
+        serviceCache.addListener(new SnapshotPublisher(serviceName, serviceCache));
+        try {
+            serviceCache.start();
+            created.complete(serviceCache);
+        } catch (Throwable t) {
+            // forget the failed one so that the next lookup tries again
+            serviceCacheMap.remove(serviceName, created);
+            closeQuietly(serviceCache);
+            created.completeExceptionally(t);
         }
-        ServiceInstance<Service> instance = curatorProvider.getInstance();
-        return instance == null ? Optional.empty() : Optional.of(instance.getPayload());
+        return created;
+    }
+
+    private static List<Service> toServices(List<ServiceInstance<Service>> instances) {
+        List<Service> ret = new ArrayList<>(instances.size());
+        for (ServiceInstance<Service> instance : instances) {
+            ret.add(instance.getPayload());
+        }
+        return ret;
     }
 
     protected void close() {
-        for (ServiceProvider<Service> provider : providerMap.values()) {
-            try {
-                provider.close();
-            } catch (IOException e) {
-                LOGGER.error("Try to close curator service provider with error:", e);
+        nameIndex.close();
+        warmUpExecutor.shutdownNow();
+        for (CompletableFuture<ServiceCache<Service>> future : serviceCacheMap.values()) {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                closeQuietly(future.join());
+            }
+        }
+    }
+
+    private static void closeQuietly(ServiceCache<Service> serviceCache) {
+        try {
+            serviceCache.close();
+        } catch (IOException e) {
+            LOGGER.error("Try to close curator service cache with error:", e);
+        }
+    }
+
+    /**
+     * Publish a new snapshot of a service whenever its curator cache changes.
+     */
+    private final class SnapshotPublisher implements ServiceCacheListener {
+
+        private final String serviceName;
+
+        private final ServiceCache<Service> serviceCache;
+
+        SnapshotPublisher(String serviceName, ServiceCache<Service> serviceCache) {
+            this.serviceName = serviceName;
+            this.serviceCache = serviceCache;
+        }
+
+        @Override
+        public void cacheChanged() {
+            snapshotStore.publish(serviceName, toServices(serviceCache.getInstances()));
+        }
+
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+            LOGGER.debug("Connection state of service cache:{} changed to {}", serviceName, newState);
+        }
+    }
+
+    /**
+     * Snapshot source of a target class, resolves service name of the class on demand
+     * since the service may not be registered yet.
+     */
+    private final class LazySnapshotSource implements Supplier<ServiceSnapshot> {
+
+        private final Class<?> targetClass;
+
+        private final Supplier<String> asyncSuffixSupplier;
+
+        private volatile Supplier<ServiceSnapshot> source;
+
+        LazySnapshotSource(Class<?> targetClass, Supplier<String> asyncSuffixSupplier) {
+            this.targetClass = targetClass;
+            this.asyncSuffixSupplier = asyncSuffixSupplier;
+        }
+
+        @Override
+        public ServiceSnapshot get() {
+            Supplier<ServiceSnapshot> current = source;
+            if (current == null) {
+                String serviceName = resolveServiceName(targetClass, asyncSuffixSupplier);
+                if (StringUtils.isBlank(serviceName)) {
+                    return ServiceSnapshot.empty(CerberusStringUtils.stripAsyncSuffix(
+                            targetClass.getCanonicalName(), asyncSuffixSupplier));
+                }
+                current = snapshotStore.source(serviceName);
+                source = current;
             }
+            return current.get();
         }
     }
 }
@@ -2,6 +2,7 @@ package com.sinkedship.cerberus.registry.zookeeper;
 
 import com.sinkedship.cerberus.core.Service;
 import com.sinkedship.cerberus.core.api.Registrar;
+import com.sinkedship.cerberus.registry.RegistryExecutors;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceInstance;
@@ -9,6 +10,10 @@ import org.apache.curator.x.discovery.ServiceType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Registrar implementation for zookeeper data center, using curator framework.
  *
@@ -20,6 +25,9 @@ public class ZookeeperServiceRegistrar implements Registrar {
 
     private final ServiceDiscovery<Service> serviceDiscovery;
 
+    private final ExecutorService registerExecutor =
+            RegistryExecutors.newRegisterExecutor("cerberus-zookeeper-registrar-%d");
+
     public ZookeeperServiceRegistrar(ServiceDiscovery<Service> serviceDiscovery) {
         this.serviceDiscovery = serviceDiscovery;
     }
@@ -43,11 +51,16 @@ public class ZookeeperServiceRegistrar implements Registrar {
         }
     }
 
+    /**
+     * Register a service in a registration thread, so that registrations of many services run in parallel.
+     */
     @Override
-    public <S extends Service> boolean register(S service, long timeout) {
-        // Temporarily not supported
-        throw new UnsupportedOperationException(
-                "ZookeeperServiceRegistrar does not support registering service with timeout by now");
+    public <S extends Service> CompletableFuture<Boolean> registerAsync(S service) {
+        try {
+            return CompletableFuture.supplyAsync(() -> register(service), registerExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(register(service));
+        }
     }
 
     @Override
@@ -70,6 +83,10 @@ public class ZookeeperServiceRegistrar implements Registrar {
         }
     }
 
+    void close() {
+        registerExecutor.shutdownNow();
+    }
+
     private ServiceInstance<Service> buildServiceInstance(Service service) {
 
         // Not going to use ServiceInstanceBuilder to build an actual instance,
@@ -5,6 +5,9 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig;
 import com.sinkedship.cerberus.bootstrap.config.CerberusServerConfig;
+import com.sinkedship.cerberus.bootstrap.metrics.MetricsHttpServer;
+import com.sinkedship.cerberus.bootstrap.metrics.ServerMetrics;
+import com.sinkedship.cerberus.bootstrap.netty.transport.CerberusNettyServerTransport;
 import com.sinkedship.cerberus.bootstrap.netty.transport.CerberusNettyServerTransportFactory;
 import com.sinkedship.cerberus.commons.DataCenter;
 import com.sinkedship.cerberus.commons.ServiceMetaData;
@@ -20,13 +23,22 @@ import io.airlift.drift.codec.ThriftCodecManager;
 import io.airlift.drift.server.DriftServer;
 import io.airlift.drift.server.DriftService;
 import io.airlift.drift.server.stats.JmxMethodInvocationStatsFactory;
+import io.netty.buffer.ByteBufAllocator;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.weakref.jmx.MBeanExporter;
 
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -39,6 +51,8 @@ public class CerberusServerBootstrap {
 
     private static final Logger LOGGER = LogManager.getLogger(CerberusServerBootstrap.class);
 
+    private static final String EXECUTION_STATS_NAME = "com.sinkedship.cerberus.bootstrap:name=ServerExecution,port=";
+
     private final Set<DriftServiceWrapper> wrappers;
 
     private final CerberusServerConfig config;
@@ -49,6 +63,16 @@ public class CerberusServerBootstrap {
 
     private final RegisterFailureHandler<CerberusService> failureHandler;
 
+    private final List<CerberusService> registeredServices = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+
+    private volatile DriftServer server;
+
+    private final ServerMetrics metrics;
+
+    private volatile MetricsHttpServer metricsHttpServer;
+
     public CerberusServerBootstrap(CerberusServerConfig config,
                                    Set<DriftServiceWrapper> services,
                                    Registry registry) {
@@ -73,6 +97,7 @@ public class CerberusServerBootstrap {
         this.registry = registry;
         this.successHandler = successHandler;
         this.failureHandler = failureHandler;
+        this.metrics = new ServerMetrics(config.getBootConfig().getMetricsWindow());
     }
 
     public static class Builder {
@@ -189,29 +214,98 @@ public class CerberusServerBootstrap {
             // throws it to caller
             throw new CerberusException(e);
         }
+        if (config.getBootConfig().shutdownHookEnabled()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "cerberus-server-shutdown"));
+        }
         registerService(config, wrappers);
     }
 
+    /**
+     * Shut down gracefully, un-register all the registered services from data center first and wait for
+     * the propagation delay, then stop accepting connections, drain requests in flight up to the drain timeout,
+     * and finally close the registry.
+     * <p>
+     * Calling it more than once has no effect.
+     */
+    public void shutdown() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return;
+        }
+        CerberusServerBootConfig bootConfig = config.getBootConfig();
+        if (!registeredServices.isEmpty()) {
+            Registrar registrar = registry.registrar();
+            for (CerberusService service : registeredServices) {
+                unregister(registrar, service);
+            }
+            registeredServices.clear();
+            // keep serving until clients stop sending requests to this server
+            long delay = bootConfig.getShutdownPropagationDelay().toMillis();
+            if (delay > 0) {
+                LOGGER.info("Services un-registered, wait {}ms before closing the server", delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        DriftServer s = server;
+        if (s != null) {
+            s.shutdown();
+        }
+        MetricsHttpServer httpServer = metricsHttpServer;
+        if (httpServer != null) {
+            httpServer.close();
+        }
+        metrics.close();
+        try {
+            registry.close();
+        } catch (IOException e) {
+            LOGGER.error("Error raises while trying to close registry", e);
+        }
+        LOGGER.info("Cerberus server shut down");
+    }
+
     // actual thrift services start-up
     private void run(CerberusServerBootConfig bootConfig, Set<DriftServiceWrapper> wrappers) {
         Set<DriftService> services = wrappers.stream().map(DriftServiceWrapper::getDriftService)
                 .collect(Collectors.toSet());
+        MBeanExporter exporter = new MBeanExporter(ManagementFactory.getPlatformMBeanServer());
         DriftServer server = new DriftServer(
-                new CerberusNettyServerTransportFactory(bootConfig),
+                new CerberusNettyServerTransportFactory(bootConfig, ByteBufAllocator.DEFAULT, metrics),
                 new ThriftCodecManager(),
-                new JmxMethodInvocationStatsFactory(new MBeanExporter(ManagementFactory.getPlatformMBeanServer())),
+                new JmxMethodInvocationStatsFactory(exporter),
                 ImmutableSet.copyOf(services),
                 ImmutableSet.of()
         );
         server.start();
+        this.server = server;
+
+        if (server.getServerTransport() instanceof CerberusNettyServerTransport) {
+            CerberusNettyServerTransport transport = (CerberusNettyServerTransport) server.getServerTransport();
+            String name = EXECUTION_STATS_NAME + transport.getPort();
+            try {
+                exporter.export(name, transport.getExecutionStats());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Cannot export server execution stats as:{}", name, e);
+            }
+        }
+        if (bootConfig.getMetricsPort() > 0) {
+            metricsHttpServer = new MetricsHttpServer(metrics, bootConfig.getHost(), bootConfig.getMetricsPort());
+        }
+    }
+
+    /**
+     * @return metrics of the server, which are recorded once the server boots
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
     }
 
     private void registerService(CerberusServerConfig config, Set<DriftServiceWrapper> wrappers) {
         Registrar registrar = registry.registrar();
 
-        List<CerberusService> successList = new ArrayList<>();
-        List<CerberusService> failureList = new ArrayList<>();
-
+        List<CerberusService> services = new ArrayList<>();
         for (DriftServiceWrapper wrapper : wrappers) {
             Object svr = wrapper.getDriftService().getService();
             Set<Class<?>> targetThriftClassSet = ReflectionUtils.getEffectiveClassByAnnotation(
@@ -236,12 +330,59 @@ public class CerberusServerBootstrap {
                     .host(config.getDataCenterConfig().getRegisterHost().orElse(""))
                     .port(config.getBootConfig().getPort())
                     .build();
-            if (registrar.register(cerberusService)) {
-                successList.add(cerberusService);
+            services.add(cerberusService);
+        }
+
+        // register all the services at once, which registrars may batch, under an overall deadline
+        Duration timeout = config.getBootConfig().getRegisterTimeout();
+        Map<CerberusService, CompletableFuture<Boolean>> futures;
+        try {
+            futures = registrar.registerAll(services);
+        } catch (RuntimeException e) {
+            futures = new LinkedHashMap<>();
+            for (CerberusService service : services) {
+                CompletableFuture<Boolean> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                futures.put(service, future);
+            }
+        }
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.error("Cannot register all the services within {}ms", timeout.toMillis());
+        } catch (ExecutionException e) {
+            // failures are collected per service below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while trying to register services");
+        }
+
+        List<CerberusService> successList = new ArrayList<>();
+        List<CerberusService> failureList = new ArrayList<>();
+        for (Map.Entry<CerberusService, CompletableFuture<Boolean>> entry : futures.entrySet()) {
+            CerberusService service = entry.getKey();
+            CompletableFuture<Boolean> future = entry.getValue();
+            if (!future.isDone()) {
+                failureList.add(service);
+                // reported as a failure already, so take it down again if it's registered after the deadline
+                future.thenAccept(registered -> {
+                    if (registered) {
+                        LOGGER.warn("Service:{} registered after deadline, un-register it", service);
+                        unregister(registrar, service);
+                    }
+                });
+            } else if (future.isCompletedExceptionally()) {
+                future.whenComplete((ignored, t) ->
+                        LOGGER.error("Error raises while trying to register service:{}", service, t));
+                failureList.add(service);
+            } else if (future.getNow(false)) {
+                successList.add(service);
             } else {
-                failureList.add(cerberusService);
+                failureList.add(service);
             }
         }
+        registeredServices.addAll(successList);
         if (successHandler != null) {
             successHandler.onSuccess(successList);
         }
@@ -250,4 +391,13 @@ public class CerberusServerBootstrap {
         }
     }
 
+    private static void unregister(Registrar registrar, CerberusService service) {
+        try {
+            if (!registrar.unregister(service)) {
+                LOGGER.warn("Cannot un-register service:{}", service);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Error raises while trying to un-register service:{}", service, e);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.sinkedship.cerberus.bootstrap.config;
 
 import com.google.common.base.Preconditions;
+import com.sinkedship.cerberus.bootstrap.limit.ConcurrencyLimit;
 import io.airlift.drift.transport.netty.server.DriftNettyServerConfig;
 import com.sinkedship.cerberus.commons.utils.HostAndPortUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -9,18 +10,81 @@ import java.io.File;
 import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * @author Derrick Guan
  */
 public class CerberusServerBootConfig {
 
+    /**
+     * Netty transport of the server, native transports fall back to NIO when they are not available.
+     * <p>
+     * Native transports save syscalls and produce less garbage on I/O threads,
+     * and support SO_REUSEPORT which allows binding multiple acceptors to the same port.
+     */
+    public enum TransportType {
+        // java NIO, available everywhere
+        NIO,
+        // linux native epoll
+        EPOLL,
+        // BSD/macOS native kqueue
+        KQUEUE,
+        // the native transport of the current platform if any, otherwise NIO
+        AUTO
+    }
+
+    /**
+     * How invocations of thrift methods are executed.
+     */
+    public enum ExecutionMode {
+        // inline on the channel's event loop, only for handlers which never block
+        EVENT_LOOP,
+        // on a thread of a group of logic threads which every channel is pinned to,
+        // a slow invocation delays all the later requests of the channels sharing the thread, the default
+        CHANNEL_PINNED,
+        // every request is dispatched to a shared work-stealing pool of logic threads, so slow invocations
+        // hold up no other requests
+        WORK_STEALING,
+        // every request runs on its own virtual thread, falls back to WORK_STEALING if virtual threads
+        // are not supported by the running JDK
+        VIRTUAL_THREADS
+    }
+
     private String host = HostAndPortUtils.getDefaultHost();
 
     private DriftNettyServerConfig driftServerConfig;
 
     private int logicThreadCount = 200;
 
+    private ExecutionMode executionMode = ExecutionMode.CHANNEL_PINNED;
+
+    // port of the metrics endpoint, 0 means no endpoint
+    private int metricsPort = 0;
+
+    private Duration metricsWindow = Duration.ofMinutes(1);
+
+    // supplies the concurrency limit of each thrift method, null means no limit
+    private Supplier<ConcurrencyLimit> concurrencyLimitSupplier;
+
+    private Duration registerTimeout = Duration.ofSeconds(30);
+
+    private Duration shutdownPropagationDelay = Duration.ofSeconds(5);
+
+    private Duration shutdownDrainTimeout = Duration.ofSeconds(30);
+
+    private boolean shutdownHookEnabled = true;
+
+    private TransportType transportType = TransportType.NIO;
+
+    private int acceptorCount = 1;
+
+    private boolean tcpNoDelay = true;
+
+    private boolean tcpQuickAck = false;
+
+    private boolean epollEdgeTriggered = true;
+
     public CerberusServerBootConfig() {
         driftServerConfig = new DriftNettyServerConfig();
         this.setPort(HostAndPortUtils.getAvailablePort());
@@ -179,7 +243,239 @@ public class CerberusServerBootConfig {
         return logicThreadCount;
     }
 
+    /**
+     * Set the number of logic threads of {@link ExecutionMode#CHANNEL_PINNED} mode,
+     * or the parallelism of {@link ExecutionMode#WORK_STEALING} mode.
+     *
+     * @param logicThreadCount number of logic threads
+     */
     public void setLogicThreadCount(int logicThreadCount) {
         this.logicThreadCount = logicThreadCount;
     }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Set how invocations of thrift methods are executed, {@link ExecutionMode#CHANNEL_PINNED} by default.
+     *
+     * @param executionMode execution mode
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setExecutionMode(ExecutionMode executionMode) {
+        Preconditions.checkNotNull(executionMode, "execution mode cannot be null");
+        this.executionMode = executionMode;
+        return this;
+    }
+
+    public Supplier<ConcurrencyLimit> getConcurrencyLimitSupplier() {
+        return concurrencyLimitSupplier;
+    }
+
+    /**
+     * Set the supplier of concurrency limits, a new limit is supplied for each thrift method.
+     * Invocations beyond the limit are rejected immediately with an overloaded error,
+     * which cerberus clients fail over to another server on.
+     * <p>
+     * Requests are admitted once they reach a logic thread, so in {@link ExecutionMode#CHANNEL_PINNED} mode
+     * they have already waited behind other requests of the same thread, and that wait is neither bounded
+     * nor seen by the limit. Use {@link ExecutionMode#WORK_STEALING} or {@link ExecutionMode#VIRTUAL_THREADS}
+     * to reject requests before they queue.
+     *
+     * @param concurrencyLimitSupplier supplier of limits, e.g. {@code GradientLimit::new}, or null for no limit
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setConcurrencyLimitSupplier(Supplier<ConcurrencyLimit> concurrencyLimitSupplier) {
+        this.concurrencyLimitSupplier = concurrencyLimitSupplier;
+        return this;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Set the port of the HTTP endpoint which serves server metrics in prometheus text format at /metrics,
+     * the endpoint binds the same host as the server.
+     *
+     * @param metricsPort port of the metrics endpoint, 0 to disable the endpoint
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setMetricsPort(int metricsPort) {
+        Preconditions.checkArgument(metricsPort == 0 || (metricsPort >= HostAndPortUtils.PORT_RANGE_MIN &&
+                        metricsPort <= HostAndPortUtils.PORT_RANGE_MAX),
+                "metrics port out of range, should be 0 or in [1024, 65535]");
+        this.metricsPort = metricsPort;
+        return this;
+    }
+
+    public Duration getMetricsWindow() {
+        return metricsWindow;
+    }
+
+    /**
+     * Set the window over which latency percentiles of server metrics are computed.
+     *
+     * @param metricsWindow window of latency percentiles
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setMetricsWindow(Duration metricsWindow) {
+        Preconditions.checkNotNull(metricsWindow, "metrics window cannot be null");
+        Preconditions.checkArgument(!metricsWindow.isNegative() && !metricsWindow.isZero(),
+                "metrics window must be positive");
+        this.metricsWindow = metricsWindow;
+        return this;
+    }
+
+    public Duration getRegisterTimeout() {
+        return registerTimeout;
+    }
+
+    /**
+     * Set the overall deadline of registering all services to data center at boot,
+     * services not registered within the deadline are reported as failures.
+     *
+     * @param registerTimeout deadline of registrations
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setRegisterTimeout(Duration registerTimeout) {
+        Preconditions.checkNotNull(registerTimeout, "register timeout cannot be null");
+        Preconditions.checkArgument(!registerTimeout.isNegative() && !registerTimeout.isZero(),
+                "register timeout must be positive");
+        this.registerTimeout = registerTimeout;
+        return this;
+    }
+
+    public Duration getShutdownPropagationDelay() {
+        return shutdownPropagationDelay;
+    }
+
+    /**
+     * Set how long to keep serving after services are un-registered at shutdown,
+     * so that the un-registration reaches all clients before the server stops accepting connections.
+     *
+     * @param shutdownPropagationDelay delay between un-registration and closing the server channel
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setShutdownPropagationDelay(Duration shutdownPropagationDelay) {
+        Preconditions.checkNotNull(shutdownPropagationDelay, "shutdown propagation delay cannot be null");
+        Preconditions.checkArgument(!shutdownPropagationDelay.isNegative(),
+                "shutdown propagation delay cannot be negative");
+        this.shutdownPropagationDelay = shutdownPropagationDelay;
+        return this;
+    }
+
+    public Duration getShutdownDrainTimeout() {
+        return shutdownDrainTimeout;
+    }
+
+    /**
+     * Set the max time to wait for requests in flight to finish at shutdown,
+     * requests still in flight after the timeout are dropped.
+     *
+     * @param shutdownDrainTimeout max time of draining requests in flight
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setShutdownDrainTimeout(Duration shutdownDrainTimeout) {
+        Preconditions.checkNotNull(shutdownDrainTimeout, "shutdown drain timeout cannot be null");
+        Preconditions.checkArgument(!shutdownDrainTimeout.isNegative(),
+                "shutdown drain timeout cannot be negative");
+        this.shutdownDrainTimeout = shutdownDrainTimeout;
+        return this;
+    }
+
+    public boolean shutdownHookEnabled() {
+        return shutdownHookEnabled;
+    }
+
+    /**
+     * Set whether to shut down gracefully in a JVM shutdown hook, enabled by default.
+     *
+     * @param shutdownHookEnabled true to shut down gracefully when the JVM exits
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig enableShutdownHook(boolean shutdownHookEnabled) {
+        this.shutdownHookEnabled = shutdownHookEnabled;
+        return this;
+    }
+
+    public TransportType getTransportType() {
+        return transportType;
+    }
+
+    public CerberusServerBootConfig setTransportType(TransportType transportType) {
+        Preconditions.checkNotNull(transportType, "transport type cannot be null");
+        this.transportType = transportType;
+        return this;
+    }
+
+    public int getAcceptorCount() {
+        return acceptorCount;
+    }
+
+    /**
+     * Set the number of server channels bound to the same port with SO_REUSEPORT,
+     * so that the kernel spreads connections over them. Only takes effect with native transports,
+     * and it should not be greater than io thread count.
+     *
+     * @param acceptorCount number of acceptors
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setAcceptorCount(int acceptorCount) {
+        Preconditions.checkArgument(acceptorCount > 0, "acceptor count must be positive");
+        this.acceptorCount = acceptorCount;
+        return this;
+    }
+
+    public boolean tcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public CerberusServerBootConfig setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    public boolean tcpQuickAck() {
+        return tcpQuickAck;
+    }
+
+    /**
+     * Set TCP_QUICKACK of accepted connections, only takes effect with epoll transport.
+     *
+     * @param tcpQuickAck true to send ACKs immediately rather than delayed
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setTcpQuickAck(boolean tcpQuickAck) {
+        this.tcpQuickAck = tcpQuickAck;
+        return this;
+    }
+
+    public boolean epollEdgeTriggered() {
+        return epollEdgeTriggered;
+    }
+
+    /**
+     * Set whether epoll transport works in edge-triggered mode, which is the default,
+     * or in level-triggered mode. Only takes effect with epoll transport.
+     *
+     * @param epollEdgeTriggered true for edge-triggered mode, false for level-triggered mode
+     *
+     * @return this config
+     */
+    public CerberusServerBootConfig setEpollEdgeTriggered(boolean epollEdgeTriggered) {
+        this.epollEdgeTriggered = epollEdgeTriggered;
+        return this;
+    }
 }
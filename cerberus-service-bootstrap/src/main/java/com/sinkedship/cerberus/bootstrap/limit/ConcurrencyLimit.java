@@ -0,0 +1,27 @@
+package com.sinkedship.cerberus.bootstrap.limit;
+
+/**
+ * Limit of invocations of a thrift method which a server executes concurrently,
+ * invocations beyond the limit are rejected immediately as overloaded.
+ * <p>
+ * Adaptive implementations adjust the limit with samples of finished invocations.
+ *
+ * @author Derrick Guan
+ */
+public interface ConcurrencyLimit {
+
+    /**
+     * @return current limit of concurrent invocations
+     */
+    int getLimit();
+
+    /**
+     * Called when an invocation admitted by the limit finished.
+     *
+     * @param rttNanos time in nanoseconds from admission to the end of the invocation
+     * @param inFlight number of invocations in flight when the invocation was admitted
+     * @param dropped  whether the invocation timed out or was cancelled, which is a sign of overload
+     */
+    default void onSample(long rttNanos, int inFlight, boolean dropped) {
+    }
+}
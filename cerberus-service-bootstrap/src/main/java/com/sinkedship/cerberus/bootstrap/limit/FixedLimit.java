@@ -0,0 +1,23 @@
+package com.sinkedship.cerberus.bootstrap.limit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A static {@link ConcurrencyLimit}.
+ *
+ * @author Derrick Guan
+ */
+public class FixedLimit implements ConcurrencyLimit {
+
+    private final int limit;
+
+    public FixedLimit(int limit) {
+        Preconditions.checkArgument(limit > 0, "limit must be positive");
+        this.limit = limit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+}
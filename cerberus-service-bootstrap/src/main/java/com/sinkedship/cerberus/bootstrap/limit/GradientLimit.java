@@ -0,0 +1,86 @@
+package com.sinkedship.cerberus.bootstrap.limit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An adaptive {@link ConcurrencyLimit} driven by the gradient between the long-term average latency
+ * and the latency of every finished invocation.
+ * <p>
+ * While latencies are not greater than the long-term average the limit grows by a queue allowance of
+ * square root of itself, once latencies rise above the average the limit shrinks proportionally,
+ * by half at most for a single sample. The limit is only raised when it's actually used, i.e. at least half
+ * of it is in flight, so an idle server does not inflate its limit.
+ *
+ * @author Derrick Guan
+ */
+public class GradientLimit implements ConcurrencyLimit {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+    public static final int DEFAULT_MIN_LIMIT = 1;
+
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+
+    // number of samples the long-term average latency spans
+    private static final int LONG_WINDOW = 600;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final double DROP_BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private volatile double limit;
+
+    private double longRttNanos;
+
+    public GradientLimit() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        Preconditions.checkArgument(minLimit > 0, "min limit must be positive");
+        Preconditions.checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                "initial limit must be in [min limit, max limit]");
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (dropped) {
+            limit = clamp(limit * DROP_BACKOFF_RATIO);
+            return;
+        }
+        if (rttNanos <= 0) {
+            return;
+        }
+        if (longRttNanos <= 0) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+        }
+        // recover quickly from a long-term average inflated by a past overload
+        if (longRttNanos > rttNanos * 2) {
+            longRttNanos *= 0.95;
+        }
+        if (inFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
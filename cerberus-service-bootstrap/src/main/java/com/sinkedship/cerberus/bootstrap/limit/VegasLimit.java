@@ -0,0 +1,92 @@
+package com.sinkedship.cerberus.bootstrap.limit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An adaptive {@link ConcurrencyLimit} modeled on TCP Vegas, which estimates the queue built up in the server
+ * as {@code limit * (1 - noLoadRtt / rtt)}, where the no-load latency is the minimum latency observed.
+ * <p>
+ * The limit grows fast while the estimated queue is tiny, grows slowly while it's below alpha,
+ * shrinks once it exceeds beta, and shrinks on every dropped invocation. Both alpha and beta scale with
+ * the logarithm of the limit. The no-load latency is re-probed periodically, so that a permanent change of
+ * latency(e.g. a slower dependency) is eventually accepted as the new baseline.
+ *
+ * @author Derrick Guan
+ */
+public class VegasLimit implements ConcurrencyLimit {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+    public static final int DEFAULT_MIN_LIMIT = 1;
+
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+
+    // number of samples after which the no-load latency is probed again
+    private static final int PROBE_INTERVAL = 1000;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private volatile double limit;
+
+    private long noLoadRttNanos;
+
+    private int samplesSinceProbe;
+
+    public VegasLimit() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        Preconditions.checkArgument(minLimit > 0, "min limit must be positive");
+        Preconditions.checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                "initial limit must be in [min limit, max limit]");
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        double log = Math.max(1, Math.log10(limit));
+        if (dropped) {
+            limit = clamp(limit - log);
+            return;
+        }
+        if (rttNanos <= 0) {
+            return;
+        }
+        if (++samplesSinceProbe >= PROBE_INTERVAL) {
+            samplesSinceProbe = 0;
+            noLoadRttNanos = rttNanos;
+            return;
+        }
+        if (noLoadRttNanos <= 0 || rttNanos < noLoadRttNanos) {
+            noLoadRttNanos = rttNanos;
+            return;
+        }
+        if (inFlight * 2 < limit) {
+            return;
+        }
+        double queue = Math.ceil(limit * (1 - (double) noLoadRttNanos / rttNanos));
+        double alpha = 3 * log;
+        double beta = 6 * log;
+        if (queue <= log) {
+            limit = clamp(limit + beta);
+        } else if (queue < alpha) {
+            limit = clamp(limit + log);
+        } else if (queue > beta) {
+            limit = clamp(limit - log);
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
@@ -0,0 +1,90 @@
+package com.sinkedship.cerberus.bootstrap.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram of a window, i.e. percentiles are computed over the latencies recorded in the last
+ * complete window, while the count and the sum of recorded latencies are cumulative.
+ * <p>
+ * Recording is wait-free, which is backed by HdrHistogram's {@link Recorder}.
+ *
+ * @author Derrick Guan
+ */
+public class LatencyHistogram {
+
+    // latencies beyond are recorded as the max, a request phase taking longer has long been timed out by clients
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sumNanos = new LongAdder();
+
+    private volatile Histogram lastWindow = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        recorder.recordValue(Math.min(value, HIGHEST_TRACKABLE_NANOS));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    /**
+     * @return cumulative number of recorded latencies
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return cumulative sum of recorded latencies in nanoseconds
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * @param percentile in (0, 100]
+     *
+     * @return latency in nanoseconds at the percentile of the last window
+     */
+    public long getPercentileNanos(double percentile) {
+        return lastWindow.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return max latency in nanoseconds of the last window
+     */
+    public long getMaxNanos() {
+        return lastWindow.getMaxValue();
+    }
+
+    /**
+     * @return mean latency in nanoseconds of the last window
+     */
+    public double getMeanNanos() {
+        return lastWindow.getMean();
+    }
+
+    /**
+     * @return number of latencies recorded in the last window
+     */
+    public long getWindowCount() {
+        return lastWindow.getTotalCount();
+    }
+
+    /**
+     * Completes the current window.
+     */
+    void rotate() {
+        // never recycles the last window, which may still be read
+        lastWindow = recorder.getIntervalHistogram();
+    }
+}
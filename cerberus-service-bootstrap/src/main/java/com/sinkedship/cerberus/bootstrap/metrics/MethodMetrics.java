@@ -0,0 +1,81 @@
+package com.sinkedship.cerberus.bootstrap.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a thrift method served by a cerberus server.
+ *
+ * @author Derrick Guan
+ */
+public class MethodMetrics {
+
+    /**
+     * Phases of a request, whose latencies are recorded separately.
+     */
+    public enum Phase {
+        // from the request frame being read to the arguments being decoded
+        DECODE,
+        // waiting for a logic thread, including the hop to a pinned logic thread
+        QUEUE,
+        // running the method until its result is ready
+        EXECUTION,
+        // from the result being ready to the response frame being written
+        ENCODE,
+        // from the request frame being read to the response frame being written
+        TOTAL
+    }
+
+    private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder successes = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    MethodMetrics() {
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public void recordLatency(Phase phase, long nanos) {
+        latencies.get(phase).record(nanos);
+    }
+
+    public void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void requestFinished(boolean success) {
+        inFlight.decrementAndGet();
+        if (success) {
+            successes.increment();
+        } else {
+            failures.increment();
+        }
+    }
+
+    public LatencyHistogram getLatency(Phase phase) {
+        return latencies.get(phase);
+    }
+
+    public int getInFlight() {
+        return Math.max(inFlight.get(), 0);
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    void rotate() {
+        latencies.values().forEach(LatencyHistogram::rotate);
+    }
+}
@@ -0,0 +1,76 @@
+package com.sinkedship.cerberus.bootstrap.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sinkedship.cerberus.commons.exception.CerberusException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A lightweight in-process HTTP endpoint which serves {@link ServerMetrics} in prometheus text format
+ * at {@code /metrics}, backed by the JDK's built-in HTTP server.
+ *
+ * @author Derrick Guan
+ */
+public class MetricsHttpServer implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(MetricsHttpServer.class);
+
+    public static final String PATH = "/metrics";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    public MetricsHttpServer(ServerMetrics metrics, String host, int port) {
+        Preconditions.checkNotNull(metrics, "Server metrics cannot be null");
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException e) {
+            throw new CerberusException("Cannot bind metrics endpoint at " + host + ":" + port, e);
+        }
+        executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cerberus-metrics-http-%d").setDaemon(true).build());
+        server.setExecutor(executor);
+        server.createContext(PATH, exchange -> serve(exchange, metrics));
+        server.start();
+        LOGGER.info("Metrics endpoint is serving at http://{}:{}{}", host, getPort(), PATH);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void serve(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.sinkedship.cerberus.bootstrap.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sinkedship.cerberus.bootstrap.metrics.MethodMetrics.Phase;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of a cerberus server: latencies of every phase of requests and requests in flight of each
+ * thrift method, bytes in and out of connections of each remote host, and gauges registered by the server, e.g. queue depth
+ * of logic threads.
+ * <p>
+ * Metrics can be read through this API directly, or scraped in prometheus text format via {@link #scrape()},
+ * which is what {@link MetricsHttpServer} serves.
+ *
+ * @author Derrick Guan
+ */
+public class ServerMetrics implements Closeable {
+
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    // remote host -> metrics shared by open connections of the host
+    private final ConcurrentMap<String, ConnectionMetrics> connections = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final ScheduledExecutorService rotator;
+
+    public ServerMetrics() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window over which latency percentiles are computed
+     */
+    public ServerMetrics(Duration window) {
+        Preconditions.checkNotNull(window, "Metrics window cannot be null");
+        Preconditions.checkArgument(!window.isNegative() && !window.isZero(), "Metrics window must be positive");
+        rotator = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cerberus-server-metrics-%d").setDaemon(true).build());
+        rotator.scheduleAtFixedRate(() -> methods.values().forEach(MethodMetrics::rotate),
+                window.toMillis(), window.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public MethodMetrics method(String name) {
+        MethodMetrics metrics = methods.get(name);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(name, key -> new MethodMetrics());
+        }
+        return metrics;
+    }
+
+    public Map<String, MethodMetrics> getMethods() {
+        return Collections.unmodifiableMap(methods);
+    }
+
+    /**
+     * Called when a connection is opened, connections of the same remote host share their metrics,
+     * which are kept until all of them are closed.
+     *
+     * @param remoteHost host of the remote address, without port
+     *
+     * @return metrics of the connections of the host
+     */
+    public ConnectionMetrics connectionOpened(String remoteHost) {
+        return connections.compute(remoteHost, (host, metrics) -> {
+            ConnectionMetrics ret = metrics == null ? new ConnectionMetrics() : metrics;
+            ret.open++;
+            return ret;
+        });
+    }
+
+    public void connectionClosed(String remoteHost) {
+        connections.computeIfPresent(remoteHost, (host, metrics) -> --metrics.open == 0 ? null : metrics);
+    }
+
+    /**
+     * @return metrics of open connections, keyed by remote host
+     */
+    public Map<String, ConnectionMetrics> getConnections() {
+        return Collections.unmodifiableMap(connections);
+    }
+
+    /**
+     * @return bytes read from all connections, including closed ones
+     */
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * @return bytes written to all connections, including closed ones
+     */
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Register a gauge, which replaces the gauge registered with the same name.
+     *
+     * @param name  of the gauge, in form of a prometheus metric name
+     * @param help  description of the gauge
+     * @param value supplies the current value of the gauge
+     */
+    public void registerGauge(String name, String help, LongSupplier value) {
+        Preconditions.checkArgument(name != null && name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*"),
+                "Invalid gauge name:" + name);
+        gauges.put(name, new Gauge(help, Preconditions.checkNotNull(value, "Gauge value cannot be null")));
+    }
+
+    public Map<String, Long> getGauges() {
+        Map<String, Long> ret = new TreeMap<>();
+        gauges.forEach((name, gauge) -> ret.put(name, gauge.value.getAsLong()));
+        return ret;
+    }
+
+    /**
+     * @return all metrics in prometheus text format
+     */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        Map<String, MethodMetrics> sortedMethods = new TreeMap<>(methods);
+
+        header(sb, "cerberus_server_request_latency_seconds", "summary",
+                "Latency of each phase of requests, quantiles are of the last window");
+        sortedMethods.forEach((name, metrics) -> {
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = metrics.getLatency(phase);
+                String labels = "method=\"" + escape(name) + "\",phase=\"" + phase.name().toLowerCase(Locale.ROOT) + "\"";
+                for (double quantile : QUANTILES) {
+                    sample(sb, "cerberus_server_request_latency_seconds",
+                            labels + ",quantile=\"" + quantile + "\"",
+                            seconds(histogram.getPercentileNanos(quantile * 100)));
+                }
+                sample(sb, "cerberus_server_request_latency_seconds_sum", labels,
+                        seconds(histogram.getSumNanos()));
+                sample(sb, "cerberus_server_request_latency_seconds_count", labels,
+                        String.valueOf(histogram.getCount()));
+            }
+        });
+
+        header(sb, "cerberus_server_request_latency_max_seconds", "gauge",
+                "Max latency of each phase of requests in the last window");
+        sortedMethods.forEach((name, metrics) -> {
+            for (Phase phase : Phase.values()) {
+                sample(sb, "cerberus_server_request_latency_max_seconds",
+                        "method=\"" + escape(name) + "\",phase=\"" + phase.name().toLowerCase(Locale.ROOT) + "\"",
+                        seconds(metrics.getLatency(phase).getMaxNanos()));
+            }
+        });
+
+        header(sb, "cerberus_server_requests_total", "counter", "Finished requests");
+        sortedMethods.forEach((name, metrics) -> {
+            sample(sb, "cerberus_server_requests_total", "method=\"" + escape(name) + "\",result=\"success\"",
+                    String.valueOf(metrics.getSuccesses()));
+            sample(sb, "cerberus_server_requests_total", "method=\"" + escape(name) + "\",result=\"failure\"",
+                    String.valueOf(metrics.getFailures()));
+        });
+
+        header(sb, "cerberus_server_method_in_flight_requests", "gauge", "Requests in flight of each method");
+        sortedMethods.forEach((name, metrics) -> sample(sb, "cerberus_server_method_in_flight_requests",
+                "method=\"" + escape(name) + "\"", String.valueOf(metrics.getInFlight())));
+
+        header(sb, "cerberus_server_bytes_total", "counter", "Bytes read from and written to all connections");
+        sample(sb, "cerberus_server_bytes_total", "direction=\"in\"", String.valueOf(getBytesIn()));
+        sample(sb, "cerberus_server_bytes_total", "direction=\"out\"", String.valueOf(getBytesOut()));
+
+        header(sb, "cerberus_server_connection_bytes_total", "counter",
+                "Bytes read from and written to open connections of each remote host");
+        new TreeMap<>(connections).forEach((host, metrics) -> {
+            sample(sb, "cerberus_server_connection_bytes_total",
+                    "remote_host=\"" + escape(host) + "\",direction=\"in\"", String.valueOf(metrics.getBytesIn()));
+            sample(sb, "cerberus_server_connection_bytes_total",
+                    "remote_host=\"" + escape(host) + "\",direction=\"out\"", String.valueOf(metrics.getBytesOut()));
+        });
+
+        new TreeMap<>(gauges).forEach((name, gauge) -> {
+            header(sb, name, "gauge", gauge.help);
+            sample(sb, name, null, String.valueOf(gauge.value.getAsLong()));
+        });
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        rotator.shutdownNow();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, String value) {
+        sb.append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.valueOf(nanos / 1e9);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Bytes in and out of open connections of a remote host.
+     */
+    public final class ConnectionMetrics {
+
+        private final LongAdder in = new LongAdder();
+
+        private final LongAdder out = new LongAdder();
+
+        // open connections of the host, only updated while computing the entry of the host
+        private int open;
+
+        private ConnectionMetrics() {
+        }
+
+        public void recordIn(long bytes) {
+            in.add(bytes);
+            bytesIn.add(bytes);
+        }
+
+        public void recordOut(long bytes) {
+            out.add(bytes);
+            bytesOut.add(bytes);
+        }
+
+        public long getBytesIn() {
+            return in.sum();
+        }
+
+        public long getBytesOut() {
+            return out.sum();
+        }
+    }
+
+    private static final class Gauge {
+
+        private final String help;
+
+        private final LongSupplier value;
+
+        Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
@@ -6,18 +6,23 @@ import io.airlift.drift.transport.netty.ssl.SslContextFactory;
 import io.airlift.drift.transport.server.ServerMethodInvoker;
 import io.airlift.drift.transport.server.ServerTransport;
 import com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig;
+import com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig.TransportType;
+import com.sinkedship.cerberus.bootstrap.metrics.ServerMetrics;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.unix.UnixChannelOption;
 import io.netty.handler.ssl.SslContext;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.Future;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
@@ -30,21 +35,32 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * A mimic implementation of {@link io.airlift.drift.transport.netty.server.DriftNettyServerTransport}
- * while makes a little difference that binds a local inet ipv4 address instead of an arbitrary local address.
+ * while makes a little difference that binds a local inet ipv4 address instead of an arbitrary local address,
+ * runs on native transports if selected, and drains requests in flight before shutting down.
  *
  * @author Derrick Guan
  */
 public class CerberusNettyServerTransport implements ServerTransport {
 
+    private static final Logger LOGGER = LogManager.getLogger(CerberusNettyServerTransport.class);
+
+    private static final long DRAIN_CHECK_INTERVAL_MILLIS = 50;
+
     private final ServerBootstrap bootstrap;
     private final String host;
     private final int port;
 
     private final EventLoopGroup ioGroup;
     private final EventLoopGroup workerGroup;
-    private final EventExecutorGroup logicExeGroup;
+    private final RequestExecution requestExecution;
+
+    private final InFlightRequestTracker inFlightTracker = new InFlightRequestTracker();
+
+    private final long drainTimeoutMillis;
 
-    private Channel channel;
+    private final int acceptorCount;
+
+    private final List<Channel> channels = new ArrayList<>();
 
     private final AtomicBoolean running = new AtomicBoolean();
 
@@ -53,17 +69,36 @@ public class CerberusNettyServerTransport implements ServerTransport {
     }
 
     public CerberusNettyServerTransport(ServerMethodInvoker methodInvoker, CerberusServerBootConfig configAdapter, ByteBufAllocator allocator) {
+        this(methodInvoker, configAdapter, allocator, new ServerMetrics());
+    }
+
+    public CerberusNettyServerTransport(ServerMethodInvoker methodInvoker, CerberusServerBootConfig configAdapter,
+                                        ByteBufAllocator allocator, ServerMetrics metrics) {
         requireNonNull(methodInvoker, "methodInvoker is null");
         requireNonNull(configAdapter, "config is null");
+        requireNonNull(metrics, "metrics is null");
         this.port = configAdapter.getPort();
         this.host = configAdapter.getHost();
+        this.drainTimeoutMillis = configAdapter.getShutdownDrainTimeout().toMillis();
         DriftNettyServerConfig config = configAdapter.getUnderlyingConfig();
 
-        ioGroup = new NioEventLoopGroup(configAdapter.getIoThreadCount(), threadsNamed("drift-server-io-%s"));
+        TransportType transportType = NettyTransports.resolve(configAdapter.getTransportType());
+        if (transportType != TransportType.NIO || configAdapter.getAcceptorCount() <= 1) {
+            this.acceptorCount = configAdapter.getAcceptorCount();
+        } else {
+            LOGGER.warn("Multiple acceptors require SO_REUSEPORT of native transports, bind only one with NIO");
+            this.acceptorCount = 1;
+        }
+        LOGGER.info("Cerberus server uses {} transport with {} acceptor(s)", transportType, acceptorCount);
+
+        ioGroup = NettyTransports.newEventLoopGroup(transportType,
+                configAdapter.getIoThreadCount(), threadsNamed("drift-server-io-%s"));
 
-        workerGroup = new NioEventLoopGroup(configAdapter.getWorkerThreadCount(), threadsNamed("drift-server-worker-%s"));
+        workerGroup = NettyTransports.newEventLoopGroup(transportType,
+                configAdapter.getWorkerThreadCount(), threadsNamed("drift-server-worker-%s"));
 
-        logicExeGroup = new DefaultEventExecutorGroup(configAdapter.getLogicThreadCount());
+        requestExecution = new RequestExecution(configAdapter.getExecutionMode(), configAdapter.getLogicThreadCount());
+        LOGGER.info("Cerberus server executes requests in {} mode", requestExecution.mode());
 
         Optional<Supplier<SslContext>> sslContext = Optional.empty();
         if (config.isSslEnabled()) {
@@ -81,24 +116,62 @@ public class CerberusNettyServerTransport implements ServerTransport {
             sslContext.get().get();
         }
 
+        ServerMethodInvoker invoker = requestExecution.dispatching(methodInvoker);
+        if (configAdapter.getConcurrencyLimitSupplier() != null) {
+            if (requestExecution.handlerGroup() != null) {
+                LOGGER.warn("Concurrency limits admit requests after they wait for a logic thread in {} mode, "
+                        + "use {} mode to reject them before they queue", requestExecution.mode(),
+                        CerberusServerBootConfig.ExecutionMode.WORK_STEALING);
+            }
+            // outside the dispatching, so that rejected requests never wait for a logic thread unless
+            // the handler itself runs on one
+            invoker = new LimitingServerMethodInvoker(invoker, configAdapter.getConcurrencyLimitSupplier(),
+                    requestExecution.stats());
+        }
+        // outermost, so that shed requests are counted as well
+        invoker = new MetricsServerMethodInvoker(invoker, metrics);
+
+        ServerExecutionStats stats = requestExecution.stats();
+        metrics.registerGauge("cerberus_server_in_flight_requests",
+                "Requests read whose responses have not been written", inFlightTracker::inFlight);
+        metrics.registerGauge("cerberus_server_queued_requests",
+                "Requests waiting for a logic thread", stats::getQueuedRequests);
+        metrics.registerGauge("cerberus_server_active_requests",
+                "Requests running on logic threads", stats::getActiveRequests);
+        metrics.registerGauge("cerberus_server_shed_requests",
+                "Requests rejected as overloaded", stats::getShedRequests);
+
         CerberusThriftServerInitializer serverInitializer = new CerberusThriftServerInitializer(
-                methodInvoker,
+                invoker,
                 config.getMaxFrameSize(),
                 config.getRequestTimeout(),
                 sslContext,
                 config.isAllowPlaintext(),
                 config.isAssumeClientsSupportOutOfOrderResponses(),
-                logicExeGroup
+                requestExecution.handlerGroup(),
+                requestExecution.timeoutExecutor(workerGroup),
+                inFlightTracker,
+                new RequestMetricsHandler(metrics)
                 );
 
         bootstrap = new ServerBootstrap()
                 .group(ioGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(NettyTransports.serverChannelClass(transportType))
                 .childHandler(serverInitializer)
                 .option(SO_BACKLOG, config.getAcceptBacklog())
                 .option(ALLOCATOR, allocator)
                 .childOption(SO_KEEPALIVE, true)
-                .validate();
+                .childOption(TCP_NODELAY, configAdapter.tcpNoDelay());
+        if (acceptorCount > 1) {
+            bootstrap.option(UnixChannelOption.SO_REUSEPORT, true);
+        }
+        if (transportType == TransportType.EPOLL) {
+            EpollMode epollMode = configAdapter.epollEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode)
+                    .childOption(EpollChannelOption.EPOLL_MODE, epollMode)
+                    .childOption(EpollChannelOption.TCP_QUICKACK, configAdapter.tcpQuickAck());
+        }
+        bootstrap.validate();
     }
 
     @Override
@@ -108,39 +181,69 @@ public class CerberusNettyServerTransport implements ServerTransport {
         }
 
         try {
-            channel = bootstrap.bind(host, port).sync().channel();
+            // with SO_REUSEPORT, every acceptor is a server channel bound to the same port
+            for (int i = 0; i < acceptorCount; i++) {
+                channels.add(bootstrap.bind(host, port).sync().channel());
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException("interrupted while starting", e);
         }
     }
 
+    /**
+     * Stop accepting connections, wait for requests in flight to finish up to the drain timeout,
+     * and only then stop the event loops.
+     */
     @Override
     public void shutdown() {
         try {
-            if (channel != null) {
+            for (Channel channel : channels) {
                 await(channel.close());
             }
+            drain();
         } finally {
             Future<?> ioShutdown;
             try {
                 ioShutdown = ioGroup.shutdownGracefully(0, 0, SECONDS);
             } finally {
-                await(logicExeGroup.shutdownGracefully(0, 0, SECONDS));
+                requestExecution.shutdown();
                 await(workerGroup.shutdownGracefully(0, 0, SECONDS));
             }
             await(ioShutdown);
         }
     }
 
+    public ServerExecutionStats getExecutionStats() {
+        return requestExecution.stats();
+    }
+
     public int getPort() {
-        return ((InetSocketAddress) channel.localAddress()).getPort();
+        return ((InetSocketAddress) channels.get(0).localAddress()).getPort();
     }
 
     public String getHost() {
         return host;
     }
 
+    private void drain() {
+        inFlightTracker.startDraining();
+        long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        try {
+            while (inFlightTracker.inFlight() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(DRAIN_CHECK_INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int remaining = inFlightTracker.inFlight();
+        if (remaining > 0) {
+            LOGGER.warn("{} requests are still in flight after draining for {}ms, drop them",
+                    remaining, drainTimeoutMillis);
+        }
+        inFlightTracker.closeAll();
+    }
+
     private static void await(Future<?> future) {
         try {
             future.await();
@@ -4,6 +4,7 @@ import io.airlift.drift.transport.server.ServerMethodInvoker;
 import io.airlift.drift.transport.server.ServerTransport;
 import io.airlift.drift.transport.server.ServerTransportFactory;
 import com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig;
+import com.sinkedship.cerberus.bootstrap.metrics.ServerMetrics;
 import io.netty.buffer.ByteBufAllocator;
 
 /**
@@ -18,18 +19,27 @@ public class CerberusNettyServerTransportFactory implements ServerTransportFacto
 
     private final ByteBufAllocator allocator;
 
+    private final ServerMetrics metrics;
+
     public CerberusNettyServerTransportFactory(CerberusServerBootConfig configAdapter) {
         this(configAdapter, ByteBufAllocator.DEFAULT);
     }
 
     public CerberusNettyServerTransportFactory(CerberusServerBootConfig configAdapter,
                                                ByteBufAllocator allocator) {
+        this(configAdapter, allocator, new ServerMetrics());
+    }
+
+    public CerberusNettyServerTransportFactory(CerberusServerBootConfig configAdapter,
+                                               ByteBufAllocator allocator,
+                                               ServerMetrics metrics) {
         this.configAdapter = configAdapter;
         this.allocator = allocator;
+        this.metrics = metrics;
     }
 
     @Override
     public ServerTransport createServerTransport(ServerMethodInvoker serverMethodInvoker) {
-        return new CerberusNettyServerTransport(serverMethodInvoker, configAdapter, allocator);
+        return new CerberusNettyServerTransport(serverMethodInvoker, configAdapter, allocator, metrics);
     }
 }
@@ -41,14 +41,21 @@ public class CerberusThriftProtocolDetection extends ByteToMessageDecoder {
     private final DataSize maxFrameSize;
     private final boolean assumeClientsSupportOutOfOrderResponses;
     private final EventExecutorGroup logicExecutorGroup;
-
-    public CerberusThriftProtocolDetection(ThriftServerHandler thriftServerHandler, DataSize maxFrameSize,
-                                           boolean assumeClientsSupportOutOfOrderResponses,
-                                           EventExecutorGroup logicExecutorGroup) {
+    private final InFlightRequestTracker inFlightTracker;
+    private final RequestMetricsHandler metricsHandler;
+
+    CerberusThriftProtocolDetection(ThriftServerHandler thriftServerHandler, DataSize maxFrameSize,
+                                    boolean assumeClientsSupportOutOfOrderResponses,
+                                    EventExecutorGroup logicExecutorGroup,
+                                    InFlightRequestTracker inFlightTracker,
+                                    RequestMetricsHandler metricsHandler) {
         this.maxFrameSize = requireNonNull(maxFrameSize, "maxFrameSize is null");
         this.thriftServerHandler = requireNonNull(thriftServerHandler, "thriftServerHandler is null");
         this.assumeClientsSupportOutOfOrderResponses = assumeClientsSupportOutOfOrderResponses;
-        this.logicExecutorGroup = requireNonNull(logicExecutorGroup, "logicExecutorGroup is null");;
+        // null means running thrift server handler on the channel's event loop
+        this.logicExecutorGroup = logicExecutorGroup;
+        this.inFlightTracker = requireNonNull(inFlightTracker, "inFlightTracker is null");
+        this.metricsHandler = requireNonNull(metricsHandler, "metricsHandler is null");
     }
 
     // This method is an exception to the normal reference counted rules and buffer should not be released
@@ -122,9 +129,12 @@ public class CerberusThriftProtocolDetection extends ByteToMessageDecoder {
     {
         ChannelPipeline pipeline = context.pipeline();
         transport.addFrameHandlers(pipeline, protocol, maxFrameSize, assumeClientsSupportOutOfOrderResponses);
+        // sees decoded request frames and encoded response frames
+        pipeline.addLast(inFlightTracker);
+        pipeline.addLast(metricsHandler);
         pipeline.addLast(new ResponseOrderingHandler());
         // use separate executor loop group to execute actual call
-        pipeline.addLast(logicExecutorGroup, thriftServerHandler);
+        pipeline.addLast(logicExecutorGroup, metricsHandler.binder(), thriftServerHandler);
 
         // remove(this) must be last because it triggers downstream processing of the current message
         pipeline.remove(this);
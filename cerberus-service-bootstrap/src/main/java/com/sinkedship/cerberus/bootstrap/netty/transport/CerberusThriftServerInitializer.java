@@ -10,7 +10,6 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslContext;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import io.netty.util.concurrent.EventExecutorGroup;
 
 import java.util.Optional;
@@ -29,8 +28,15 @@ class CerberusThriftServerInitializer extends ChannelInitializer<SocketChannel>
     private final boolean allowPlainText;
     private final boolean assumeClientsSupportOutOfOrderResponses;
 
+    // group which thrift server handler runs on, null to run on the channel's event loop
     private final EventExecutorGroup logicExecutorGroup;
 
+    private final ScheduledExecutorService timeoutExecutor;
+
+    private final InFlightRequestTracker inFlightTracker;
+
+    private final RequestMetricsHandler metricsHandler;
+
     CerberusThriftServerInitializer(
             ServerMethodInvoker methodInvoker,
             DataSize maxFrameSize,
@@ -38,14 +44,19 @@ class CerberusThriftServerInitializer extends ChannelInitializer<SocketChannel>
             Optional<Supplier<SslContext>> sslContextSupplier,
             boolean allowPlainText,
             boolean assumeClientsSupportOutOfOrderResponses,
-            EventExecutorGroup logicExecutorGroup
+            EventExecutorGroup logicExecutorGroup,
+            ScheduledExecutorService timeoutExecutor,
+            InFlightRequestTracker inFlightTracker,
+            RequestMetricsHandler metricsHandler
     ) {
         requireNonNull(methodInvoker, "methodInvoker is null");
         requireNonNull(maxFrameSize, "maxFrameSize is null");
         requireNonNull(requestTimeout, "requestTimeout is null");
         requireNonNull(sslContextSupplier, "sslContextSupplier is null");
         checkArgument(allowPlainText || sslContextSupplier.isPresent(), "Plain text is not allowed, but SSL is not configured");
-        requireNonNull(logicExecutorGroup, "logicExecutorGroup is null");
+        requireNonNull(timeoutExecutor, "timeoutExecutor is null");
+        requireNonNull(inFlightTracker, "inFlightTracker is null");
+        requireNonNull(metricsHandler, "metricsHandler is null");
 
         this.methodInvoker = methodInvoker;
         this.maxFrameSize = maxFrameSize;
@@ -54,11 +65,16 @@ class CerberusThriftServerInitializer extends ChannelInitializer<SocketChannel>
         this.allowPlainText = allowPlainText;
         this.assumeClientsSupportOutOfOrderResponses = assumeClientsSupportOutOfOrderResponses;
         this.logicExecutorGroup = logicExecutorGroup;
+        this.timeoutExecutor = timeoutExecutor;
+        this.inFlightTracker = inFlightTracker;
+        this.metricsHandler = metricsHandler;
     }
 
     @Override
     protected void initChannel(SocketChannel channel) {
+        inFlightTracker.track(channel);
         ChannelPipeline pipeline = channel.pipeline();
+        pipeline.addLast(metricsHandler.byteCounter());
 
         if (sslContextSupplier.isPresent()) {
             if (allowPlainText) {
@@ -70,9 +86,11 @@ class CerberusThriftServerInitializer extends ChannelInitializer<SocketChannel>
         }
 
         pipeline.addLast(new CerberusThriftProtocolDetection(
-                new ThriftServerHandler(methodInvoker, requestTimeout, logicExecutorGroup),
+                new ThriftServerHandler(methodInvoker, requestTimeout, timeoutExecutor),
                 maxFrameSize,
                 assumeClientsSupportOutOfOrderResponses,
-                logicExecutorGroup));
+                logicExecutorGroup,
+                inFlightTracker,
+                metricsHandler));
     }
 }
@@ -0,0 +1,109 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import io.airlift.drift.transport.netty.codec.ThriftFrame;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks requests in flight of every accepted channel, i.e. thrift frames read from a channel
+ * whose responses have not been written back yet.
+ * <p>
+ * Once draining, a channel is closed as soon as it has no request in flight, so that clients
+ * reconnect to other instances while busy channels are still allowed to finish their requests.
+ *
+ * @author Derrick Guan
+ */
+@ChannelHandler.Sharable
+class InFlightRequestTracker extends ChannelDuplexHandler {
+
+    private final ConcurrentMap<Channel, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    private volatile boolean draining;
+
+    /**
+     * Start tracking an accepted channel, the channel is forgotten once it's closed.
+     *
+     * @param channel accepted channel
+     */
+    void track(Channel channel) {
+        if (draining) {
+            // accepted just before the server channel was closed
+            channel.close();
+            return;
+        }
+        inFlight.put(channel, new AtomicInteger());
+        channel.closeFuture().addListener(future -> inFlight.remove(channel));
+    }
+
+    /**
+     * Stop taking requests from idle channels, and close every channel once it becomes idle.
+     */
+    void startDraining() {
+        draining = true;
+        inFlight.forEach((channel, count) -> {
+            if (count.get() <= 0) {
+                channel.close();
+            }
+        });
+    }
+
+    /**
+     * @return number of requests in flight of all channels
+     */
+    int inFlight() {
+        int sum = 0;
+        for (AtomicInteger count : inFlight.values()) {
+            sum += Math.max(count.get(), 0);
+        }
+        return sum;
+    }
+
+    /**
+     * Close all tracked channels regardless of their requests in flight.
+     */
+    void closeAll() {
+        inFlight.keySet().forEach(Channel::close);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ThriftFrame) {
+            AtomicInteger count = inFlight.get(ctx.channel());
+            if (count != null) {
+                count.incrementAndGet();
+            }
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof ThriftFrame)) {
+            super.write(ctx, msg, promise);
+            return;
+        }
+        Channel channel = ctx.channel();
+        if (promise.isVoid()) {
+            super.write(ctx, msg, promise);
+            finish(channel);
+        } else {
+            // closing the channel only after the response has been written out
+            promise.addListener(future -> finish(channel));
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    private void finish(Channel channel) {
+        AtomicInteger count = inFlight.get(channel);
+        if (count != null && count.decrementAndGet() <= 0 && draining) {
+            channel.close();
+        }
+    }
+}
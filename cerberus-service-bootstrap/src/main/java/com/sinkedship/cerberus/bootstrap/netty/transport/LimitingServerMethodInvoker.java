@@ -0,0 +1,99 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sinkedship.cerberus.bootstrap.limit.ConcurrencyLimit;
+import com.sinkedship.cerberus.commons.exception.OverloadedMessages;
+import io.airlift.drift.TApplicationException;
+import io.airlift.drift.transport.MethodMetadata;
+import io.airlift.drift.transport.server.ServerInvokeRequest;
+import io.airlift.drift.transport.server.ServerMethodInvoker;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Admits invocations of every thrift method up to the method's {@link ConcurrencyLimit},
+ * and rejects the others immediately with an overloaded error, so that clients fail over to
+ * another server rather than waiting in queue.
+ * <p>
+ * Requests are admitted where the handler invokes them: on the event loop before being dispatched to logic threads,
+ * except in {@link com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig.ExecutionMode#CHANNEL_PINNED}
+ * mode, where the handler itself runs on the pinned logic thread and requests have queued already.
+ *
+ * @author Derrick Guan
+ */
+class LimitingServerMethodInvoker implements ServerMethodInvoker {
+
+    private final ServerMethodInvoker delegate;
+
+    private final Supplier<ConcurrencyLimit> limitSupplier;
+
+    private final ServerExecutionStats stats;
+
+    private final ConcurrentMap<String, MethodLimiter> limiters = new ConcurrentHashMap<>();
+
+    LimitingServerMethodInvoker(ServerMethodInvoker delegate, Supplier<ConcurrencyLimit> limitSupplier,
+                                ServerExecutionStats stats) {
+        this.delegate = delegate;
+        this.limitSupplier = limitSupplier;
+        this.stats = stats;
+    }
+
+    @Override
+    public Optional<MethodMetadata> getMethodMetadata(String name) {
+        return delegate.getMethodMetadata(name);
+    }
+
+    @Override
+    public ListenableFuture<Object> invoke(ServerInvokeRequest request) {
+        String name = request.getMethod().getName();
+        MethodLimiter limiter = limiters.get(name);
+        if (limiter == null) {
+            limiter = limiters.computeIfAbsent(name, key -> new MethodLimiter(limitSupplier.get()));
+        }
+        int inFlight = limiter.inFlight.incrementAndGet();
+        if (inFlight > limiter.limit.getLimit()) {
+            limiter.inFlight.decrementAndGet();
+            stats.recordShed();
+            return Futures.immediateFailedFuture(new TApplicationException(
+                    TApplicationException.Type.INTERNAL_ERROR,
+                    OverloadedMessages.overloaded("concurrency limit " + limiter.limit.getLimit() + " exceeded")));
+        }
+        long start = System.nanoTime();
+        ListenableFuture<Object> result;
+        try {
+            result = delegate.invoke(request);
+        } catch (RuntimeException e) {
+            limiter.inFlight.decrementAndGet();
+            throw e;
+        }
+        MethodLimiter admitted = limiter;
+        result.addListener(() -> {
+            admitted.inFlight.decrementAndGet();
+            admitted.limit.onSample(System.nanoTime() - start, inFlight, result.isCancelled());
+        }, directExecutor());
+        return result;
+    }
+
+    @Override
+    public void recordResult(String methodName, long startTime, ListenableFuture<Object> result) {
+        delegate.recordResult(methodName, startTime, result);
+    }
+
+    private static final class MethodLimiter {
+
+        private final ConcurrencyLimit limit;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        MethodLimiter(ConcurrencyLimit limit) {
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sinkedship.cerberus.bootstrap.metrics.MethodMetrics;
+import com.sinkedship.cerberus.bootstrap.metrics.ServerMetrics;
+import io.airlift.drift.transport.MethodMetadata;
+import io.airlift.drift.transport.server.ServerInvokeRequest;
+import io.airlift.drift.transport.server.ServerMethodInvoker;
+
+import java.util.Optional;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Records requests in flight and results of every thrift method, and marks the traced request
+ * as invoked and resulted.
+ *
+ * @author Derrick Guan
+ */
+class MetricsServerMethodInvoker implements ServerMethodInvoker {
+
+    private final ServerMethodInvoker delegate;
+
+    private final ServerMetrics metrics;
+
+    MetricsServerMethodInvoker(ServerMethodInvoker delegate, ServerMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Optional<MethodMetadata> getMethodMetadata(String name) {
+        return delegate.getMethodMetadata(name);
+    }
+
+    @Override
+    public ListenableFuture<Object> invoke(ServerInvokeRequest request) {
+        MethodMetrics method = metrics.method(request.getMethod().getName());
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            trace.invoked(method, System.nanoTime());
+        }
+        method.requestStarted();
+        ListenableFuture<Object> result;
+        try {
+            result = delegate.invoke(request);
+        } catch (RuntimeException e) {
+            method.requestFinished(false);
+            throw e;
+        }
+        result.addListener(() -> {
+            if (trace != null) {
+                trace.resulted(System.nanoTime());
+            }
+            boolean success;
+            try {
+                result.get();
+                success = true;
+            } catch (Exception e) {
+                success = false;
+            }
+            method.requestFinished(success);
+        }, directExecutor());
+        return result;
+    }
+
+    @Override
+    public void recordResult(String methodName, long startTime, ListenableFuture<Object> result) {
+        delegate.recordResult(methodName, startTime, result);
+    }
+}
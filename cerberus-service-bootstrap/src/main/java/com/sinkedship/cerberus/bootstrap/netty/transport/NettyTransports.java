@@ -0,0 +1,86 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig.TransportType;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.kqueue.KQueue;
+import io.netty.channel.kqueue.KQueueEventLoopGroup;
+import io.netty.channel.kqueue.KQueueServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates event loop groups and server channels of the selected netty transport.
+ *
+ * @author Derrick Guan
+ */
+final class NettyTransports {
+
+    private static final Logger LOGGER = LogManager.getLogger(NettyTransports.class);
+
+    private NettyTransports() {
+    }
+
+    /**
+     * Resolve the transport to use, falls back to NIO if the requested native transport is not available.
+     *
+     * @param requested transport type
+     *
+     * @return one of {@link TransportType#NIO}, {@link TransportType#EPOLL} and {@link TransportType#KQUEUE}
+     */
+    static TransportType resolve(TransportType requested) {
+        switch (requested) {
+            case EPOLL:
+                if (Epoll.isAvailable()) {
+                    return TransportType.EPOLL;
+                }
+                LOGGER.warn("Epoll transport is not available, fall back to NIO", Epoll.unavailabilityCause());
+                return TransportType.NIO;
+            case KQUEUE:
+                if (KQueue.isAvailable()) {
+                    return TransportType.KQUEUE;
+                }
+                LOGGER.warn("KQueue transport is not available, fall back to NIO", KQueue.unavailabilityCause());
+                return TransportType.NIO;
+            case AUTO:
+                if (Epoll.isAvailable()) {
+                    return TransportType.EPOLL;
+                }
+                if (KQueue.isAvailable()) {
+                    return TransportType.KQUEUE;
+                }
+                return TransportType.NIO;
+            default:
+                return TransportType.NIO;
+        }
+    }
+
+    static EventLoopGroup newEventLoopGroup(TransportType type, int threads, ThreadFactory threadFactory) {
+        switch (type) {
+            case EPOLL:
+                return new EpollEventLoopGroup(threads, threadFactory);
+            case KQUEUE:
+                return new KQueueEventLoopGroup(threads, threadFactory);
+            default:
+                return new NioEventLoopGroup(threads, threadFactory);
+        }
+    }
+
+    static Class<? extends ServerChannel> serverChannelClass(TransportType type) {
+        switch (type) {
+            case EPOLL:
+                return EpollServerSocketChannel.class;
+            case KQUEUE:
+                return KQueueServerSocketChannel.class;
+            default:
+                return NioServerSocketChannel.class;
+        }
+    }
+}
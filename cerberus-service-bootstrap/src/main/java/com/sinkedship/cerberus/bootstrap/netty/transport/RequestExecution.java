@@ -0,0 +1,196 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig.ExecutionMode;
+import io.airlift.drift.transport.MethodMetadata;
+import io.airlift.drift.transport.server.ServerInvokeRequest;
+import io.airlift.drift.transport.server.ServerMethodInvoker;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static io.airlift.concurrent.Threads.threadsNamed;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Execution model of thrift method invocations, i.e. where {@link io.airlift.drift.transport.netty.server.ThriftServerHandler}
+ * runs and which threads invoke the methods.
+ * <p>
+ * In {@link ExecutionMode#CHANNEL_PINNED} mode the handler runs on a group of logic threads which every channel
+ * is pinned to. In other modes the handler runs on the channel's event loop, and every invocation is dispatched
+ * by itself, so a slow invocation never holds up other requests of the same channel.
+ *
+ * @author Derrick Guan
+ */
+class RequestExecution {
+
+    private static final Logger LOGGER = LogManager.getLogger(RequestExecution.class);
+
+    private final ExecutionMode mode;
+
+    // group which the handler runs on, null to run on the channel's event loop
+    private final EventExecutorGroup handlerGroup;
+
+    // executor which invocations are dispatched to
+    private final Executor executor;
+
+    private final ServerExecutionStats stats;
+
+    RequestExecution(ExecutionMode requested, int logicThreadCount) {
+        ExecutorService virtualThreads = requested == ExecutionMode.VIRTUAL_THREADS ? newVirtualThreadExecutor() : null;
+        if (requested == ExecutionMode.VIRTUAL_THREADS && virtualThreads == null) {
+            LOGGER.warn("Virtual threads are not supported by the running JDK, fall back to {}",
+                    ExecutionMode.WORK_STEALING);
+            mode = ExecutionMode.WORK_STEALING;
+        } else {
+            mode = requested;
+        }
+        switch (mode) {
+            case CHANNEL_PINNED:
+                DefaultEventExecutorGroup group = new DefaultEventExecutorGroup(logicThreadCount,
+                        threadsNamed("cerberus-server-logic-%s"));
+                handlerGroup = group;
+                executor = MoreExecutors.directExecutor();
+                stats = new ServerExecutionStats(mode, () -> pendingTasks(group));
+                break;
+            case WORK_STEALING:
+                handlerGroup = null;
+                executor = new ForkJoinPool(logicThreadCount, pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("cerberus-server-logic-" + thread.getPoolIndex());
+                    thread.setDaemon(true);
+                    return thread;
+                }, null, true);
+                stats = new ServerExecutionStats(mode, () -> 0);
+                break;
+            case VIRTUAL_THREADS:
+                handlerGroup = null;
+                executor = virtualThreads;
+                stats = new ServerExecutionStats(mode, () -> 0);
+                break;
+            default:
+                handlerGroup = null;
+                executor = MoreExecutors.directExecutor();
+                stats = new ServerExecutionStats(mode, () -> 0);
+                break;
+        }
+    }
+
+    ExecutionMode mode() {
+        return mode;
+    }
+
+    /**
+     * @return group which the handler runs on, null to run on the channel's event loop
+     */
+    EventExecutorGroup handlerGroup() {
+        return handlerGroup;
+    }
+
+    /**
+     * @param fallback executor used to schedule request timeouts if the handler runs on the event loop
+     *
+     * @return executor used to schedule request timeouts
+     */
+    ScheduledExecutorService timeoutExecutor(ScheduledExecutorService fallback) {
+        return handlerGroup == null ? fallback : handlerGroup;
+    }
+
+    ServerExecutionStats stats() {
+        return stats;
+    }
+
+    ServerMethodInvoker dispatching(ServerMethodInvoker delegate) {
+        return new DispatchingServerMethodInvoker(delegate);
+    }
+
+    void shutdown() {
+        if (handlerGroup != null) {
+            handlerGroup.shutdownGracefully(0, 0, SECONDS).awaitUninterruptibly();
+        } else if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private static int pendingTasks(EventExecutorGroup group) {
+        int pending = 0;
+        for (EventExecutor executor : group) {
+            if (executor instanceof SingleThreadEventExecutor) {
+                pending += ((SingleThreadEventExecutor) executor).pendingTasks();
+            }
+        }
+        return pending;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Invokes methods on the executor and records queue depth of the invocations.
+     */
+    private final class DispatchingServerMethodInvoker implements ServerMethodInvoker {
+
+        private final ServerMethodInvoker delegate;
+
+        DispatchingServerMethodInvoker(ServerMethodInvoker delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Optional<MethodMetadata> getMethodMetadata(String name) {
+            return delegate.getMethodMetadata(name);
+        }
+
+        @Override
+        public ListenableFuture<Object> invoke(ServerInvokeRequest request) {
+            SettableFuture<Object> result = SettableFuture.create();
+            RequestTrace trace = RequestTrace.current();
+            long queuedAt = System.nanoTime();
+            stats.recordQueued();
+            try {
+                executor.execute(() -> {
+                    long startedAt = System.nanoTime();
+                    if (trace != null) {
+                        trace.started(startedAt);
+                    }
+                    stats.recordStart(startedAt - queuedAt);
+                    try {
+                        result.setFuture(delegate.invoke(request));
+                    } catch (Throwable t) {
+                        result.setException(t);
+                    } finally {
+                        stats.recordFinish();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                stats.recordRejected();
+                result.setException(e);
+            }
+            return result;
+        }
+
+        @Override
+        public void recordResult(String methodName, long startTime, ListenableFuture<Object> result) {
+            delegate.recordResult(methodName, startTime, result);
+        }
+    }
+}
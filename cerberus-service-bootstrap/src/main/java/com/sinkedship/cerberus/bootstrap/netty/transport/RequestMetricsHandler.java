@@ -0,0 +1,159 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import com.sinkedship.cerberus.bootstrap.metrics.ServerMetrics;
+import com.sinkedship.cerberus.bootstrap.metrics.ServerMetrics.ConnectionMetrics;
+import io.airlift.drift.transport.netty.codec.ThriftFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Traces requests of channels into {@link ServerMetrics}.
+ * <p>
+ * This handler sits right after the frame handlers, where it starts a {@link RequestTrace} on every request
+ * frame and records the trace on the response frame of the same sequence id. {@link #binder()} sits right before
+ * thrift server handler and binds the trace to the thread decoding the request, while {@link #byteCounter()} sits
+ * at the head of the pipeline and counts bytes of the connection.
+ *
+ * @author Derrick Guan
+ */
+@ChannelHandler.Sharable
+class RequestMetricsHandler extends ChannelDuplexHandler {
+
+    private static final AttributeKey<ConcurrentMap<Integer, RequestTrace>> TRACES =
+            AttributeKey.valueOf("cerberusRequestTraces");
+
+    private static final AttributeKey<ConnectionMetrics> CONNECTION = AttributeKey.valueOf("cerberusConnection");
+
+    private final ServerMetrics metrics;
+
+    private final ChannelHandler binder = new Binder();
+
+    private final ChannelHandler byteCounter = new ByteCounter();
+
+    RequestMetricsHandler(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    ChannelHandler binder() {
+        return binder;
+    }
+
+    ChannelHandler byteCounter() {
+        return byteCounter;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ThriftFrame) {
+            traces(ctx.channel()).put(((ThriftFrame) msg).getSequenceId(), new RequestTrace(System.nanoTime()));
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ThriftFrame) {
+            RequestTrace trace = traces(ctx.channel()).remove(((ThriftFrame) msg).getSequenceId());
+            if (trace != null) {
+                trace.record(System.nanoTime());
+            }
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    private static ConcurrentMap<Integer, RequestTrace> traces(Channel channel) {
+        ConcurrentMap<Integer, RequestTrace> traces = channel.attr(TRACES).get();
+        if (traces == null) {
+            traces = new ConcurrentHashMap<>();
+            ConcurrentMap<Integer, RequestTrace> existing = channel.attr(TRACES).setIfAbsent(traces);
+            if (existing != null) {
+                traces = existing;
+            }
+        }
+        return traces;
+    }
+
+    /**
+     * Binds the trace of a request to the thread running thrift server handler while it decodes the request.
+     */
+    @ChannelHandler.Sharable
+    private static final class Binder extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (!(msg instanceof ThriftFrame)) {
+                super.channelRead(ctx, msg);
+                return;
+            }
+            RequestTrace trace = traces(ctx.channel()).get(((ThriftFrame) msg).getSequenceId());
+            if (trace == null) {
+                super.channelRead(ctx, msg);
+                return;
+            }
+            trace.dispatched(System.nanoTime());
+            RequestTrace.bind(trace);
+            try {
+                super.channelRead(ctx, msg);
+            } finally {
+                RequestTrace.unbind();
+            }
+        }
+    }
+
+    /**
+     * Counts bytes read from and written to a connection.
+     */
+    @ChannelHandler.Sharable
+    private final class ByteCounter extends ChannelDuplexHandler {
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            // by host only, ephemeral ports of clients would make a new series of every connection
+            SocketAddress address = ctx.channel().remoteAddress();
+            String host = address instanceof InetSocketAddress ?
+                    ((InetSocketAddress) address).getHostString() : String.valueOf(address);
+            ctx.channel().attr(CONNECTION).set(metrics.connectionOpened(host));
+            ctx.channel().closeFuture().addListener(future -> metrics.connectionClosed(host));
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ConnectionMetrics connection = ctx.channel().attr(CONNECTION).get();
+            if (connection != null) {
+                connection.recordIn(bytesOf(msg));
+            }
+            super.channelRead(ctx, msg);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            ConnectionMetrics connection = ctx.channel().attr(CONNECTION).get();
+            if (connection != null) {
+                connection.recordOut(bytesOf(msg));
+            }
+            super.write(ctx, msg, promise);
+        }
+
+        private long bytesOf(Object msg) {
+            if (msg instanceof ByteBuf) {
+                return ((ByteBuf) msg).readableBytes();
+            }
+            if (msg instanceof ByteBufHolder) {
+                return ((ByteBufHolder) msg).content().readableBytes();
+            }
+            return 0;
+        }
+    }
+}
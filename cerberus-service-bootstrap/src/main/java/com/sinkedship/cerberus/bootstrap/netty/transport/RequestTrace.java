@@ -0,0 +1,87 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import com.sinkedship.cerberus.bootstrap.metrics.MethodMetrics;
+import com.sinkedship.cerberus.bootstrap.metrics.MethodMetrics.Phase;
+
+/**
+ * Timestamps of a request through its phases, which are set by different threads along the way.
+ * <p>
+ * The trace of the request being decoded is bound to the decoding thread, so that method invokers
+ * called by the decoding thread can find it.
+ *
+ * @author Derrick Guan
+ */
+final class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    // request frame read by the event loop
+    private final long arrivalNanos;
+
+    // request frame handed to thrift server handler
+    private volatile long dispatchNanos;
+
+    // arguments decoded and method invoked
+    private volatile long invokeNanos;
+
+    // method started on a logic thread
+    private volatile long startNanos;
+
+    // result of method ready
+    private volatile long resultNanos;
+
+    private volatile MethodMetrics method;
+
+    RequestTrace(long arrivalNanos) {
+        this.arrivalNanos = arrivalNanos;
+    }
+
+    static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    static void bind(RequestTrace trace) {
+        CURRENT.set(trace);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    void dispatched(long nanos) {
+        dispatchNanos = nanos;
+    }
+
+    void invoked(MethodMetrics method, long nanos) {
+        this.method = method;
+        invokeNanos = nanos;
+    }
+
+    void started(long nanos) {
+        startNanos = nanos;
+    }
+
+    void resulted(long nanos) {
+        resultNanos = nanos;
+    }
+
+    /**
+     * Record latencies of all phases once the response frame has been written.
+     *
+     * @param writeNanos when the response frame was written
+     */
+    void record(long writeNanos) {
+        MethodMetrics metrics = method;
+        if (metrics == null || resultNanos == 0) {
+            // never reached a method, e.g. an unknown method
+            return;
+        }
+        long dispatch = dispatchNanos == 0 ? arrivalNanos : dispatchNanos;
+        long start = startNanos == 0 ? invokeNanos : startNanos;
+        metrics.recordLatency(Phase.DECODE, invokeNanos - dispatch);
+        metrics.recordLatency(Phase.QUEUE, (dispatch - arrivalNanos) + (start - invokeNanos));
+        metrics.recordLatency(Phase.EXECUTION, resultNanos - start);
+        metrics.recordLatency(Phase.ENCODE, writeNanos - resultNanos);
+        metrics.recordLatency(Phase.TOTAL, writeNanos - arrivalNanos);
+    }
+}
@@ -0,0 +1,136 @@
+package com.sinkedship.cerberus.bootstrap.netty.transport;
+
+import com.sinkedship.cerberus.bootstrap.config.CerberusServerBootConfig.ExecutionMode;
+import org.weakref.jmx.Managed;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Statistics of thrift method invocations executed by a {@link CerberusNettyServerTransport},
+ * exported to JMX by the server bootstrap.
+ *
+ * @author Derrick Guan
+ */
+public class ServerExecutionStats {
+
+    private final ExecutionMode executionMode;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxQueued = new AtomicInteger();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder shed = new LongAdder();
+
+    private final LongAdder totalQueueNanos = new LongAdder();
+
+    // queue depth which is not counted by this stats, e.g. pending tasks of pinned logic threads
+    private final IntSupplier externalQueued;
+
+    ServerExecutionStats(ExecutionMode executionMode, IntSupplier externalQueued) {
+        this.executionMode = executionMode;
+        this.externalQueued = externalQueued;
+    }
+
+    void recordQueued() {
+        int depth = queued.incrementAndGet();
+        int max;
+        while (depth > (max = maxQueued.get())) {
+            if (maxQueued.compareAndSet(max, depth)) {
+                break;
+            }
+        }
+    }
+
+    void recordStart(long queueNanos) {
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        totalQueueNanos.add(queueNanos);
+    }
+
+    void recordFinish() {
+        active.decrementAndGet();
+        completed.increment();
+    }
+
+    void recordRejected() {
+        queued.decrementAndGet();
+        rejected.increment();
+    }
+
+    void recordShed() {
+        shed.increment();
+    }
+
+    /**
+     * @return execution mode actually in use
+     */
+    @Managed
+    public String getExecutionMode() {
+        return executionMode.name();
+    }
+
+    /**
+     * @return number of invocations waiting for a thread
+     */
+    @Managed
+    public int getQueuedRequests() {
+        return Math.max(queued.get(), 0) + externalQueued.getAsInt();
+    }
+
+    /**
+     * @return max number of invocations which have been waiting for a thread at the same time
+     */
+    @Managed
+    public int getMaxQueuedRequests() {
+        return maxQueued.get();
+    }
+
+    /**
+     * @return number of invocations running
+     */
+    @Managed
+    public int getActiveRequests() {
+        return Math.max(active.get(), 0);
+    }
+
+    /**
+     * @return number of invocations finished
+     */
+    @Managed
+    public long getCompletedRequests() {
+        return completed.sum();
+    }
+
+    /**
+     * @return number of invocations rejected by the executor
+     */
+    @Managed
+    public long getRejectedRequests() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of invocations rejected as overloaded by concurrency limits
+     */
+    @Managed
+    public long getShedRequests() {
+        return shed.sum();
+    }
+
+    /**
+     * @return average time in milliseconds that invocations waited for a thread
+     */
+    @Managed
+    public double getAverageQueueMillis() {
+        long count = completed.sum() + active.get();
+        return count <= 0 ? 0 : totalQueueNanos.sum() / 1e6 / count;
+    }
+}
@@ -0,0 +1,215 @@
+package com.sinkedship.cerberus.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.net.HostAndPort;
+import io.airlift.units.Duration;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of addresses which have been marked down, so that address selectors can keep
+ * traffic away from them for a while.
+ * <p>
+ * Every markdown quarantines an address for a penalty which doubles with each consecutive markdown,
+ * starting at the base penalty and capped at the max penalty. Consecutive markdowns are forgotten
+ * once an address has not been marked down for twice the max penalty, so the penalty decays over time.
+ * <p>
+ * When the quarantine of an address expires it is not fully trusted yet: a single probe request is let
+ * through every probe interval until the address either proves healthy via {@link #markup(HostAndPort)}
+ * or is marked down again.
+ * <p>
+ * Penalties whose probe slot has been left unclaimed for twice the max penalty are dropped, as their addresses
+ * are no longer selected, e.g. they left the registry, so a quarantine without live penalties stays cheap to check.
+ *
+ * @author Derrick Guan
+ */
+public class AddressQuarantine {
+
+    public static final Duration DEFAULT_BASE_PENALTY = new Duration(1, TimeUnit.SECONDS);
+
+    public static final Duration DEFAULT_MAX_PENALTY = new Duration(30, TimeUnit.SECONDS);
+
+    public static final Duration DEFAULT_PROBE_INTERVAL = new Duration(1, TimeUnit.SECONDS);
+
+    // max shift of base penalty, keeps the doubled penalty from overflowing
+    private static final int MAX_PENALTY_SHIFT = 20;
+
+    /**
+     * Health state of an address from the point of view of address selection.
+     */
+    public enum State {
+        // address can take any traffic
+        HEALTHY,
+        // address is quarantined, or its quarantine expired and the current probe slot is taken
+        QUARANTINED,
+        // address's quarantine expired and the caller has been granted the probe slot
+        PROBE
+    }
+
+    private final ConcurrentMap<HostAndPort, Penalty> penalties = new ConcurrentHashMap<>();
+
+    private final long basePenaltyNanos;
+
+    private final long maxPenaltyNanos;
+
+    private final long probeIntervalNanos;
+
+    private final Ticker ticker;
+
+    // next time stale penalties are dropped
+    private final AtomicLong nextSweepNanos;
+
+    public AddressQuarantine() {
+        this(DEFAULT_BASE_PENALTY, DEFAULT_MAX_PENALTY, DEFAULT_PROBE_INTERVAL);
+    }
+
+    public AddressQuarantine(Duration basePenalty, Duration maxPenalty, Duration probeInterval) {
+        this(basePenalty, maxPenalty, probeInterval, Ticker.systemTicker());
+    }
+
+    public AddressQuarantine(Duration basePenalty, Duration maxPenalty, Duration probeInterval, Ticker ticker) {
+        Preconditions.checkNotNull(basePenalty, "Base penalty cannot be null");
+        Preconditions.checkNotNull(maxPenalty, "Max penalty cannot be null");
+        Preconditions.checkNotNull(probeInterval, "Probe interval cannot be null");
+        Preconditions.checkArgument(basePenalty.compareTo(maxPenalty) <= 0,
+                "Base penalty cannot be greater than max penalty");
+        this.basePenaltyNanos = basePenalty.roundTo(TimeUnit.NANOSECONDS);
+        this.maxPenaltyNanos = maxPenalty.roundTo(TimeUnit.NANOSECONDS);
+        this.probeIntervalNanos = probeInterval.roundTo(TimeUnit.NANOSECONDS);
+        this.ticker = Preconditions.checkNotNull(ticker, "Ticker cannot be null");
+        this.nextSweepNanos = new AtomicLong(ticker.read() + maxPenaltyNanos);
+    }
+
+    /**
+     * Quarantine an address, or extend its quarantine if it's already penalized.
+     *
+     * @param address to quarantine
+     */
+    public void markdown(HostAndPort address) {
+        long now = ticker.read();
+        Penalty penalty = penalties.computeIfAbsent(address, key -> new Penalty());
+        while (!penalty.increase(now)) {
+            // the penalty was dropped meanwhile, start over with a new one
+            penalties.remove(address, penalty);
+            penalty = penalties.computeIfAbsent(address, key -> new Penalty());
+        }
+    }
+
+    /**
+     * Lift the quarantine of an address.
+     *
+     * @param address to lift quarantine
+     */
+    public void markup(HostAndPort address) {
+        // fast path, healthy addresses do not have a penalty at all
+        if (!penalties.isEmpty()) {
+            penalties.remove(address);
+        }
+    }
+
+    /**
+     * @return true if no address is penalized at all
+     */
+    public boolean isEmpty() {
+        return penalties.isEmpty();
+    }
+
+    /**
+     * Peek the state of an address without claiming the probe slot.
+     *
+     * @param address to check
+     *
+     * @return true if the address is not penalized at all
+     */
+    public boolean isHealthy(HostAndPort address) {
+        return penalties.isEmpty() || !penalties.containsKey(address);
+    }
+
+    /**
+     * Check the state of an address, claims the probe slot of the address if it's available.
+     * <p>
+     * Callers which get {@link State#PROBE} are expected to send a request to the address.
+     *
+     * @param address to check
+     *
+     * @return health state of the address
+     */
+    public State tryAcquire(HostAndPort address) {
+        if (penalties.isEmpty()) {
+            return State.HEALTHY;
+        }
+        long now = ticker.read();
+        sweep(now);
+        Penalty penalty = penalties.get(address);
+        if (penalty == null) {
+            return State.HEALTHY;
+        }
+        return penalty.tryProbe(now) ? State.PROBE : State.QUARANTINED;
+    }
+
+    // at most once per max penalty, drops penalties of addresses which are no longer selected
+    private void sweep(long now) {
+        long next = nextSweepNanos.get();
+        if (now - next < 0 || !nextSweepNanos.compareAndSet(next, now + maxPenaltyNanos)) {
+            return;
+        }
+        for (Map.Entry<HostAndPort, Penalty> entry : penalties.entrySet()) {
+            if (entry.getValue().tryDrop(now)) {
+                penalties.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private final class Penalty {
+
+        private int consecutiveMarkdowns;
+
+        private long lastMarkdownNanos;
+
+        // when the quarantine expires, or the next time a probe is allowed after it expired
+        private final AtomicLong nextProbeNanos = new AtomicLong();
+
+        private boolean dropped;
+
+        /**
+         * @return false if the penalty has been dropped
+         */
+        synchronized boolean increase(long now) {
+            if (dropped) {
+                return false;
+            }
+            if (consecutiveMarkdowns > 0 && now - lastMarkdownNanos > maxPenaltyNanos * 2) {
+                consecutiveMarkdowns = 0;
+            }
+            consecutiveMarkdowns++;
+            lastMarkdownNanos = now;
+            int shift = Math.min(consecutiveMarkdowns - 1, MAX_PENALTY_SHIFT);
+            long penaltyNanos = Math.min(basePenaltyNanos << shift, maxPenaltyNanos);
+            nextProbeNanos.set(now + penaltyNanos);
+            return true;
+        }
+
+        /**
+         * Drop the penalty if its probe slot has been unclaimed for twice the max penalty, by then its consecutive
+         * markdowns are forgotten anyway.
+         *
+         * @return true if the penalty is dropped
+         */
+        synchronized boolean tryDrop(long now) {
+            if (consecutiveMarkdowns > 0 && now - nextProbeNanos.get() > maxPenaltyNanos * 2) {
+                dropped = true;
+            }
+            return dropped;
+        }
+
+        boolean tryProbe(long now) {
+            long next = nextProbeNanos.get();
+            return now - next >= 0 && nextProbeNanos.compareAndSet(next, now + probeIntervalNanos);
+        }
+    }
+}
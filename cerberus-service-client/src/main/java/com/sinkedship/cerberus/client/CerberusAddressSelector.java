@@ -2,32 +2,49 @@ package com.sinkedship.cerberus.client;
 
 import com.sinkedship.cerberus.commons.ServiceMetaData;
 import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
-import com.sinkedship.cerberus.core.Service;
+import com.sinkedship.cerberus.core.ServiceSnapshot;
 import com.sinkedship.cerberus.core.api.Provider;
 import com.sinkedship.cerberus.core.api.Registry;
+import com.sinkedship.cerberus.strategy.RoundRobinStrategy;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import com.google.common.net.HostAndPort;
-import io.airlift.drift.client.address.AddressSelector;
 import io.airlift.drift.client.address.SimpleAddressSelector;
 
+import java.util.Collections;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntPredicate;
 import java.util.function.Supplier;
 
 
 /**
  * Each instance of this class is dedicated to provide a valid address(if possible)
  * of Thrift service according to a specific class target.
+ * <p>
+ * Addresses which were already attempted by an invocation are skipped on retries, and addresses
+ * which were marked down are kept away from traffic by an {@link AddressQuarantine} until they pass a probe.
+ * Addresses whose {@link CircuitBreaker} is open are skipped altogether, they only take probe requests
+ * once their breakers turn half-open.
+ * The rest of the addresses are chosen by a {@link Provider.Strategy}, round-robin by default.
  *
  * @author Derrick Guan
  */
-public class CerberusAddressSelector implements AddressSelector<SimpleAddressSelector.SimpleAddress> {
+public class CerberusAddressSelector implements HealthAwareAddressSelector<SimpleAddressSelector.SimpleAddress> {
 
-    private final Class<?> targetClass;
+    private static final IntPredicate ALL_ELIGIBLE = i -> true;
 
-    private final ServiceMetaData metaData;
+    private final Supplier<ServiceSnapshot> snapshotSource;
 
-    private final Supplier<String> asyncSuffixSupplier;
+    private final AddressQuarantine quarantine;
 
-    private final Provider provider;
+    private final CircuitBreakers breakers;
+
+    // addresses derived from the latest seen snapshot, rebuilt only when snapshot changes
+    private volatile SnapshotAddresses snapshotAddresses;
+
+    private final Provider.Strategy strategy;
 
     public CerberusAddressSelector(Class<?> targetClass, Registry registry) {
         this(targetClass, CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER, null, registry);
@@ -49,23 +66,182 @@ public class CerberusAddressSelector implements AddressSelector<SimpleAddressSel
                                    Supplier<String> supplier,
                                    ServiceMetaData metaData,
                                    Registry registry) {
-        this.targetClass = targetClass;
-        this.metaData = metaData;
-        this.asyncSuffixSupplier = supplier;
-        this.provider = registry.provider();
+        this(targetClass, supplier, metaData, registry, new AddressQuarantine(), new RoundRobinStrategy());
     }
 
-    @Override
-    public Optional<SimpleAddressSelector.SimpleAddress> selectAddress(Optional<String> addressSelectionContext) {
+    public CerberusAddressSelector(Class<?> targetClass,
+                                   Supplier<String> supplier,
+                                   ServiceMetaData metaData,
+                                   Registry registry,
+                                   AddressQuarantine quarantine,
+                                   Provider.Strategy strategy) {
+        this(targetClass, supplier, metaData, registry, quarantine, CircuitBreakers.disabled(), strategy);
+    }
+
+    public CerberusAddressSelector(Class<?> targetClass,
+                                   Supplier<String> supplier,
+                                   ServiceMetaData metaData,
+                                   Registry registry,
+                                   AddressQuarantine quarantine,
+                                   CircuitBreakers breakers,
+                                   Provider.Strategy strategy) {
         // if meta data presents, use it as the first priority and then falls back to the other
-        Optional<Service> service;
+        Provider provider = registry.provider();
         if (metaData != null) {
-            service = provider.get(metaData);
+            this.snapshotSource = provider.snapshotSource(metaData);
+        } else {
+            this.snapshotSource = provider.snapshotSource(targetClass, supplier);
+        }
+        this.quarantine = Preconditions.checkNotNull(quarantine, "Address quarantine cannot be null");
+        this.breakers = Preconditions.checkNotNull(breakers, "Circuit breakers cannot be null");
+        this.strategy = Preconditions.checkNotNull(strategy, "Strategy cannot be null");
+    }
+
+    @Override
+    public Optional<SimpleAddressSelector.SimpleAddress> selectAddress(Optional<String> addressSelectionContext) {
+        return selectAddress(addressSelectionContext, Collections.emptySet());
+    }
+
+    @Override
+    public Optional<SimpleAddressSelector.SimpleAddress> selectAddress(
+            Optional<String> addressSelectionContext,
+            Set<SimpleAddressSelector.SimpleAddress> attempted) {
+        SnapshotAddresses candidates = currentAddresses();
+        int size = candidates.addresses.length;
+        if (size == 0) {
+            return Optional.empty();
+        }
+
+        // addresses whose quarantine expired or whose breaker turned half-open take probe traffic first
+        boolean allClosed = breakers.isAllClosed();
+        if (!quarantine.isEmpty() || !allClosed) {
+            for (int i = 0; i < size; i++) {
+                if (isAttempted(attempted, candidates.addresses[i])) {
+                    continue;
+                }
+                HostAndPort hostAndPort = candidates.hostAndPorts[i];
+                if (breakers.isClosed(hostAndPort)) {
+                    if (quarantine.tryAcquire(hostAndPort) == AddressQuarantine.State.PROBE) {
+                        return candidates.addresses[i];
+                    }
+                } else if (breakers.tryProbe(hostAndPort)) {
+                    return candidates.addresses[i];
+                }
+            }
+        }
+
+        IntPredicate eligible;
+        if (attempted.isEmpty() && quarantine.isEmpty() && allClosed) {
+            eligible = ALL_ELIGIBLE;
         } else {
-            service = provider.get(targetClass, asyncSuffixSupplier);
+            eligible = i -> !isAttempted(attempted, candidates.addresses[i]) &&
+                    quarantine.isHealthy(candidates.hostAndPorts[i]) && breakers.isClosed(candidates.hostAndPorts[i]);
+        }
+        int index = strategy.choose(candidates.snapshot, eligible);
+        if (index >= 0) {
+            return candidates.addresses[index];
+        }
+
+        // an attempted address which is still healthy, used only if there's no fresh one,
+        // e.g. retrying a service with a single instance
+        for (int i = 0; i < size; i++) {
+            if (isAttempted(attempted, candidates.addresses[i]) && quarantine.isHealthy(candidates.hostAndPorts[i]) &&
+                    breakers.isClosed(candidates.hostAndPorts[i])) {
+                return candidates.addresses[i];
+            }
+        }
+        // a quarantined address, used only if every address is quarantined,
+        // it's better to try than fail an invocation for sure,
+        // while an address whose breaker is open fails the invocation fast
+        for (int i = 0; i < size; i++) {
+            if (!isAttempted(attempted, candidates.addresses[i]) && breakers.isClosed(candidates.hostAndPorts[i])) {
+                return candidates.addresses[i];
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean isAttempted(Set<SimpleAddressSelector.SimpleAddress> attempted,
+                                       Optional<SimpleAddressSelector.SimpleAddress> address) {
+        return !attempted.isEmpty() && attempted.contains(address.get());
+    }
+
+    private SnapshotAddresses currentAddresses() {
+        ServiceSnapshot snapshot = snapshotSource.get();
+        SnapshotAddresses current = snapshotAddresses;
+        if (current == null || current.snapshot != snapshot) {
+            current = switchTo(snapshot);
+        }
+        return current;
+    }
+
+    // builds addresses once per snapshot, and lets state kept per address follow addresses which came and went
+    private synchronized SnapshotAddresses switchTo(ServiceSnapshot snapshot) {
+        SnapshotAddresses current = snapshotAddresses;
+        if (current != null && current.snapshot == snapshot) {
+            return current;
+        }
+        SnapshotAddresses next = new SnapshotAddresses(snapshot);
+        Set<HostAndPort> previous = current == null ? ImmutableSet.of() : current.distinctHostAndPorts;
+        Set<HostAndPort> removed = Sets.difference(previous, next.distinctHostAndPorts);
+        Set<HostAndPort> added = Sets.difference(next.distinctHostAndPorts, previous);
+        if (!removed.isEmpty() || !added.isEmpty()) {
+            strategy.onAddressesChanged(removed, added);
+            breakers.onAddressesChanged(removed, added);
         }
+        snapshotAddresses = next;
+        return next;
+    }
+
+    @Override
+    public void markdown(SimpleAddressSelector.SimpleAddress address) {
+        quarantine.markdown(address.getHostAndPort());
+    }
+
+    @Override
+    public void markup(SimpleAddressSelector.SimpleAddress address) {
+        quarantine.markup(address.getHostAndPort());
+    }
 
-        return service.flatMap(cerberusService -> Optional.of(new SimpleAddressSelector.SimpleAddress(
-                HostAndPort.fromParts(cerberusService.getHost(), cerberusService.getPort()))));
+    @Override
+    public void onRequestStart(SimpleAddressSelector.SimpleAddress address) {
+        strategy.onRequestStart(address.getHostAndPort());
+    }
+
+    @Override
+    public void onRequestFinish(SimpleAddressSelector.SimpleAddress address, long durationNanos, boolean success) {
+        strategy.onRequestFinish(address.getHostAndPort(), durationNanos, success);
+        breakers.onResult(address.getHostAndPort(), success);
+    }
+
+    @Override
+    public void onRequestCancel(SimpleAddressSelector.SimpleAddress address) {
+        strategy.onRequestCancel(address.getHostAndPort());
+        breakers.onCancel(address.getHostAndPort());
+    }
+
+    /**
+     * Pre-built addresses of a snapshot, so that selecting an address allocates nothing.
+     */
+    private static final class SnapshotAddresses {
+
+        private final ServiceSnapshot snapshot;
+
+        private final HostAndPort[] hostAndPorts;
+
+        private final Set<HostAndPort> distinctHostAndPorts;
+
+        private final Optional<SimpleAddressSelector.SimpleAddress>[] addresses;
+
+        @SuppressWarnings("unchecked")
+        SnapshotAddresses(ServiceSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.hostAndPorts = snapshot.getAddresses().toArray(new HostAndPort[0]);
+            this.distinctHostAndPorts = ImmutableSet.copyOf(hostAndPorts);
+            this.addresses = new Optional[hostAndPorts.length];
+            for (int i = 0; i < hostAndPorts.length; i++) {
+                addresses[i] = Optional.of(new SimpleAddressSelector.SimpleAddress(hostAndPorts[i]));
+            }
+        }
     }
 }
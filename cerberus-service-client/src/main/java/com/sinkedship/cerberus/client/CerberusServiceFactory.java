@@ -3,14 +3,16 @@ package com.sinkedship.cerberus.client;
 import com.sinkedship.cerberus.client.config.CerberusClientConfig;
 import com.sinkedship.cerberus.client.mimic.drift.CerberusDriftInvocationHandler;
 import com.sinkedship.cerberus.client.mimic.drift.CerberusDriftMethodHandler;
+import com.sinkedship.cerberus.client.stub.ClientStubs;
 import com.sinkedship.cerberus.commons.ServiceMetaData;
 import com.sinkedship.cerberus.commons.utils.CerberusStringUtils;
+import com.sinkedship.cerberus.core.api.Provider;
 import com.sinkedship.cerberus.core.api.Registry;
 import com.sinkedship.cerberus.registry.DefaultRegistryFactory;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableMap;
 import io.airlift.drift.client.DriftClient;
-import io.airlift.drift.client.ExceptionClassifier;
 import io.airlift.drift.client.RetryPolicy;
 import io.airlift.drift.client.address.AddressSelector;
 import io.airlift.drift.client.stats.JmxMethodInvocationStatsFactory;
@@ -27,32 +29,61 @@ import io.airlift.drift.transport.client.DriftClientConfig;
 import io.airlift.drift.transport.client.MethodInvoker;
 import io.airlift.drift.transport.client.MethodInvokerFactory;
 import io.airlift.drift.transport.netty.client.DriftNettyMethodInvokerFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.weakref.jmx.MBeanExporter;
 
+import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.google.common.reflect.Reflection.newProxy;
 import static io.airlift.drift.transport.MethodMetadata.toMethodMetadata;
+import static java.util.function.Function.identity;
 
 /**
  * Factory class that used to create a dynamic proxy of any Thrift service.
+ * <p>
+ * Proxies are cached by the full identity of a client, i.e. interface, service meta data, async suffix,
+ * drift client config and strategy, so creating a service for the same identity returns the same proxy.
+ * A strategy given explicitly is compared by identity, so it should be reused rather than created per call.
  *
  * @author Derrick Guan
  */
 public final class CerberusServiceFactory {
 
+    private static final Logger LOGGER = LogManager.getLogger(CerberusServiceFactory.class);
+
+    private static final String JMX_DOMAIN = "com.sinkedship.cerberus.client";
+
+    // numbers factories, so that mbeans of factories in the same jvm never clash
+    private static final AtomicInteger FACTORY_COUNTER = new AtomicInteger();
+
+    // interfaces with at least this many methods are built in parallel
+    private static final int PARALLEL_BUILD_THRESHOLD = 8;
+
     private final ThriftCodecManager codecManager;
 
     private final Supplier<MethodInvoker> methodInvokerSupplier;
 
-    // cache a class with a specific address selector
-    private final ConcurrentMap<Class<?>, AddressSelector<? extends Address>> addressSelectorCache;
+    // cache a client identity without drift client config with a specific address selector
+    private final ConcurrentMap<ClientKey, AddressSelector<? extends Address>> addressSelectorCache;
+
+    // cache a client identity with a fully built service proxy
+    private final ConcurrentMap<ClientKey, Object> serviceCache;
 
     // cache a class with a corresponding thrift service meta data
     private final ConcurrentMap<Class<?>, ThriftServiceMetadata> serviceMetadataCache;
@@ -61,6 +92,30 @@ public final class CerberusServiceFactory {
 
     private final Registry registry;
 
+    // health of addresses is shared by all services created by this factory
+    private final AddressQuarantine addressQuarantine;
+
+    private final Supplier<Provider.Strategy> strategySupplier;
+
+    private final CerberusClientConfig config;
+
+    // health of instances is shared by all services created by this factory
+    private final CircuitBreakers circuitBreakers;
+
+    // retry budget of each target service
+    private final ConcurrentMap<String, RequestBudget> retryBudgets = new ConcurrentHashMap<>();
+
+    // hedging budget of each target service
+    private final ConcurrentMap<String, RequestBudget> hedgingBudgets = new ConcurrentHashMap<>();
+
+    // hedging policy of each method of target services, keyed by service identifier and method name
+    private final ConcurrentMap<List<String>, HedgingPolicy> hedgingPolicies = new ConcurrentHashMap<>();
+
+    private final MBeanExporter exporter = new MBeanExporter(ManagementFactory.getPlatformMBeanServer());
+
+    // key property of names of mbeans exported by this factory
+    private final String jmxFactoryKey = "factory=" + FACTORY_COUNTER.incrementAndGet();
+
     public CerberusServiceFactory(CerberusClientConfig config) {
         this(config, DriftNettyMethodInvokerFactory.createStaticDriftNettyMethodInvokerFactory(
                 config.getDriftNettyClientConfig()),
@@ -89,68 +144,237 @@ public final class CerberusServiceFactory {
         codecManager = new ThriftCodecManager();
         methodInvokerSupplier = () -> methodInvokerFactory.createMethodInvoker(null);
         addressSelectorCache = new ConcurrentHashMap<>();
+        serviceCache = new ConcurrentHashMap<>();
         serviceMetadataCache = new ConcurrentHashMap<>();
         this.methodInvocationStatsFactory = methodInvocationStatsFactory;
 
         registry = new DefaultRegistryFactory().createRegistry(config.getDataCenterConfig());
+        addressQuarantine = new AddressQuarantine(config.getMarkdownBasePenalty(),
+                config.getMarkdownMaxPenalty(), config.getMarkdownProbeInterval());
+        strategySupplier = Preconditions.checkNotNull(config.getStrategySupplier(), "Strategy supplier cannot be null");
+        this.config = config;
+        if (config.isCircuitBreakerEnabled()) {
+            circuitBreakers = new CircuitBreakers(config.getCircuitBreakerFailureRatio(),
+                    config.getCircuitBreakerConsecutiveFailures(), config.getCircuitBreakerBaseOpenDuration(),
+                    config.getCircuitBreakerMaxOpenDuration(), Ticker.systemTicker(),
+                    breaker -> export(breakerName(breaker), breaker),
+                    breaker -> unexport(breakerName(breaker)));
+            export(jmxName("CircuitBreakers"), circuitBreakers);
+        } else {
+            circuitBreakers = CircuitBreakers.disabled();
+        }
     }
 
     public <T> T newService(Class<T> clz) {
-        return createDriftClient(clz,
+        return getOrCreateService(clz,
                 CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER,
-                null, new DriftClientConfig())
-                .get();
+                null, new DriftClientConfig(), null);
+    }
+
+    public <T> T newService(Class<T> clz, Provider.Strategy strategy) {
+        return getOrCreateService(clz,
+                CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER,
+                null, new DriftClientConfig(), checkStrategy(strategy));
     }
 
     public <T> T newService(Class<T> clz, Supplier<String> asyncSuffixSupplier) {
-        return createDriftClient(clz,
-                null,
-                null, new DriftClientConfig())
-                .get();
+        return getOrCreateService(clz,
+                asyncSuffixSupplier,
+                null, new DriftClientConfig(), null);
     }
 
     public <T> T newService(Class<T> clz, Supplier<String> asyncSuffixSupplier, DriftClientConfig driftClientConfig) {
-        return createDriftClient(clz,
+        return getOrCreateService(clz,
                 asyncSuffixSupplier,
                 null,
-                driftClientConfig)
-                .get();
+                driftClientConfig,
+                null);
+    }
+
+    public <T> T newService(Class<T> clz, Supplier<String> asyncSuffixSupplier, DriftClientConfig driftClientConfig,
+                            Provider.Strategy strategy) {
+        return getOrCreateService(clz,
+                asyncSuffixSupplier,
+                null,
+                driftClientConfig,
+                checkStrategy(strategy));
     }
 
     public <T> T newService(Class<T> clz, ServiceMetaData metaData) {
-        return createDriftClient(clz,
+        return getOrCreateService(clz,
                 CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER,
                 metaData,
-                new DriftClientConfig())
-                .get();
+                new DriftClientConfig(),
+                null);
+    }
+
+    public <T> T newService(Class<T> clz, ServiceMetaData metaData, Provider.Strategy strategy) {
+        return getOrCreateService(clz,
+                CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER,
+                metaData,
+                new DriftClientConfig(),
+                checkStrategy(strategy));
     }
 
     public <T> T newService(Class<T> clz, ServiceMetaData metaData, DriftClientConfig driftClientConfig) {
-        return createDriftClient(clz,
+        return getOrCreateService(clz,
+                CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER,
+                metaData,
+                driftClientConfig,
+                null);
+    }
+
+    public <T> T newService(Class<T> clz, ServiceMetaData metaData, DriftClientConfig driftClientConfig,
+                            Provider.Strategy strategy) {
+        return getOrCreateService(clz,
                 CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER,
                 metaData,
-                driftClientConfig)
-                .get();
+                driftClientConfig,
+                checkStrategy(strategy));
+    }
+
+    /**
+     * Eagerly prepare lookups and clients of services which are going to be called, e.g. at client boot,
+     * so that first calls of the services do not pay for preparing them.
+     * <p>
+     * Clients are built in parallel with the default async suffix and drift client config,
+     * i.e. those returned by {@link #newService(Class)}.
+     *
+     * @param classes client interfaces of services
+     *
+     * @return a future which completes once all services are prepared
+     */
+    public CompletableFuture<Void> warmUp(Class<?>... classes) {
+        List<String> identifiers = new ArrayList<>(classes.length);
+        List<CompletableFuture<?>> futures = new ArrayList<>(classes.length + 1);
+        for (Class<?> clz : classes) {
+            identifiers.add(CerberusStringUtils.stripAsyncSuffix(clz.getCanonicalName(),
+                    CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER));
+            futures.add(CompletableFuture.runAsync(() -> newService(clz)));
+        }
+        futures.add(registry.provider().warmUp(identifiers));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    private static String serviceIdentifier(Class<?> clientInterface, Supplier<String> asyncSuffixSupplier,
+                                            ServiceMetaData metaData) {
+        return metaData != null ? metaData.getServiceIdentifier() :
+                CerberusStringUtils.stripAsyncSuffix(clientInterface.getCanonicalName(), asyncSuffixSupplier);
+    }
+
+    /**
+     * @return retry budget shared by all clients of the target service, null if retries are not limited
+     */
+    private RequestBudget retryBudget(String service) {
+        if (config.getRetryBudgetRatio() <= 0) {
+            return null;
+        }
+        return retryBudgets.computeIfAbsent(service, key -> {
+            RequestBudget budget = new RequestBudget(config.getRetryBudgetRatio());
+            export(jmxName("RetryBudget") + ",service=" + ObjectName.quote(key), budget);
+            return budget;
+        });
+    }
+
+    /**
+     * @return hedging policy shared by all clients of the method of the target service, null if it's not hedged
+     */
+    private HedgingPolicy hedgingPolicy(String service, MethodMetadata method) {
+        if (!config.isHedgingEnabled() || !method.isIdempotent()) {
+            return null;
+        }
+        return hedgingPolicies.computeIfAbsent(Arrays.asList(service, method.getName()), key -> {
+            // hedged requests of all methods of a service share a budget
+            RequestBudget budget = hedgingBudgets.computeIfAbsent(service, s -> {
+                RequestBudget created = new RequestBudget(config.getHedgingBudgetRatio());
+                export(jmxName("HedgingBudget") + ",service=" + ObjectName.quote(s), created);
+                return created;
+            });
+            HedgingPolicy policy = new HedgingPolicy(config.getHedgingPercentile(), config.getHedgingMinDelay(),
+                    config.getHedgingMaxDelay(), HedgingPolicy.DEFAULT_MIN_SAMPLES, budget);
+            export(jmxName("HedgingPolicy") + ",service=" + ObjectName.quote(service)
+                    + ",method=" + ObjectName.quote(method.getName()), policy);
+            return policy;
+        });
+    }
+
+    private void export(String name, Object object) {
+        try {
+            exporter.export(name, object);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cannot export {}", name, e);
+        }
+    }
+
+    private void unexport(String name) {
+        try {
+            exporter.unexport(name);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cannot un-export {}", name, e);
+        }
+    }
+
+    private String breakerName(CircuitBreaker breaker) {
+        return jmxName("CircuitBreaker") + ",instance=" + ObjectName.quote(breaker.getInstance());
+    }
+
+    private String jmxName(String type) {
+        return JMX_DOMAIN + ":type=" + type + "," + jmxFactoryKey;
     }
 
-    private <T> DriftClient<T> createDriftClient(Class<T> clientInterface,
+    private static Provider.Strategy checkStrategy(Provider.Strategy strategy) {
+        return Preconditions.checkNotNull(strategy, "Strategy cannot be null");
+    }
+
+    private <T> T getOrCreateService(Class<T> clientInterface,
+                                     Supplier<String> asyncSuffixSupplier,
+                                     ServiceMetaData metaData,
+                                     DriftClientConfig driftClientConfig,
+                                     Provider.Strategy strategy) {
+        Preconditions.checkNotNull(clientInterface, "Client interface cannot be null");
+        Preconditions.checkNotNull(driftClientConfig, "Drift client config cannot be null");
+        Supplier<String> suffixSupplier = asyncSuffixSupplier != null ?
+                asyncSuffixSupplier : CerberusStringUtils.DEFAULT_ASYNC_SUFFIX_SUPPLIER;
+        ClientKey key = new ClientKey(clientInterface, metaData, suffixSupplier.get(), driftClientConfig, strategy);
+        // fast path without locking
+        Object service = serviceCache.get(key);
+        if (service == null) {
+            service = serviceCache.computeIfAbsent(key, k -> createDriftClient(k, clientInterface, suffixSupplier,
+                    metaData, driftClientConfig, strategy).get());
+        }
+        return clientInterface.cast(service);
+    }
+
+    private <T> DriftClient<T> createDriftClient(ClientKey key,
+                                                 Class<T> clientInterface,
                                                  Supplier<String> asyncSuffixSupplier,
                                                  ServiceMetaData metaData,
-                                                 DriftClientConfig driftClientConfig) {
+                                                 DriftClientConfig driftClientConfig,
+                                                 Provider.Strategy strategy) {
+        // a given strategy is part of the key, so it's never shared by selectors of different services
         AddressSelector<? extends Address> addressSelector = addressSelectorCache.computeIfAbsent(
-                clientInterface,
-                clz -> new CerberusAddressSelector(clientInterface, asyncSuffixSupplier, metaData, registry));
+                key.forAddressSelector(),
+                k -> new CerberusAddressSelector(clientInterface, asyncSuffixSupplier, metaData, registry,
+                        addressQuarantine, circuitBreakers, strategy != null ? strategy : strategySupplier.get()));
+        String service = serviceIdentifier(clientInterface, asyncSuffixSupplier, metaData);
+        RequestBudget retryBudget = retryBudget(service);
 
         ThriftServiceMetadata serviceMetadata = serviceMetadataCache.computeIfAbsent(
                 clientInterface,
                 clz -> new ThriftServiceMetadata(clz, codecManager.getCatalog())
         );
         MethodInvoker invoker = methodInvokerSupplier.get();
+        Collection<ThriftMethodMetadata> thriftMethods = serviceMetadata.getMethods().values();
+        // building codecs of methods is the expensive part, build them in parallel for large interfaces
+        Stream<ThriftMethodMetadata> methodStream = thriftMethods.size() >= PARALLEL_BUILD_THRESHOLD ?
+                thriftMethods.parallelStream() : thriftMethods.stream();
+        Map<ThriftMethodMetadata, MethodMetadata> methodMetadata = methodStream.collect(
+                Collectors.toMap(identity(), method -> toMethodMetadata(codecManager, method)));
         ImmutableMap.Builder<Method, CerberusDriftMethodHandler> builder = ImmutableMap.builder();
-        for (ThriftMethodMetadata method : serviceMetadata.getMethods().values()) {
-            MethodMetadata metadata = toMethodMetadata(codecManager, method);
+        for (ThriftMethodMetadata method : thriftMethods) {
+            MethodMetadata metadata = methodMetadata.get(method);
 
-            RetryPolicy retryPolicy = new RetryPolicy(driftClientConfig, ExceptionClassifier.NORMAL_RESULT);
+            RetryPolicy retryPolicy = new RetryPolicy(driftClientConfig, OverloadedExceptionClassifier.INSTANCE);
 
             MethodInvocationStat statHandler;
             if (driftClientConfig.isStatsEnabled()) {
@@ -158,13 +382,18 @@ public final class CerberusServiceFactory {
             } else {
                 statHandler = new NullMethodInvocationStat();
             }
+            HedgingPolicy hedgingPolicy = hedgingPolicy(service, metadata);
             CerberusDriftMethodHandler handler = new CerberusDriftMethodHandler(
                     metadata, method.getHeaderParameters(),
                     invoker, method.isAsync(),
-                    addressSelector, retryPolicy, statHandler);
+                    addressSelector, retryPolicy, statHandler, hedgingPolicy, retryBudget);
             builder.put(method.getMethod(), handler);
         }
         Map<Method, CerberusDriftMethodHandler> methods = builder.build();
+        if (config.isGeneratedStubsEnabled() && ClientStubs.isSupported(clientInterface)) {
+            return (context, headers) -> ClientStubs.newStub(clientInterface, serviceMetadata.getName(), methods,
+                    context, headers);
+        }
         return (context, headers) -> newProxy(clientInterface,
                 new CerberusDriftInvocationHandler(serviceMetadata.getName(), methods, context, headers));
     }
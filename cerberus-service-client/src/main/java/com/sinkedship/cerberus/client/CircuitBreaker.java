@@ -0,0 +1,199 @@
+package com.sinkedship.cerberus.client;
+
+import com.google.common.base.Ticker;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker of a single instance, with closed, open and half-open states.
+ * <p>
+ * A closed breaker opens once the instance fails a number of consecutive requests, or once its failure
+ * ratio in the current window exceeds the threshold with enough requests seen. An open breaker rejects
+ * every request until its open duration passes, and then turns half-open, where a single probe request
+ * is let through at a time: a successful probe closes the breaker while a failed one opens it again
+ * with a doubled open duration, capped at the max open duration.
+ *
+ * @author Derrick Guan
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of a circuit breaker.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    // window of failure ratio
+    static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // min requests in a window before failure ratio opens a breaker
+    static final int MIN_REQUESTS = 20;
+
+    // max shift of base open duration, keeps the doubled duration from overflowing
+    private static final int MAX_OPEN_SHIFT = 20;
+
+    private final String instance;
+
+    private final CircuitBreakers.Settings settings;
+
+    private final Ticker ticker;
+
+    // read without lock on the hot path
+    private volatile State state = State.CLOSED;
+
+    @GuardedBy("this")
+    private long windowStartNanos;
+    @GuardedBy("this")
+    private int windowRequests;
+    @GuardedBy("this")
+    private int windowFailures;
+    @GuardedBy("this")
+    private int consecutiveFailures;
+    // times the breaker opened since it was closed
+    @GuardedBy("this")
+    private int consecutiveOpens;
+    // when an open breaker turns half-open, or when a half-open breaker lets the next probe through
+    @GuardedBy("this")
+    private long nextProbeNanos;
+
+    private volatile long opened;
+
+    // dropped along with its instance, its state never changes again
+    @GuardedBy("this")
+    private boolean removed;
+
+    CircuitBreaker(String instance, CircuitBreakers.Settings settings, Ticker ticker) {
+        this.instance = instance;
+        this.settings = settings;
+        this.ticker = ticker;
+        this.windowStartNanos = ticker.read();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    @Managed
+    public String getInstance() {
+        return instance;
+    }
+
+    @Managed(description = "State of the breaker, i.e. CLOSED, OPEN or HALF_OPEN")
+    public String getStateName() {
+        return state.name();
+    }
+
+    @Managed(description = "Times the breaker opened")
+    public long getOpened() {
+        return opened;
+    }
+
+    /**
+     * Claim the probe slot of a breaker which is not closed.
+     *
+     * @return true if the caller may send a probe request to the instance
+     */
+    synchronized boolean tryProbe() {
+        if (state == State.CLOSED) {
+            return false;
+        }
+        long now = ticker.read();
+        if (now - nextProbeNanos < 0) {
+            return false;
+        }
+        state = State.HALF_OPEN;
+        // another probe is let through if this one gets lost
+        nextProbeNanos = now + openDurationNanos();
+        return true;
+    }
+
+    /**
+     * Record result of a request sent to the instance.
+     *
+     * @return 1 if the breaker opened, -1 if it closed, otherwise 0
+     */
+    synchronized int onResult(boolean success) {
+        if (removed) {
+            return 0;
+        }
+        long now = ticker.read();
+        if (state == State.HALF_OPEN) {
+            if (success) {
+                close(now);
+                return -1;
+            }
+            open(now);
+            return 0;
+        }
+        if (state == State.OPEN) {
+            // result of a request sent before the breaker opened
+            return 0;
+        }
+        if (now - windowStartNanos >= WINDOW_NANOS) {
+            windowStartNanos = now;
+            windowRequests = 0;
+            windowFailures = 0;
+        }
+        windowRequests++;
+        if (success) {
+            consecutiveFailures = 0;
+            return 0;
+        }
+        windowFailures++;
+        consecutiveFailures++;
+        if (consecutiveFailures >= settings.consecutiveFailures ||
+                (windowRequests >= MIN_REQUESTS && windowFailures >= windowRequests * settings.failureRatio)) {
+            open(now);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * A request sent to the instance was cancelled, if it's the probe, let the next probe through right away.
+     */
+    synchronized void onCancel() {
+        if (state == State.HALF_OPEN) {
+            nextProbeNanos = ticker.read();
+        }
+    }
+
+    /**
+     * Drop the breaker along with its instance.
+     *
+     * @return true if the breaker was not closed
+     */
+    synchronized boolean remove() {
+        removed = true;
+        return state != State.CLOSED;
+    }
+
+    @GuardedBy("this")
+    private void open(long now) {
+        state = State.OPEN;
+        consecutiveOpens++;
+        opened++;
+        nextProbeNanos = now + openDurationNanos();
+    }
+
+    @GuardedBy("this")
+    private void close(long now) {
+        state = State.CLOSED;
+        consecutiveOpens = 0;
+        consecutiveFailures = 0;
+        windowStartNanos = now;
+        windowRequests = 0;
+        windowFailures = 0;
+    }
+
+    @GuardedBy("this")
+    private long openDurationNanos() {
+        int shift = Math.min(Math.max(consecutiveOpens - 1, 0), MAX_OPEN_SHIFT);
+        return Math.min(settings.baseOpenNanos << shift, settings.maxOpenNanos);
+    }
+}
@@ -0,0 +1,257 @@
+package com.sinkedship.cerberus.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.net.HostAndPort;
+import com.sinkedship.cerberus.core.AddressReferences;
+import io.airlift.units.Duration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.weakref.jmx.Managed;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a {@link CircuitBreaker} for each instance, so that address selectors can skip instances whose
+ * breakers are open without paying for a connection attempt.
+ * <p>
+ * Breakers are only kept for instances which are in the snapshot of some address selector, as reported by
+ * {@link #onAddressesChanged(Collection, Collection)}, a breaker is dropped once its instance left the registry.
+ *
+ * @author Derrick Guan
+ */
+public class CircuitBreakers {
+
+    private static final Logger LOGGER = LogManager.getLogger(CircuitBreakers.class);
+
+    public static final double DEFAULT_FAILURE_RATIO = 0.5;
+
+    public static final int DEFAULT_CONSECUTIVE_FAILURES = 5;
+
+    public static final Duration DEFAULT_BASE_OPEN_DURATION = new Duration(1, TimeUnit.SECONDS);
+
+    public static final Duration DEFAULT_MAX_OPEN_DURATION = new Duration(30, TimeUnit.SECONDS);
+
+    private final ConcurrentMap<HostAndPort, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    // breakers which are not closed
+    private final AtomicInteger notClosed = new AtomicInteger();
+
+    private final Settings settings;
+
+    private final Ticker ticker;
+
+    // called with every new breaker, e.g. to export it
+    private final Consumer<CircuitBreaker> onCreate;
+
+    // called with every dropped breaker, e.g. to un-export it
+    private final Consumer<CircuitBreaker> onRemove;
+
+    private final AddressReferences references = new AddressReferences();
+
+    private final boolean enabled;
+
+    public CircuitBreakers() {
+        this(DEFAULT_FAILURE_RATIO, DEFAULT_CONSECUTIVE_FAILURES, DEFAULT_BASE_OPEN_DURATION,
+                DEFAULT_MAX_OPEN_DURATION, Ticker.systemTicker(), breaker -> {
+                });
+    }
+
+    public CircuitBreakers(double failureRatio, int consecutiveFailures, Duration baseOpenDuration,
+                           Duration maxOpenDuration, Ticker ticker, Consumer<CircuitBreaker> onCreate) {
+        this(failureRatio, consecutiveFailures, baseOpenDuration, maxOpenDuration, ticker, onCreate, breaker -> {
+        });
+    }
+
+    public CircuitBreakers(double failureRatio, int consecutiveFailures, Duration baseOpenDuration,
+                           Duration maxOpenDuration, Ticker ticker, Consumer<CircuitBreaker> onCreate,
+                           Consumer<CircuitBreaker> onRemove) {
+        Preconditions.checkArgument(failureRatio > 0 && failureRatio <= 1, "Failure ratio must be in (0, 1]");
+        Preconditions.checkArgument(consecutiveFailures > 0, "Consecutive failures must be positive");
+        Preconditions.checkNotNull(baseOpenDuration, "Base open duration cannot be null");
+        Preconditions.checkNotNull(maxOpenDuration, "Max open duration cannot be null");
+        Preconditions.checkArgument(baseOpenDuration.compareTo(maxOpenDuration) <= 0,
+                "Base open duration cannot be greater than max open duration");
+        this.settings = new Settings(failureRatio, consecutiveFailures,
+                baseOpenDuration.roundTo(TimeUnit.NANOSECONDS), maxOpenDuration.roundTo(TimeUnit.NANOSECONDS));
+        this.ticker = Preconditions.checkNotNull(ticker, "Ticker cannot be null");
+        this.onCreate = Preconditions.checkNotNull(onCreate, "Breaker listener cannot be null");
+        this.onRemove = Preconditions.checkNotNull(onRemove, "Breaker listener cannot be null");
+        this.enabled = true;
+    }
+
+    private CircuitBreakers(boolean enabled) {
+        this.settings = null;
+        this.ticker = Ticker.systemTicker();
+        this.onCreate = breaker -> {
+        };
+        this.onRemove = breaker -> {
+        };
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return breakers which never open
+     */
+    public static CircuitBreakers disabled() {
+        return new CircuitBreakers(false);
+    }
+
+    /**
+     * @return true if every breaker is closed
+     */
+    public boolean isAllClosed() {
+        return notClosed.get() == 0;
+    }
+
+    /**
+     * Peek the state of an instance without claiming the probe slot.
+     *
+     * @param address of the instance
+     *
+     * @return true if the breaker of the instance is closed
+     */
+    public boolean isClosed(HostAndPort address) {
+        if (notClosed.get() == 0) {
+            return true;
+        }
+        CircuitBreaker breaker = breakers.get(address);
+        return breaker == null || breaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * Claim the probe slot of an instance whose breaker is not closed.
+     * <p>
+     * Callers which get true are expected to send a request to the instance.
+     *
+     * @param address of the instance
+     *
+     * @return true if the caller may send a probe request to the instance
+     */
+    public boolean tryProbe(HostAndPort address) {
+        if (notClosed.get() == 0) {
+            return false;
+        }
+        CircuitBreaker breaker = breakers.get(address);
+        return breaker != null && breaker.tryProbe();
+    }
+
+    /**
+     * Record result of a request sent to an instance.
+     *
+     * @param address of the instance
+     * @param success whether the instance answered the request
+     */
+    public void onResult(HostAndPort address, boolean success) {
+        if (!enabled) {
+            return;
+        }
+        CircuitBreaker breaker = breakers.get(address);
+        if (breaker == null) {
+            if (success) {
+                // fast path, breakers are only created on failures
+                return;
+            }
+            if (!references.contains(address)) {
+                // e.g. a request to an instance which has left the registry failed
+                return;
+            }
+            breaker = breakers.computeIfAbsent(address, this::newBreaker);
+            if (!references.contains(address)) {
+                // the instance left while the breaker was created
+                remove(address);
+                return;
+            }
+        }
+        int change = breaker.onResult(success);
+        if (change > 0) {
+            notClosed.incrementAndGet();
+            LOGGER.warn("Circuit breaker of {} is open", address);
+        } else if (change < 0) {
+            notClosed.decrementAndGet();
+            LOGGER.info("Circuit breaker of {} is closed", address);
+        }
+    }
+
+    /**
+     * Record a request sent to an instance which was cancelled before it finished, e.g. a hedged request
+     * which lost, it's neither a success nor a failure of the instance.
+     *
+     * @param address of the instance
+     */
+    public void onCancel(HostAndPort address) {
+        if (notClosed.get() == 0) {
+            return;
+        }
+        CircuitBreaker breaker = breakers.get(address);
+        if (breaker != null) {
+            breaker.onCancel();
+        }
+    }
+
+    /**
+     * Called by an address selector once its snapshot changed, breakers of instances which are not in
+     * the snapshot of any selector are dropped.
+     *
+     * @param removed distinct addresses which left the snapshot of the selector
+     * @param added   distinct addresses which joined the snapshot of the selector
+     */
+    public void onAddressesChanged(Collection<HostAndPort> removed, Collection<HostAndPort> added) {
+        if (!enabled) {
+            return;
+        }
+        for (HostAndPort address : references.update(removed, added)) {
+            remove(address);
+        }
+    }
+
+    @Managed(description = "Breakers which are open or half-open")
+    public int getNotClosed() {
+        return notClosed.get();
+    }
+
+    public Map<HostAndPort, CircuitBreaker> getBreakers() {
+        return breakers;
+    }
+
+    private void remove(HostAndPort address) {
+        CircuitBreaker breaker = breakers.remove(address);
+        if (breaker == null) {
+            return;
+        }
+        if (breaker.remove()) {
+            notClosed.decrementAndGet();
+        }
+        onRemove.accept(breaker);
+    }
+
+    private CircuitBreaker newBreaker(HostAndPort address) {
+        CircuitBreaker breaker = new CircuitBreaker(address.toString(), settings, ticker);
+        onCreate.accept(breaker);
+        return breaker;
+    }
+
+    static final class Settings {
+
+        final double failureRatio;
+
+        final int consecutiveFailures;
+
+        final long baseOpenNanos;
+
+        final long maxOpenNanos;
+
+        Settings(double failureRatio, int consecutiveFailures, long baseOpenNanos, long maxOpenNanos) {
+            this.failureRatio = failureRatio;
+            this.consecutiveFailures = consecutiveFailures;
+            this.baseOpenNanos = baseOpenNanos;
+            this.maxOpenNanos = maxOpenNanos;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.sinkedship.cerberus.client;
+
+import com.sinkedship.cerberus.commons.ServiceMetaData;
+import com.sinkedship.cerberus.core.api.Provider;
+import io.airlift.drift.transport.client.DriftClientConfig;
+import io.airlift.units.Duration;
+
+import java.util.Objects;
+
+/**
+ * Full identity of a client created by {@link CerberusServiceFactory}, i.e. everything a client is built from.
+ * <p>
+ * Drift client config is mutable, so its values are copied when the key is created. A strategy is compared
+ * by identity, since it carries load state of a service.
+ *
+ * @author Derrick Guan
+ */
+final class ClientKey {
+
+    private final Class<?> clientInterface;
+
+    private final ServiceMetaData metaData;
+
+    private final String asyncSuffix;
+
+    private final Provider.Strategy strategy;
+
+    // values of drift client config, all null for a key of address selector
+    private final Integer maxRetries;
+
+    private final Duration minBackoffDelay;
+
+    private final Duration maxBackoffDelay;
+
+    private final Double backoffScaleFactor;
+
+    private final Duration maxRetryTime;
+
+    private final Boolean statsEnabled;
+
+    private final int hashCode;
+
+    ClientKey(Class<?> clientInterface, ServiceMetaData metaData, String asyncSuffix,
+              DriftClientConfig driftClientConfig, Provider.Strategy strategy) {
+        this.clientInterface = clientInterface;
+        this.metaData = metaData;
+        this.asyncSuffix = asyncSuffix;
+        this.strategy = strategy;
+        if (driftClientConfig != null) {
+            this.maxRetries = driftClientConfig.getMaxRetries();
+            this.minBackoffDelay = driftClientConfig.getMinBackoffDelay();
+            this.maxBackoffDelay = driftClientConfig.getMaxBackoffDelay();
+            this.backoffScaleFactor = driftClientConfig.getBackoffScaleFactor();
+            this.maxRetryTime = driftClientConfig.getMaxRetryTime();
+            this.statsEnabled = driftClientConfig.isStatsEnabled();
+        } else {
+            this.maxRetries = null;
+            this.minBackoffDelay = null;
+            this.maxBackoffDelay = null;
+            this.backoffScaleFactor = null;
+            this.maxRetryTime = null;
+            this.statsEnabled = null;
+        }
+        this.hashCode = Objects.hash(clientInterface, metaData, asyncSuffix, System.identityHashCode(strategy),
+                maxRetries, minBackoffDelay, maxBackoffDelay, backoffScaleFactor, maxRetryTime, statsEnabled);
+    }
+
+    /**
+     * @return key of the address selector of the client, which does not depend on drift client config
+     */
+    ClientKey forAddressSelector() {
+        return new ClientKey(clientInterface, metaData, asyncSuffix, null, strategy);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ClientKey)) {
+            return false;
+        }
+        ClientKey other = (ClientKey) obj;
+        return hashCode == other.hashCode &&
+                clientInterface == other.clientInterface &&
+                strategy == other.strategy &&
+                Objects.equals(metaData, other.metaData) &&
+                Objects.equals(asyncSuffix, other.asyncSuffix) &&
+                Objects.equals(maxRetries, other.maxRetries) &&
+                Objects.equals(minBackoffDelay, other.minBackoffDelay) &&
+                Objects.equals(maxBackoffDelay, other.maxBackoffDelay) &&
+                Objects.equals(backoffScaleFactor, other.backoffScaleFactor) &&
+                Objects.equals(maxRetryTime, other.maxRetryTime) &&
+                Objects.equals(statsEnabled, other.statsEnabled);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,49 @@
+package com.sinkedship.cerberus.client;
+
+import io.airlift.drift.client.address.AddressSelector;
+import io.airlift.drift.transport.client.Address;
+
+/**
+ * An {@link AddressSelector} which also wants to know when an address has proven to be healthy,
+ * so that it can lift the penalty it put on the address via {@link #markdown(Address)},
+ * and optionally wants to observe every request sent to the addresses it selected.
+ *
+ * @author Derrick Guan
+ */
+public interface HealthAwareAddressSelector<A extends Address> extends AddressSelector<A> {
+
+    /**
+     * Mark an address as healthy, called once a server at the address has answered an invocation,
+     * whether the answer is a normal result or an application exception.
+     *
+     * @param address which has answered an invocation
+     */
+    void markup(A address);
+
+    /**
+     * Called when a request is about to be sent to an address.
+     *
+     * @param address which the request is sent to
+     */
+    default void onRequestStart(A address) {
+    }
+
+    /**
+     * Called when a request sent to an address finished.
+     *
+     * @param address       which the request was sent to
+     * @param durationNanos duration of the request in nanoseconds
+     * @param success       whether the server at the address answered the request
+     */
+    default void onRequestFinish(A address, long durationNanos, boolean success) {
+    }
+
+    /**
+     * Called when a request sent to an address was cancelled before it finished, e.g. a hedged request
+     * which lost or a request cancelled by the caller, it's neither a success nor a failure of the address.
+     *
+     * @param address which the request was sent to
+     */
+    default void onRequestCancel(A address) {
+    }
+}
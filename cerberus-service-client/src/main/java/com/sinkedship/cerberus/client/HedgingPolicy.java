@@ -0,0 +1,188 @@
+package com.sinkedship.cerberus.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import io.airlift.units.Duration;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.weakref.jmx.Managed;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when an idempotent method sends a hedged request, i.e. a second attempt to another address
+ * while the first attempt has not been answered yet.
+ * <p>
+ * The hedging delay is the given percentile of latencies of the method, clamped to [min delay, max delay],
+ * and is re-computed about every second once at least min samples latencies have been observed since the last
+ * computation. No request is hedged before the first computation. Hedged requests are also limited by a
+ * {@link RequestBudget} which is usually shared by all methods of a service.
+ *
+ * @author Derrick Guan
+ */
+public class HedgingPolicy {
+
+    public static final double DEFAULT_PERCENTILE = 95;
+
+    public static final Duration DEFAULT_MIN_DELAY = new Duration(5, TimeUnit.MILLISECONDS);
+
+    public static final Duration DEFAULT_MAX_DELAY = new Duration(1, TimeUnit.SECONDS);
+
+    public static final int DEFAULT_MIN_SAMPLES = 100;
+
+    // max ratio of hedged requests to requests of a service
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final long maxDelayNanos;
+
+    private final int minSamples;
+
+    private final RequestBudget budget;
+
+    private final Ticker ticker;
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    // latencies collected since the last computation, only touched by the thread which won the update
+    private final Histogram pending = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    private final AtomicLong nextUpdateNanos;
+
+    // negative until there are enough samples
+    private volatile long delayNanos = -1;
+
+    private final LongAdder hedges = new LongAdder();
+
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public HedgingPolicy() {
+        this(new RequestBudget(DEFAULT_BUDGET_RATIO));
+    }
+
+    public HedgingPolicy(RequestBudget budget) {
+        this(DEFAULT_PERCENTILE, DEFAULT_MIN_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MIN_SAMPLES, budget);
+    }
+
+    public HedgingPolicy(double percentile, Duration minDelay, Duration maxDelay, int minSamples,
+                         RequestBudget budget) {
+        this(percentile, minDelay, maxDelay, minSamples, budget, Ticker.systemTicker());
+    }
+
+    public HedgingPolicy(double percentile, Duration minDelay, Duration maxDelay, int minSamples,
+                         RequestBudget budget, Ticker ticker) {
+        Preconditions.checkArgument(percentile > 0 && percentile < 100, "Hedging percentile must be in (0, 100)");
+        Preconditions.checkNotNull(minDelay, "Min hedging delay cannot be null");
+        Preconditions.checkNotNull(maxDelay, "Max hedging delay cannot be null");
+        Preconditions.checkArgument(minDelay.compareTo(maxDelay) <= 0,
+                "Min hedging delay cannot be greater than max hedging delay");
+        Preconditions.checkArgument(minSamples > 0, "Min samples of hedging must be positive");
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.roundTo(TimeUnit.NANOSECONDS);
+        this.maxDelayNanos = maxDelay.roundTo(TimeUnit.NANOSECONDS);
+        this.minSamples = minSamples;
+        this.budget = Preconditions.checkNotNull(budget, "Hedging budget cannot be null");
+        this.ticker = Preconditions.checkNotNull(ticker, "Ticker cannot be null");
+        this.nextUpdateNanos = new AtomicLong(ticker.read() + UPDATE_INTERVAL_NANOS);
+    }
+
+    /**
+     * Called once per invocation of the method, hedged requests are not counted.
+     */
+    public void onInvocation() {
+        budget.deposit();
+    }
+
+    /**
+     * Record latency of a request which was answered by a server.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void recordLatency(long nanos) {
+        recorder.recordValue(Math.min(Math.max(nanos, 0), HIGHEST_TRACKABLE_NANOS));
+    }
+
+    /**
+     * @return delay in nanoseconds after which a request should be hedged, negative if it should not be hedged
+     */
+    public long getDelayNanos() {
+        long now = ticker.read();
+        long next = nextUpdateNanos.get();
+        if (now - next >= 0 && nextUpdateNanos.compareAndSet(next, now + UPDATE_INTERVAL_NANOS)) {
+            update();
+        }
+        return delayNanos;
+    }
+
+    /**
+     * Claim the budget of a hedged request.
+     *
+     * @return true if the hedged request can be sent
+     */
+    public boolean tryAcquire() {
+        if (budget.tryWithdraw()) {
+            return true;
+        }
+        budgetExhausted.increment();
+        return false;
+    }
+
+    /**
+     * Give back the budget of a hedged request which was not sent after all, e.g. there's no other address.
+     */
+    public void release() {
+        budget.refund();
+    }
+
+    /**
+     * Called when a hedged request is sent.
+     */
+    public void onHedge() {
+        hedges.increment();
+    }
+
+    /**
+     * Called when a hedged request answers before the request it hedged.
+     */
+    public void onHedgeWin() {
+        hedgeWins.increment();
+    }
+
+    @Managed(description = "Hedged requests sent")
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    @Managed(description = "Hedged requests which answered first")
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    @Managed(description = "Hedged requests not sent as the budget was exhausted")
+    public long getBudgetExhausted() {
+        return budgetExhausted.sum();
+    }
+
+    private synchronized void update() {
+        pending.add(recorder.getIntervalHistogram());
+        if (pending.getTotalCount() < minSamples) {
+            return;
+        }
+        long delay = pending.getValueAtPercentile(percentile);
+        delayNanos = Math.min(Math.max(delay, minDelayNanos), maxDelayNanos);
+        pending.reset();
+    }
+}
@@ -0,0 +1,39 @@
+package com.sinkedship.cerberus.client;
+
+import com.sinkedship.cerberus.commons.exception.OverloadedMessages;
+import io.airlift.drift.TApplicationException;
+import io.airlift.drift.client.ExceptionClassification;
+import io.airlift.drift.client.ExceptionClassifier;
+
+import java.util.Optional;
+
+import static io.airlift.drift.client.ExceptionClassification.HostStatus.OVERLOADED;
+
+/**
+ * Classifies the overloaded errors which cerberus servers answer when they shed load as
+ * {@link ExceptionClassification.HostStatus#OVERLOADED}, which are always safe to retry on another server,
+ * since the server rejected the request before executing it.
+ * Any other exception is classified as a normal result.
+ *
+ * @author Derrick Guan
+ */
+public class OverloadedExceptionClassifier implements ExceptionClassifier {
+
+    public static final OverloadedExceptionClassifier INSTANCE = new OverloadedExceptionClassifier();
+
+    private static final ExceptionClassification OVERLOADED_CLASSIFICATION =
+            new ExceptionClassification(Optional.of(Boolean.TRUE), OVERLOADED);
+
+    @Override
+    public ExceptionClassification classifyException(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof TApplicationException && OverloadedMessages.isOverloaded(t.getMessage())) {
+                return OVERLOADED_CLASSIFICATION;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return ExceptionClassification.NORMAL_EXCEPTION;
+    }
+}
@@ -0,0 +1,113 @@
+package com.sinkedship.cerberus.client;
+
+import com.google.common.base.Preconditions;
+import org.weakref.jmx.Managed;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket which limits extra requests of a service, i.e. retries or hedged requests, to a ratio of
+ * its requests, so that they never amplify the load of a service which is already in trouble.
+ * <p>
+ * Every request deposits a fraction of a token and every extra request withdraws a whole token,
+ * the bucket holds at most a few tokens so that idle periods can't be saved up for a burst of extra requests.
+ *
+ * @author Derrick Guan
+ */
+public class RequestBudget {
+
+    public static final int DEFAULT_MAX_TOKENS = 10;
+
+    // tokens are kept in thousandths of a token
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+
+    private final long capacity;
+
+    private final AtomicLong balance;
+
+    private final LongAdder withdrawn = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    public RequestBudget(double ratio) {
+        this(ratio, DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * @param ratio     max ratio of extra requests to requests
+     * @param maxTokens max extra requests which can be sent in a burst
+     */
+    public RequestBudget(double ratio, int maxTokens) {
+        Preconditions.checkArgument(ratio > 0 && ratio <= 1, "Budget ratio must be in (0, 1]");
+        Preconditions.checkArgument(maxTokens > 0, "Max tokens of budget must be positive");
+        this.deposit = Math.max(1, Math.round(ratio * TOKEN));
+        this.capacity = maxTokens * TOKEN;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * Called on every request.
+     */
+    public void deposit() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= capacity) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(capacity, current + deposit)));
+    }
+
+    /**
+     * Withdraw a token for an extra request.
+     *
+     * @return true if the extra request can be sent
+     */
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                rejected.increment();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - TOKEN));
+        withdrawn.increment();
+        return true;
+    }
+
+    /**
+     * Give back a token which was withdrawn but not spent.
+     */
+    public void refund() {
+        withdrawn.decrement();
+        balance.accumulateAndGet(TOKEN, (current, token) -> Math.min(capacity, current + token));
+    }
+
+    /**
+     * @return tokens left in the bucket
+     */
+    @Managed
+    public double getTokens() {
+        return (double) balance.get() / TOKEN;
+    }
+
+    /**
+     * @return extra requests which were allowed
+     */
+    @Managed
+    public long getWithdrawn() {
+        return withdrawn.sum();
+    }
+
+    /**
+     * @return extra requests which were rejected as the budget was exhausted
+     */
+    @Managed
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -1,10 +1,18 @@
 package com.sinkedship.cerberus.client.config;
 
+import com.sinkedship.cerberus.client.AddressQuarantine;
+import com.sinkedship.cerberus.client.CircuitBreakers;
+import com.sinkedship.cerberus.client.HedgingPolicy;
 import io.airlift.drift.transport.netty.client.DriftNettyClientConfig;
 import com.sinkedship.cerberus.commons.config.AbstractCerberusConfig;
 import com.sinkedship.cerberus.commons.DataCenter;
 import com.sinkedship.cerberus.commons.config.data_center.DataCenterConfig;
+import com.sinkedship.cerberus.core.api.Provider;
+import com.sinkedship.cerberus.strategy.RoundRobinStrategy;
 import io.airlift.drift.transport.netty.client.DriftNettyConnectionFactoryConfig;
+import io.airlift.units.Duration;
+
+import java.util.function.Supplier;
 
 /**
  * Client configuration used to discover dedicated Thrift services.
@@ -19,10 +27,54 @@ import io.airlift.drift.transport.netty.client.DriftNettyConnectionFactoryConfig
  */
 public final class CerberusClientConfig extends AbstractCerberusConfig {
 
+    public static final double DEFAULT_RETRY_BUDGET_RATIO = 0.2;
+
     private final DriftNettyClientConfig driftNettyClientConfig;
 
     private final DriftNettyConnectionFactoryConfig connectionFactoryConfig;
 
+    // penalty of the first markdown of an address, doubles on consecutive markdowns
+    private Duration markdownBasePenalty = AddressQuarantine.DEFAULT_BASE_PENALTY;
+
+    // max penalty of a marked down address
+    private Duration markdownMaxPenalty = AddressQuarantine.DEFAULT_MAX_PENALTY;
+
+    // interval of probe requests sent to an address whose penalty expired
+    private Duration markdownProbeInterval = AddressQuarantine.DEFAULT_PROBE_INTERVAL;
+
+    // supplies the strategy of each service which is not given one explicitly
+    private Supplier<Provider.Strategy> strategySupplier = RoundRobinStrategy::new;
+
+    // whether idempotent methods hedge slow requests
+    private boolean hedgingEnabled = false;
+
+    // percentile of method latencies after which a request is hedged
+    private double hedgingPercentile = HedgingPolicy.DEFAULT_PERCENTILE;
+
+    private Duration hedgingMinDelay = HedgingPolicy.DEFAULT_MIN_DELAY;
+
+    private Duration hedgingMaxDelay = HedgingPolicy.DEFAULT_MAX_DELAY;
+
+    // max ratio of hedged requests to requests of a service
+    private double hedgingBudgetRatio = HedgingPolicy.DEFAULT_BUDGET_RATIO;
+
+    // max ratio of retries to requests of a service, 0 means retries are not limited by a budget
+    private double retryBudgetRatio = DEFAULT_RETRY_BUDGET_RATIO;
+
+    // whether instances are guarded by circuit breakers
+    private boolean circuitBreakerEnabled = true;
+
+    private double circuitBreakerFailureRatio = CircuitBreakers.DEFAULT_FAILURE_RATIO;
+
+    private int circuitBreakerConsecutiveFailures = CircuitBreakers.DEFAULT_CONSECUTIVE_FAILURES;
+
+    private Duration circuitBreakerBaseOpenDuration = CircuitBreakers.DEFAULT_BASE_OPEN_DURATION;
+
+    private Duration circuitBreakerMaxOpenDuration = CircuitBreakers.DEFAULT_MAX_OPEN_DURATION;
+
+    // whether clients are generated stubs instead of dynamic proxies
+    private boolean generatedStubsEnabled = false;
+
     public CerberusClientConfig(DataCenter dataCenter) {
         super(dataCenter);
         driftNettyClientConfig = new DriftNettyClientConfig();
@@ -45,4 +97,201 @@ public final class CerberusClientConfig extends AbstractCerberusConfig {
     public DriftNettyConnectionFactoryConfig getDriftNettyConnFactoryConfig() {
         return connectionFactoryConfig;
     }
+
+    public Duration getMarkdownBasePenalty() {
+        return markdownBasePenalty;
+    }
+
+    public CerberusClientConfig setMarkdownBasePenalty(Duration markdownBasePenalty) {
+        this.markdownBasePenalty = markdownBasePenalty;
+        return this;
+    }
+
+    public Duration getMarkdownMaxPenalty() {
+        return markdownMaxPenalty;
+    }
+
+    public CerberusClientConfig setMarkdownMaxPenalty(Duration markdownMaxPenalty) {
+        this.markdownMaxPenalty = markdownMaxPenalty;
+        return this;
+    }
+
+    public Duration getMarkdownProbeInterval() {
+        return markdownProbeInterval;
+    }
+
+    public CerberusClientConfig setMarkdownProbeInterval(Duration markdownProbeInterval) {
+        this.markdownProbeInterval = markdownProbeInterval;
+        return this;
+    }
+
+    public Supplier<Provider.Strategy> getStrategySupplier() {
+        return strategySupplier;
+    }
+
+    /**
+     * Set the supplier of default strategy, a new strategy is supplied for each service.
+     *
+     * @param strategySupplier supplier of default strategy, e.g. {@code PeakEwmaStrategy::new}
+     *
+     * @return this config
+     */
+    public CerberusClientConfig setStrategySupplier(Supplier<Provider.Strategy> strategySupplier) {
+        this.strategySupplier = strategySupplier;
+        return this;
+    }
+
+    public boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    /**
+     * Enable hedging of idempotent methods: if a request has not been answered within the hedging delay,
+     * a second request is sent to another instance and the first answer wins.
+     *
+     * @param hedgingEnabled whether idempotent methods hedge slow requests, false by default
+     *
+     * @return this config
+     */
+    public CerberusClientConfig enableHedging(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+        return this;
+    }
+
+    public double getHedgingPercentile() {
+        return hedgingPercentile;
+    }
+
+    /**
+     * Set the percentile of latencies of a method which is used as its hedging delay.
+     *
+     * @param hedgingPercentile percentile in (0, 100), 95 by default
+     *
+     * @return this config
+     */
+    public CerberusClientConfig setHedgingPercentile(double hedgingPercentile) {
+        this.hedgingPercentile = hedgingPercentile;
+        return this;
+    }
+
+    public Duration getHedgingMinDelay() {
+        return hedgingMinDelay;
+    }
+
+    public CerberusClientConfig setHedgingMinDelay(Duration hedgingMinDelay) {
+        this.hedgingMinDelay = hedgingMinDelay;
+        return this;
+    }
+
+    public Duration getHedgingMaxDelay() {
+        return hedgingMaxDelay;
+    }
+
+    public CerberusClientConfig setHedgingMaxDelay(Duration hedgingMaxDelay) {
+        this.hedgingMaxDelay = hedgingMaxDelay;
+        return this;
+    }
+
+    public double getHedgingBudgetRatio() {
+        return hedgingBudgetRatio;
+    }
+
+    /**
+     * Set the max ratio of hedged requests to requests of a service, so that hedging can't amplify overload.
+     *
+     * @param hedgingBudgetRatio ratio in (0, 1], 0.1 by default
+     *
+     * @return this config
+     */
+    public CerberusClientConfig setHedgingBudgetRatio(double hedgingBudgetRatio) {
+        this.hedgingBudgetRatio = hedgingBudgetRatio;
+        return this;
+    }
+
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    /**
+     * Set the max ratio of retries to requests of a service, the budget is shared by all callers of the service,
+     * so that retries can't multiply load of a service during a partial outage.
+     *
+     * @param retryBudgetRatio ratio in [0, 1], 0.2 by default, 0 means retries are not limited by a budget
+     *
+     * @return this config
+     */
+    public CerberusClientConfig setRetryBudgetRatio(double retryBudgetRatio) {
+        this.retryBudgetRatio = retryBudgetRatio;
+        return this;
+    }
+
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    /**
+     * Enable circuit breakers of instances, instances whose breakers are open are skipped by address selection.
+     *
+     * @param circuitBreakerEnabled whether instances are guarded by circuit breakers, true by default
+     *
+     * @return this config
+     */
+    public CerberusClientConfig enableCircuitBreaker(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+        return this;
+    }
+
+    public double getCircuitBreakerFailureRatio() {
+        return circuitBreakerFailureRatio;
+    }
+
+    public CerberusClientConfig setCircuitBreakerFailureRatio(double circuitBreakerFailureRatio) {
+        this.circuitBreakerFailureRatio = circuitBreakerFailureRatio;
+        return this;
+    }
+
+    public int getCircuitBreakerConsecutiveFailures() {
+        return circuitBreakerConsecutiveFailures;
+    }
+
+    public CerberusClientConfig setCircuitBreakerConsecutiveFailures(int circuitBreakerConsecutiveFailures) {
+        this.circuitBreakerConsecutiveFailures = circuitBreakerConsecutiveFailures;
+        return this;
+    }
+
+    public Duration getCircuitBreakerBaseOpenDuration() {
+        return circuitBreakerBaseOpenDuration;
+    }
+
+    public CerberusClientConfig setCircuitBreakerBaseOpenDuration(Duration circuitBreakerBaseOpenDuration) {
+        this.circuitBreakerBaseOpenDuration = circuitBreakerBaseOpenDuration;
+        return this;
+    }
+
+    public Duration getCircuitBreakerMaxOpenDuration() {
+        return circuitBreakerMaxOpenDuration;
+    }
+
+    public CerberusClientConfig setCircuitBreakerMaxOpenDuration(Duration circuitBreakerMaxOpenDuration) {
+        this.circuitBreakerMaxOpenDuration = circuitBreakerMaxOpenDuration;
+        return this;
+    }
+
+    public boolean isGeneratedStubsEnabled() {
+        return generatedStubsEnabled;
+    }
+
+    /**
+     * Enable generated stubs, i.e. clients are classes generated at runtime for each service interface
+     * instead of dynamic proxies, which dispatch invocations without reflection.
+     * Interfaces which are not public always get dynamic proxies.
+     *
+     * @param generatedStubsEnabled whether clients are generated stubs, false by default
+     *
+     * @return this config
+     */
+    public CerberusClientConfig enableGeneratedStubs(boolean generatedStubsEnabled) {
+        this.generatedStubsEnabled = generatedStubsEnabled;
+        return this;
+    }
 }
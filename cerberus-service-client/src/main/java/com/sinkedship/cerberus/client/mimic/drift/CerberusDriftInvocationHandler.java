@@ -18,6 +18,7 @@ import io.airlift.drift.transport.client.DriftApplicationException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
@@ -72,14 +73,34 @@ public class CerberusDriftInvocationHandler implements InvocationHandler {
             return null;
         }
 
-        CerberusDriftMethodHandler methodHandler = methods.get(method);
+        return invokeMethod(methods.get(method), method, asList(args), method.getExceptionTypes(),
+                addressSelectionContext, headers);
+    }
 
+    /**
+     * Invoke a method handler the way a client proxy does, i.e. unwraps user exceptions, and rethrows
+     * exceptions which are not declared to be thrown by the method as unchecked exceptions.
+     *
+     * @param methodHandler           handler of the method, null if the method is unknown
+     * @param method                  description of the method
+     * @param args                    arguments of the invocation
+     * @param exceptionTypes          exception types declared to be thrown by the method
+     * @param addressSelectionContext address selection context of the invocation
+     * @param headers                 headers of the invocation
+     *
+     * @return result of the invocation, a future if the method is async
+     *
+     * @throws Throwable which is declared to be thrown by the method, or an error
+     */
+    public static Object invokeMethod(CerberusDriftMethodHandler methodHandler, Object method, List<Object> args,
+                                      Class<?>[] exceptionTypes, Optional<String> addressSelectionContext,
+                                      Map<String, String> headers) throws Throwable {
         try {
             if (methodHandler == null) {
                 throw new TApplicationException(UNKNOWN_METHOD, "Unknown method: " + method);
             }
 
-            ListenableFuture<Object> future = methodHandler.invoke(addressSelectionContext, headers, asList(args));
+            ListenableFuture<Object> future = methodHandler.invoke(addressSelectionContext, headers, args);
 
             if (methodHandler.isAsync()) {
                 return unwrapUserException(future);
@@ -93,7 +114,7 @@ public class CerberusDriftInvocationHandler implements InvocationHandler {
         } catch (Exception e) {
             // rethrow any exceptions declared to be thrown by the method
             boolean canThrowTException = false;
-            for (Class<?> exceptionType : method.getExceptionTypes()) {
+            for (Class<?> exceptionType : exceptionTypes) {
                 if (exceptionType.isAssignableFrom(e.getClass())) {
                     throw e;
                 }
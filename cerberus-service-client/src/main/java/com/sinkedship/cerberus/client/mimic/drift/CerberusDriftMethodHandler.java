@@ -1,8 +1,9 @@
 package com.sinkedship.cerberus.client.mimic.drift;
 
 import com.google.common.base.Ticker;
-import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.sinkedship.cerberus.client.HedgingPolicy;
+import com.sinkedship.cerberus.client.RequestBudget;
 import io.airlift.drift.client.RetryPolicy;
 import io.airlift.drift.client.address.AddressSelector;
 import io.airlift.drift.client.stats.MethodInvocationStat;
@@ -12,6 +13,7 @@ import io.airlift.drift.transport.client.Address;
 import io.airlift.drift.transport.client.MethodInvoker;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static java.util.Objects.requireNonNull;
@@ -27,11 +29,17 @@ public class CerberusDriftMethodHandler {
 
     private final MethodMetadata metadata;
     private final Map<Integer, ThriftHeaderParameter> headerParameters;
+    // indexes of arguments which are not header parameters
+    private final int[] parameterIndexes;
     private final MethodInvoker invoker;
     private final boolean async;
     private final AddressSelector<? extends Address> addressSelector;
     private final RetryPolicy retryPolicy;
     private final MethodInvocationStat stat;
+    // null if the method is never hedged
+    private final HedgingPolicy hedgingPolicy;
+    // null if retries are not limited by a budget
+    private final RequestBudget retryBudget;
 
     public CerberusDriftMethodHandler(
             MethodMetadata metadata,
@@ -41,14 +49,32 @@ public class CerberusDriftMethodHandler {
             AddressSelector<? extends Address> addressSelector,
             RetryPolicy retryPolicy,
             MethodInvocationStat stat) {
+        this(metadata, headersParameters, invoker, async, addressSelector, retryPolicy, stat, null, null);
+    }
+
+    public CerberusDriftMethodHandler(
+            MethodMetadata metadata,
+            Set<ThriftHeaderParameter> headersParameters,
+            MethodInvoker invoker,
+            boolean async,
+            AddressSelector<? extends Address> addressSelector,
+            RetryPolicy retryPolicy,
+            MethodInvocationStat stat,
+            HedgingPolicy hedgingPolicy,
+            RequestBudget retryBudget) {
         this.metadata = requireNonNull(metadata, "metadata is null");
         this.headerParameters = requireNonNull(headersParameters, "headersParameters is null").stream()
                 .collect(toImmutableMap(ThriftHeaderParameter::getIndex, identity()));
+        this.parameterIndexes = IntStream.range(0, metadata.getParameters().size() + headerParameters.size())
+                .filter(index -> !headerParameters.containsKey(index))
+                .toArray();
         this.invoker = requireNonNull(invoker, "invoker is null");
         this.async = async;
         this.addressSelector = requireNonNull(addressSelector, "addressSelector is null");
         this.retryPolicy = retryPolicy;
         this.stat = requireNonNull(stat, "stat is null");
+        this.hedgingPolicy = hedgingPolicy;
+        this.retryBudget = retryBudget;
     }
 
     public boolean isAsync() {
@@ -66,17 +92,15 @@ public class CerberusDriftMethodHandler {
                 }
             }
 
-            ImmutableList.Builder<Object> newParameters = ImmutableList.builder();
-            for (int index = 0; index < parameters.size(); index++) {
-                if (!headerParameters.containsKey(index)) {
-                    newParameters.add(parameters.get(index));
-                }
+            Object[] newParameters = new Object[parameterIndexes.length];
+            for (int i = 0; i < parameterIndexes.length; i++) {
+                newParameters[i] = parameters.get(parameterIndexes[i]);
             }
-            parameters = newParameters.build();
+            parameters = Arrays.asList(newParameters);
         }
         return CerberusDriftMethodInvocation.createDriftMethodInvocation(
                 invoker, metadata, headers, parameters, retryPolicy, addressSelector,
-                addressSelectionContext, stat, Ticker.systemTicker());
+                addressSelectionContext, stat, Ticker.systemTicker(), hedgingPolicy, retryBudget);
     }
 
 }
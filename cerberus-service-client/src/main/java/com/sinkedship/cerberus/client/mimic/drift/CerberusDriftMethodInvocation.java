@@ -7,6 +7,9 @@ import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.sinkedship.cerberus.client.HealthAwareAddressSelector;
+import com.sinkedship.cerberus.client.HedgingPolicy;
+import com.sinkedship.cerberus.client.RequestBudget;
 import io.airlift.drift.TException;
 import io.airlift.drift.client.ExceptionClassification;
 import io.airlift.drift.client.RetriesFailedException;
@@ -22,6 +25,7 @@ import org.apache.logging.log4j.Logger;
 
 import javax.annotation.concurrent.GuardedBy;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static io.airlift.drift.client.ExceptionClassification.HostStatus.*;
@@ -33,6 +37,10 @@ import static java.util.Objects.requireNonNull;
 /**
  * A completely mimic of io.airlift.drift.client.DriftMethodInvocation
  * excepts that it's public.
+ * <p>
+ * If a {@link HedgingPolicy} is given and the method is idempotent, the first attempt is hedged:
+ * once it has not been answered within the hedging delay, a second attempt is sent to another address,
+ * the first answer wins and the other attempt is cancelled. Attempts are only retried once none of them is pending.
  *
  * @author Derrick Guan
  */
@@ -50,6 +58,10 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
     private final MethodInvocationStat stat;
     private final Ticker ticker;
     private final long startTime;
+    // null if the invocation is never hedged
+    private final HedgingPolicy hedging;
+    // null if retries are not limited by a budget
+    private final RequestBudget retryBudget;
 
     @GuardedBy("this")
     private final Set<A> attemptedAddresses = new LinkedHashSet<>();
@@ -67,6 +79,16 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
     @GuardedBy("this")
     private ListenableFuture<?> currentTask;
 
+    // attempts which have been sent and not finished yet, with their addresses
+    @GuardedBy("this")
+    private final Map<ListenableFuture<Object>, A> pendingAttempts = new LinkedHashMap<>();
+    @GuardedBy("this")
+    private boolean hedgeScheduled;
+    @GuardedBy("this")
+    private ListenableFuture<?> hedgeTimer;
+    @GuardedBy("this")
+    private ListenableFuture<Object> hedgeTask;
+
     static <A extends Address> CerberusDriftMethodInvocation<A> createDriftMethodInvocation(
             MethodInvoker invoker,
             MethodMetadata metadata,
@@ -76,7 +98,9 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
             AddressSelector<A> addressSelector,
             Optional<String> addressSelectionContext,
             MethodInvocationStat stat,
-            Ticker ticker) {
+            Ticker ticker,
+            HedgingPolicy hedging,
+            RequestBudget retryBudget) {
         CerberusDriftMethodInvocation<A> invocation = new CerberusDriftMethodInvocation<>(
                 invoker,
                 metadata,
@@ -86,7 +110,9 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
                 addressSelector,
                 addressSelectionContext,
                 stat,
-                ticker);
+                ticker,
+                hedging,
+                retryBudget);
         // invocation can not be started from constructor, because it may start threads that can call back into the unpublished object
         invocation.nextAttempt(true);
         return invocation;
@@ -101,7 +127,9 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
             AddressSelector<A> addressSelector,
             Optional<String> addressSelectionContext,
             MethodInvocationStat stat,
-            Ticker ticker) {
+            Ticker ticker,
+            HedgingPolicy hedging,
+            RequestBudget retryBudget) {
         this.invoker = requireNonNull(invoker, "methodHandler is null");
         this.metadata = requireNonNull(metadata, "metadata is null");
         this.headers = requireNonNull(headers, "headers is null");
@@ -112,11 +140,21 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
         this.stat = requireNonNull(stat, "stat is null");
         this.ticker = requireNonNull(ticker, "ticker is null");
         this.startTime = ticker.read();
+        this.hedging = metadata.isIdempotent() ? hedging : null;
+        if (this.hedging != null) {
+            this.hedging.onInvocation();
+        }
+        this.retryBudget = retryBudget;
+        if (retryBudget != null) {
+            retryBudget.deposit();
+        }
 
-        // if this invocation is canceled, cancel the tasks
+        // if this invocation is canceled, cancel the tasks, otherwise cancel the attempts which lost
         super.addListener(() -> {
             if (super.isCancelled()) {
                 onCancel(wasInterrupted());
+            } else {
+                cancelPendingAttempts(false);
             }
         }, directExecutor());
     }
@@ -159,26 +197,108 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
         }
     }
 
-    private synchronized void invoke(A address) {
+    private synchronized ListenableFuture<Object> invoke(A address) {
         try {
             long invocationStartTime = ticker.read();
             ListenableFuture<Object> result = invoker.invoke(new InvokeRequest(metadata, address, headers, parameters));
             stat.recordResult(invocationStartTime, result);
+            onRequestStart(address);
             currentTask = result;
+            pendingAttempts.put(result, address);
+            if (hedging != null && !hedgeScheduled) {
+                hedgeScheduled = true;
+                scheduleHedge();
+            }
 
             Futures.addCallback(result, new FutureCallback<Object>() {
                         @Override
-                        public void onSuccess(Object result) {
+                        public void onSuccess(Object value) {
+                            long duration = ticker.read() - invocationStartTime;
+                            onRequestFinish(address, duration, true);
                             resetConnectionFailures(address);
-                            set(result);
+                            markup(address);
+                            if (hedging != null) {
+                                hedging.recordLatency(duration);
+                            }
+                            boolean hedge = attemptFinished(result);
+                            if (set(value) && hedge) {
+                                hedging.onHedgeWin();
+                            }
                         }
 
                         @Override
                         public void onFailure(Throwable t) {
-                            handleFailure(address, t);
+                            if (t instanceof CancellationException) {
+                                // an attempt cancelled because another one won, or by the caller,
+                                // tells nothing about the server
+                                onRequestCancel(address);
+                            } else {
+                                // a de-serialized user exception is still an answer of the server
+                                onRequestFinish(address, ticker.read() - invocationStartTime,
+                                        t instanceof DriftApplicationException);
+                            }
+                            handleFailure(result, address, t);
                         }
                     },
                     directExecutor());
+            return result;
+        } catch (Throwable t) {
+            // this should never happen, but ensure that invocation always finishes
+            unexpectedError(t);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the finished attempt is the hedged one
+     */
+    private synchronized boolean attemptFinished(ListenableFuture<Object> attempt) {
+        pendingAttempts.remove(attempt);
+        return attempt == hedgeTask;
+    }
+
+    private synchronized void scheduleHedge() {
+        long delayNanos = hedging.getDelayNanos();
+        if (delayNanos < 0) {
+            // not enough latencies observed yet
+            return;
+        }
+        ListenableFuture<?> delay = invoker.delay(succinctNanos(delayNanos));
+        hedgeTimer = delay;
+        Futures.addCallback(delay, new FutureCallback<Object>() {
+                    @Override
+                    public void onSuccess(Object result) {
+                        hedge();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        // the timer is cancelled once the invocation is done
+                    }
+                },
+                directExecutor());
+    }
+
+    private synchronized void hedge() {
+        try {
+            // only the first attempt is hedged, and only while it's the single pending attempt
+            if (isDone() || pendingAttempts.size() != 1 || invocationAttempts > 0) {
+                return;
+            }
+            if (!hedging.tryAcquire()) {
+                LOGGER.debug("Hedging budget of {} is exhausted", metadata.getName());
+                return;
+            }
+            Set<A> excluded = new LinkedHashSet<>(attemptedAddresses);
+            excluded.addAll(pendingAttempts.values());
+            Optional<A> address = addressSelector.selectAddress(addressSelectionContext, excluded);
+            if (!address.isPresent() || excluded.contains(address.get())) {
+                // hedging to the same address won't help
+                hedging.release();
+                return;
+            }
+            hedging.onHedge();
+            hedgeTask = invoke(address.get());
         } catch (Throwable t) {
             // this should never happen, but ensure that invocation always finishes
             unexpectedError(t);
@@ -189,8 +309,41 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
         failedConnectionAttempts.setCount(address, 0);
     }
 
-    private synchronized void handleFailure(A address, Throwable throwable) {
+    @SuppressWarnings("unchecked")
+    private void markup(A address) {
+        if (addressSelector instanceof HealthAwareAddressSelector) {
+            ((HealthAwareAddressSelector<A>) addressSelector).markup(address);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onRequestStart(A address) {
+        if (addressSelector instanceof HealthAwareAddressSelector) {
+            ((HealthAwareAddressSelector<A>) addressSelector).onRequestStart(address);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onRequestFinish(A address, long durationNanos, boolean success) {
+        if (addressSelector instanceof HealthAwareAddressSelector) {
+            ((HealthAwareAddressSelector<A>) addressSelector).onRequestFinish(address, durationNanos, success);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onRequestCancel(A address) {
+        if (addressSelector instanceof HealthAwareAddressSelector) {
+            ((HealthAwareAddressSelector<A>) addressSelector).onRequestCancel(address);
+        }
+    }
+
+    private synchronized void handleFailure(ListenableFuture<Object> attempt, A address, Throwable throwable) {
         try {
+            pendingAttempts.remove(attempt);
+            if (isDone()) {
+                // another attempt has won, or the invocation was cancelled
+                return;
+            }
             if (throwable instanceof ConnectionFailedException) {
                 failedConnections++;
             }
@@ -203,6 +356,8 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
                 // only store exception if the server is in a normal state
                 lastException = throwable;
                 invocationAttempts++;
+                // server has answered, so it's healthy
+                markup(address);
             } else if (exceptionClassification.getHostStatus() == DOWN || exceptionClassification.getHostStatus() == OVERLOADED) {
                 addressSelector.markdown(address);
                 failedConnectionAttempts.add(address);
@@ -219,6 +374,13 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
                 fail(format("Non-retryable exception, rpc method: %s", metadata.getName()));
                 return;
             }
+            if (!pendingAttempts.isEmpty()) {
+                // wait for the other attempt to answer
+                return;
+            }
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
             if (invocationAttempts > retryPolicy.getMaxRetries()) {
                 fail(format("Max retry attempts (%s) exceeded, rpc method: %s",
                         retryPolicy.getMaxRetries(), metadata.getName()));
@@ -229,6 +391,10 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
                         retryPolicy.getMaxRetryTime(), metadata.getName()));
                 return;
             }
+            if (retryBudget != null && !retryBudget.tryWithdraw()) {
+                fail(format("Retry budget exhausted, rpc method: %s", metadata.getName()));
+                return;
+            }
 
             // A request to down or overloaded server is not counted as an attempt
             // Retries are not delayed based on the invocationAttempts, but may be delayed
@@ -280,6 +446,20 @@ public class CerberusDriftMethodInvocation<A extends Address> extends AbstractFu
         if (currentTask != null) {
             currentTask.cancel(wasInterrupted);
         }
+        cancelPendingAttempts(wasInterrupted);
+    }
+
+    private synchronized void cancelPendingAttempts(boolean mayInterruptIfRunning) {
+        if (hedgeTimer != null) {
+            hedgeTimer.cancel(false);
+        }
+        if (pendingAttempts.isEmpty()) {
+            return;
+        }
+        // cancelling an attempt calls back into handleFailure, which removes it from pending attempts
+        for (ListenableFuture<Object> attempt : new ArrayList<>(pendingAttempts.keySet())) {
+            attempt.cancel(mayInterruptIfRunning);
+        }
     }
 
     private synchronized void fail(String reason) {
@@ -0,0 +1,250 @@
+package com.sinkedship.cerberus.client.stub;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Primitives;
+import com.sinkedship.cerberus.client.mimic.drift.CerberusDriftMethodHandler;
+import com.sinkedship.cerberus.commons.exception.CerberusException;
+import io.airlift.bytecode.BytecodeBlock;
+import io.airlift.bytecode.ClassDefinition;
+import io.airlift.bytecode.DynamicClassLoader;
+import io.airlift.bytecode.FieldDefinition;
+import io.airlift.bytecode.MethodDefinition;
+import io.airlift.bytecode.Parameter;
+import io.airlift.bytecode.expression.BytecodeExpression;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.airlift.bytecode.Access.FINAL;
+import static io.airlift.bytecode.Access.PRIVATE;
+import static io.airlift.bytecode.Access.PUBLIC;
+import static io.airlift.bytecode.Access.a;
+import static io.airlift.bytecode.ClassGenerator.classGenerator;
+import static io.airlift.bytecode.Parameter.arg;
+import static io.airlift.bytecode.ParameterizedType.type;
+import static io.airlift.bytecode.ParameterizedType.typeFromJavaClassName;
+import static io.airlift.bytecode.expression.BytecodeExpressions.constantInt;
+import static io.airlift.bytecode.expression.BytecodeExpressions.invokeStatic;
+import static io.airlift.bytecode.expression.BytecodeExpressions.newArray;
+
+/**
+ * Generates client stubs of Thrift service interfaces at runtime, as an alternative to
+ * {@link java.lang.reflect.Proxy} based clients.
+ * <p>
+ * A stub is a concrete class implementing the interface, with a field holding the {@link StubMethod}
+ * of each method, so an invocation goes straight to its method handler without reflective dispatch
+ * or a method lookup. A stub class is generated once for each interface and shared by all its stubs.
+ *
+ * @author Derrick Guan
+ */
+public final class ClientStubs {
+
+    private static final String STUB_PACKAGE = "com.sinkedship.cerberus.client.stub.$gen";
+
+    private static final AtomicLong CLASS_ID = new AtomicLong();
+
+    private static final ClassValue<StubClass> STUB_CLASSES = new ClassValue<StubClass>() {
+        @Override
+        protected StubClass computeValue(Class<?> clientInterface) {
+            return generate(clientInterface);
+        }
+    };
+
+    private ClientStubs() {
+    }
+
+    /**
+     * @param clientInterface client interface of a service
+     *
+     * @return true if a stub can be generated for the interface, i.e. it's a public interface
+     */
+    public static boolean isSupported(Class<?> clientInterface) {
+        return clientInterface.isInterface() && Modifier.isPublic(clientInterface.getModifiers()) &&
+                clientInterface.getClassLoader() != null;
+    }
+
+    /**
+     * Create a stub of a client interface.
+     *
+     * @param clientInterface         client interface of a service
+     * @param serviceName             name of the service, returned by {@code toString()} of the stub
+     * @param methods                 handlers of the methods of the interface
+     * @param addressSelectionContext address selection context of the stub
+     * @param headers                 headers of the stub
+     * @param <T>                     type of the interface
+     *
+     * @return stub of the interface
+     */
+    public static <T> T newStub(Class<T> clientInterface, String serviceName,
+                                Map<Method, CerberusDriftMethodHandler> methods,
+                                Optional<String> addressSelectionContext, Map<String, String> headers) {
+        StubClass stubClass = STUB_CLASSES.get(clientInterface);
+        StubMethod[] stubMethods = new StubMethod[stubClass.methods.size()];
+        for (int i = 0; i < stubMethods.length; i++) {
+            Method method = stubClass.methods.get(i);
+            stubMethods[i] = new StubMethod(method, methods.get(method));
+        }
+        try {
+            return clientInterface.cast(stubClass.constructor.newInstance(
+                    stubMethods, addressSelectionContext, headers, serviceName));
+        } catch (ReflectiveOperationException e) {
+            throw new CerberusException("Cannot create stub of " + clientInterface.getName(), e);
+        }
+    }
+
+    private static StubClass generate(Class<?> clientInterface) {
+        if (!isSupported(clientInterface)) {
+            throw new CerberusException("Cannot generate stub of non-public interface " + clientInterface.getName());
+        }
+        // abstract methods of the interface and its super interfaces, which are overridden by the stub
+        Map<String, Method> abstractMethods = new LinkedHashMap<>();
+        for (Method method : clientInterface.getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                abstractMethods.putIfAbsent(method.getName() + Arrays.toString(method.getParameterTypes()), method);
+            }
+        }
+        List<Method> methods = new ArrayList<>();
+        Method close = null;
+        for (Method method : abstractMethods.values()) {
+            if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                close = method;
+            } else {
+                methods.add(method);
+            }
+        }
+
+        ClassDefinition definition = new ClassDefinition(
+                a(PUBLIC, FINAL),
+                typeFromJavaClassName(STUB_PACKAGE + "." + stubName(clientInterface) + "Stub_" +
+                        CLASS_ID.incrementAndGet()),
+                type(Object.class),
+                type(clientInterface));
+        FieldDefinition contextField = definition.declareField(a(PRIVATE, FINAL), "addressSelectionContext",
+                Optional.class);
+        FieldDefinition headersField = definition.declareField(a(PRIVATE, FINAL), "headers", Map.class);
+        FieldDefinition nameField = definition.declareField(a(PRIVATE, FINAL), "serviceName", String.class);
+        List<FieldDefinition> methodFields = new ArrayList<>(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            methodFields.add(definition.declareField(a(PRIVATE, FINAL), "method" + i, StubMethod.class));
+        }
+
+        // constructor assigns every stub method to its own field
+        Parameter stubMethods = arg("methods", StubMethod[].class);
+        Parameter context = arg("addressSelectionContext", Optional.class);
+        Parameter headers = arg("headers", Map.class);
+        Parameter serviceName = arg("serviceName", String.class);
+        MethodDefinition constructor = definition.declareConstructor(a(PUBLIC),
+                stubMethods, context, headers, serviceName);
+        BytecodeBlock body = constructor.getBody()
+                .append(constructor.getThis())
+                .invokeConstructor(Object.class)
+                .append(constructor.getThis().setField(contextField, context))
+                .append(constructor.getThis().setField(headersField, headers))
+                .append(constructor.getThis().setField(nameField, serviceName));
+        for (int i = 0; i < methods.size(); i++) {
+            body.append(constructor.getThis().setField(methodFields.get(i), stubMethods.getElement(constantInt(i))));
+        }
+        body.ret();
+
+        for (int i = 0; i < methods.size(); i++) {
+            defineMethod(definition, methods.get(i), methodFields.get(i), contextField, headersField);
+        }
+        if (close != null) {
+            MethodDefinition closeMethod = definition.declareMethod(a(PUBLIC), "close", type(close.getReturnType()));
+            closeMethod.getBody().ret();
+        }
+        MethodDefinition toString = definition.declareMethod(a(PUBLIC), "toString", type(String.class));
+        toString.getBody().append(toString.getThis().getField(nameField).ret());
+
+        DynamicClassLoader classLoader = new DynamicClassLoader(clientInterface.getClassLoader(),
+                ClientStubs.class.getClassLoader());
+        Class<?> stubClass = classGenerator(classLoader).defineClass(definition, clientInterface);
+        try {
+            return new StubClass(stubClass.getConstructor(StubMethod[].class, Optional.class, Map.class, String.class),
+                    methods);
+        } catch (NoSuchMethodException e) {
+            throw new CerberusException("Cannot find constructor of stub of " + clientInterface.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void defineMethod(ClassDefinition definition, Method method, FieldDefinition methodField,
+                                     FieldDefinition contextField, FieldDefinition headersField) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        List<Parameter> parameters = new ArrayList<>(parameterTypes.length);
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameters.add(arg("arg" + i, parameterTypes[i]));
+        }
+        MethodDefinition methodDefinition = definition.declareMethod(a(PUBLIC), method.getName(),
+                type(method.getReturnType()), parameters);
+        for (Class<?> exceptionType : method.getExceptionTypes()) {
+            methodDefinition.addException((Class<? extends Throwable>) exceptionType);
+        }
+
+        List<BytecodeExpression> args = new ArrayList<>(parameters.size());
+        for (int i = 0; i < parameters.size(); i++) {
+            args.add(box(parameters.get(i), parameterTypes[i]));
+        }
+        BytecodeExpression argumentList;
+        if (args.size() <= StubArguments.MAX_ARITY) {
+            Class<?>[] argumentTypes = new Class<?>[args.size()];
+            Arrays.fill(argumentTypes, Object.class);
+            argumentList = invokeStatic(StubArguments.class, "of", List.class, Arrays.asList(argumentTypes),
+                    args.toArray(new BytecodeExpression[0]));
+        } else {
+            argumentList = invokeStatic(Arrays.class, "asList", List.class, newArray(type(Object[].class), args));
+        }
+        BytecodeExpression result = methodDefinition.getThis().getField(methodField).invoke(
+                "invoke", Object.class,
+                ImmutableList.of(Optional.class, Map.class, List.class),
+                methodDefinition.getThis().getField(contextField),
+                methodDefinition.getThis().getField(headersField),
+                argumentList);
+
+        Class<?> returnType = method.getReturnType();
+        BytecodeBlock body = methodDefinition.getBody();
+        if (returnType == void.class) {
+            body.append(result.pop()).ret();
+        } else if (returnType.isPrimitive()) {
+            Class<?> wrapper = Primitives.wrap(returnType);
+            body.append(result.cast(wrapper).invoke(returnType.getName() + "Value", returnType).ret());
+        } else {
+            body.append(result.cast(returnType).ret());
+        }
+    }
+
+    // name of the interface without its package, e.g. HelloService_Async for a nested HelloService.Async
+    private static String stubName(Class<?> clientInterface) {
+        String name = clientInterface.getName();
+        return name.substring(name.lastIndexOf('.') + 1).replace('$', '_');
+    }
+
+    private static BytecodeExpression box(BytecodeExpression value, Class<?> type) {
+        if (!type.isPrimitive()) {
+            return value;
+        }
+        Class<?> wrapper = Primitives.wrap(type);
+        return invokeStatic(wrapper, "valueOf", wrapper, value);
+    }
+
+    private static final class StubClass {
+
+        private final Constructor<?> constructor;
+
+        // methods in the order of stub methods passed to the constructor
+        private final List<Method> methods;
+
+        StubClass(Constructor<?> constructor, List<Method> methods) {
+            this.constructor = constructor;
+            this.methods = ImmutableList.copyOf(methods);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.sinkedship.cerberus.client.stub;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Argument lists of generated client stubs, each is a single fixed-size list holding the arguments
+ * in its fields, rather than an array wrapped by a list.
+ * <p>
+ * Stubs of methods with more arguments than any factory here takes fall back to
+ * {@link java.util.Arrays#asList(Object[])}.
+ *
+ * @author Derrick Guan
+ */
+public final class StubArguments {
+
+    // max number of arguments of the factories
+    static final int MAX_ARITY = 4;
+
+    private StubArguments() {
+    }
+
+    public static List<Object> of() {
+        return Collections.emptyList();
+    }
+
+    public static List<Object> of(Object arg0) {
+        return Collections.singletonList(arg0);
+    }
+
+    public static List<Object> of(Object arg0, Object arg1) {
+        return new Arguments2(arg0, arg1);
+    }
+
+    public static List<Object> of(Object arg0, Object arg1, Object arg2) {
+        return new Arguments3(arg0, arg1, arg2);
+    }
+
+    public static List<Object> of(Object arg0, Object arg1, Object arg2, Object arg3) {
+        return new Arguments4(arg0, arg1, arg2, arg3);
+    }
+
+    private static final class Arguments2 extends AbstractList<Object> implements RandomAccess {
+
+        private final Object arg0;
+
+        private final Object arg1;
+
+        Arguments2(Object arg0, Object arg1) {
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+        }
+
+        @Override
+        public Object get(int index) {
+            switch (index) {
+                case 0:
+                    return arg0;
+                case 1:
+                    return arg1;
+                default:
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: 2");
+            }
+        }
+
+        @Override
+        public int size() {
+            return 2;
+        }
+    }
+
+    private static final class Arguments3 extends AbstractList<Object> implements RandomAccess {
+
+        private final Object arg0;
+
+        private final Object arg1;
+
+        private final Object arg2;
+
+        Arguments3(Object arg0, Object arg1, Object arg2) {
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        @Override
+        public Object get(int index) {
+            switch (index) {
+                case 0:
+                    return arg0;
+                case 1:
+                    return arg1;
+                case 2:
+                    return arg2;
+                default:
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: 3");
+            }
+        }
+
+        @Override
+        public int size() {
+            return 3;
+        }
+    }
+
+    private static final class Arguments4 extends AbstractList<Object> implements RandomAccess {
+
+        private final Object arg0;
+
+        private final Object arg1;
+
+        private final Object arg2;
+
+        private final Object arg3;
+
+        Arguments4(Object arg0, Object arg1, Object arg2, Object arg3) {
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.arg3 = arg3;
+        }
+
+        @Override
+        public Object get(int index) {
+            switch (index) {
+                case 0:
+                    return arg0;
+                case 1:
+                    return arg1;
+                case 2:
+                    return arg2;
+                case 3:
+                    return arg3;
+                default:
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: 4");
+            }
+        }
+
+        @Override
+        public int size() {
+            return 4;
+        }
+    }
+}
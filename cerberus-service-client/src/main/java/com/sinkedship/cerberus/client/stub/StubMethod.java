@@ -0,0 +1,48 @@
+package com.sinkedship.cerberus.client.stub;
+
+import com.sinkedship.cerberus.client.mimic.drift.CerberusDriftInvocationHandler;
+import com.sinkedship.cerberus.client.mimic.drift.CerberusDriftMethodHandler;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A method of a generated client stub, which holds everything the stub needs to invoke the method,
+ * so that nothing is looked up or scanned per invocation.
+ *
+ * @author Derrick Guan
+ */
+public final class StubMethod {
+
+    private final Method method;
+
+    // null if the method is unknown
+    private final CerberusDriftMethodHandler handler;
+
+    private final Class<?>[] exceptionTypes;
+
+    StubMethod(Method method, CerberusDriftMethodHandler handler) {
+        this.method = method;
+        this.handler = handler;
+        this.exceptionTypes = method.getExceptionTypes();
+    }
+
+    /**
+     * Called by generated stubs.
+     *
+     * @param addressSelectionContext address selection context of the stub
+     * @param headers                 headers of the stub
+     * @param args                    arguments of the invocation, see {@link StubArguments}
+     *
+     * @return result of the invocation, a future if the method is async
+     *
+     * @throws Throwable which is declared to be thrown by the method, or an error
+     */
+    public Object invoke(Optional<String> addressSelectionContext, Map<String, String> headers, List<Object> args)
+            throws Throwable {
+        return CerberusDriftInvocationHandler.invokeMethod(handler, method, args, exceptionTypes,
+                addressSelectionContext, headers);
+    }
+}